@@ -18,6 +18,7 @@
  */
 
 
+import org.apache.ofbiz.accounting.ledger.GlBalanceSnapshotWorker
 import org.apache.ofbiz.accounting.util.UtilAccounting
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.base.util.UtilMisc
@@ -158,22 +159,15 @@ if (lastClosedTimePeriod) {
 
 List balanceTotalList = []
 
-List mainAndExprs = []
-mainAndExprs.add(EntityCondition.makeCondition("organizationPartyId", EntityOperator.IN, partyIds))
-mainAndExprs.add(EntityCondition.makeCondition("isPosted", EntityOperator.EQUALS, "Y"))
-mainAndExprs.add(EntityCondition.makeCondition("glFiscalTypeId", EntityOperator.EQUALS, glFiscalTypeId))
-mainAndExprs.add(EntityCondition.makeCondition("acctgTransTypeId", EntityOperator.NOT_EQUAL, "PERIOD_CLOSING"))
-mainAndExprs.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate))
-mainAndExprs.add(EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, thruDate))
+// Sums of the posted entries of the period by account, from the GL account balance snapshots once they are built
+List periodTransactionTotals = GlBalanceSnapshotWorker.getTransactionTotals(delegator, partyIds, glFiscalTypeId, fromDate, thruDate)
 
 // ASSETS
 // account balances
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List assetAndExprs = mainAndExprs as LinkedList
-assetAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, assetAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(assetAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in assetAccountClassIds }
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(assetOpeningBalances)
 transactionTotals.each { transactionTotal ->
@@ -207,9 +201,7 @@ context.assetBalanceTotal = balanceTotal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List currentAssetAndExprs = mainAndExprs as LinkedList
-currentAssetAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, currentAssetAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(currentAssetAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in currentAssetAccountClassIds }
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(currentAssetOpeningBalances)
 transactionTotals.each { transactionTotal ->
@@ -242,9 +234,7 @@ balanceTotalList.add(UtilMisc.toMap("totalName", "AccountingCurrentAssets", "bal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List longtermAssetAndExprs = mainAndExprs as LinkedList
-longtermAssetAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, longtermAssetAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(longtermAssetAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in longtermAssetAccountClassIds }
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(longtermAssetOpeningBalances)
 transactionTotals.each { transactionTotal ->
@@ -277,9 +267,7 @@ balanceTotalList.add(UtilMisc.toMap("totalName", "AccountingLongTermAssets", "ba
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List contraAssetAndExprs = mainAndExprs as LinkedList
-contraAssetAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, contraAssetAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(contraAssetAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in contraAssetAccountClassIds }
 
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(contraAssetOpeningBalances)
@@ -316,9 +304,7 @@ balanceTotalList.add(UtilMisc.toMap("totalName", "AccountingTotalAssets", "balan
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List liabilityAndExprs = mainAndExprs as LinkedList
-liabilityAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, liabilityAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(liabilityAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in liabilityAccountClassIds }
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(liabilityOpeningBalances)
 transactionTotals.each { transactionTotal ->
@@ -352,9 +338,7 @@ context.liabilityBalanceTotal = balanceTotal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List currentLiabilityAndExprs = mainAndExprs as LinkedList
-currentLiabilityAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, currentLiabilityAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(currentLiabilityAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in currentLiabilityAccountClassIds }
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(currentLiabilityOpeningBalances)
 transactionTotals.each { transactionTotal ->
@@ -387,9 +371,7 @@ balanceTotalList.add(UtilMisc.toMap("totalName", "AccountingCurrentLiabilities",
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List equityAndExprs = mainAndExprs as LinkedList
-equityAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, equityAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(equityAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in equityAccountClassIds }
 transactionTotalsMap = [:]
 transactionTotalsMap.putAll(equityOpeningBalances)
 transactionTotals.each { transactionTotal ->
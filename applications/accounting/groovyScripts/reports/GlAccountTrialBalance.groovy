@@ -17,10 +17,12 @@
  * under the License.
  */
 import com.ibm.icu.util.Calendar
+import org.apache.ofbiz.accounting.ledger.GlBalanceSnapshotWorker
 import org.apache.ofbiz.accounting.util.UtilAccounting
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.base.util.UtilNumber
 import org.apache.ofbiz.base.util.UtilValidate
+import org.apache.ofbiz.party.party.PartyWorker
 
 import java.sql.Timestamp
 
@@ -47,15 +49,29 @@ if (parameters.get('ApplicationDecorator|organizationPartyId')) {
 
     if (parameters.timePeriod) {
         currentTimePeriod = from("CustomTimePeriod").where("customTimePeriodId", parameters.timePeriod).queryOne()
-        previousTimePeriodResult = runService('getPreviousTimePeriod', [customTimePeriodId : parameters.timePeriod, userLogin : userLogin])
-        previousTimePeriod = previousTimePeriodResult.previousTimePeriod
-        if (UtilValidate.isNotEmpty(previousTimePeriod)) {
-            glAccountHistory = from("GlAccountHistory").where("customTimePeriodId", previousTimePeriod.customTimePeriodId, "glAccountId", parameters.glAccountId, "organizationPartyId", parameters.get('ApplicationDecorator|organizationPartyId')).queryOne()
-            if (glAccountHistory && glAccountHistory.endingBalance != null) {
-                context.openingBalance = glAccountHistory.endingBalance
-                balanceOfTheAcctgForYear = glAccountHistory.endingBalance
-            } else {
-                context.openingBalance = BigDecimal.ZERO
+        partyIds = PartyWorker.getAssociatedPartyIdsByRelationshipType(delegator, parameters.get('ApplicationDecorator|organizationPartyId'), 'GROUP_ROLLUP')
+        partyIds.add(parameters.get('ApplicationDecorator|organizationPartyId'))
+        if (currentTimePeriod && glAccount && GlBalanceSnapshotWorker.isBuilt(delegator, partyIds)) {
+            // the balance posted before the period, from the GL account balance snapshots
+            postedTotals = GlBalanceSnapshotWorker.getPostedTotals(delegator, partyIds, parameters.glAccountId, null, UtilDateTime.toTimestamp(currentTimePeriod.fromDate), true)
+            accountTotals = postedTotals.get(parameters.glAccountId)
+            BigDecimal openingBalance = BigDecimal.ZERO
+            if (accountTotals) {
+                openingBalance = isDebitAccount ? accountTotals[0] - accountTotals[1] : accountTotals[1] - accountTotals[0]
+            }
+            context.openingBalance = openingBalance.setScale(decimals, rounding)
+            balanceOfTheAcctgForYear = openingBalance
+        } else {
+            previousTimePeriodResult = runService('getPreviousTimePeriod', [customTimePeriodId : parameters.timePeriod, userLogin : userLogin])
+            previousTimePeriod = previousTimePeriodResult.previousTimePeriod
+            if (UtilValidate.isNotEmpty(previousTimePeriod)) {
+                glAccountHistory = from("GlAccountHistory").where("customTimePeriodId", previousTimePeriod.customTimePeriodId, "glAccountId", parameters.glAccountId, "organizationPartyId", parameters.get('ApplicationDecorator|organizationPartyId')).queryOne()
+                if (glAccountHistory && glAccountHistory.endingBalance != null) {
+                    context.openingBalance = glAccountHistory.endingBalance
+                    balanceOfTheAcctgForYear = glAccountHistory.endingBalance
+                } else {
+                    context.openingBalance = BigDecimal.ZERO
+                }
             }
         }
     }
@@ -20,8 +20,7 @@
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.base.util.UtilMisc
 import org.apache.ofbiz.entity.GenericValue
-import org.apache.ofbiz.entity.condition.EntityCondition
-import org.apache.ofbiz.entity.condition.EntityOperator
+import org.apache.ofbiz.accounting.ledger.GlBalanceSnapshotWorker
 import org.apache.ofbiz.accounting.util.UtilAccounting
 import org.apache.ofbiz.party.party.PartyWorker
 
@@ -61,13 +60,8 @@ List sgaExpenseAccountClassIds = UtilAccounting.getDescendantGlAccountClassIds(s
 GenericValue depreciationGlAccountClass = from("GlAccountClass").where("glAccountClassId", "DEPRECIATION").cache(true).queryOne()
 List depreciationAccountClassIds = UtilAccounting.getDescendantGlAccountClassIds(depreciationGlAccountClass)
 
-List mainAndExprs = []
-mainAndExprs.add(EntityCondition.makeCondition("organizationPartyId", EntityOperator.IN, partyIds))
-mainAndExprs.add(EntityCondition.makeCondition("isPosted", EntityOperator.EQUALS, "Y"))
-mainAndExprs.add(EntityCondition.makeCondition("glFiscalTypeId", EntityOperator.EQUALS, glFiscalTypeId))
-mainAndExprs.add(EntityCondition.makeCondition("acctgTransTypeId", EntityOperator.NOT_EQUAL, "PERIOD_CLOSING"))
-mainAndExprs.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate))
-mainAndExprs.add(EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, thruDate))
+// Sums of the posted entries of the period by account, from the GL account balance snapshots once they are built
+List periodTransactionTotals = GlBalanceSnapshotWorker.getTransactionTotals(delegator, partyIds, glFiscalTypeId, fromDate, thruDate)
 
 List balanceTotalList = []
 
@@ -76,9 +70,7 @@ List balanceTotalList = []
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List revenueAndExprs = mainAndExprs as LinkedList
-revenueAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, revenueAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(revenueAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in revenueAccountClassIds }
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -119,9 +111,7 @@ context.revenueBalanceTotal = balanceTotal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List contraRevenueAndExprs = mainAndExprs as LinkedList
-contraRevenueAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, contraRevenueAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(contraRevenueAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in contraRevenueAccountClassIds }
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -161,9 +151,7 @@ balanceTotalList.add(UtilMisc.toMap("totalName", "TOTAL CONTRA REVENUE", "balanc
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List expenseAndExprs = mainAndExprs as LinkedList
-expenseAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, expenseAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(expenseAndExprs).queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in expenseAccountClassIds }
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -204,9 +192,7 @@ context.expenseBalanceTotal = balanceTotal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List cogsExpenseAndExprs = mainAndExprs as LinkedList
-cogsExpenseAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, cogsExpenseAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(cogsExpenseAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in cogsExpenseAccountClassIds }
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -246,9 +232,7 @@ balanceTotalList.add(UtilMisc.toMap("totalName", "AccountingCostOfGoodsSold", "b
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List sgaExpenseAndExprs = mainAndExprs as LinkedList
-sgaExpenseAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, sgaExpenseAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(sgaExpenseAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in sgaExpenseAccountClassIds }
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -287,9 +271,7 @@ sgaExpense = balanceTotal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List depreciationAndExprs = mainAndExprs as LinkedList
-depreciationAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, depreciationAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(depreciationAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in depreciationAccountClassIds }
 if (transactionTotals) {
 Map transactionTotalsMap = [:]
 balanceTotalCredit = BigDecimal.ZERO
@@ -328,9 +310,7 @@ depreciation = balanceTotal
 accountBalanceList = []
 transactionTotals = []
 balanceTotal = BigDecimal.ZERO
-List incomeAndExprs = mainAndExprs as LinkedList
-incomeAndExprs.add(EntityCondition.makeCondition("glAccountClassId", EntityOperator.IN, incomeAccountClassIds))
-transactionTotals = select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount").from("AcctgTransEntrySums").where(incomeAndExprs).orderBy("glAccountId").queryList()
+transactionTotals = periodTransactionTotals.findAll { it.glAccountClassId in incomeAccountClassIds }
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.invoice;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the invoices of many shipments at once, such as the month-end billing of the shipments of the orders not
+ * invoiced by shipment.
+ * <p>The shipments, the orders they ship and the billing parties of the orders are read at once, and the shipments
+ * with all their issuances already billed are left out. The shipments are then grouped in work units: the shipments
+ * sharing an order, invoiced together by one call of <code>createInvoicesFromShipments</code> in its own transaction.
+ * The work units are partitioned by billing party (bill-to customer of the sales orders, bill-from vendor of the
+ * purchase orders), and the partitions are run side by side by at most <code>invoice.bulk.concurrency</code>
+ * threads, so that the invoices of a party are always created one after the other.</p>
+ * <p>A failed work unit is rolled back and logged, and the others go on.</p>
+ */
+public final class BulkInvoiceRunner {
+
+	public static final String module = BulkInvoiceRunner.class.getName();
+	private static final String resource = "accounting";
+	private static final ThreadGroup BULK_INVOICE_THREAD_GROUP = new ThreadGroup("BulkInvoiceRunner");
+	private static final int IN_QUERY_CHUNK_SIZE = 500;
+
+	private final LocalDispatcher dispatcher;
+	private final Delegator delegator;
+	private final GenericValue userLogin;
+	private final Timestamp eventDate;
+	private final boolean createSalesInvoicesForDropShipments;
+	private final boolean readyInvoices;
+
+	private final List<String> invoicesCreated = new ArrayList<String>();
+	private int failedUnitCount;
+
+	/**
+	 * @param eventDate                           The date of the invoices, or <code>null</code> for now
+	 * @param createSalesInvoicesForDropShipments <code>true</code> to create the sales invoices of drop shipments, instead of their purchase invoices
+	 * @param readyInvoices                       <code>true</code> to set the invoices created to ready
+	 */
+	public BulkInvoiceRunner(LocalDispatcher dispatcher, GenericValue userLogin, Timestamp eventDate, boolean createSalesInvoicesForDropShipments, boolean readyInvoices) {
+		this.dispatcher = dispatcher;
+		this.delegator = dispatcher.getDelegator();
+		this.userLogin = userLogin;
+		this.eventDate = eventDate;
+		this.createSalesInvoicesForDropShipments = createSalesInvoicesForDropShipments;
+		this.readyInvoices = readyInvoices;
+	}
+
+	/**
+	 * Invoices shipments, and returns a service result with the invoices created (<code>invoicesCreated</code>) and
+	 * the counts and timings of the run (<code>bulkStats</code>).
+	 *
+	 * @param concurrency The number of partitions run at once, or 0 for <code>invoice.bulk.concurrency</code>
+	 */
+	public Map<String, Object> run(Collection<String> shipmentIds, int concurrency) throws GenericEntityException, InterruptedException {
+		long start = System.nanoTime();
+		Set<String> distinctShipmentIds = new LinkedHashSet<String>(shipmentIds);
+		List<List<List<String>>> partitions = makePartitions(distinctShipmentIds);
+		long prefetchNanos = System.nanoTime() - start;
+
+		int unitCount = 0;
+		int shipmentCount = 0;
+		Queue<List<List<String>>> queue = new ConcurrentLinkedQueue<List<List<String>>>();
+		for (List<List<String>> partition : partitions) {
+			queue.add(partition);
+			unitCount += partition.size();
+			for (List<String> unit : partition) {
+				shipmentCount += unit.size();
+			}
+		}
+		if (concurrency <= 0) {
+			concurrency = EntityUtilProperties.getPropertyAsInteger(resource, "invoice.bulk.concurrency", 4, delegator);
+		}
+		runPartitions(queue, Math.min(Math.max(1, concurrency), partitions.size()));
+		long elapsedNanos = System.nanoTime() - start;
+
+		BigDecimal seconds = new BigDecimal(Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos))).movePointLeft(3);
+		BigDecimal invoicesPerSecond = new BigDecimal(invoicesCreated.size()).divide(seconds, 2, RoundingMode.HALF_UP);
+		Map<String, Object> bulkStats = new TreeMap<String, Object>();
+		bulkStats.put("shipmentCount", shipmentCount);
+		bulkStats.put("skippedShipmentCount", distinctShipmentIds.size() - shipmentCount);
+		bulkStats.put("partitionCount", partitions.size());
+		bulkStats.put("unitCount", unitCount);
+		bulkStats.put("failedUnitCount", failedUnitCount);
+		bulkStats.put("invoiceCount", invoicesCreated.size());
+		bulkStats.put("prefetchMillis", TimeUnit.NANOSECONDS.toMillis(prefetchNanos));
+		bulkStats.put("invoiceMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos - prefetchNanos));
+		bulkStats.put("invoicesPerSecond", invoicesPerSecond);
+		Debug.logInfo("Bulk invoicing of " + distinctShipmentIds.size() + " shipments done in " + seconds.toPlainString() + " s ("
+				+ invoicesPerSecond.toPlainString() + " invoices/s): " + bulkStats, module);
+
+		Map<String, Object> result = ServiceUtil.returnSuccess();
+		result.put("invoicesCreated", new ArrayList<String>(invoicesCreated));
+		result.put("bulkStats", bulkStats);
+		return result;
+	}
+
+	/**
+	 * Reads the shipments, their orders and the billing parties of the orders, and returns the work units (each a list
+	 * of shipmentIds) grouped by partition, the largest partitions first.
+	 */
+	private List<List<List<String>>> makePartitions(Set<String> shipmentIds) throws GenericEntityException {
+		List<String> shipmentIdList = new ArrayList<String>(shipmentIds);
+		Map<String, String> shipmentTypes = new HashMap<String, String>();
+		Map<String, Set<String>> shipmentOrderIds = new HashMap<String, Set<String>>();
+		for (GenericValue shipment : queryIn("Shipment", "shipmentId", shipmentIdList, null)) {
+			String shipmentTypeId = shipment.getString("shipmentTypeId");
+			shipmentTypes.put(shipment.getString("shipmentId"), shipmentTypeId == null ? "SALES_SHIPMENT" : shipmentTypeId);
+			if (shipment.get("primaryOrderId") != null) {
+				addOrderId(shipmentOrderIds, shipment.getString("shipmentId"), shipment.getString("primaryOrderId"));
+			}
+		}
+		for (GenericValue orderShipment : queryIn("OrderShipment", "shipmentId", shipmentIdList, null)) {
+			addOrderId(shipmentOrderIds, orderShipment.getString("shipmentId"), orderShipment.getString("orderId"));
+		}
+
+		// the sales shipments with all their issuances billed have nothing left to invoice
+		List<String> salesShipmentIds = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : shipmentTypes.entrySet()) {
+			if (!"PURCHASE_SHIPMENT".equals(entry.getValue()) && !"DROP_SHIPMENT".equals(entry.getValue())) {
+				salesShipmentIds.add(entry.getKey());
+			}
+		}
+		Map<String, String> issuanceShipmentIds = new HashMap<String, String>();
+		for (GenericValue itemIssuance : queryIn("ItemIssuance", "shipmentId", salesShipmentIds, null)) {
+			issuanceShipmentIds.put(itemIssuance.getString("itemIssuanceId"), itemIssuance.getString("shipmentId"));
+		}
+		Set<String> unbilledShipmentIds = new HashSet<String>(issuanceShipmentIds.values());
+		for (GenericValue itemBilling : queryIn("OrderItemBillingAndInvoiceAndItem", "itemIssuanceId", new ArrayList<String>(issuanceShipmentIds.keySet()),
+				EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "INVOICE_CANCELLED"))) {
+			issuanceShipmentIds.remove(itemBilling.getString("itemIssuanceId"));
+		}
+		unbilledShipmentIds.retainAll(issuanceShipmentIds.values());
+		shipmentTypes.keySet().removeAll(salesShipmentIds);
+		for (String shipmentId : unbilledShipmentIds) {
+			shipmentTypes.put(shipmentId, "SALES_SHIPMENT");
+		}
+
+		// the billing party of the orders
+		Set<String> orderIds = new HashSet<String>();
+		for (String shipmentId : shipmentTypes.keySet()) {
+			if (shipmentOrderIds.containsKey(shipmentId)) {
+				orderIds.addAll(shipmentOrderIds.get(shipmentId));
+			}
+		}
+		// the other party of the invoices: the bill-to customer of the sales orders, the bill-from vendor of the purchase orders
+		Map<String, String> orderRoleTypeIds = new HashMap<String, String>();
+		for (GenericValue orderHeader : queryIn("OrderHeader", "orderId", new ArrayList<String>(orderIds), null)) {
+			orderRoleTypeIds.put(orderHeader.getString("orderId"), "PURCHASE_ORDER".equals(orderHeader.getString("orderTypeId")) ? "BILL_FROM_VENDOR" : "BILL_TO_CUSTOMER");
+		}
+		Map<String, String> orderPartyIds = new HashMap<String, String>();
+		for (GenericValue orderRole : queryIn("OrderRole", "orderId", new ArrayList<String>(orderIds),
+				EntityCondition.makeCondition("roleTypeId", EntityOperator.IN, UtilMisc.toList("BILL_TO_CUSTOMER", "BILL_FROM_VENDOR")))) {
+			if (orderRole.getString("roleTypeId").equals(orderRoleTypeIds.get(orderRole.getString("orderId")))) {
+				orderPartyIds.put(orderRole.getString("orderId"), orderRole.getString("partyId"));
+			}
+		}
+
+		// the shipments sharing an order are invoiced together; the work units of a party are in the same partition
+		Grouping units = new Grouping();
+		Grouping partitions = new Grouping();
+		for (Map.Entry<String, String> entry : shipmentTypes.entrySet()) {
+			String shipmentId = entry.getKey();
+			// the order nodes carry the shipment type, so that shipments of different types are never invoiced together
+			String shipmentNode = "S::" + shipmentId;
+			units.add(shipmentNode);
+			partitions.add(shipmentNode);
+			Set<String> shipmentOrders = shipmentOrderIds.get(shipmentId);
+			if (shipmentOrders == null) {
+				continue;
+			}
+			for (String orderId : shipmentOrders) {
+				String orderNode = "O::" + entry.getValue() + "::" + orderId;
+				units.join(shipmentNode, orderNode);
+				partitions.join(shipmentNode, orderNode);
+				String partyKey = orderPartyIds.get(orderId);
+				if (partyKey != null) {
+					partitions.join(orderNode, "P::" + entry.getValue() + "::" + partyKey);
+				}
+			}
+		}
+
+		Map<String, Map<String, List<String>>> partitionUnits = new TreeMap<String, Map<String, List<String>>>();
+		for (String shipmentId : new TreeSet<String>(shipmentTypes.keySet())) {
+			String shipmentNode = "S::" + shipmentId;
+			Map<String, List<String>> unitShipmentIds = partitionUnits.get(partitions.find(shipmentNode));
+			if (unitShipmentIds == null) {
+				unitShipmentIds = new TreeMap<String, List<String>>();
+				partitionUnits.put(partitions.find(shipmentNode), unitShipmentIds);
+			}
+			List<String> unit = unitShipmentIds.get(units.find(shipmentNode));
+			if (unit == null) {
+				unit = new ArrayList<String>();
+				unitShipmentIds.put(units.find(shipmentNode), unit);
+			}
+			unit.add(shipmentId);
+		}
+		List<List<List<String>>> result = new ArrayList<List<List<String>>>();
+		for (Map<String, List<String>> unitShipmentIds : partitionUnits.values()) {
+			result.add(new ArrayList<List<String>>(unitShipmentIds.values()));
+		}
+		// the largest first, so that they don't end the run alone
+		Collections.sort(result, new Comparator<List<List<String>>>() {
+			public int compare(List<List<String>> partition1, List<List<String>> partition2) {
+				return partition2.size() - partition1.size();
+			}
+		});
+		return result;
+	}
+
+	private static void addOrderId(Map<String, Set<String>> shipmentOrderIds, String shipmentId, String orderId) {
+		Set<String> orderIds = shipmentOrderIds.get(shipmentId);
+		if (orderIds == null) {
+			orderIds = new TreeSet<String>();
+			shipmentOrderIds.put(shipmentId, orderIds);
+		}
+		orderIds.add(orderId);
+	}
+
+	private List<GenericValue> queryIn(String entityName, String fieldName, List<String> values, EntityCondition condition) throws GenericEntityException {
+		List<GenericValue> result = new ArrayList<GenericValue>();
+		for (int start = 0; start < values.size(); start += IN_QUERY_CHUNK_SIZE) {
+			EntityCondition inCondition = EntityCondition.makeCondition(fieldName, EntityOperator.IN, values.subList(start, Math.min(values.size(), start + IN_QUERY_CHUNK_SIZE)));
+			result.addAll(EntityQuery.use(delegator).from(entityName)
+					.where(condition == null ? inCondition : EntityCondition.makeCondition(inCondition, EntityOperator.AND, condition)).queryList());
+		}
+		return result;
+	}
+
+	private void runPartitions(final Queue<List<List<String>>> queue, int workerCount) throws InterruptedException {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < workerCount; i++) {
+			futures.add(getExecutor().submit(new Callable<Void>() {
+				public Void call() {
+					List<List<String>> partition;
+					while ((partition = queue.poll()) != null) {
+						for (List<String> unit : partition) {
+							runUnit(unit);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Debug.logError(e.getCause(), "Error running the bulk invoicing", module);
+				}
+			}
+		} finally {
+			// on interruption, the partitions in progress complete but no other one starts
+			queue.clear();
+		}
+	}
+
+	private void runUnit(List<String> shipmentIds) {
+		Map<String, Object> serviceContext = UtilMisc.<String, Object>toMap("shipmentIds", shipmentIds, "eventDate", eventDate, "userLogin", userLogin);
+		if (createSalesInvoicesForDropShipments) {
+			serviceContext.put("createSalesInvoicesForDropShipments", Boolean.TRUE);
+		}
+		try {
+			Map<String, Object> result = dispatcher.runSync("createInvoicesFromShipments", serviceContext, 0, true);
+			if (ServiceUtil.isError(result)) {
+				unitFailed(shipmentIds, ServiceUtil.getErrorMessage(result), null);
+				return;
+			}
+			List<String> unitInvoiceIds = new ArrayList<String>();
+			List<String> resultInvoiceIds = UtilGenerics.checkList(result.get("invoicesCreated"));
+			if (resultInvoiceIds != null) {
+				for (String invoiceId : resultInvoiceIds) {
+					// an order with nothing left to bill has no invoice
+					if (invoiceId != null && !unitInvoiceIds.contains(invoiceId)) {
+						unitInvoiceIds.add(invoiceId);
+					}
+				}
+			}
+			if (readyInvoices && !unitInvoiceIds.isEmpty()) {
+				Map<String, Object> readyResult = dispatcher.runSync("readyInvoices", UtilMisc.<String, Object>toMap("invoicesCreated", unitInvoiceIds,
+						"userLogin", userLogin), 0, true);
+				if (ServiceUtil.isError(readyResult)) {
+					Debug.logError("Could not set to ready the invoices " + unitInvoiceIds + " of shipments " + shipmentIds + ": " + ServiceUtil.getErrorMessage(readyResult), module);
+				}
+			}
+			synchronized (this) {
+				invoicesCreated.addAll(unitInvoiceIds);
+			}
+		} catch (GenericServiceException e) {
+			unitFailed(shipmentIds, e.getMessage(), e);
+		}
+	}
+
+	private synchronized void unitFailed(List<String> shipmentIds, String message, Throwable t) {
+		failedUnitCount++;
+		Debug.logError(t, "Could not create the invoices of shipments " + shipmentIds + ": " + message, module);
+	}
+
+	private static ScheduledExecutorService getExecutor() {
+		return ExecutorHolder.executor;
+	}
+
+	private static final class ExecutorHolder {
+		private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(BULK_INVOICE_THREAD_GROUP, "bulk-invoice",
+				Math.max(1, UtilProperties.getPropertyAsInteger(resource, "invoice.bulk.threads", 8)), 60, false);
+	}
+
+	/** Groups the nodes linked to each other, as a union-find of their names */
+	private static final class Grouping {
+		private final Map<String, String> parents = new HashMap<String, String>();
+
+		private void add(String node) {
+			if (!parents.containsKey(node)) {
+				parents.put(node, node);
+			}
+		}
+
+		private String find(String node) {
+			add(node);
+			String root = node;
+			while (!root.equals(parents.get(root))) {
+				root = parents.get(root);
+			}
+			// compress the path to the root
+			while (!node.equals(root)) {
+				String parent = parents.get(node);
+				parents.put(node, root);
+				node = parent;
+			}
+			return root;
+		}
+
+		private void join(String node1, String node2) {
+			String root1 = find(node1);
+			String root2 = find(node2);
+			if (!root1.equals(root2)) {
+				parents.put(root2, root1);
+			}
+		}
+	}
+}
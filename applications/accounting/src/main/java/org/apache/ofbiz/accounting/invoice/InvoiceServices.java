@@ -98,6 +98,7 @@ public class InvoiceServices {
 	private static final int TAX_DECIMALS = UtilNumber.getBigDecimalScale("salestax.calc.decimals");
 	private static final int TAX_ROUNDING = UtilNumber.getBigDecimalRoundingMode("salestax.rounding");
 	private static final int INVOICE_ITEM_SEQUENCE_ID_DIGITS = 5; // this is the number of digits used for invoiceItemSeqId: 00001, 00002...
+	private static final int IN_QUERY_CHUNK_SIZE = 500;
 	public static String module = InvoiceServices.class.getName();
 
 	// service to create an invoice for a complete order by the system userid
@@ -346,6 +347,28 @@ public class InvoiceServices {
 				}
 			}
 
+			// read the items of the order, their products and their VAT adjustments at once, instead of for each bill item
+			Map<String, GenericValue> orderItemsBySeqId = new HashMap<String, GenericValue>();
+			Set<String> productIds = new HashSet<String>();
+			for (GenericValue orderItemValue : EntityQuery.use(delegator).from("OrderItem").where("orderId", orderId).queryList()) {
+				orderItemsBySeqId.put(orderItemValue.getString("orderItemSeqId"), orderItemValue);
+				if (orderItemValue.get("productId") != null) {
+					productIds.add(orderItemValue.getString("productId"));
+				}
+			}
+			Map<String, GenericValue> productsById = new HashMap<String, GenericValue>();
+			if (!productIds.isEmpty()) {
+				for (GenericValue productValue : EntityQuery.use(delegator).from("Product").where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds)).queryList()) {
+					productsById.put(productValue.getString("productId"), productValue);
+				}
+			}
+			Map<String, GenericValue> vatAdjustmentsBySeqId = new HashMap<String, GenericValue>();
+			for (GenericValue vatAdjustment : EntityQuery.use(delegator).from("OrderAdjustment").where("orderId", orderId, "orderAdjustmentTypeId", "VAT_TAX").queryList()) {
+				if (!vatAdjustmentsBySeqId.containsKey(vatAdjustment.getString("orderItemSeqId"))) {
+					vatAdjustmentsBySeqId.put(vatAdjustment.getString("orderItemSeqId"), vatAdjustment);
+				}
+			}
+
 			// sequence for items - all OrderItems or InventoryReservations + all Adjustments
 			int invoiceItemSeqNum = 1;
 			String invoiceItemSeqId = UtilFormatOut.formatPaddedNumber(invoiceItemSeqNum, INVOICE_ITEM_SEQUENCE_ID_DIGITS);
@@ -366,9 +389,9 @@ public class InvoiceServices {
 				}
 
 				if (orderItem == null && itemIssuance != null) {
-					orderItem = itemIssuance.getRelatedOne("OrderItem", false);
+					orderItem = getOrderItem(orderItemsBySeqId, itemIssuance);
 				} else if ((orderItem == null) && (shipmentReceipt != null)) {
-					orderItem = shipmentReceipt.getRelatedOne("OrderItem", false);
+					orderItem = getOrderItem(orderItemsBySeqId, shipmentReceipt);
 				} else if ((orderItem == null) && (itemIssuance == null) && (shipmentReceipt == null)) {
 					Debug.logError("Cannot create invoice when orderItem, itemIssuance, and shipmentReceipt are all null", module);
 					return ServiceUtil.returnError(UtilProperties.getMessage(resource,
@@ -376,7 +399,10 @@ public class InvoiceServices {
 				}
 				GenericValue product = null;
 				if (orderItem.get("productId") != null) {
-					product = orderItem.getRelatedOne("Product", false);
+					product = productsById.get(orderItem.getString("productId"));
+					if (product == null) {
+						product = orderItem.getRelatedOne("Product", false);
+					}
 				}
 
 				// get some quantities
@@ -407,7 +433,8 @@ public class InvoiceServices {
 				}
 
 				BigDecimal billingAmount = BigDecimal.ZERO;
-				GenericValue OrderAdjustment = EntityUtil.getFirst(orderItem.getRelated("OrderAdjustment", UtilMisc.toMap("orderAdjustmentTypeId", "VAT_TAX"), null, false));
+				GenericValue OrderAdjustment = orderId.equals(orderItem.getString("orderId")) ? vatAdjustmentsBySeqId.get(orderItem.getString("orderItemSeqId"))
+						: EntityUtil.getFirst(orderItem.getRelated("OrderAdjustment", UtilMisc.toMap("orderAdjustmentTypeId", "VAT_TAX"), null, false));
                 /* Apply formula to get actual product price to set amount in invoice item
                     Formula is: productPrice = (productPriceWithTax.multiply(100)) / (orderAdj sourcePercentage + 100))
                     product price = (43*100) / (20+100) = 35.83 (Here product price is 43 with VAT)
@@ -506,7 +533,7 @@ public class InvoiceServices {
 				invoiceItemSeqId = UtilFormatOut.formatPaddedNumber(invoiceItemSeqNum, INVOICE_ITEM_SEQUENCE_ID_DIGITS);
 
 				// Get the original order item from the DB, in case the quantity has been overridden
-				GenericValue originalOrderItem = EntityQuery.use(delegator).from("OrderItem").where("orderId", orderId, "orderItemSeqId", orderItem.get("orderItemSeqId")).queryOne();
+				GenericValue originalOrderItem = orderItemsBySeqId.get(orderItem.getString("orderItemSeqId"));
 
 				// create the item adjustment as line items
 				List<GenericValue> itemAdjustments = OrderReadHelper.getOrderItemAdjustmentList(orderItem, orh.getAdjustments());
@@ -1384,45 +1411,61 @@ public class InvoiceServices {
 			return ServiceUtil.returnSuccess();
 		}
 
+		// read at once the issuances or receipts already billed, the order items and their billed quantities
+		Set<String> billedItemIds = new HashSet<String>();
+		Map<String, GenericValue> shippedOrderItemMap = new HashMap<String, GenericValue>();
+		Map<String, BigDecimal> billedQuantities = new HashMap<String, BigDecimal>();
+		try {
+			if (!dropShipmentFound) {
+				boolean receipts = "ShipmentReceipt".equals(items.get(0).getEntityName());
+				String billFieldName = receipts ? "shipmentReceiptId" : "itemIssuanceId";
+				List<Object> itemIds = EntityUtil.getFieldListFromEntityList(items, receipts ? "receiptId" : "itemIssuanceId", true);
+				for (GenericValue itemBilling : queryIn(delegator, "OrderItemBillingAndInvoiceAndItem", billFieldName, itemIds,
+						EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "INVOICE_CANCELLED"))) {
+					billedItemIds.add(itemBilling.getString(billFieldName));
+				}
+			}
+			List<Object> shippedOrderIds = EntityUtil.getFieldListFromEntityList(items, "orderId", true);
+			for (GenericValue orderItem : queryIn(delegator, "OrderItem", "orderId", shippedOrderIds, null)) {
+				shippedOrderItemMap.put(orderItem.getString("orderId") + "::" + orderItem.getString("orderItemSeqId"), orderItem);
+			}
+			for (GenericValue itemBilling : queryIn(delegator, "OrderItemBillingAndInvoiceAndItem", "orderId", shippedOrderIds,
+					EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "INVOICE_CANCELLED"))) {
+				String itemKey = itemBilling.getString("orderId") + "::" + itemBilling.getString("orderItemSeqId");
+				BigDecimal billedQuantity = billedQuantities.containsKey(itemKey) ? billedQuantities.get(itemKey) : ZERO;
+				if (itemBilling.get("quantity") != null) {
+					billedQuantity = billedQuantity.add(itemBilling.getBigDecimal("quantity")).setScale(DECIMALS, ROUNDING);
+				}
+				billedQuantities.put(itemKey, billedQuantity);
+			}
+		} catch (GenericEntityException e) {
+			Debug.logError(e, "Problem looking up OrderItemBilling records of the shipped items", module);
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource,
+					"AccountingProblemGettingOrderItemOrderItemBilling",
+					UtilMisc.toMap("lookup", shipmentIds), locale));
+		}
+
 		// group items by order
 		Map<String, List<GenericValue>> shippedOrderItems = new HashMap<String, List<GenericValue>>();
 		for (GenericValue item : items) {
 			String orderId = item.getString("orderId");
-			String orderItemSeqId = item.getString("orderItemSeqId");
 			List<GenericValue> itemsByOrder = shippedOrderItems.get(orderId);
 			if (itemsByOrder == null) {
 				itemsByOrder = new LinkedList<GenericValue>();
 			}
 
 			// check and make sure we haven't already billed for this issuance or shipment receipt
-			List<EntityCondition> billFields = new LinkedList<EntityCondition>();
-			billFields.add(EntityCondition.makeCondition("orderId", orderId));
-			billFields.add(EntityCondition.makeCondition("orderItemSeqId", orderItemSeqId));
-			billFields.add(EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "INVOICE_CANCELLED"));
-
 			if (dropShipmentFound) {
 
 				// Drop shipments have neither issuances nor receipts, so this check is meaningless
 				itemsByOrder.add(item);
 				shippedOrderItems.put(orderId, itemsByOrder);
 				continue;
-			} else if (item.getEntityName().equals("ItemIssuance")) {
-				billFields.add(EntityCondition.makeCondition("itemIssuanceId", item.get("itemIssuanceId")));
-			} else if (item.getEntityName().equals("ShipmentReceipt")) {
-				billFields.add(EntityCondition.makeCondition("shipmentReceiptId", item.getString("receiptId")));
-			}
-			List<GenericValue> itemBillings = null;
-			try {
-				itemBillings = EntityQuery.use(delegator).from("OrderItemBillingAndInvoiceAndItem").where(billFields).queryList();
-			} catch (GenericEntityException e) {
-				Debug.logError(e, "Problem looking up OrderItemBilling records for " + billFields, module);
-				return ServiceUtil.returnError(UtilProperties.getMessage(resource,
-						"AccountingProblemLookingUpOrderItemBilling",
-						UtilMisc.toMap("billFields", billFields), locale));
 			}
+			String itemId = item.getEntityName().equals("ShipmentReceipt") ? item.getString("receiptId") : item.getString("itemIssuanceId");
 
 			// if none found, then okay to bill
-			if (itemBillings.size() == 0) {
+			if (!billedItemIds.contains(itemId)) {
 				itemsByOrder.add(item);
 			}
 
@@ -1455,15 +1498,14 @@ public class InvoiceServices {
 
 				BigDecimal billAvail = itemQtyAvail.get(issue.getString("orderItemSeqId"));
 				if (billAvail == null) {
-					List<EntityCondition> lookup = new LinkedList<EntityCondition>();
-					lookup.add(EntityCondition.makeCondition("orderId", orderId));
-					lookup.add(EntityCondition.makeCondition("orderItemSeqId", issue.get("orderItemSeqId")));
-					lookup.add(EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "INVOICE_CANCELLED"));
+					String itemKey = orderId + "::" + issue.getString("orderItemSeqId");
 					GenericValue orderItem = null;
-					List<GenericValue> billed = null;
 					BigDecimal orderedQty = null;
 					try {
-						orderItem = issue.getEntityName().equals("OrderItem") ? issue : issue.getRelatedOne("OrderItem", false);
+						orderItem = issue.getEntityName().equals("OrderItem") ? issue : shippedOrderItemMap.get(itemKey);
+						if (orderItem == null) {
+							orderItem = issue.getRelatedOne("OrderItem", false);
+						}
 
 						// total ordered
 						orderedQty = orderItem.getBigDecimal("quantity");
@@ -1476,24 +1518,16 @@ public class InvoiceServices {
 							orderItem.set("quantity", purchaseOrderItem.getBigDecimal("quantity"));
 							issueQty = purchaseOrderItem.getBigDecimal("quantity");
 						}
-						billed = EntityQuery.use(delegator).from("OrderItemBillingAndInvoiceAndItem").where(lookup).queryList();
 					} catch (GenericEntityException e) {
-						Debug.logError(e, "Problem getting OrderItem/OrderItemBilling records " + lookup, module);
+						Debug.logError(e, "Problem getting OrderItem record " + itemKey, module);
 						return ServiceUtil.returnError(UtilProperties.getMessage(resource,
 								"AccountingProblemGettingOrderItemOrderItemBilling",
-								UtilMisc.toMap("lookup", lookup), locale));
+								UtilMisc.toMap("lookup", itemKey), locale));
 					}
 
-
 					// add up the already billed total
-					if (billed.size() > 0) {
-						BigDecimal billedQuantity = ZERO;
-						for (GenericValue oib : billed) {
-							BigDecimal qty = oib.getBigDecimal("quantity");
-							if (qty != null) {
-								billedQuantity = billedQuantity.add(qty).setScale(DECIMALS, ROUNDING);
-							}
-						}
+					if (billedQuantities.containsKey(itemKey)) {
+						BigDecimal billedQuantity = billedQuantities.get(itemKey);
 						BigDecimal leftToBill = orderedQty.subtract(billedQuantity).setScale(DECIMALS, ROUNDING);
 						billAvail = leftToBill;
 					} else {
@@ -1794,6 +1828,73 @@ public class InvoiceServices {
 		return response;
 	}
 
+	/**
+	 * Creates the invoices of many shipments at once with {@link BulkInvoiceRunner}: the shipments given, or else the
+	 * shipments of a type and status, optionally created in a date range.
+	 */
+	public static Map<String, Object> createInvoicesInBulk(DispatchContext dctx, Map<String, ? extends Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		LocalDispatcher dispatcher = dctx.getDispatcher();
+		Locale locale = (Locale) context.get("locale");
+		List<String> shipmentIds = UtilGenerics.checkList(context.get("shipmentIds"));
+		Long concurrency = (Long) context.get("concurrency");
+
+		try {
+			if (shipmentIds == null) {
+				String shipmentTypeId = (String) context.get("shipmentTypeId");
+				String statusId = (String) context.get("statusId");
+				List<EntityCondition> conditions = new LinkedList<EntityCondition>();
+				conditions.add(EntityCondition.makeCondition("shipmentTypeId", UtilValidate.isEmpty(shipmentTypeId) ? "SALES_SHIPMENT" : shipmentTypeId));
+				conditions.add(EntityCondition.makeCondition("statusId", UtilValidate.isEmpty(statusId) ? "SHIPMENT_SHIPPED" : statusId));
+				if (context.get("fromDate") != null) {
+					conditions.add(EntityCondition.makeCondition("createdDate", EntityOperator.GREATER_THAN_EQUAL_TO, context.get("fromDate")));
+				}
+				if (context.get("thruDate") != null) {
+					conditions.add(EntityCondition.makeCondition("createdDate", EntityOperator.LESS_THAN, context.get("thruDate")));
+				}
+				shipmentIds = EntityUtil.getFieldListFromEntityList(EntityQuery.use(delegator).select("shipmentId").from("Shipment").where(conditions)
+						.orderBy("shipmentId").queryList(), "shipmentId", false);
+			}
+			BulkInvoiceRunner runner = new BulkInvoiceRunner(dispatcher, (GenericValue) context.get("userLogin"), (Timestamp) context.get("eventDate"),
+					Boolean.TRUE.equals(context.get("createSalesInvoicesForDropShipments")), Boolean.TRUE.equals(context.get("readyInvoices")));
+			return runner.run(shipmentIds, concurrency == null ? 0 : concurrency.intValue());
+		} catch (GenericEntityException e) {
+			Debug.logError(e, "Trouble creating the invoices of shipments in bulk", module);
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource,
+					"AccountingTroubleCallingCreateInvoicesFromShipmentsService", locale));
+		} catch (InterruptedException e) {
+			Debug.logError(e, "Bulk invoicing of shipments interrupted", module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the values of an entity with a field in a list of values, read in chunks of <code>IN_QUERY_CHUNK_SIZE</code>
+	 * values so that the query stays in the limits of the databases.
+	 */
+	private static List<GenericValue> queryIn(Delegator delegator, String entityName, String fieldName, List<?> values, EntityCondition condition) throws GenericEntityException {
+		List<GenericValue> result = new LinkedList<GenericValue>();
+		for (int start = 0; start < values.size(); start += IN_QUERY_CHUNK_SIZE) {
+			List<?> chunk = values.subList(start, Math.min(values.size(), start + IN_QUERY_CHUNK_SIZE));
+			EntityCondition inCondition = EntityCondition.makeCondition(fieldName, EntityOperator.IN, chunk);
+			result.addAll(EntityQuery.use(delegator).from(entityName)
+					.where(condition == null ? inCondition : EntityCondition.makeCondition(inCondition, EntityOperator.AND, condition)).queryList());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the order item of an item issuance or a shipment receipt from the items read for the order, or else from
+	 * the database.
+	 */
+	private static GenericValue getOrderItem(Map<String, GenericValue> orderItemsBySeqId, GenericValue billItem) throws GenericEntityException {
+		GenericValue orderItem = orderItemsBySeqId.get(billItem.getString("orderItemSeqId"));
+		if (orderItem == null || !orderItem.getString("orderId").equals(billItem.getString("orderId"))) {
+			orderItem = billItem.getRelatedOne("OrderItem", false);
+		}
+		return orderItem;
+	}
+
 	private static String getInvoiceItemType(Delegator delegator, String key1, String key2, String invoiceTypeId, String defaultValue) {
 		GenericValue itemMap = null;
 		try {
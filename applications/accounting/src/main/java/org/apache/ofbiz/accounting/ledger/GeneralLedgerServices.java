@@ -22,14 +22,24 @@ import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class GeneralLedgerServices {
 
@@ -78,4 +88,51 @@ public class GeneralLedgerServices {
 		}
 		return totalAmountPercentage;
 	}
+
+	public static Map<String, Object> updateGlAccountBalanceSnapshots(DispatchContext dctx, Map<String, ? extends Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		String acctgTransId = (String) context.get("acctgTransId");
+		try {
+			GlBalanceSnapshotWorker.addPostedTransaction(delegator, acctgTransId);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+		return ServiceUtil.returnSuccess();
+	}
+
+	public static Map<String, Object> rebuildGlAccountBalanceSnapshots(DispatchContext dctx, Map<String, ? extends Object> context) {
+		final Delegator delegator = dctx.getDelegator();
+		String organizationPartyId = (String) context.get("organizationPartyId");
+		int timeout = EntityUtilProperties.getPropertyAsInteger("accounting", "ledger.balance.snapshot.rebuild.timeout", 7200, delegator);
+		int snapshotCount = 0;
+		try {
+			List<String> organizationPartyIds;
+			if (UtilValidate.isNotEmpty(organizationPartyId)) {
+				organizationPartyIds = UtilMisc.toList(organizationPartyId);
+			} else {
+				organizationPartyIds = EntityUtil.getFieldListFromEntityList(EntityQuery.use(delegator).select("organizationPartyId").from("AcctgTransEntry")
+						.where(EntityCondition.makeCondition("organizationPartyId", EntityOperator.NOT_EQUAL, null)).distinct().queryList(), "organizationPartyId", true);
+			}
+			// an organization at a time, each in its own transaction
+			for (final String rebuiltPartyId : organizationPartyIds) {
+				long startTime = System.currentTimeMillis();
+				int count = TransactionUtil.doNewTransaction(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return GlBalanceSnapshotWorker.rebuild(delegator, rebuiltPartyId);
+					}
+				}, "Could not rebuild the GL account balance snapshots of the organization " + rebuiltPartyId, timeout, true);
+				Debug.logInfo("Rebuilt " + count + " GL account balance snapshots of the organization " + rebuiltPartyId + " in "
+						+ (System.currentTimeMillis() - startTime) + " ms", module);
+				snapshotCount += count;
+			}
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+		Map<String, Object> result = ServiceUtil.returnSuccess();
+		result.put("snapshotCount", snapshotCount);
+		return result;
+	}
 }
@@ -0,0 +1,416 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.ledger;
+
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericDataSourceException;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.jdbc.SQLProcessor;
+import org.apache.ofbiz.entity.model.DynamicViewEntity;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelKeyMap;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads and maintains the GL account balance snapshots: the totals of the posted entries of an organization, GL account
+ * and fiscal type, for each day with posted transactions.
+ * <p>The totals before a date are the sums of the snapshots before its day, plus the entries of its day up to the
+ * date, so that the financial reports read a record by account and day and at most a day of entries, instead of all
+ * the entries of their period.</p>
+ * <p>The snapshots are updated when a transaction is posted (see the postAcctgTrans ECAs): the amounts of the transaction
+ * are added to the snapshots of its day by an UPDATE incrementing the columns, so that the concurrent postings of an
+ * account don't lose each other's amounts, and a transaction posted with an earlier date doesn't change the snapshots of
+ * the later days.</p>
+ * <p>The snapshots are used for an organization once they have been built by the rebuildGlAccountBalanceSnapshots
+ * service, which records it in the <code>accounting/ledger.balance.snapshot.built.[organizationPartyId]</code> system
+ * property; until then the reports read the entries.</p>
+ */
+public final class GlBalanceSnapshotWorker {
+
+	public static final String module = GlBalanceSnapshotWorker.class.getName();
+	public static final String resource = "accounting";
+	public static final String BUILT_PROPERTY_PREFIX = "ledger.balance.snapshot.built.";
+	private static final String[] AMOUNT_FIELDS = {"postedDebits", "postedCredits", "closingDebits", "closingCredits"};
+	private static final int KEY_CHUNK_SIZE = 200;
+
+	private GlBalanceSnapshotWorker() {
+	}
+
+	/**
+	 * Returns the day of the snapshot holding the totals of a transaction date.
+	 */
+	public static Date getSnapshotDate(Timestamp transactionDate) {
+		return Date.valueOf(transactionDate.toLocalDateTime().toLocalDate());
+	}
+
+	/**
+	 * Returns <code>true</code> when the snapshots of all the organizations have been built.
+	 */
+	public static boolean isBuilt(Delegator delegator, Collection<String> organizationPartyIds) throws GenericEntityException {
+		for (String organizationPartyId : organizationPartyIds) {
+			GenericValue built = EntityQuery.use(delegator).from("SystemProperty")
+					.where("systemResourceId", resource, "systemPropertyId", BUILT_PROPERTY_PREFIX + organizationPartyId).cache().queryOne();
+			if (built == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the entries of a posted transaction to the snapshots of its day.
+	 */
+	public static void addPostedTransaction(Delegator delegator, String acctgTransId) throws GenericEntityException {
+		GenericValue acctgTrans = EntityQuery.use(delegator).from("AcctgTrans").where("acctgTransId", acctgTransId).queryOne();
+		if (acctgTrans == null || !"Y".equals(acctgTrans.getString("isPosted")) || acctgTrans.get("glFiscalTypeId") == null
+				|| acctgTrans.get("transactionDate") == null) {
+			return;
+		}
+		// summed by organization and GL account, updated in the same order by all the postings, so that they don't deadlock
+		Map<String, BigDecimal[]> amountsByAccount = new TreeMap<String, BigDecimal[]>();
+		Map<String, GenericValue> entriesByAccount = new HashMap<String, GenericValue>();
+		for (GenericValue entry : EntityQuery.use(delegator).from("AcctgTransEntry").where("acctgTransId", acctgTransId).queryList()) {
+			if (entry.get("organizationPartyId") == null || entry.get("glAccountId") == null || entry.get("amount") == null) {
+				continue;
+			}
+			String accountKey = entry.getString("organizationPartyId") + "::" + entry.getString("glAccountId");
+			BigDecimal[] amounts = amountsByAccount.get(accountKey);
+			if (amounts == null) {
+				amounts = new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO};
+				amountsByAccount.put(accountKey, amounts);
+				entriesByAccount.put(accountKey, entry);
+			}
+			int index = "D".equals(entry.getString("debitCreditFlag")) ? 0 : 1;
+			amounts[index] = amounts[index].add(entry.getBigDecimal("amount"));
+		}
+
+		Date snapshotDate = getSnapshotDate(acctgTrans.getTimestamp("transactionDate"));
+		boolean closing = "PERIOD_CLOSING".equals(acctgTrans.getString("acctgTransTypeId"));
+		for (Map.Entry<String, BigDecimal[]> accountAmounts : amountsByAccount.entrySet()) {
+			GenericValue entry = entriesByAccount.get(accountAmounts.getKey());
+			Map<String, Object> snapshotKey = UtilMisc.<String, Object>toMap("organizationPartyId", entry.getString("organizationPartyId"),
+					"glAccountId", entry.getString("glAccountId"), "glFiscalTypeId", acctgTrans.getString("glFiscalTypeId"), "snapshotDate", snapshotDate);
+			if (EntityQuery.use(delegator).from("GlAccountBalanceSnapshot").where(snapshotKey).queryOne() == null) {
+				createSnapshot(delegator, snapshotKey);
+			}
+			if (incrementSnapshot(delegator, snapshotKey, accountAmounts.getValue(), closing) == 0) {
+				throw new GenericEntityException("Could not find the GL account balance snapshot " + snapshotKey);
+			}
+		}
+	}
+
+	private static GenericValue makeSnapshot(Delegator delegator, Map<String, Object> snapshotKey) {
+		GenericValue snapshot = delegator.makeValue("GlAccountBalanceSnapshot", snapshotKey);
+		for (String fieldName : AMOUNT_FIELDS) {
+			snapshot.set(fieldName, BigDecimal.ZERO);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Creates the empty snapshot of a day in its own transaction, so that the postings of the day waiting for the lock of
+	 * the row don't wait for the end of the posting creating it; the snapshot created by a concurrent posting is kept.
+	 */
+	private static void createSnapshot(final Delegator delegator, final Map<String, Object> snapshotKey) throws GenericEntityException {
+		try {
+			TransactionUtil.doNewTransaction(new Callable<Void>() {
+				@Override
+				public Void call() throws GenericEntityException {
+					makeSnapshot(delegator, snapshotKey).create();
+					return null;
+				}
+			}, "Could not create the GL account balance snapshot " + snapshotKey, 0, false);
+		} catch (GenericEntityException e) {
+			if (EntityQuery.use(delegator).from("GlAccountBalanceSnapshot").where(snapshotKey).queryOne() == null) {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Adds amounts to the columns of a snapshot in the database, as the read and store of the record would lose the
+	 * amounts of a concurrent posting.
+	 *
+	 * @return The number of updated records
+	 */
+	private static int incrementSnapshot(Delegator delegator, Map<String, Object> snapshotKey, BigDecimal[] amounts, boolean closing) throws GenericEntityException {
+		String entityName = "GlAccountBalanceSnapshot";
+		ModelEntity modelEntity = delegator.getModelEntity(entityName);
+		GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName(entityName));
+		StringBuilder sql = new StringBuilder("UPDATE ").append(modelEntity.getTableName(helperInfo.getHelperBaseName())).append(" SET ");
+		for (String fieldName : AMOUNT_FIELDS) {
+			String colName = modelEntity.getField(fieldName).getColName();
+			sql.append(colName).append(" = ").append(colName).append(" + ?, ");
+		}
+		sql.append(modelEntity.getField(ModelEntity.STAMP_FIELD).getColName()).append(" = ?, ")
+				.append(modelEntity.getField(ModelEntity.STAMP_TX_FIELD).getColName()).append(" = ? WHERE ");
+		for (String pkName : modelEntity.getPkFieldNames()) {
+			sql.append(modelEntity.getField(pkName).getColName()).append(" = ? AND ");
+		}
+		sql.setLength(sql.length() - " AND ".length());
+
+		SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo);
+		try {
+			sqlP.prepareStatement(sql.toString());
+			sqlP.setValue(amounts[0]);
+			sqlP.setValue(amounts[1]);
+			sqlP.setValue(closing ? amounts[0] : BigDecimal.ZERO);
+			sqlP.setValue(closing ? amounts[1] : BigDecimal.ZERO);
+			sqlP.setValue(TransactionUtil.getTransactionUniqueNowStamp());
+			sqlP.setValue(TransactionUtil.getTransactionStartStamp());
+			for (String pkName : modelEntity.getPkFieldNames()) {
+				Object value = snapshotKey.get(pkName);
+				if (value instanceof Date) {
+					sqlP.setValue((Date) value);
+				} else {
+					sqlP.setValue((String) value);
+				}
+			}
+			int updated = sqlP.executeUpdate();
+			delegator.clearCacheLine(entityName, snapshotKey);
+			return updated;
+		} catch (SQLException e) {
+			throw new GenericDataSourceException("Could not update the GL account balance snapshot " + snapshotKey, e);
+		} finally {
+			sqlP.close();
+		}
+	}
+
+	private static void addAmounts(GenericValue snapshot, BigDecimal[] amounts, boolean closing) {
+		snapshot.set("postedDebits", snapshot.getBigDecimal("postedDebits").add(amounts[0]));
+		snapshot.set("postedCredits", snapshot.getBigDecimal("postedCredits").add(amounts[1]));
+		if (closing) {
+			snapshot.set("closingDebits", snapshot.getBigDecimal("closingDebits").add(amounts[0]));
+			snapshot.set("closingCredits", snapshot.getBigDecimal("closingCredits").add(amounts[1]));
+		}
+	}
+
+	/**
+	 * Returns the debits and the credits posted before a date, by GL account, from the snapshots before the day of the
+	 * date and the entries of the day.
+	 *
+	 * @param glAccountId    The GL account, or <code>null</code> for all the accounts
+	 * @param glFiscalTypeId The fiscal type, or <code>null</code> for all the types
+	 * @param includeClosing Whether the PERIOD_CLOSING transactions are counted
+	 */
+	public static Map<String, BigDecimal[]> getPostedTotals(Delegator delegator, Collection<String> organizationPartyIds, String glAccountId, String glFiscalTypeId,
+	                                                        Timestamp date, boolean includeClosing) throws GenericEntityException {
+		Date snapshotDate = getSnapshotDate(date);
+		List<EntityCondition> conditions = new ArrayList<EntityCondition>();
+		conditions.add(EntityCondition.makeCondition("organizationPartyId", EntityOperator.IN, organizationPartyIds));
+		if (glAccountId != null) {
+			conditions.add(EntityCondition.makeCondition("glAccountId", glAccountId));
+		}
+		if (glFiscalTypeId != null) {
+			conditions.add(EntityCondition.makeCondition("glFiscalTypeId", glFiscalTypeId));
+		} else {
+			// as the snapshots
+			conditions.add(EntityCondition.makeCondition("glFiscalTypeId", EntityOperator.NOT_EQUAL, null));
+		}
+		Map<String, BigDecimal[]> totals = new TreeMap<String, BigDecimal[]>();
+
+		List<EntityCondition> snapshotConditions = new ArrayList<EntityCondition>(conditions);
+		snapshotConditions.add(EntityCondition.makeCondition("snapshotDate", EntityOperator.LESS_THAN, snapshotDate));
+		for (GenericValue snapshotSum : EntityQuery.use(delegator).select("glAccountId", "postedDebits", "postedCredits", "closingDebits", "closingCredits")
+				.from("GlAccountBalanceSnapshotSums").where(snapshotConditions).queryList()) {
+			BigDecimal debits = snapshotSum.getBigDecimal("postedDebits");
+			BigDecimal credits = snapshotSum.getBigDecimal("postedCredits");
+			if (!includeClosing) {
+				debits = debits.subtract(snapshotSum.getBigDecimal("closingDebits"));
+				credits = credits.subtract(snapshotSum.getBigDecimal("closingCredits"));
+			}
+			addTotals(totals, snapshotSum.getString("glAccountId"), debits, credits);
+		}
+
+		// the entries of the day, up to the date
+		Timestamp dayStart = new Timestamp(snapshotDate.getTime());
+		if (date.after(dayStart)) {
+			List<EntityCondition> entryConditions = new ArrayList<EntityCondition>(conditions);
+			entryConditions.add(EntityCondition.makeCondition("isPosted", "Y"));
+			if (!includeClosing) {
+				entryConditions.add(EntityCondition.makeCondition("acctgTransTypeId", EntityOperator.NOT_EQUAL, "PERIOD_CLOSING"));
+			}
+			entryConditions.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, dayStart));
+			entryConditions.add(EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, date));
+			for (GenericValue entrySum : EntityQuery.use(delegator).select("glAccountId", "debitCreditFlag", "amount").from("AcctgTransEntrySums")
+					.where(entryConditions).queryList()) {
+				BigDecimal amount = entrySum.getBigDecimal("amount");
+				if (amount == null) {
+					continue;
+				}
+				if ("D".equals(entrySum.getString("debitCreditFlag"))) {
+					addTotals(totals, entrySum.getString("glAccountId"), amount, BigDecimal.ZERO);
+				} else {
+					addTotals(totals, entrySum.getString("glAccountId"), BigDecimal.ZERO, amount);
+				}
+			}
+		}
+		return totals;
+	}
+
+	private static void addTotals(Map<String, BigDecimal[]> totals, String glAccountId, BigDecimal debits, BigDecimal credits) {
+		BigDecimal[] accountTotals = totals.get(glAccountId);
+		if (accountTotals == null) {
+			totals.put(glAccountId, new BigDecimal[] {debits, credits});
+		} else {
+			accountTotals[0] = accountTotals[0].add(debits);
+			accountTotals[1] = accountTotals[1].add(credits);
+		}
+	}
+
+	/**
+	 * Returns the sums of the posted entries of a period, by GL account and debit/credit flag, as the AcctgTransEntrySums
+	 * records (glAccountId, glAccountClassId, accountName, accountCode, debitCreditFlag and amount) in the order of the
+	 * GL accounts. The PERIOD_CLOSING transactions are not counted.
+	 * <p>The sums are taken from the snapshots when they are built for all the organizations, from the entries otherwise.</p>
+	 */
+	public static List<Map<String, Object>> getTransactionTotals(Delegator delegator, List<String> organizationPartyIds, String glFiscalTypeId,
+	                                                             Timestamp fromDate, Timestamp thruDate) throws GenericEntityException {
+		List<Map<String, Object>> transactionTotals = new ArrayList<Map<String, Object>>();
+		if (!isBuilt(delegator, organizationPartyIds)) {
+			transactionTotals.addAll(EntityQuery.use(delegator).select("glAccountId", "glAccountClassId", "accountName", "accountCode", "debitCreditFlag", "amount")
+					.from("AcctgTransEntrySums").where(EntityCondition.makeCondition("organizationPartyId", EntityOperator.IN, organizationPartyIds),
+							EntityCondition.makeCondition("isPosted", "Y"),
+							EntityCondition.makeCondition("glFiscalTypeId", glFiscalTypeId),
+							EntityCondition.makeCondition("acctgTransTypeId", EntityOperator.NOT_EQUAL, "PERIOD_CLOSING"),
+							EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate),
+							EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, thruDate))
+					.orderBy("glAccountId").queryList());
+			return transactionTotals;
+		}
+
+		Map<String, BigDecimal[]> thruTotals = getPostedTotals(delegator, organizationPartyIds, null, glFiscalTypeId, thruDate, false);
+		Map<String, BigDecimal[]> fromTotals = getPostedTotals(delegator, organizationPartyIds, null, glFiscalTypeId, fromDate, false);
+		Map<String, GenericValue> glAccounts = new HashMap<String, GenericValue>();
+		List<String> glAccountIds = new ArrayList<String>(thruTotals.keySet());
+		for (int start = 0; start < glAccountIds.size(); start += KEY_CHUNK_SIZE) {
+			List<String> chunk = glAccountIds.subList(start, Math.min(glAccountIds.size(), start + KEY_CHUNK_SIZE));
+			for (GenericValue glAccount : EntityQuery.use(delegator).from("GlAccount")
+					.where(EntityCondition.makeCondition("glAccountId", EntityOperator.IN, chunk)).queryList()) {
+				glAccounts.put(glAccount.getString("glAccountId"), glAccount);
+			}
+		}
+		for (Map.Entry<String, BigDecimal[]> accountTotals : thruTotals.entrySet()) {
+			GenericValue glAccount = glAccounts.get(accountTotals.getKey());
+			BigDecimal[] previousTotals = fromTotals.get(accountTotals.getKey());
+			for (int index = 0; index < 2; index++) {
+				BigDecimal amount = accountTotals.getValue()[index];
+				if (previousTotals != null) {
+					amount = amount.subtract(previousTotals[index]);
+				}
+				if (glAccount == null || amount.signum() == 0) {
+					continue;
+				}
+				transactionTotals.add(UtilMisc.<String, Object>toMap("glAccountId", glAccount.getString("glAccountId"),
+						"glAccountClassId", glAccount.getString("glAccountClassId"), "accountName", glAccount.getString("accountName"),
+						"accountCode", glAccount.getString("accountCode"), "debitCreditFlag", index == 0 ? "D" : "C", "amount", amount));
+			}
+		}
+		return transactionTotals;
+	}
+
+	/**
+	 * Builds again the snapshots of an organization from its posted entries, and records that they are built.
+	 *
+	 * @return The number of snapshots
+	 */
+	public static int rebuild(Delegator delegator, String organizationPartyId) throws GenericEntityException {
+		delegator.removeByAnd("GlAccountBalanceSnapshot", UtilMisc.toMap("organizationPartyId", organizationPartyId));
+
+		// the entries summed by transaction date
+		DynamicViewEntity entrySumsView = new DynamicViewEntity();
+		entrySumsView.addMemberEntity("ATE", "AcctgTransEntry");
+		entrySumsView.addMemberEntity("ATR", "AcctgTrans");
+		entrySumsView.addAlias("ATE", "organizationPartyId", null, null, null, Boolean.FALSE, null);
+		entrySumsView.addAlias("ATE", "glAccountId", null, null, null, Boolean.TRUE, null);
+		entrySumsView.addAlias("ATE", "debitCreditFlag", null, null, null, Boolean.TRUE, null);
+		entrySumsView.addAlias("ATE", "amount", null, null, null, null, "sum");
+		entrySumsView.addAlias("ATR", "glFiscalTypeId", null, null, null, Boolean.TRUE, null);
+		entrySumsView.addAlias("ATR", "acctgTransTypeId", null, null, null, Boolean.TRUE, null);
+		entrySumsView.addAlias("ATR", "transactionDate", null, null, null, Boolean.TRUE, null);
+		entrySumsView.addAlias("ATR", "isPosted", null, null, null, Boolean.FALSE, null);
+		entrySumsView.addViewLink("ATE", "ATR", Boolean.FALSE, ModelKeyMap.makeKeyMapList("acctgTransId"));
+
+		int snapshotCount = 0;
+		GenericValue snapshot = null;
+		EntityListIterator entrySums = EntityQuery.use(delegator)
+				.select("glAccountId", "glFiscalTypeId", "transactionDate", "acctgTransTypeId", "debitCreditFlag", "amount").from(entrySumsView)
+				.where(EntityCondition.makeCondition("organizationPartyId", organizationPartyId), EntityCondition.makeCondition("isPosted", "Y"),
+						EntityCondition.makeCondition("glAccountId", EntityOperator.NOT_EQUAL, null),
+						EntityCondition.makeCondition("glFiscalTypeId", EntityOperator.NOT_EQUAL, null),
+						EntityCondition.makeCondition("transactionDate", EntityOperator.NOT_EQUAL, null))
+				.orderBy("glAccountId", "glFiscalTypeId", "transactionDate").queryIterator();
+		try {
+			GenericValue entrySum;
+			while ((entrySum = entrySums.next()) != null) {
+				BigDecimal amount = entrySum.getBigDecimal("amount");
+				if (amount == null) {
+					continue;
+				}
+				Date snapshotDate = getSnapshotDate(entrySum.getTimestamp("transactionDate"));
+				boolean sameAccount = snapshot != null && snapshot.getString("glAccountId").equals(entrySum.getString("glAccountId"))
+						&& snapshot.getString("glFiscalTypeId").equals(entrySum.getString("glFiscalTypeId"));
+				if (!sameAccount || !snapshotDate.equals(snapshot.getDate("snapshotDate"))) {
+					if (snapshot != null) {
+						snapshot.create();
+						snapshotCount++;
+					}
+					snapshot = makeSnapshot(delegator, UtilMisc.<String, Object>toMap("organizationPartyId", organizationPartyId,
+							"glAccountId", entrySum.getString("glAccountId"), "glFiscalTypeId", entrySum.getString("glFiscalTypeId"),
+							"snapshotDate", snapshotDate));
+				}
+				BigDecimal[] amounts = "D".equals(entrySum.getString("debitCreditFlag")) ? new BigDecimal[] {amount, BigDecimal.ZERO}
+						: new BigDecimal[] {BigDecimal.ZERO, amount};
+				addAmounts(snapshot, amounts, "PERIOD_CLOSING".equals(entrySum.getString("acctgTransTypeId")));
+			}
+			if (snapshot != null) {
+				snapshot.create();
+				snapshotCount++;
+			}
+		} finally {
+			entrySums.close();
+		}
+
+		GenericValue built = delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", resource,
+				"systemPropertyId", BUILT_PROPERTY_PREFIX + organizationPartyId, "systemPropertyValue", UtilDateTime.nowTimestamp().toString(),
+				"description", "Date of the last build of the GL account balance snapshots of the organization " + organizationPartyId));
+		delegator.createOrStore(built);
+		return snapshotCount;
+	}
+}
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.payment;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the gateway calls of a payment batch, such as the capture of invoices or the retry of the failed
+ * authorizations of orders.
+ * <p>The items of the batch are grouped by the gateway config of their payment settings. The items of a gateway are
+ * run by at most <code>payment.batch.concurrency</code> threads at once, starting at most
+ * <code>payment.batch.rate</code> calls by second; both can be set for a gateway with a
+ * <code>.[gateway key]</code> suffix. The gateways are run side by side on a shared pool of
+ * <code>payment.batch.threads</code> threads.</p>
+ * <p>The items are taken in the order of their ids. The progress is checkpointed in the SystemProperty
+ * <code>payment/payment.batch.checkpoint.[batch name]</code>: the id up to which all the items completed. A run
+ * resumed after an interruption starts after it; the items after it are checked again by the processor before their
+ * gateway call, so that they are not captured twice. A failed item holds the checkpoint, to be tried again by the
+ * next run. The checkpoint is removed once all the items of a run completed.</p>
+ */
+public final class PaymentBatchRunner {
+
+	public static final String module = PaymentBatchRunner.class.getName();
+	private static final String resource = "payment";
+	private static final ThreadGroup PAYMENT_BATCH_THREAD_GROUP = new ThreadGroup("PaymentBatchRunner");
+
+	/** The outcome of an item of a batch */
+	public enum Outcome {
+		/** the gateway call(s) of the item succeeded */
+		DONE,
+		/** the gateway call(s) of the item failed, or were declined */
+		FAILED,
+		/** the item had nothing left to do, for example because it was completed by an earlier run */
+		SKIPPED
+	}
+
+	/** Runs the gateway call(s) of an item; called concurrently for the items of the batch */
+	public interface ItemProcessor {
+		Outcome process(String itemId) throws Exception;
+	}
+
+	private final Delegator delegator;
+	private final String batchName;
+	private final Map<String, String> gatewayKeys = new TreeMap<String, String>();
+
+	private List<String> itemIds;
+	private BitSet completed;
+	private int completedSinceCheckpoint;
+	private int checkpointInterval;
+
+	/**
+	 * @param batchName The name of the batch, used for its checkpoint and its log
+	 */
+	public PaymentBatchRunner(Delegator delegator, String batchName) {
+		this.delegator = delegator;
+		this.batchName = batchName;
+	}
+
+	/**
+	 * Adds an item to the batch.
+	 *
+	 * @param gatewayKey The gateway config of the item: a paymentGatewayConfigId, or a payment service name
+	 */
+	public void addItem(String itemId, String gatewayKey) {
+		gatewayKeys.put(itemId, UtilValidate.isEmpty(gatewayKey) ? "_NA_" : gatewayKey);
+	}
+
+	public int getItemCount() {
+		return gatewayKeys.size();
+	}
+
+	/**
+	 * Runs the items of the batch, and returns a service result with the counts of items (<code>processedCount</code>,
+	 * <code>failedCount</code>, <code>skippedCount</code>), the throughput (<code>itemsPerSecond</code>), and the same
+	 * by gateway (<code>gatewayStats</code>).
+	 *
+	 * @param resume <code>true</code> to start after the checkpoint of the last interrupted run, if any
+	 */
+	public Map<String, Object> run(final ItemProcessor processor, boolean resume) throws GenericEntityException, InterruptedException {
+		long start = System.nanoTime();
+		String checkpoint = resume ? getCheckpoint() : null;
+		checkpointInterval = Math.max(1, getIntProperty("payment.batch.checkpoint.interval", null, 20));
+
+		itemIds = new ArrayList<String>();
+		Map<String, GatewayLane> lanes = new TreeMap<String, GatewayLane>();
+		int resumedCount = 0;
+		for (Map.Entry<String, String> entry : gatewayKeys.entrySet()) {
+			if (checkpoint != null && entry.getKey().compareTo(checkpoint) <= 0) {
+				resumedCount++;
+				continue;
+			}
+			GatewayLane lane = lanes.get(entry.getValue());
+			if (lane == null) {
+				lane = new GatewayLane(entry.getValue(), getIntProperty("payment.batch.concurrency", entry.getValue(), 4),
+						getIntProperty("payment.batch.rate", entry.getValue(), 0));
+				lanes.put(entry.getValue(), lane);
+			}
+			lane.positions.add(itemIds.size());
+			itemIds.add(entry.getKey());
+		}
+		completed = new BitSet(itemIds.size());
+		if (checkpoint != null) {
+			Debug.logInfo("Resuming the payment batch " + batchName + " after item [" + checkpoint + "], skipping " + resumedCount + " items", module);
+		}
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (final GatewayLane lane : lanes.values()) {
+			int workerCount = Math.min(Math.max(1, lane.concurrency), lane.positions.size());
+			for (int i = 0; i < workerCount; i++) {
+				futures.add(getExecutor().submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						runLane(lane, processor);
+						return null;
+					}
+				}));
+			}
+		}
+		try {
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Debug.logError(e.getCause(), "Error running the payment batch " + batchName, module);
+				}
+			}
+		} finally {
+			// on interruption, the items in progress complete but no other one starts
+			for (GatewayLane lane : lanes.values()) {
+				lane.positions.clear();
+			}
+			for (Future<Void> future : futures) {
+				future.cancel(false);
+			}
+			saveProgress(resume);
+		}
+
+		return makeResult(lanes, resumedCount, System.nanoTime() - start);
+	}
+
+	private void runLane(GatewayLane lane, ItemProcessor processor) throws InterruptedException {
+		Integer position;
+		while ((position = lane.positions.poll()) != null) {
+			lane.awaitTurn();
+			String itemId = itemIds.get(position);
+			long callStart = System.nanoTime();
+			Outcome outcome;
+			try {
+				outcome = processor.process(itemId);
+			} catch (Exception e) {
+				Debug.logError(e, "Error processing item [" + itemId + "] of the payment batch " + batchName, module);
+				outcome = Outcome.FAILED;
+			}
+			complete(lane, position, outcome == null ? Outcome.FAILED : outcome, System.nanoTime() - callStart);
+		}
+	}
+
+	private synchronized void complete(GatewayLane lane, int position, Outcome outcome, long callNanos) {
+		lane.callNanos += callNanos;
+		if (outcome == Outcome.FAILED) {
+			lane.failedCount++;
+			return;
+		}
+		if (outcome == Outcome.DONE) {
+			lane.processedCount++;
+		} else {
+			lane.skippedCount++;
+		}
+		completed.set(position);
+		if (++completedSinceCheckpoint >= checkpointInterval) {
+			completedSinceCheckpoint = 0;
+			String watermark = getWatermark();
+			if (watermark != null) {
+				saveCheckpoint(watermark);
+			}
+		}
+	}
+
+	/** Returns the id up to which all the items completed, or <code>null</code> */
+	private String getWatermark() {
+		int position = completed.nextClearBit(0) - 1;
+		return position < 0 ? null : itemIds.get(position);
+	}
+
+	private synchronized void saveProgress(boolean resume) {
+		if (completed.cardinality() == itemIds.size()) {
+			saveCheckpoint(null);
+			return;
+		}
+		String watermark = getWatermark();
+		if (watermark != null || !resume) {
+			// without any progress, a resumed run keeps the checkpoint it started from
+			saveCheckpoint(watermark);
+		}
+	}
+
+	private Map<String, Object> makeResult(Map<String, GatewayLane> lanes, int resumedCount, long elapsedNanos) {
+		int processedCount = 0;
+		int failedCount = 0;
+		int skippedCount = resumedCount;
+		Map<String, Object> gatewayStats = new TreeMap<String, Object>();
+		for (GatewayLane lane : lanes.values()) {
+			processedCount += lane.processedCount;
+			failedCount += lane.failedCount;
+			skippedCount += lane.skippedCount;
+			int callCount = lane.processedCount + lane.failedCount + lane.skippedCount;
+			BigDecimal failureRate = callCount == 0 ? BigDecimal.ZERO : new BigDecimal(lane.failedCount).divide(new BigDecimal(callCount), 4, RoundingMode.HALF_UP);
+			long averageCallMillis = callCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(lane.callNanos / callCount);
+			gatewayStats.put(lane.gatewayKey, UtilMisc.<String, Object>toMap("processedCount", lane.processedCount, "failedCount", lane.failedCount,
+					"skippedCount", lane.skippedCount, "failureRate", failureRate, "averageCallMillis", averageCallMillis));
+			Debug.logInfo("Payment batch " + batchName + ", gateway " + lane.gatewayKey + ": " + lane.processedCount + " done, " + lane.failedCount + " failed ("
+					+ failureRate.movePointRight(2).stripTrailingZeros().toPlainString() + "%), " + lane.skippedCount + " skipped, " + averageCallMillis + " ms by item", module);
+		}
+		BigDecimal seconds = new BigDecimal(Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos))).movePointLeft(3);
+		BigDecimal itemsPerSecond = new BigDecimal(processedCount + failedCount).divide(seconds, 2, RoundingMode.HALF_UP);
+		Debug.logInfo("Payment batch " + batchName + ": " + processedCount + " done, " + failedCount + " failed, " + skippedCount + " skipped in "
+				+ seconds.toPlainString() + " s (" + itemsPerSecond.toPlainString() + " items/s)", module);
+
+		Map<String, Object> result = ServiceUtil.returnSuccess();
+		result.put("processedCount", processedCount);
+		result.put("failedCount", failedCount);
+		result.put("skippedCount", skippedCount);
+		result.put("itemsPerSecond", itemsPerSecond);
+		result.put("gatewayStats", gatewayStats);
+		return result;
+	}
+
+	private String getCheckpoint() throws GenericEntityException {
+		GenericValue checkpoint = EntityQuery.use(delegator).from("SystemProperty")
+				.where("systemResourceId", resource, "systemPropertyId", "payment.batch.checkpoint." + batchName).queryOne();
+		return checkpoint == null ? null : checkpoint.getString("systemPropertyValue");
+	}
+
+	private void saveCheckpoint(final String itemId) {
+		try {
+			// saved on its own, as the gateway calls already committed
+			TransactionUtil.doNewTransaction(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					GenericValue checkpoint = delegator.makeValue("SystemProperty");
+					checkpoint.set("systemResourceId", resource);
+					checkpoint.set("systemPropertyId", "payment.batch.checkpoint." + batchName);
+					if (itemId == null) {
+						delegator.removeValue(checkpoint);
+					} else {
+						checkpoint.set("systemPropertyValue", itemId);
+						checkpoint.set("description", "Last item up to which the interrupted payment batch " + batchName + " completed");
+						delegator.createOrStore(checkpoint);
+					}
+					return null;
+				}
+			}, "Could not save the checkpoint of the payment batch " + batchName, 0, true);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+		}
+	}
+
+	private int getIntProperty(String name, String gatewayKey, int defaultValue) {
+		String value = null;
+		if (gatewayKey != null) {
+			value = EntityUtilProperties.getPropertyValue(resource, name + "." + gatewayKey, delegator);
+		}
+		if (UtilValidate.isEmpty(value)) {
+			value = EntityUtilProperties.getPropertyValue(resource, name, delegator);
+		}
+		if (UtilValidate.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			Debug.logWarning("Invalid value [" + value + "] for " + name + ", using " + defaultValue, module);
+			return defaultValue;
+		}
+	}
+
+	private static ScheduledExecutorService getExecutor() {
+		return ExecutorHolder.executor;
+	}
+
+	private static final class ExecutorHolder {
+		private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(PAYMENT_BATCH_THREAD_GROUP, "payment-batch", getThreadCount(), 60, false);
+	}
+
+	private static int getThreadCount() {
+		// the gateway calls mostly wait on the network
+		int threadCount = UtilProperties.getPropertyAsInteger(resource, "payment.batch.threads", 0);
+		return threadCount > 0 ? threadCount : Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/** The items of a gateway, with their concurrency, rate limit and counts */
+	private static final class GatewayLane {
+		private final String gatewayKey;
+		private final Queue<Integer> positions = new ConcurrentLinkedQueue<Integer>();
+		private final int concurrency;
+		private final long intervalNanos;
+		private long nextStart;
+		private int processedCount;
+		private int failedCount;
+		private int skippedCount;
+		private long callNanos;
+
+		private GatewayLane(String gatewayKey, int concurrency, int rate) {
+			this.gatewayKey = gatewayKey;
+			this.concurrency = concurrency;
+			this.intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+			this.nextStart = System.nanoTime();
+		}
+
+		/** Waits for the next call start allowed by the rate limit of the gateway */
+		private void awaitTurn() throws InterruptedException {
+			if (intervalNanos == 0) {
+				return;
+			}
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				long callStart = Math.max(now, nextStart);
+				nextStart = callStart + intervalNanos;
+				wait = callStart - now;
+			}
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+}
@@ -2666,76 +2666,168 @@ public class PaymentGatewayServices {
 
 
 	public static Map<String, Object> retryFailedAuths(DispatchContext dctx, Map<String, ? extends Object> context) {
-		Delegator delegator = dctx.getDelegator();
-		LocalDispatcher dispatcher = dctx.getDispatcher();
-		GenericValue userLogin = (GenericValue) context.get("userLogin");
-
-		try (EntityListIterator eli = EntityQuery.use(delegator).from("OrderPaymentPreference")
-				.where(EntityCondition.makeCondition("statusId", EntityOperator.EQUALS, "PAYMENT_NOT_AUTH"),
-						EntityCondition.makeCondition("processAttempt", EntityOperator.GREATER_THAN, Long.valueOf(0)))
-				.orderBy("orderId").queryIterator()) {
-			List<String> processList = new LinkedList<String>();
-			if (eli != null) {
-				Debug.logInfo("Processing failed order re-auth(s)", module);
-				GenericValue value = null;
-				while (((value = eli.next()) != null)) {
-					String orderId = value.getString("orderId");
-					if (!processList.contains(orderId)) { // just try each order once
-						try {
-							// each re-try is independent of each other; if one fails it should not effect the others
-							dispatcher.runAsync("retryFailedOrderAuth", UtilMisc.<String, Object>toMap("orderId", orderId, "userLogin", userLogin));
-							processList.add(orderId);
-						} catch (GenericServiceException e) {
-							Debug.logError(e, module);
-						}
-					}
-				}
-			}
-		} catch (GenericEntityException e) {
-			Debug.logError(e, module);
-		}
-
-		return ServiceUtil.returnSuccess();
+		return retryFailedAuths(dctx, context, "retryFailedAuths", EntityCondition.makeCondition(
+				EntityCondition.makeCondition("statusId", EntityOperator.EQUALS, "PAYMENT_NOT_AUTH"),
+				EntityCondition.makeCondition("processAttempt", EntityOperator.GREATER_THAN, Long.valueOf(0))));
 	}
 
 	public static Map<String, Object> retryFailedAuthNsfs(DispatchContext dctx, Map<String, ? extends Object> context) {
-		Delegator delegator = dctx.getDelegator();
-		LocalDispatcher dispatcher = dctx.getDispatcher();
-		GenericValue userLogin = (GenericValue) context.get("userLogin");
-
 		// get the date/time for one week before now since we'll only retry once a week for NSFs
 		Calendar calcCal = Calendar.getInstance();
 		calcCal.setTimeInMillis(System.currentTimeMillis());
 		calcCal.add(Calendar.WEEK_OF_YEAR, -1);
 		Timestamp oneWeekAgo = new Timestamp(calcCal.getTimeInMillis());
 
+		return retryFailedAuths(dctx, context, "retryFailedAuthNsfs", EntityCondition.makeCondition(
+				EntityCondition.makeCondition("needsNsfRetry", EntityOperator.EQUALS, "Y"),
+				EntityCondition.makeCondition(ModelEntity.STAMP_FIELD, EntityOperator.LESS_THAN_EQUAL_TO, oneWeekAgo)));
+	}
 
-		try (EntityListIterator eli = EntityQuery.use(delegator).from("OrderPaymentPreference")
-				.where(EntityCondition.makeCondition("needsNsfRetry", EntityOperator.EQUALS, "Y"),
-						EntityCondition.makeCondition(ModelEntity.STAMP_FIELD, EntityOperator.LESS_THAN_EQUAL_TO, oneWeekAgo))
-				.orderBy("orderId").queryIterator()) {
+	/**
+	 * Retries the authorization of the orders of the payment preferences matching a condition, through
+	 * {@link PaymentBatchRunner}: by gateway config, concurrently and with the rate limits of the gateways.
+	 */
+	private static Map<String, Object> retryFailedAuths(DispatchContext dctx, Map<String, ? extends Object> context, String batchName, EntityCondition condition) {
+		Delegator delegator = dctx.getDelegator();
+		final LocalDispatcher dispatcher = dctx.getDispatcher();
+		final GenericValue userLogin = (GenericValue) context.get("userLogin");
+		boolean resume = Boolean.TRUE.equals(context.get("resume"));
+
+		PaymentBatchRunner runner = new PaymentBatchRunner(delegator, batchName);
+		try (EntityListIterator eli = EntityQuery.use(delegator).from("OrderPaymentPreference").where(condition).orderBy("orderId").queryIterator()) {
+			Debug.logInfo("Processing failed order re-auth(s)", module);
+			GenericValue value = null;
+			String lastOrderId = null;
+			while (((value = eli.next()) != null)) {
+				String orderId = value.getString("orderId");
+				if (!orderId.equals(lastOrderId)) { // just try each order once
+					GenericValue orderHeader = EntityQuery.use(delegator).from("OrderHeader").where("orderId", orderId).queryOne();
+					runner.addItem(orderId, orderHeader == null ? null : getGatewayKey(orderHeader, value, AUTH_SERVICE_TYPE));
+					lastOrderId = orderId;
+				}
+			}
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
 
-			List<String> processList = new LinkedList<String>();
-			if (eli != null) {
-				Debug.logInfo("Processing failed order re-auth(s)", module);
-				GenericValue value = null;
-				while (((value = eli.next()) != null)) {
-					String orderId = value.getString("orderId");
-					if (!processList.contains(orderId)) { // just try each order once
-						try {
-							// each re-try is independent of each other; if one fails it should not effect the others
-							dispatcher.runAsync("retryFailedOrderAuth", UtilMisc.<String, Object>toMap("orderId", orderId, "userLogin", userLogin));
-							processList.add(orderId);
-						} catch (GenericServiceException e) {
-							Debug.logError(e, module);
-						}
+		try {
+			return runner.run(new PaymentBatchRunner.ItemProcessor() {
+				public PaymentBatchRunner.Outcome process(String orderId) throws GenericServiceException {
+					// each re-try is independent of each other; if one fails it should not effect the others
+					Map<String, Object> authResult = dispatcher.runSync("retryFailedOrderAuth", UtilMisc.<String, Object>toMap("orderId", orderId, "userLogin", userLogin));
+					if (ServiceUtil.isError(authResult)) {
+						Debug.logError("Could not re-try the failed auth of order [" + orderId + "]: " + ServiceUtil.getErrorMessage(authResult), module);
+						return PaymentBatchRunner.Outcome.FAILED;
+					}
+					String processResult = (String) authResult.get("processResult");
+					if (processResult == null) {
+						// no longer in the created status
+						return PaymentBatchRunner.Outcome.SKIPPED;
+					}
+					return "APPROVED".equals(processResult) ? PaymentBatchRunner.Outcome.DONE : PaymentBatchRunner.Outcome.FAILED;
+				}
+			}, resume);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return ServiceUtil.returnError(e.toString());
+		}
+	}
+
+	/**
+	 * Captures the payments of invoices through {@link PaymentBatchRunner}: by gateway config, concurrently and with
+	 * the rate limits of the gateways. Without invoiceIds, captures the ready sales invoices of the orders with
+	 * authorized payment preferences.
+	 */
+	public static Map<String, Object> capturePaymentsBatch(DispatchContext dctx, Map<String, ? extends Object> context) {
+		final Delegator delegator = dctx.getDelegator();
+		final LocalDispatcher dispatcher = dctx.getDispatcher();
+		final GenericValue userLogin = (GenericValue) context.get("userLogin");
+		boolean resume = Boolean.TRUE.equals(context.get("resume"));
+		List<String> invoiceIds = UtilGenerics.checkList(context.get("invoiceIds"));
+
+		PaymentBatchRunner runner = new PaymentBatchRunner(delegator, "capturePaymentsBatch");
+		try {
+			if (UtilValidate.isEmpty(invoiceIds)) {
+				invoiceIds = getInvoiceIdsToCapture(delegator);
+			}
+			for (String invoiceId : invoiceIds) {
+				String gatewayKey = null;
+				GenericValue orderItemBilling = EntityQuery.use(delegator).from("OrderItemBilling").where("invoiceId", invoiceId).queryFirst();
+				if (orderItemBilling != null) {
+					GenericValue orderHeader = orderItemBilling.getRelatedOne("OrderHeader", false);
+					GenericValue paymentPref = EntityQuery.use(delegator).from("OrderPaymentPreference")
+							.where("orderId", orderItemBilling.get("orderId"), "statusId", "PAYMENT_AUTHORIZED").orderBy("-maxAmount").queryFirst();
+					if (orderHeader != null && paymentPref != null) {
+						gatewayKey = getGatewayKey(orderHeader, paymentPref, CAPTURE_SERVICE_TYPE);
 					}
 				}
+				runner.addItem(invoiceId, gatewayKey);
 			}
 		} catch (GenericEntityException e) {
 			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
 		}
-		return ServiceUtil.returnSuccess();
+
+		try {
+			return runner.run(new PaymentBatchRunner.ItemProcessor() {
+				public PaymentBatchRunner.Outcome process(String invoiceId) throws GeneralException {
+					// checked again here: the invoice may have been captured by an interrupted run
+					GenericValue invoice = EntityQuery.use(delegator).from("Invoice").where("invoiceId", invoiceId).queryOne();
+					if (invoice == null || InvoiceWorker.getInvoiceNotApplied(invoice).signum() <= 0) {
+						return PaymentBatchRunner.Outcome.SKIPPED;
+					}
+					Map<String, Object> captureResult = dispatcher.runSync("capturePaymentsByInvoice", UtilMisc.<String, Object>toMap("invoiceId", invoiceId, "userLogin", userLogin));
+					if (!ServiceUtil.isSuccess(captureResult)) {
+						Debug.logError("Could not capture the payments of invoice [" + invoiceId + "]: " + ServiceUtil.getErrorMessage(captureResult), module);
+						return PaymentBatchRunner.Outcome.FAILED;
+					}
+					return "COMPLETE".equals(captureResult.get("processResult")) ? PaymentBatchRunner.Outcome.DONE : PaymentBatchRunner.Outcome.FAILED;
+				}
+			}, resume);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return ServiceUtil.returnError(e.toString());
+		}
+	}
+
+	private static List<String> getInvoiceIdsToCapture(Delegator delegator) throws GenericEntityException {
+		List<String> orderIds = EntityUtil.getFieldListFromEntityList(EntityQuery.use(delegator).select("orderId").from("OrderPaymentPreference")
+				.where("statusId", "PAYMENT_AUTHORIZED").distinct().queryList(), "orderId", true);
+		Set<String> invoiceIds = new TreeSet<String>();
+		// by chunks, to keep the IN lists short
+		for (int i = 0; i < orderIds.size(); i += 500) {
+			List<String> chunk = orderIds.subList(i, Math.min(i + 500, orderIds.size()));
+			List<String> chunkInvoiceIds = EntityUtil.getFieldListFromEntityList(EntityQuery.use(delegator).select("invoiceId").from("OrderItemBilling")
+					.where(EntityCondition.makeCondition("orderId", EntityOperator.IN, chunk)).distinct().queryList(), "invoiceId", true);
+			if (chunkInvoiceIds.isEmpty()) {
+				continue;
+			}
+			invoiceIds.addAll(EntityUtil.<String>getFieldListFromEntityList(EntityQuery.use(delegator).select("invoiceId").from("Invoice")
+					.where(EntityCondition.makeCondition("invoiceId", EntityOperator.IN, chunkInvoiceIds),
+							EntityCondition.makeCondition("invoiceTypeId", "SALES_INVOICE"),
+							EntityCondition.makeCondition("statusId", "INVOICE_READY")).queryList(), "invoiceId", true));
+		}
+		return new ArrayList<String>(invoiceIds);
+	}
+
+	/**
+	 * Returns the gateway config of a payment preference, to group the gateway calls of a batch: the
+	 * paymentGatewayConfigId of its payment settings, or their payment service.
+	 */
+	private static String getGatewayKey(GenericValue orderHeader, GenericValue paymentPref, String paymentServiceType) {
+		GenericValue paymentSettings = getPaymentSettings(orderHeader, paymentPref, paymentServiceType, false);
+		if (paymentSettings == null) {
+			return null;
+		}
+		String paymentGatewayConfigId = paymentSettings.getString("paymentGatewayConfigId");
+		return UtilValidate.isNotEmpty(paymentGatewayConfigId) ? paymentGatewayConfigId : paymentSettings.getString("paymentService");
 	}
 
 	public static GenericValue getCaptureTransaction(GenericValue orderPaymentPreference) {
@@ -19,7 +19,6 @@
 package org.apache.ofbiz.accounting.tax;
 
 import org.apache.ofbiz.base.util.*;
-import org.apache.ofbiz.common.geo.GeoWorker;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
@@ -90,7 +89,7 @@ public class TaxAuthorityServices {
 					throw new IllegalArgumentException("Could not find any Tax Authories for store with ID [" + productStoreId + "] for tax calculation; the store settings may need to be corrected.");
 				}
 
-				List<GenericValue> taxAdustmentList = getTaxAdjustments(delegator, product, productStore, null, billToPartyId, taxAuthoritySet, basePrice, quantity, amount, shippingPrice, ZERO_BASE);
+				List<GenericValue> taxAdustmentList = getTaxAdjustments(delegator, product, productStore, null, getBillToPartyIdSet(delegator, billToPartyId), taxAuthoritySet, basePrice, quantity, amount, shippingPrice, ZERO_BASE);
 				if (taxAdustmentList.size() == 0) {
 					// this is something that happens every so often for different products and such, so don't blow up on it...
 					Debug.logWarning("Could not find any Tax Authories Rate Rules for store with ID [" + productStoreId + "], productId [" + productId + "], basePrice [" + basePrice + "], amount [" + amount + "], for tax calculation; the store settings may need to be corrected.", module);
@@ -179,8 +178,11 @@ public class TaxAuthorityServices {
 
 		// without knowing the TaxAuthority parties, just find all TaxAuthories for the set of IDs...
 		Set<GenericValue> taxAuthoritySet = new HashSet<GenericValue>();
+		Set<String> billToPartyIdSet = null;
 		try {
-			getTaxAuthorities(delegator, shippingAddress, taxAuthoritySet);
+			taxAuthoritySet.addAll(TaxRateResolver.getTaxAuthorities(delegator, shippingAddress));
+			// the same for all the lines
+			billToPartyIdSet = getBillToPartyIdSet(delegator, billToPartyId);
 		} catch (GenericEntityException e) {
 			Debug.logError(e, "Data error getting tax settings: " + e.toString(), module);
 			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "AccountingTaxSettingError", UtilMisc.toMap("errorString", e.toString()), locale));
@@ -199,17 +201,17 @@ public class TaxAuthorityServices {
 			BigDecimal shippingAmount = itemShippingList != null ? itemShippingList.get(i) : null;
 			List<GenericValue> taxList = null;
 			if (shippingAddress != null) {
-				taxList = getTaxAdjustments(delegator, product, productStore, payToPartyId, billToPartyId, taxAuthoritySet, itemPrice, itemQuantity, itemAmount, shippingAmount, ZERO_BASE);
+				taxList = getTaxAdjustments(delegator, product, productStore, payToPartyId, billToPartyIdSet, taxAuthoritySet, itemPrice, itemQuantity, itemAmount, shippingAmount, ZERO_BASE);
 			}
 			// this is an add and not an addAll because we want a List of Lists of GenericValues, one List of Adjustments per item
 			itemAdjustments.add(taxList);
 		}
 		if (orderShippingAmount != null && orderShippingAmount.compareTo(BigDecimal.ZERO) > 0) {
-			List<GenericValue> taxList = getTaxAdjustments(delegator, null, productStore, payToPartyId, billToPartyId, taxAuthoritySet, ZERO_BASE, ZERO_BASE, ZERO_BASE, orderShippingAmount, ZERO_BASE);
+			List<GenericValue> taxList = getTaxAdjustments(delegator, null, productStore, payToPartyId, billToPartyIdSet, taxAuthoritySet, ZERO_BASE, ZERO_BASE, ZERO_BASE, orderShippingAmount, ZERO_BASE);
 			orderAdjustments.addAll(taxList);
 		}
 		if (orderPromotionsAmount != null && orderPromotionsAmount.compareTo(BigDecimal.ZERO) != 0) {
-			List<GenericValue> taxList = getTaxAdjustments(delegator, null, productStore, payToPartyId, billToPartyId, taxAuthoritySet, ZERO_BASE, ZERO_BASE, ZERO_BASE, ZERO_BASE, orderPromotionsAmount);
+			List<GenericValue> taxList = getTaxAdjustments(delegator, null, productStore, payToPartyId, billToPartyIdSet, taxAuthoritySet, ZERO_BASE, ZERO_BASE, ZERO_BASE, ZERO_BASE, orderPromotionsAmount);
 			orderAdjustments.addAll(taxList);
 		}
 
@@ -220,36 +222,36 @@ public class TaxAuthorityServices {
 		return result;
 	}
 
-	private static void getTaxAuthorities(Delegator delegator, GenericValue shippingAddress, Set<GenericValue> taxAuthoritySet) throws GenericEntityException {
-		Map<String, String> geoIdByTypeMap = new HashMap<String, String>();
-		if (shippingAddress != null) {
-			if (UtilValidate.isNotEmpty(shippingAddress.getString("countryGeoId"))) {
-				geoIdByTypeMap.put("COUNTRY", shippingAddress.getString("countryGeoId"));
-			}
-			if (UtilValidate.isNotEmpty(shippingAddress.getString("stateProvinceGeoId"))) {
-				geoIdByTypeMap.put("STATE", shippingAddress.getString("stateProvinceGeoId"));
-			}
-			if (UtilValidate.isNotEmpty(shippingAddress.getString("countyGeoId"))) {
-				geoIdByTypeMap.put("COUNTY", shippingAddress.getString("countyGeoId"));
-			}
-			String postalCodeGeoId = ContactMechWorker.getPostalAddressPostalCodeGeoId(shippingAddress, delegator);
-			if (UtilValidate.isNotEmpty(postalCodeGeoId)) {
-				geoIdByTypeMap.put("POSTAL_CODE", postalCodeGeoId);
-			}
-		} else {
-			Debug.logWarning("shippingAddress was null, adding nothing to taxAuthoritySet", module);
-		}
-
-		// get the most granular, or all available, geoIds and then find parents by GeoAssoc with geoAssocTypeId="REGIONS" and geoIdTo=<granular geoId> and find the GeoAssoc.geoId
-		geoIdByTypeMap = GeoWorker.expandGeoRegionDeep(geoIdByTypeMap, delegator);
+	/**
+	 * Drops the tax authorities and rate tables held by {@link TaxRateResolver}; called by the tax entity ECAs.
+	 */
+	public static Map<String, Object> clearTaxRateResolver(DispatchContext dctx, Map<String, ? extends Object> context) {
+		TaxRateResolver.clear(dctx.getDelegator());
+		return ServiceUtil.returnSuccess();
+	}
 
-		List<GenericValue> taxAuthorityRawList = EntityQuery.use(delegator)
-				.from("TaxAuthority").where(EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.IN, geoIdByTypeMap.values())).cache().queryList();
-		taxAuthoritySet.addAll(taxAuthorityRawList);
+	/**
+	 * Returns the bill to party and the groups it is a member of, whose tax exemptions are honored, or <code>null</code>
+	 * without bill to party.
+	 */
+	private static Set<String> getBillToPartyIdSet(Delegator delegator, String billToPartyId) throws GenericEntityException {
+		if (UtilValidate.isEmpty(billToPartyId)) {
+			return null;
+		}
+		// look for PartyRelationship with partyRelationshipTypeId=GROUP_ROLLUP, the partyIdTo is the group member, so the partyIdFrom is the groupPartyId
+		Set<String> billToPartyIdSet = new HashSet<String>();
+		billToPartyIdSet.add(billToPartyId);
+		List<GenericValue> partyRelationshipList = EntityQuery.use(delegator).from("PartyRelationship")
+				.where("partyIdTo", billToPartyId, "partyRelationshipTypeId", "GROUP_ROLLUP")
+				.cache().filterByDate().queryList();
+		for (GenericValue partyRelationship : partyRelationshipList) {
+			billToPartyIdSet.add(partyRelationship.getString("partyIdFrom"));
+		}
+		return billToPartyIdSet;
 	}
 
 	private static List<GenericValue> getTaxAdjustments(Delegator delegator, GenericValue product, GenericValue productStore,
-	                                                    String payToPartyId, String billToPartyId, Set<GenericValue> taxAuthoritySet,
+	                                                    String payToPartyId, Set<String> billToPartyIdSet, Set<GenericValue> taxAuthoritySet,
 	                                                    BigDecimal itemPrice, BigDecimal itemQuantity, BigDecimal itemAmount,
 	                                                    BigDecimal shippingAmount, BigDecimal orderPromotionsAmount) {
 		Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
@@ -261,45 +263,17 @@ public class TaxAuthorityServices {
 			}
 		}
 
-		// store expr
-		EntityCondition storeCond = null;
-		if (productStore != null) {
-			storeCond = EntityCondition.makeCondition(
-					EntityCondition.makeCondition("productStoreId", EntityOperator.EQUALS, productStore.get("productStoreId")),
-					EntityOperator.OR,
-					EntityCondition.makeCondition("productStoreId", EntityOperator.EQUALS, null));
-		} else {
-			storeCond = EntityCondition.makeCondition("productStoreId", EntityOperator.EQUALS, null);
-		}
-
-		// build the TaxAuthority expressions (taxAuthGeoId, taxAuthPartyId)
-		List<EntityCondition> taxAuthCondOrList = new LinkedList<EntityCondition>();
-		// start with the _NA_ TaxAuthority...
-		taxAuthCondOrList.add(EntityCondition.makeCondition(
-				EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, "_NA_"),
-				EntityOperator.AND,
-				EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, "_NA_")));
-
-		for (GenericValue taxAuthority : taxAuthoritySet) {
-			EntityCondition taxAuthCond = EntityCondition.makeCondition(
-					EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, taxAuthority.getString("taxAuthPartyId")),
-					EntityOperator.AND,
-					EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, taxAuthority.getString("taxAuthGeoId")));
-			taxAuthCondOrList.add(taxAuthCond);
-		}
-		EntityCondition taxAuthoritiesCond = EntityCondition.makeCondition(taxAuthCondOrList, EntityOperator.OR);
-
 		try {
-			EntityCondition productCategoryCond = null;
+			Set<String> productCategoryIdSet = null;
 			if (product != null) {
-				// find the tax categories associated with the product and filter by those, with an IN clause or some such
+				// find the tax categories associated with the product and filter by those
 				// if this product is variant, find the virtual product id and consider also the categories of the virtual
 				// question: get all categories, or just a special type? for now let's do all categories...
 				String virtualProductId = null;
 				if ("Y".equals(product.getString("isVariant"))) {
 					virtualProductId = ProductWorker.getVariantVirtualId(product);
 				}
-				Set<String> productCategoryIdSet = new HashSet<String>();
+				productCategoryIdSet = new HashSet<String>();
 				EntityCondition productIdCond = null;
 				if (virtualProductId != null) {
 					productIdCond = EntityCondition.makeCondition(
@@ -316,58 +290,14 @@ public class TaxAuthorityServices {
 				for (GenericValue pcm : pcmList) {
 					productCategoryIdSet.add(pcm.getString("productCategoryId"));
 				}
-
-				if (productCategoryIdSet.size() == 0) {
-					productCategoryCond = EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null);
-				} else {
-					productCategoryCond = EntityCondition.makeCondition(
-							EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null),
-							EntityOperator.OR,
-							EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, productCategoryIdSet));
-				}
-			} else {
-				productCategoryCond = EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null);
 			}
 
 			// FIXME handles shipping and promo tax. Simple solution, see https://issues.apache.org/jira/browse/OFBIZ-4160 for a better one
-			if (product == null && shippingAmount != null) {
-				EntityCondition taxShippingCond = EntityCondition.makeCondition(
-						EntityCondition.makeCondition("taxShipping", EntityOperator.EQUALS, null),
-						EntityOperator.OR,
-						EntityCondition.makeCondition("taxShipping", EntityOperator.EQUALS, "Y"));
-
-				if (productCategoryCond != null) {
-					productCategoryCond = EntityCondition.makeCondition(productCategoryCond,
-							EntityOperator.OR,
-							taxShippingCond);
-				}
-			}
-
-			if (product == null && orderPromotionsAmount != null) {
-				EntityCondition taxOrderPromotionsCond = EntityCondition.makeCondition(
-						EntityCondition.makeCondition("taxPromotions", EntityOperator.EQUALS, null),
-						EntityOperator.OR,
-						EntityCondition.makeCondition("taxPromotions", EntityOperator.EQUALS, "Y"));
-
-				if (productCategoryCond != null) {
-					productCategoryCond = EntityCondition.makeCondition(productCategoryCond,
-							EntityOperator.OR,
-							taxOrderPromotionsCond);
-				}
-			}
-
-			// build the main condition clause
-			List<EntityCondition> mainExprs = UtilMisc.toList(storeCond, taxAuthoritiesCond, productCategoryCond);
-			mainExprs.add(EntityCondition.makeCondition(EntityCondition.makeCondition("minItemPrice", EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("minItemPrice", EntityOperator.LESS_THAN_EQUAL_TO, itemPrice)));
-			mainExprs.add(EntityCondition.makeCondition(EntityCondition.makeCondition("minPurchase", EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("minPurchase", EntityOperator.LESS_THAN_EQUAL_TO, itemAmount)));
-			EntityCondition mainCondition = EntityCondition.makeCondition(mainExprs, EntityOperator.AND);
-
-			// finally ready... do the rate query
-			List<GenericValue> lookupList = EntityQuery.use(delegator).from("TaxAuthorityRateProduct")
-					.where(mainCondition).orderBy("minItemPrice", "minPurchase", "fromDate").filterByDate().queryList();
+			List<GenericValue> lookupList = TaxRateResolver.getRates(delegator, taxAuthoritySet, productStore != null ? productStore.getString("productStoreId") : null,
+					productCategoryIdSet, product == null && shippingAmount != null, product == null && orderPromotionsAmount != null, itemPrice, itemAmount, nowTimestamp);
 
 			if (lookupList.size() == 0) {
-				Debug.logWarning("In TaxAuthority Product Rate no records were found for condition:" + mainCondition.toString(), module);
+				Debug.logWarning("In TaxAuthority Product Rate no records were found for product [" + (product != null ? product.getString("productId") : null) + "], tax authorities " + taxAuthoritySet, module);
 				return adjustments;
 			}
 
@@ -399,7 +329,7 @@ public class TaxAuthorityServices {
 
 				// get glAccountId from TaxAuthorityGlAccount entity using the payToPartyId as the organizationPartyId
 				GenericValue taxAuthorityGlAccount = EntityQuery.use(delegator).from("TaxAuthorityGlAccount")
-						.where("taxAuthPartyId", taxAuthPartyId, "taxAuthGeoId", taxAuthGeoId, "organizationPartyId", payToPartyId).queryOne();
+						.where("taxAuthPartyId", taxAuthPartyId, "taxAuthGeoId", taxAuthGeoId, "organizationPartyId", payToPartyId).cache().queryOne();
 				String taxAuthGlAccountId = null;
 				if (taxAuthorityGlAccount != null) {
 					taxAuthGlAccountId = taxAuthorityGlAccount.getString("glAccountId");
@@ -414,7 +344,7 @@ public class TaxAuthorityServices {
 							.where("productId", product.get("productId"),
 									"taxAuthPartyId", taxAuthPartyId, "taxAuthGeoId", taxAuthGeoId,
 									"productPricePurposeId", "PURCHASE")
-							.orderBy("-fromDate").filterByDate().queryFirst();
+							.orderBy("-fromDate").cache().filterByDate().queryFirst();
 
 
 					if (productPrice == null) {
@@ -424,7 +354,7 @@ public class TaxAuthorityServices {
 									.where("productId", virtualProduct.get("productId"),
 											"taxAuthPartyId", taxAuthPartyId, "taxAuthGeoId", taxAuthGeoId,
 											"productPricePurposeId", "PURCHASE")
-									.orderBy("-fromDate").filterByDate().queryFirst();
+									.orderBy("-fromDate").cache().filterByDate().queryFirst();
 						}
 					}
 				}
@@ -466,21 +396,11 @@ public class TaxAuthorityServices {
 				if (taxAuthGeoId != null) taxAdjValue.set("taxAuthGeoId", taxAuthGeoId);
 
 				// check to see if this party has a tax ID for this, and if the party is tax exempt in the primary (most-local) jurisdiction
-				if (UtilValidate.isNotEmpty(billToPartyId) && UtilValidate.isNotEmpty(taxAuthGeoId)) {
-					// see if partyId is a member of any groups, if so honor their tax exemptions
-					// look for PartyRelationship with partyRelationshipTypeId=GROUP_ROLLUP, the partyIdTo is the group member, so the partyIdFrom is the groupPartyId
-					Set<String> billToPartyIdSet = new HashSet<String>();
-					billToPartyIdSet.add(billToPartyId);
-					List<GenericValue> partyRelationshipList = EntityQuery.use(delegator).from("PartyRelationship")
-							.where("partyIdTo", billToPartyId, "partyRelationshipTypeId", "GROUP_ROLLUP")
-							.cache().filterByDate().queryList();
-
-					for (GenericValue partyRelationship : partyRelationshipList) {
-						billToPartyIdSet.add(partyRelationship.getString("partyIdFrom"));
-					}
+				if (billToPartyIdSet != null && UtilValidate.isNotEmpty(taxAuthGeoId)) {
+					// honor the tax exemptions of the party and of the groups it is a member of
 					handlePartyTaxExempt(taxAdjValue, billToPartyIdSet, taxAuthGeoId, taxAuthPartyId, taxAmount, nowTimestamp, delegator);
 				} else {
-					Debug.logInfo("NOTE: A tax calculation was done without a billToPartyId or taxAuthGeoId, so no tax exemptions or tax IDs considered; billToPartyId=[" + billToPartyId + "] taxAuthGeoId=[" + taxAuthGeoId + "]", module);
+					Debug.logInfo("NOTE: A tax calculation was done without a billToPartyId or taxAuthGeoId, so no tax exemptions or tax IDs considered; billToPartyIds=" + billToPartyIdSet + " taxAuthGeoId=[" + taxAuthGeoId + "]", module);
 				}
 				if (discountedSalesTax.compareTo(BigDecimal.ZERO) < 0) {
 					GenericValue taxAdjValueNegative = delegator.makeValue("OrderAdjustment");
@@ -542,15 +462,12 @@ public class TaxAuthorityServices {
 
 	private static void handlePartyTaxExempt(GenericValue adjValue, Set<String> billToPartyIdSet, String taxAuthGeoId, String taxAuthPartyId, BigDecimal taxAmount, Timestamp nowTimestamp, Delegator delegator) throws GenericEntityException {
 		Debug.logInfo("Checking for tax exemption : " + taxAuthGeoId + " / " + taxAuthPartyId, module);
-		List<EntityCondition> ptiConditionList = UtilMisc.<EntityCondition>toList(
+		EntityCondition ptiCondition = EntityCondition.makeCondition(UtilMisc.<EntityCondition>toList(
 				EntityCondition.makeCondition("partyId", EntityOperator.IN, billToPartyIdSet),
 				EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, taxAuthGeoId),
-				EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, taxAuthPartyId));
-		ptiConditionList.add(EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN_EQUAL_TO, nowTimestamp));
-		ptiConditionList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("thruDate", EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("thruDate", EntityOperator.GREATER_THAN, nowTimestamp)));
-		EntityCondition ptiCondition = EntityCondition.makeCondition(ptiConditionList, EntityOperator.AND);
+				EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, taxAuthPartyId)), EntityOperator.AND);
 		// sort by -fromDate to get the newest (largest) first, just in case there is more than one, we only want the most recent valid one, should only be one per jurisdiction...
-		GenericValue partyTaxInfo = EntityQuery.use(delegator).from("PartyTaxAuthInfo").where(ptiCondition).orderBy("-fromDate").queryFirst();
+		GenericValue partyTaxInfo = EntityQuery.use(delegator).from("PartyTaxAuthInfo").where(ptiCondition).orderBy("-fromDate").cache().filterByDate(nowTimestamp).queryFirst();
 
 		boolean foundExemption = false;
 		if (partyTaxInfo != null) {
@@ -567,7 +484,7 @@ public class TaxAuthorityServices {
 			// try the "parent" TaxAuthority
 			GenericValue taxAuthorityAssoc = EntityQuery.use(delegator).from("TaxAuthorityAssoc")
 					.where("toTaxAuthGeoId", taxAuthGeoId, "toTaxAuthPartyId", taxAuthPartyId, "taxAuthorityAssocTypeId", "EXEMPT_INHER")
-					.orderBy("-fromDate").filterByDate().queryFirst();
+					.orderBy("-fromDate").cache().filterByDate().queryFirst();
 			if (taxAuthorityAssoc != null) {
 				handlePartyTaxExempt(adjValue, billToPartyIdSet, taxAuthorityAssoc.getString("taxAuthGeoId"), taxAuthorityAssoc.getString("taxAuthPartyId"), taxAmount, nowTimestamp, delegator);
 			}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.tax;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.common.geo.GeoWorker;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.party.contact.ContactMechWorker;
+
+import javax.transaction.Synchronization;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the tax authorities and the tax rates used by {@link TaxAuthorityServices}, from memory.
+ * <p>The tax authorities of an address are resolved once for each address signature (country, state, county and
+ * postal code) and kept in the <code>accounting.TaxAuthorityResolution</code> cache. The TaxAuthorityRateProduct
+ * records are read once and kept, by tax authority, in the <code>accounting.TaxAuthorityRateTable</code> cache; the
+ * rates of a line are selected from them with the conditions of the former rate query.</p>
+ * <p>Both caches are dropped when the tax authorities, their rates or the geo regions change (see the accounting
+ * entity ECAs).</p>
+ */
+public final class TaxRateResolver {
+
+	public static final String module = TaxRateResolver.class.getName();
+	private static final UtilCache<String, List<GenericValue>> authorityCache = UtilCache.createUtilCache("accounting.TaxAuthorityResolution", 10000, 0);
+	private static final UtilCache<String, Map<String, List<GenericValue>>> rateTableCache = UtilCache.createUtilCache("accounting.TaxAuthorityRateTable", 0, 0);
+
+	/** The order of the former rate query: minItemPrice, minPurchase, fromDate, with the nulls last */
+	private static final Comparator<GenericValue> RATE_ORDER = new Comparator<GenericValue>() {
+		public int compare(GenericValue rate1, GenericValue rate2) {
+			int compare = compareField(rate1, rate2, "minItemPrice");
+			if (compare == 0) {
+				compare = compareField(rate1, rate2, "minPurchase");
+			}
+			if (compare == 0) {
+				compare = compareField(rate1, rate2, "fromDate");
+			}
+			return compare;
+		}
+
+		@SuppressWarnings("unchecked")
+		private int compareField(GenericValue rate1, GenericValue rate2, String fieldName) {
+			Comparable<Object> value1 = (Comparable<Object>) rate1.get(fieldName);
+			Object value2 = rate2.get(fieldName);
+			if (value1 == null || value2 == null) {
+				return value1 == null ? (value2 == null ? 0 : 1) : -1;
+			}
+			return value1.compareTo(value2);
+		}
+	};
+
+	private TaxRateResolver() {
+	}
+
+	/**
+	 * Returns the tax authorities of the geos of an address and of their regions.
+	 */
+	public static List<GenericValue> getTaxAuthorities(Delegator delegator, GenericValue shippingAddress) throws GenericEntityException {
+		String cacheKey = delegator.getDelegatorName() + "::" + shippingAddress.getString("countryGeoId") + "|" + shippingAddress.getString("stateProvinceGeoId")
+				+ "|" + shippingAddress.getString("countyGeoId") + "|" + shippingAddress.getString("postalCodeGeoId") + "|" + shippingAddress.getString("postalCode");
+		List<GenericValue> taxAuthorities = authorityCache.get(cacheKey);
+		if (taxAuthorities == null) {
+			Map<String, String> geoIdByTypeMap = new HashMap<String, String>();
+			if (UtilValidate.isNotEmpty(shippingAddress.getString("countryGeoId"))) {
+				geoIdByTypeMap.put("COUNTRY", shippingAddress.getString("countryGeoId"));
+			}
+			if (UtilValidate.isNotEmpty(shippingAddress.getString("stateProvinceGeoId"))) {
+				geoIdByTypeMap.put("STATE", shippingAddress.getString("stateProvinceGeoId"));
+			}
+			if (UtilValidate.isNotEmpty(shippingAddress.getString("countyGeoId"))) {
+				geoIdByTypeMap.put("COUNTY", shippingAddress.getString("countyGeoId"));
+			}
+			String postalCodeGeoId = ContactMechWorker.getPostalAddressPostalCodeGeoId(shippingAddress, delegator);
+			if (UtilValidate.isNotEmpty(postalCodeGeoId)) {
+				geoIdByTypeMap.put("POSTAL_CODE", postalCodeGeoId);
+			}
+
+			// get the most granular, or all available, geoIds and then find parents by GeoAssoc with geoAssocTypeId="REGIONS" and geoIdTo=<granular geoId> and find the GeoAssoc.geoId
+			geoIdByTypeMap = GeoWorker.expandGeoRegionDeep(geoIdByTypeMap, delegator);
+
+			taxAuthorities = Collections.unmodifiableList(EntityQuery.use(delegator).from("TaxAuthority")
+					.where(EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.IN, geoIdByTypeMap.values())).cache().queryList());
+			authorityCache.putIfAbsent(cacheKey, taxAuthorities);
+		}
+		return taxAuthorities;
+	}
+
+	/**
+	 * Returns the TaxAuthorityRateProduct records that apply to a line, in the order of minItemPrice, minPurchase and
+	 * fromDate: the ones of the tax authorities and of the _NA_ tax authority, for the product store or for any store,
+	 * for one of the categories of the product or for any category, and with a minimum price and purchase reached.
+	 *
+	 * @param productCategoryIds The categories of the product, or <code>null</code> for a line without product
+	 * @param shipping           <code>true</code> for a line without product taxing the shipping
+	 * @param promotions         <code>true</code> for a line without product taxing the promotions
+	 */
+	public static List<GenericValue> getRates(Delegator delegator, Collection<GenericValue> taxAuthorities, String productStoreId, Set<String> productCategoryIds,
+	                                          boolean shipping, boolean promotions, BigDecimal itemPrice, BigDecimal itemAmount, Timestamp nowTimestamp) throws GenericEntityException {
+		Map<String, List<GenericValue>> rateTable = getRateTable(delegator);
+		Set<String> taxAuthKeys = new LinkedHashSet<String>();
+		taxAuthKeys.add("_NA_::_NA_");
+		for (GenericValue taxAuthority : taxAuthorities) {
+			if (taxAuthority != null) {
+				taxAuthKeys.add(taxAuthority.getString("taxAuthGeoId") + "::" + taxAuthority.getString("taxAuthPartyId"));
+			}
+		}
+
+		List<GenericValue> rates = new ArrayList<GenericValue>();
+		for (String taxAuthKey : taxAuthKeys) {
+			List<GenericValue> taxAuthRates = rateTable.get(taxAuthKey);
+			if (taxAuthRates == null) {
+				continue;
+			}
+			for (GenericValue rate : taxAuthRates) {
+				String rateStoreId = rate.getString("productStoreId");
+				if (rateStoreId != null && !rateStoreId.equals(productStoreId)) {
+					continue;
+				}
+				String rateCategoryId = rate.getString("productCategoryId");
+				if (rateCategoryId != null) {
+					boolean categoryMatch;
+					if (productCategoryIds != null) {
+						categoryMatch = productCategoryIds.contains(rateCategoryId);
+					} else {
+						// as the former query: without product, the shipping and promotions flags stand for the category
+						categoryMatch = (shipping && isNullOrY(rate.getString("taxShipping"))) || (promotions && isNullOrY(rate.getString("taxPromotions")));
+					}
+					if (!categoryMatch) {
+						continue;
+					}
+				}
+				if (!isReached(rate.getBigDecimal("minItemPrice"), itemPrice) || !isReached(rate.getBigDecimal("minPurchase"), itemAmount)) {
+					continue;
+				}
+				rates.add(rate);
+			}
+		}
+		rates = EntityUtil.filterByDate(rates, nowTimestamp);
+		Collections.sort(rates, RATE_ORDER);
+		return rates;
+	}
+
+	private static boolean isNullOrY(String indicator) {
+		return indicator == null || "Y".equals(indicator);
+	}
+
+	private static boolean isReached(BigDecimal minimum, BigDecimal value) {
+		// as in SQL, no value never reaches a minimum
+		return minimum == null || (value != null && minimum.compareTo(value) <= 0);
+	}
+
+	private static Map<String, List<GenericValue>> getRateTable(Delegator delegator) throws GenericEntityException {
+		Map<String, List<GenericValue>> rateTable = rateTableCache.get(delegator.getDelegatorName());
+		if (rateTable == null) {
+			rateTable = new HashMap<String, List<GenericValue>>();
+			for (GenericValue rate : EntityQuery.use(delegator).from("TaxAuthorityRateProduct").queryList()) {
+				// shared by the calculations, as the cached values
+				rate.setImmutable();
+				String taxAuthKey = rate.getString("taxAuthGeoId") + "::" + rate.getString("taxAuthPartyId");
+				List<GenericValue> taxAuthRates = rateTable.get(taxAuthKey);
+				if (taxAuthRates == null) {
+					taxAuthRates = new ArrayList<GenericValue>();
+					rateTable.put(taxAuthKey, taxAuthRates);
+				}
+				taxAuthRates.add(rate);
+			}
+			if (Debug.infoOn()) Debug.logInfo("Loaded " + rateTable.size() + " tax authority rate tables for delegator " + delegator.getDelegatorName(), module);
+			rateTableCache.putIfAbsent(delegator.getDelegatorName(), rateTable);
+		}
+		return rateTable;
+	}
+
+	/**
+	 * Drops the resolved tax authorities and the rate tables of a delegator. When called in a transaction, they are
+	 * dropped again once the transaction completes, so that the ones read from the data of before the commit are not kept.
+	 */
+	public static void clear(final Delegator delegator) {
+		clearCaches(delegator);
+		try {
+			TransactionUtil.registerSynchronization(new Synchronization() {
+				public void beforeCompletion() {
+				}
+
+				public void afterCompletion(int status) {
+					clearCaches(delegator);
+				}
+			});
+		} catch (GenericTransactionException e) {
+			Debug.logWarning(e, "Could not register the removal of the tax rate caches on transaction completion", module);
+		}
+	}
+
+	private static void clearCaches(Delegator delegator) {
+		rateTableCache.remove(delegator.getDelegatorName());
+		String keyPrefix = delegator.getDelegatorName() + "::";
+		for (String cacheKey : authorityCache.getCacheLineKeys()) {
+			if (cacheKey.startsWith(keyPrefix)) {
+				authorityCache.remove(cacheKey);
+			}
+		}
+	}
+}
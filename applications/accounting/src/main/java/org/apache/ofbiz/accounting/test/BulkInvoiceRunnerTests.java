@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.test;
+
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Bulk invoicing tests, with the orders and shipments of BulkInvoiceRunnerTestsData.xml
+ */
+public class BulkInvoiceRunnerTests extends OFBizTestCase {
+
+	private static final List<String> ORDER_IDS = UtilMisc.toList("BULK_TEST_1", "BULK_TEST_2", "BULK_TEST_3");
+	private static final List<String> SHIPMENT_IDS = UtilMisc.toList("BULK_TEST_S1", "BULK_TEST_S2", "BULK_TEST_S3", "BULK_TEST_S4");
+	private static final List<String> INVOICE_ENTITIES = Arrays.asList("OrderItemBilling", "OrderAdjustmentBilling", "ShipmentItemBilling",
+			"InvoiceItem", "InvoiceRole", "InvoiceContactMech", "InvoiceTerm", "InvoiceStatus");
+
+	private GenericValue userLogin = null;
+
+	public BulkInvoiceRunnerTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		List<GenericValue> orderItemBillings = EntityQuery.use(delegator).from("OrderItemBilling")
+				.where(EntityCondition.makeCondition("orderId", EntityOperator.IN, ORDER_IDS)).queryList();
+		for (Object invoiceId : new TreeSet<Object>(EntityUtil.getFieldListFromEntityList(orderItemBillings, "invoiceId", true))) {
+			for (String entityName : INVOICE_ENTITIES) {
+				delegator.removeByAnd(entityName, UtilMisc.toMap("invoiceId", invoiceId));
+			}
+			delegator.removeByAnd("Invoice", UtilMisc.toMap("invoiceId", invoiceId));
+		}
+	}
+
+	private Map<String, Object> createInvoicesInBulk() throws Exception {
+		return dispatcher.runSync("createInvoicesInBulk", UtilMisc.<String, Object>toMap("shipmentIds", SHIPMENT_IDS, "concurrency", 2L,
+				"userLogin", userLogin));
+	}
+
+	public void testBulkInvoicing() throws Exception {
+		Map<String, Object> result = createInvoicesInBulk();
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, Object> bulkStats = UtilGenerics.checkMap(result.get("bulkStats"));
+		assertEquals("partitions by billing party", 2, bulkStats.get("partitionCount"));
+		assertEquals("work units by order", 3, bulkStats.get("unitCount"));
+		assertEquals("no failed unit", 0, bulkStats.get("failedUnitCount"));
+		List<String> invoiceIds = UtilGenerics.checkList(result.get("invoicesCreated"));
+		assertEquals("one invoice by order", 3, invoiceIds.size());
+
+		Set<String> invoicedOrders = new TreeSet<String>();
+		for (String invoiceId : invoiceIds) {
+			GenericValue invoice = EntityQuery.use(delegator).from("Invoice").where("invoiceId", invoiceId).queryOne();
+			List<GenericValue> billings = EntityQuery.use(delegator).from("OrderItemBilling").where("invoiceId", invoiceId).queryList();
+			String orderId = billings.get(0).getString("orderId");
+			invoicedOrders.add(orderId);
+			BigDecimal quantity = BigDecimal.ZERO;
+			for (GenericValue billing : billings) {
+				quantity = quantity.add(billing.getBigDecimal("quantity"));
+			}
+			if ("BULK_TEST_1".equals(orderId)) {
+				assertEquals("both shipments on the invoice", 0, new BigDecimal("2").compareTo(quantity));
+			}
+			assertEquals("bill-to customer", "BULK_TEST_1".equals(orderId) || "BULK_TEST_2".equals(orderId) ? "BULK_TEST_C1" : "BULK_TEST_C2",
+					invoice.getString("partyId"));
+		}
+		assertEquals("invoiced orders", new TreeSet<String>(ORDER_IDS), invoicedOrders);
+	}
+
+	public void testNothingBilledTwice() throws Exception {
+		Map<String, Object> result = createInvoicesInBulk();
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		result = createInvoicesInBulk();
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, Object> bulkStats = UtilGenerics.checkMap(result.get("bulkStats"));
+		assertEquals("all shipments billed", 4, bulkStats.get("skippedShipmentCount"));
+		assertEquals("no new invoice", 0, bulkStats.get("invoiceCount"));
+	}
+}
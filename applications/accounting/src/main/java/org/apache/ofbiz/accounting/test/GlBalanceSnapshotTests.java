@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.test;
+
+import org.apache.ofbiz.accounting.ledger.GlBalanceSnapshotWorker;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * GL account balance snapshot tests, with the organization and the GL accounts of GlBalanceSnapshotTestsData.xml
+ */
+public class GlBalanceSnapshotTests extends OFBizTestCase {
+
+	private static final String ORGANIZATION_ID = "GLSNAP_TEST_ORG";
+	private static final List<String> ORGANIZATION_IDS = UtilMisc.toList(ORGANIZATION_ID);
+
+	private static final int POSTING_THREADS = 8;
+	private static final int POSTINGS_PER_THREAD = 5;
+
+	private GenericValue userLogin = null;
+
+	public GlBalanceSnapshotTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		EntityCondition testTransactions = EntityCondition.makeCondition("acctgTransId", EntityOperator.LIKE, "GLSNAP_TEST_%");
+		delegator.removeByCondition("AcctgTransEntry", testTransactions);
+		delegator.removeByCondition("AcctgTrans", testTransactions);
+		delegator.removeByAnd("GlAccountBalanceSnapshot", UtilMisc.toMap("organizationPartyId", ORGANIZATION_ID));
+		delegator.removeByAnd("SystemProperty", UtilMisc.toMap("systemResourceId", "accounting",
+				"systemPropertyId", GlBalanceSnapshotWorker.BUILT_PROPERTY_PREFIX + ORGANIZATION_ID));
+	}
+
+	/** Creates a transaction debiting an account and crediting another one */
+	private void createTestTransaction(String acctgTransId, String acctgTransTypeId, String transactionDate, String debitGlAccountId,
+	                                   String creditGlAccountId, String amount, String isPosted) throws Exception {
+		delegator.create("AcctgTrans", "acctgTransId", acctgTransId, "acctgTransTypeId", acctgTransTypeId, "glFiscalTypeId", "ACTUAL",
+				"transactionDate", Timestamp.valueOf(transactionDate), "isPosted", isPosted);
+		delegator.create("AcctgTransEntry", "acctgTransId", acctgTransId, "acctgTransEntrySeqId", "00001", "organizationPartyId", ORGANIZATION_ID,
+				"glAccountId", debitGlAccountId, "debitCreditFlag", "D", "amount", new BigDecimal(amount), "currencyUomId", "USD");
+		delegator.create("AcctgTransEntry", "acctgTransId", acctgTransId, "acctgTransEntrySeqId", "00002", "organizationPartyId", ORGANIZATION_ID,
+				"glAccountId", creditGlAccountId, "debitCreditFlag", "C", "amount", new BigDecimal(amount), "currencyUomId", "USD");
+	}
+
+	/** Creates a posted transaction debiting an account and crediting another one, and adds it to the snapshots */
+	private void postTestTransaction(String acctgTransId, String acctgTransTypeId, String transactionDate, String debitGlAccountId,
+	                                 String creditGlAccountId, String amount) throws Exception {
+		createTestTransaction(acctgTransId, acctgTransTypeId, transactionDate, debitGlAccountId, creditGlAccountId, amount, "Y");
+		Map<String, Object> result = dispatcher.runSync("updateGlAccountBalanceSnapshots", UtilMisc.<String, Object>toMap("acctgTransId", acctgTransId,
+				"userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+	}
+
+	private void postTestTransactions() throws Exception {
+		postTestTransaction("GLSNAP_TEST_1", "INTERNAL_ACCTG_TRANS", "2025-03-08 09:00:00", "GLSNAP_TEST_CASH", "GLSNAP_TEST_REV", "100");
+		postTestTransaction("GLSNAP_TEST_2", "INTERNAL_ACCTG_TRANS", "2025-03-10 15:00:00", "GLSNAP_TEST_CASH", "GLSNAP_TEST_REV", "50");
+		postTestTransaction("GLSNAP_TEST_3", "PERIOD_CLOSING", "2025-03-10 16:00:00", "GLSNAP_TEST_REV", "GLSNAP_TEST_CASH", "30");
+		// posted after the later days, without changing their snapshots
+		postTestTransaction("GLSNAP_TEST_4", "INTERNAL_ACCTG_TRANS", "2025-03-09 11:00:00", "GLSNAP_TEST_CASH", "GLSNAP_TEST_REV", "7");
+	}
+
+	private List<String> getSnapshots() throws Exception {
+		List<String> snapshots = new ArrayList<String>();
+		for (GenericValue snapshot : EntityQuery.use(delegator).from("GlAccountBalanceSnapshot").where("organizationPartyId", ORGANIZATION_ID)
+				.orderBy("glAccountId", "snapshotDate").queryList()) {
+			snapshots.add(snapshot.getString("glAccountId") + " " + snapshot.get("snapshotDate") + " " + snapshot.getBigDecimal("postedDebits").intValue()
+					+ "/" + snapshot.getBigDecimal("postedCredits").intValue() + " " + snapshot.getBigDecimal("closingDebits").intValue()
+					+ "/" + snapshot.getBigDecimal("closingCredits").intValue());
+		}
+		return snapshots;
+	}
+
+	private Map<String, BigDecimal> getTransactionTotals(String fromDate, String thruDate) throws Exception {
+		Map<String, BigDecimal> transactionTotals = new TreeMap<String, BigDecimal>();
+		for (Map<String, Object> transactionTotal : GlBalanceSnapshotWorker.getTransactionTotals(delegator, ORGANIZATION_IDS, "ACTUAL",
+				Timestamp.valueOf(fromDate), Timestamp.valueOf(thruDate))) {
+			transactionTotals.put(transactionTotal.get("glAccountId") + " " + transactionTotal.get("debitCreditFlag"),
+					((BigDecimal) transactionTotal.get("amount")).setScale(2));
+		}
+		return transactionTotals;
+	}
+
+	public void testIncrementalSnapshots() throws Exception {
+		postTestTransactions();
+		List<String> expected = UtilMisc.toList("GLSNAP_TEST_CASH 2025-03-08 100/0 0/0", "GLSNAP_TEST_CASH 2025-03-09 7/0 0/0",
+				"GLSNAP_TEST_CASH 2025-03-10 50/30 0/30", "GLSNAP_TEST_REV 2025-03-08 0/100 0/0", "GLSNAP_TEST_REV 2025-03-09 0/7 0/0",
+				"GLSNAP_TEST_REV 2025-03-10 30/50 30/0");
+		assertEquals("snapshots updated on posting", expected, getSnapshots());
+
+		Map<String, Object> result = dispatcher.runSync("rebuildGlAccountBalanceSnapshots", UtilMisc.<String, Object>toMap("organizationPartyId", ORGANIZATION_ID,
+				"userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		assertEquals("snapshots rebuilt", 6, result.get("snapshotCount"));
+		assertEquals("same snapshots as rebuilt", expected, getSnapshots());
+		assertTrue("snapshots built", GlBalanceSnapshotWorker.isBuilt(delegator, ORGANIZATION_IDS));
+	}
+
+	public void testPostAcctgTrans() throws Exception {
+		postTestTransactions();
+		// posted by the service, the snapshots are updated by its commit ECA
+		createTestTransaction("GLSNAP_TEST_P", "INTERNAL_ACCTG_TRANS", "2025-03-09 14:00:00", "GLSNAP_TEST_CASH", "GLSNAP_TEST_REV", "25", "N");
+		Map<String, Object> result = dispatcher.runSync("postAcctgTrans", UtilMisc.<String, Object>toMap("acctgTransId", "GLSNAP_TEST_P",
+				"userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		assertEquals("posted", "Y", EntityQuery.use(delegator).from("AcctgTrans").where("acctgTransId", "GLSNAP_TEST_P").queryOne().getString("isPosted"));
+		List<String> expected = UtilMisc.toList("GLSNAP_TEST_CASH 2025-03-08 100/0 0/0", "GLSNAP_TEST_CASH 2025-03-09 32/0 0/0",
+				"GLSNAP_TEST_CASH 2025-03-10 50/30 0/30", "GLSNAP_TEST_REV 2025-03-08 0/100 0/0", "GLSNAP_TEST_REV 2025-03-09 0/32 0/0",
+				"GLSNAP_TEST_REV 2025-03-10 30/50 30/0");
+		assertEquals("snapshot of the transaction date updated", expected, getSnapshots());
+
+		GlBalanceSnapshotWorker.rebuild(delegator, ORGANIZATION_ID);
+		assertEquals("same snapshots as rebuilt", expected, getSnapshots());
+	}
+
+	public void testTransactionTotals() throws Exception {
+		postTestTransactions();
+		// from the entries before the snapshots are built
+		Map<String, BigDecimal> entryTotals = getTransactionTotals("2025-03-08 12:00:00", "2025-03-10 15:30:00");
+		assertEquals("entries of the period", UtilMisc.toMap("GLSNAP_TEST_CASH D", new BigDecimal("57.00"), "GLSNAP_TEST_REV C", new BigDecimal("57.00")),
+				entryTotals);
+
+		GlBalanceSnapshotWorker.rebuild(delegator, ORGANIZATION_ID);
+		assertEquals("same totals from the snapshots", entryTotals, getTransactionTotals("2025-03-08 12:00:00", "2025-03-10 15:30:00"));
+		assertEquals("whole days", UtilMisc.toMap("GLSNAP_TEST_CASH D", new BigDecimal("157.00"), "GLSNAP_TEST_REV C", new BigDecimal("157.00")),
+				getTransactionTotals("2025-03-01 00:00:00", "2025-03-11 00:00:00"));
+
+		Map<String, BigDecimal[]> postedTotals = GlBalanceSnapshotWorker.getPostedTotals(delegator, ORGANIZATION_IDS, "GLSNAP_TEST_CASH", null,
+				Timestamp.valueOf("2025-03-11 00:00:00"), true);
+		assertEquals("posted debits with the closing transaction", 0, new BigDecimal("157").compareTo(postedTotals.get("GLSNAP_TEST_CASH")[0]));
+		assertEquals("posted credits with the closing transaction", 0, new BigDecimal("30").compareTo(postedTotals.get("GLSNAP_TEST_CASH")[1]));
+	}
+
+	public void testConcurrentPostings() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		int postedAmount = 0;
+		for (int t = 0; t < POSTING_THREADS; t++) {
+			final int thread = t;
+			postedAmount += (thread + 1) * POSTINGS_PER_THREAD;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						// the same account and day for all the threads, and a day before it for every other posting
+						for (int i = 0; i < POSTINGS_PER_THREAD; i++) {
+							postTestTransaction("GLSNAP_TEST_C" + thread + "_" + i, "INTERNAL_ACCTG_TRANS", i % 2 == 0 ? "2025-03-10 10:00:00" : "2025-03-09 10:00:00",
+									"GLSNAP_TEST_CASH", "GLSNAP_TEST_REV", String.valueOf(thread + 1));
+						}
+					} catch (Throwable e) {
+						failures.add(e);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals("failed postings " + failures, 0, failures.size());
+
+		Map<String, BigDecimal[]> postedTotals = GlBalanceSnapshotWorker.getPostedTotals(delegator, ORGANIZATION_IDS, null, "ACTUAL",
+				Timestamp.valueOf("2025-03-11 00:00:00"), true);
+		assertEquals("posted debits of all the postings", 0, new BigDecimal(postedAmount).compareTo(postedTotals.get("GLSNAP_TEST_CASH")[0]));
+		assertEquals("posted credits of all the postings", 0, new BigDecimal(postedAmount).compareTo(postedTotals.get("GLSNAP_TEST_REV")[1]));
+		List<String> snapshots = getSnapshots();
+		assertEquals("snapshots of the two days", 4, snapshots.size());
+		GlBalanceSnapshotWorker.rebuild(delegator, ORGANIZATION_ID);
+		assertEquals("same snapshots as rebuilt", getSnapshots(), snapshots);
+	}
+}
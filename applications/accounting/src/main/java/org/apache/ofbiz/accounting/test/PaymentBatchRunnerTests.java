@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.test;
+
+import org.apache.ofbiz.accounting.payment.PaymentBatchRunner;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Payment batch runner tests, with stub gateway calls
+ */
+public class PaymentBatchRunnerTests extends OFBizTestCase {
+
+	private final List<GenericValue> testValues = new ArrayList<GenericValue>();
+
+	public PaymentBatchRunnerTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (GenericValue testValue : testValues) {
+			delegator.removeValue(testValue);
+		}
+		testValues.clear();
+		delegator.removeByAnd("SystemProperty", UtilMisc.toMap("systemResourceId", "payment", "systemPropertyId", "payment.batch.checkpoint.PB_TEST"));
+	}
+
+	private void setPaymentProperty(String systemPropertyId, String value) throws Exception {
+		GenericValue property = delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", "payment",
+				"systemPropertyId", systemPropertyId, "systemPropertyValue", value));
+		delegator.createOrStore(property);
+		testValues.add(property);
+	}
+
+	private String getCheckpoint() throws Exception {
+		GenericValue checkpoint = delegator.findOne("SystemProperty", false, "systemResourceId", "payment", "systemPropertyId", "payment.batch.checkpoint.PB_TEST");
+		return checkpoint == null ? null : checkpoint.getString("systemPropertyValue");
+	}
+
+	public void testConcurrencyByGateway() throws Exception {
+		setPaymentProperty("payment.batch.concurrency.PB_GW_A", "2");
+		PaymentBatchRunner runner = new PaymentBatchRunner(delegator, "PB_TEST");
+		for (int i = 0; i < 6; i++) {
+			runner.addItem("A-" + i, "PB_GW_A");
+			runner.addItem("B-" + i, "PB_GW_B");
+		}
+		final Map<String, AtomicInteger> running = new ConcurrentHashMap<String, AtomicInteger>();
+		final Map<String, AtomicInteger> maxRunning = new ConcurrentHashMap<String, AtomicInteger>();
+		for (String gateway : UtilMisc.toList("A", "B")) {
+			running.put(gateway, new AtomicInteger());
+			maxRunning.put(gateway, new AtomicInteger());
+		}
+		Map<String, Object> result = runner.run(new PaymentBatchRunner.ItemProcessor() {
+			public PaymentBatchRunner.Outcome process(String itemId) throws Exception {
+				String gateway = itemId.substring(0, 1);
+				int count = running.get(gateway).incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.get(gateway).set(Math.max(count, maxRunning.get(gateway).get()));
+				}
+				Thread.sleep(100);
+				running.get(gateway).decrementAndGet();
+				return PaymentBatchRunner.Outcome.DONE;
+			}
+		}, false);
+		assertEquals("all the items", 12, result.get("processedCount"));
+		assertEquals("concurrency of the gateway", 2, maxRunning.get("A").get());
+		assertTrue("gateways side by side", maxRunning.get("B").get() > 2);
+		Map<String, Map<String, Object>> gatewayStats = UtilGenerics.checkMap(result.get("gatewayStats"));
+		assertEquals("items of a gateway", 6, gatewayStats.get("PB_GW_A").get("processedCount"));
+	}
+
+	public void testRateLimit() throws Exception {
+		setPaymentProperty("payment.batch.rate.PB_GW_R", "10");
+		PaymentBatchRunner runner = new PaymentBatchRunner(delegator, "PB_TEST");
+		for (int i = 0; i < 6; i++) {
+			runner.addItem("R-" + i, "PB_GW_R");
+		}
+		final List<Long> callStarts = Collections.synchronizedList(new ArrayList<Long>());
+		runner.run(new PaymentBatchRunner.ItemProcessor() {
+			public PaymentBatchRunner.Outcome process(String itemId) {
+				callStarts.add(System.currentTimeMillis());
+				return PaymentBatchRunner.Outcome.DONE;
+			}
+		}, false);
+		assertEquals("all the calls", 6, callStarts.size());
+		assertTrue("calls spread by the rate limit", Collections.max(callStarts) - Collections.min(callStarts) >= 450);
+	}
+
+	public void testCheckpoint() throws Exception {
+		setPaymentProperty("payment.batch.concurrency.PB_GW_C", "1");
+		final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicInteger failures = new AtomicInteger(1);
+		PaymentBatchRunner.ItemProcessor processor = new PaymentBatchRunner.ItemProcessor() {
+			public PaymentBatchRunner.Outcome process(String itemId) {
+				processed.add(itemId);
+				if ("C-3".equals(itemId) && failures.getAndDecrement() > 0) {
+					return PaymentBatchRunner.Outcome.FAILED;
+				}
+				return PaymentBatchRunner.Outcome.DONE;
+			}
+		};
+
+		PaymentBatchRunner runner = new PaymentBatchRunner(delegator, "PB_TEST");
+		for (int i = 1; i <= 5; i++) {
+			runner.addItem("C-" + i, "PB_GW_C");
+		}
+		Map<String, Object> result = runner.run(processor, false);
+		assertEquals("failed item", 1, result.get("failedCount"));
+		assertEquals("checkpoint before the failed item", "C-2", getCheckpoint());
+
+		processed.clear();
+		result = runner.run(processor, true);
+		assertEquals("resumed after the checkpoint", UtilMisc.toList("C-3", "C-4", "C-5"), processed);
+		assertEquals("items before the checkpoint", 2, result.get("skippedCount"));
+		assertNull("checkpoint removed", getCheckpoint());
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.test;
+
+import org.apache.ofbiz.accounting.tax.TaxRateResolver;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tax authority resolution and rate table tests, with the tax authority and rates of TaxRateResolverTestsData.xml
+ */
+public class TaxRateResolverTests extends OFBizTestCase {
+
+	public TaxRateResolverTests(String name) {
+		super(name);
+	}
+
+	private GenericValue makeShippingAddress() {
+		return delegator.makeValue("PostalAddress", UtilMisc.toMap("stateProvinceGeoId", "TAXTEST_ST", "postalCode", "TAXTEST"));
+	}
+
+	private List<List<BigDecimal>> calcTestTaxes() throws Exception {
+		List<GenericValue> products = UtilMisc.toList(delegator.findOne("Product", true, "productId", "TAXTEST_P1"),
+				delegator.findOne("Product", true, "productId", "TAXTEST_P2"));
+		List<BigDecimal> amounts = UtilMisc.toList(new BigDecimal("100"), new BigDecimal("100"));
+		Map<String, Object> result = dispatcher.runSync("calcTax", UtilMisc.<String, Object>toMap("payToPartyId", "Company",
+				"itemProductList", products, "itemAmountList", amounts, "itemPriceList", amounts, "orderShippingAmount", new BigDecimal("20"),
+				"shippingAddress", makeShippingAddress()));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+
+		// the amounts of the test rates, for each item and then for the order
+		List<List<BigDecimal>> taxes = new ArrayList<List<BigDecimal>>();
+		List<List<GenericValue>> itemAdjustments = UtilGenerics.checkList(result.get("itemAdjustments"));
+		for (List<GenericValue> adjustments : itemAdjustments) {
+			taxes.add(getTestTaxAmounts(adjustments));
+		}
+		taxes.add(getTestTaxAmounts(UtilGenerics.<GenericValue>checkList(result.get("orderAdjustments"))));
+		return taxes;
+	}
+
+	private static List<BigDecimal> getTestTaxAmounts(List<GenericValue> adjustments) {
+		List<BigDecimal> amounts = new ArrayList<BigDecimal>();
+		for (GenericValue adjustment : adjustments) {
+			if ("TAXTEST_ST".equals(adjustment.getString("taxAuthGeoId"))) {
+				amounts.add(adjustment.getBigDecimal("amount").stripTrailingZeros());
+			}
+		}
+		return amounts;
+	}
+
+	private static List<BigDecimal> amounts(String... amounts) {
+		List<BigDecimal> list = new ArrayList<BigDecimal>();
+		for (String amount : amounts) {
+			list.add(new BigDecimal(amount).stripTrailingZeros());
+		}
+		return list;
+	}
+
+	public void testCalcTax() throws Exception {
+		List<List<BigDecimal>> taxes = calcTestTaxes();
+		assertEquals("rate of any category", amounts("10"), taxes.get(0));
+		assertEquals("rates of any category and of the product category", amounts("10", "5"), taxes.get(1));
+		assertEquals("rate taxing the shipping", amounts("2"), taxes.get(2));
+	}
+
+	public void testTaxAuthoritiesResolvedOnce() throws Exception {
+		List<GenericValue> taxAuthorities = TaxRateResolver.getTaxAuthorities(delegator, makeShippingAddress());
+		assertEquals("tax authority of the state", 1, taxAuthorities.size());
+		assertSame("tax authorities kept", taxAuthorities, TaxRateResolver.getTaxAuthorities(delegator, makeShippingAddress()));
+	}
+
+	public void testRatesRefreshedOnChange() throws Exception {
+		assertEquals("rate of any category", amounts("10"), calcTestTaxes().get(0));
+		GenericValue rate = delegator.findOne("TaxAuthorityRateProduct", false, "taxAuthorityRateSeqId", "TAXTEST_1");
+		rate.set("taxPercentage", new BigDecimal("8"));
+		rate.store();
+		try {
+			assertEquals("changed rate", amounts("8"), calcTestTaxes().get(0));
+		} finally {
+			rate.set("taxPercentage", new BigDecimal("10"));
+			rate.store();
+		}
+		assertEquals("restored rate", amounts("10"), calcTestTaxes().get(0));
+	}
+}
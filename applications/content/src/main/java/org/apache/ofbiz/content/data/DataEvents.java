@@ -18,7 +18,6 @@
  *******************************************************************************/
 package org.apache.ofbiz.content.data;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.ofbiz.base.util.*;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -33,9 +32,9 @@ import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Locale;
 import java.util.Map;
 
@@ -190,37 +189,52 @@ public class DataEvents {
 			return "error";
 		}
 
-		// get the stream data
-		InputStream stream = null;
-		Long length = null;
-
-		if (resourceData != null) {
-			stream = (InputStream) resourceData.get("stream");
-			length = (Long) resourceData.get("length");
-		}
-		Debug.logInfo("Got resource data stream: " + length + " bytes", module);
-
 		// stream the content to the browser
-		if (stream != null && length != null) {
-			try {
-				UtilHttp.streamContentToBrowser(response, stream, length.intValue(), mimeType, dataName);
-			} catch (IOException e) {
-				Debug.logError(e, "Unable to write content to browser", module);
-				request.setAttribute("_ERROR_MESSAGE_", e.getMessage());
-				// this must be handled with a special error string because the output stream has been already used and we will not be able to return the error page;
-				// the "io-error" should be associated to a response of type "none"
-				return "io-error";
+		if (resourceData == null || resourceData.get("stream") == null || resourceData.get("length") == null) {
+			if (resourceData != null && resourceData.get("stream") != null) {
+				try {
+					((InputStream) resourceData.get("stream")).close();
+				} catch (IOException e) {
+					Debug.logWarning(e, "Unable to close the DataResource stream", module);
+				}
 			}
-		} else {
 			String errorMsg = "No data is available.";
 			Debug.logError(errorMsg, module);
 			request.setAttribute("_ERROR_MESSAGE_", errorMsg);
 			return "error";
 		}
+		try {
+			streamDataResource(request, response, dataResource, resourceData, mimeType, dataName);
+		} catch (IOException e) {
+			Debug.logError(e, "Unable to write content to browser", module);
+			request.setAttribute("_ERROR_MESSAGE_", e.getMessage());
+			// this must be handled with a special error string because the output stream has been already used and we will not be able to return the error page;
+			// the "io-error" should be associated to a response of type "none"
+			return "io-error";
+		}
 
 		return "success";
 	}
 
+	/**
+	 * Streams the data returned by {@link DataResourceWorker#getDataResourceStream} to the browser and closes
+	 * its stream. The files are sent thru their channel, conditional requests are answered with the entity tag
+	 * of the DataResource and single range requests are supported.
+	 */
+	public static void streamDataResource(HttpServletRequest request, HttpServletResponse response, GenericValue dataResource, Map<String, Object> resourceData,
+	                                      String mimeType, String fileName) throws IOException {
+		String eTag = DataResourceWorker.getDataResourceETag(dataResource, resourceData);
+		File file = (File) resourceData.get("file");
+		try (InputStream stream = (InputStream) resourceData.get("stream")) {
+			if (file != null) {
+				UtilHttp.streamFileToBrowser(request, response, file, mimeType, fileName, eTag);
+			} else {
+				Long length = (Long) resourceData.get("length");
+				UtilHttp.streamContentToBrowser(request, response, stream, length == null ? -1 : length.longValue(), mimeType, fileName, eTag);
+			}
+		}
+	}
+
 	/**
 	 * Streams ImageDataResource data to the output.
 	 */
@@ -277,13 +291,8 @@ public class DataEvents {
 				mimeType = "application/octet-stream";
 			}
 
-			if (mimeType != null) {
-				response.setContentType(mimeType);
-			}
-			OutputStream os = response.getOutputStream();
 			Map<String, Object> resourceData = DataResourceWorker.getDataResourceStream(dataResource, "", application.getInitParameter("webSiteId"), UtilHttp.getLocale(request), application.getRealPath("/"), false);
-			os.write(IOUtils.toByteArray((InputStream) resourceData.get("stream")));
-			os.flush();
+			streamDataResource(request, response, dataResource, resourceData, mimeType, null);
 		} catch (GenericEntityException e) {
 			String errMsg = "Error downloading digital product content: " + e.toString();
 			Debug.logError(e, errMsg, module);
@@ -33,8 +33,13 @@ import org.apache.ofbiz.base.util.template.XslTransform;
 import org.apache.ofbiz.common.email.NotificationServices;
 import org.apache.ofbiz.content.content.UploadContentAndImage;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericDataSourceException;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.jdbc.SQLProcessor;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.service.GenericServiceException;
@@ -58,6 +63,9 @@ import java.net.URLConnection;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -951,7 +959,10 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
 	 * @param webSiteId
 	 * @param locale
 	 * @param contextRoot
-	 * @return Map containing 'stream': the InputStream and 'length' a Long containing the content-length
+	 * @return Map containing 'stream': the InputStream and 'length' a Long containing the content-length (-1 if unknown),
+	 * when known 'lastModified' a Long containing the last modification time and, for file types, 'file' the File.
+	 * When cache is false the binary objects are streamed from the database instead of being loaded in memory:
+	 * the stream holds a database connection and must be closed.
 	 * @throws IOException
 	 * @throws GeneralException
 	 */
@@ -967,6 +978,7 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
 		// first text based data
 		if (dataResourceTypeId.endsWith("_TEXT") || "LINK".equals(dataResourceTypeId)) {
 			String text = "";
+			Timestamp lastUpdatedStamp = null;
 
 			if ("SHORT_TEXT".equals(dataResourceTypeId) || "LINK".equals(dataResourceTypeId)) {
 				text = dataResource.getString("objectInfo");
@@ -976,51 +988,56 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
 						.cache(cache).queryOne();
 				if (electronicText != null) {
 					text = electronicText.getString("textData");
+					lastUpdatedStamp = electronicText.getTimestamp("lastUpdatedStamp");
 				}
 			} else {
 				throw new GeneralException("Unsupported TEXT type; cannot stream");
 			}
 
 			byte[] bytes = text.getBytes();
-			return UtilMisc.toMap("stream", new ByteArrayInputStream(bytes), "length", Long.valueOf(bytes.length));
+			return UtilMisc.toMap("stream", new ByteArrayInputStream(bytes), "length", Long.valueOf(bytes.length),
+					"lastModified", getLastModified(dataResource, lastUpdatedStamp == null ? 0 : lastUpdatedStamp.getTime()));
 
 			// object (binary) data
 		} else if (dataResourceTypeId.endsWith("_OBJECT")) {
-			byte[] bytes = new byte[0];
-			GenericValue valObj;
-
+			String entityName;
+			String fieldName;
 			if ("IMAGE_OBJECT".equals(dataResourceTypeId)) {
-				valObj = EntityQuery.use(delegator).from("ImageDataResource").where("dataResourceId", dataResourceId).cache(cache).queryOne();
-				if (valObj != null) {
-					bytes = valObj.getBytes("imageData");
-				}
+				entityName = "ImageDataResource";
+				fieldName = "imageData";
 			} else if ("VIDEO_OBJECT".equals(dataResourceTypeId)) {
-				valObj = EntityQuery.use(delegator).from("VideoDataResource").where("dataResourceId", dataResourceId).cache(cache).queryOne();
-				if (valObj != null) {
-					bytes = valObj.getBytes("videoData");
-				}
+				entityName = "VideoDataResource";
+				fieldName = "videoData";
 			} else if ("AUDIO_OBJECT".equals(dataResourceTypeId)) {
-				valObj = EntityQuery.use(delegator).from("AudioDataResource").where("dataResourceId", dataResourceId).cache(cache).queryOne();
-				if (valObj != null) {
-					bytes = valObj.getBytes("audioData");
-				}
+				entityName = "AudioDataResource";
+				fieldName = "audioData";
 			} else if ("OTHER_OBJECT".equals(dataResourceTypeId)) {
-				valObj = EntityQuery.use(delegator).from("OtherDataResource").where("dataResourceId", dataResourceId).cache(cache).queryOne();
-				if (valObj != null) {
-					bytes = valObj.getBytes("dataResourceContent");
-				}
+				entityName = "OtherDataResource";
+				fieldName = "dataResourceContent";
 			} else {
 				throw new GeneralException("Unsupported OBJECT type [" + dataResourceTypeId + "]; cannot stream");
 			}
+			if (!cache) {
+				return getObjectDataStream(dataResource, entityName, fieldName);
+			}
 
-			return UtilMisc.toMap("stream", new ByteArrayInputStream(bytes), "length", Long.valueOf(bytes.length));
+			byte[] bytes = new byte[0];
+			long lastUpdatedStamp = 0;
+			GenericValue valObj = EntityQuery.use(delegator).from(entityName).where("dataResourceId", dataResourceId).cache().queryOne();
+			if (valObj != null) {
+				bytes = valObj.getBytes(fieldName);
+				lastUpdatedStamp = valObj.getTimestamp("lastUpdatedStamp") == null ? 0 : valObj.getTimestamp("lastUpdatedStamp").getTime();
+			}
+			return UtilMisc.toMap("stream", new ByteArrayInputStream(bytes), "length", Long.valueOf(bytes.length),
+					"lastModified", getLastModified(dataResource, lastUpdatedStamp));
 
 			// file data
 		} else if (dataResourceTypeId.endsWith("_FILE") || dataResourceTypeId.endsWith("_FILE_BIN")) {
 			String objectInfo = dataResource.getString("objectInfo");
 			if (UtilValidate.isNotEmpty(objectInfo)) {
 				File file = DataResourceWorker.getContentFile(dataResourceTypeId, objectInfo, contextRoot);
-				return UtilMisc.toMap("stream", Files.newInputStream(file.toPath(), StandardOpenOption.READ), "length", Long.valueOf(file.length()));
+				return UtilMisc.toMap("stream", Files.newInputStream(file.toPath(), StandardOpenOption.READ), "length", Long.valueOf(file.length()),
+						"file", file, "lastModified", getLastModified(dataResource, file.lastModified()));
 			} else {
 				throw new GeneralException("No objectInfo found for FILE type [" + dataResourceTypeId + "]; cannot stream");
 			}
@@ -1050,12 +1067,110 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
 		throw new GeneralException("The dataResourceTypeId [" + dataResourceTypeId + "] is not supported in getDataResourceStream");
 	}
 
+	/**
+	 * Streams the content of a binary object from its database column, with the content length when the
+	 * column is a BLOB. The returned stream must be closed to release the database connection.
+	 */
+	private static Map<String, Object> getObjectDataStream(GenericValue dataResource, String entityName, String fieldName) throws GeneralException {
+		Delegator delegator = dataResource.getDelegator();
+		ModelEntity modelEntity = delegator.getModelEntity(entityName);
+		ModelField dataField = modelEntity.getField(fieldName);
+		GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName(entityName));
+		String sql = "SELECT " + dataField.getColName() + ", " + modelEntity.getField(ModelEntity.STAMP_FIELD).getColName()
+				+ " FROM " + modelEntity.getTableName(helperInfo.getHelperBaseName())
+				+ " WHERE " + modelEntity.getField("dataResourceId").getColName() + " = ?";
+		String sqlType = delegator.getEntityFieldType(modelEntity, dataField.getType()).getSqlType();
+		SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo);
+		boolean streaming = false;
+		try {
+			sqlP.prepareStatement(sql);
+			sqlP.setValue(dataResource.getString("dataResourceId"));
+			ResultSet rs = sqlP.executeQuery();
+			InputStream stream = null;
+			long length = 0;
+			long lastUpdatedStamp = 0;
+			if (rs.next()) {
+				if (sqlType.toUpperCase(Locale.ROOT).contains("BLOB")) {
+					Blob blob = rs.getBlob(1);
+					if (blob != null) {
+						length = blob.length();
+						stream = blob.getBinaryStream();
+					}
+				} else {
+					stream = rs.getBinaryStream(1);
+					length = stream == null ? 0 : -1;
+				}
+				Timestamp stamp = rs.getTimestamp(2);
+				lastUpdatedStamp = stamp == null ? 0 : stamp.getTime();
+			}
+			if (stream == null) {
+				return UtilMisc.toMap("stream", new ByteArrayInputStream(new byte[0]), "length", Long.valueOf(0),
+						"lastModified", getLastModified(dataResource, lastUpdatedStamp));
+			}
+			streaming = true;
+			return UtilMisc.toMap("stream", new SQLProcessorInputStream(stream, sqlP), "length", Long.valueOf(length),
+					"lastModified", getLastModified(dataResource, lastUpdatedStamp));
+		} catch (SQLException e) {
+			throw new GeneralException("Could not read the " + entityName + " of DataResource [" + dataResource.getString("dataResourceId") + "]", e);
+		} finally {
+			if (!streaming) {
+				sqlP.close();
+			}
+		}
+	}
+
+	private static Long getLastModified(GenericValue dataResource, long dataLastModified) {
+		Timestamp lastUpdatedStamp = dataResource.getTimestamp("lastUpdatedStamp");
+		return Long.valueOf(Math.max(dataLastModified, lastUpdatedStamp == null ? 0 : lastUpdatedStamp.getTime()));
+	}
+
+	/**
+	 * Returns the entity tag of the data of a DataResource, derived from its last modification time,
+	 * or null if the last modification time is not known.
+	 *
+	 * @param dataResource The DataResource
+	 * @param resourceData The Map returned by getDataResourceStream
+	 */
+	public static String getDataResourceETag(GenericValue dataResource, Map<String, Object> resourceData) {
+		Long lastModified = (Long) resourceData.get("lastModified");
+		if (lastModified == null || lastModified.longValue() == 0) {
+			return null;
+		}
+		return "\"" + dataResource.getString("dataResourceId") + "-" + Long.toHexString(lastModified.longValue()) + "\"";
+	}
+
+	/**
+	 * An InputStream that closes the SQLProcessor (and releases its connection) when it is closed.
+	 */
+	private static final class SQLProcessorInputStream extends FilterInputStream {
+		private final SQLProcessor sqlP;
+
+		private SQLProcessorInputStream(InputStream in, SQLProcessor sqlP) {
+			super(in);
+			this.sqlP = sqlP;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				try {
+					sqlP.close();
+				} catch (GenericDataSourceException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+	}
+
 	public static ByteBuffer getContentAsByteBuffer(Delegator delegator, String dataResourceId, String https, String webSiteId, Locale locale, String rootDir) throws IOException, GeneralException {
 		GenericValue dataResource = EntityQuery.use(delegator).from("DataResource").where("dataResourceId", dataResourceId).queryOne();
 		Map<String, Object> resourceData = DataResourceWorker.getDataResourceStream(dataResource, https, webSiteId, locale, rootDir, false);
-		InputStream stream = (InputStream) resourceData.get("stream");
-		ByteBuffer byteBuffer = ByteBuffer.wrap(IOUtils.toByteArray(stream));
-		return byteBuffer;
+		// the stream of the data stored in the database holds its connection until it is closed
+		try (InputStream stream = (InputStream) resourceData.get("stream")) {
+			return ByteBuffer.wrap(IOUtils.toByteArray(stream));
+		}
 	}
 
 	public String renderDataResourceAsTextExt(Delegator delegator, String dataResourceId, Map<String, Object> templateContext,
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.content.test;
+
+import org.apache.ofbiz.base.test.HttpServletStubs;
+import org.apache.ofbiz.base.test.HttpServletStubs.RecordedResponse;
+import org.apache.ofbiz.content.data.DataEvents;
+import org.apache.ofbiz.content.data.DataResourceWorker;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.connection.ConnectionPoolMonitor;
+import org.apache.ofbiz.entity.connection.DBCPConnectionFactory;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Tests the streaming of the data of a DataResource stored in the database: the range and conditional requests
+ * and the release of the connection the data is read from.
+ */
+public class DataResourceStreamTests extends OFBizTestCase {
+
+	private static final String DATA_RESOURCE_ID = "TEST_STREAM_IMAGE";
+
+	public DataResourceStreamTests(String name) {
+		super(name);
+	}
+
+	private GenericValue getDataResource() throws Exception {
+		return EntityQuery.use(delegator).from("DataResource").where("dataResourceId", DATA_RESOURCE_ID).queryOne();
+	}
+
+	private ConnectionPoolMonitor getPoolMonitor() {
+		String helperName = delegator.getGroupHelperInfo(delegator.getEntityGroupName("ImageDataResource")).getHelperFullName();
+		return DBCPConnectionFactory.getPoolMonitor(helperName);
+	}
+
+	private RecordedResponse stream(HttpServletRequest request) throws Exception {
+		GenericValue dataResource = getDataResource();
+		Map<String, Object> resourceData = DataResourceWorker.getDataResourceStream(dataResource, "false", null, null, null, false);
+		RecordedResponse response = new RecordedResponse();
+		DataEvents.streamDataResource(request, response.getResponse(), dataResource, resourceData, "image/png", null);
+		return response;
+	}
+
+	public void testStreamRange() throws Exception {
+		RecordedResponse response = stream(HttpServletStubs.createRequest("Range", "bytes=3-"));
+		assertEquals("status", HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("Content-Range", "bytes 3-9/10", response.getHeader("Content-Range"));
+		assertEquals("content", "3456789", new String(response.getContent()));
+		assertNotNull("ETag", response.getHeader("ETag"));
+	}
+
+	public void testStreamNotModified() throws Exception {
+		String eTag = stream(HttpServletStubs.createRequest()).getHeader("ETag");
+		assertNotNull("ETag", eTag);
+		RecordedResponse response = stream(HttpServletStubs.createRequest("If-None-Match", eTag));
+		assertEquals("status", HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals("no content", 0, response.getContent().length);
+
+		GenericValue imageDataResource = EntityQuery.use(delegator).from("ImageDataResource").where("dataResourceId", DATA_RESOURCE_ID).queryOne();
+		imageDataResource.store();
+		response = stream(HttpServletStubs.createRequest("If-None-Match", eTag));
+		assertEquals("status of a stored data", HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("stored data", "0123456789", new String(response.getContent()));
+	}
+
+	public void testStreamReleasesConnection() throws Exception {
+		ConnectionPoolMonitor monitor = getPoolMonitor();
+		assertNotNull("pool monitor", monitor);
+		int numActive = monitor.getNumActive();
+		Map<String, Object> resourceData = DataResourceWorker.getDataResourceStream(getDataResource(), "false", null, null, null, false);
+		try (InputStream stream = (InputStream) resourceData.get("stream")) {
+			assertEquals("connection held by the open stream", numActive + 1, monitor.getNumActive());
+			assertEquals("first byte", '0', stream.read());
+		}
+		assertEquals("connection released by the closed stream", numActive, monitor.getNumActive());
+
+		// the stream is closed by the response even when nothing is sent
+		stream(HttpServletStubs.createRequest("Range", "bytes=10-"));
+		assertEquals("connection released after a range not satisfiable", numActive, monitor.getNumActive());
+
+		assertEquals("content read at once", "0123456789",
+				new String(DataResourceWorker.getContentAsByteBuffer(delegator, DATA_RESOURCE_ID, "false", null, null, null).array()));
+		assertEquals("connection released after the content is read at once", numActive, monitor.getNumActive());
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.bom;
+
+import org.apache.ofbiz.entity.GenericValue;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The immutable, flattened multi-level explosion of a product's bill of materials,
+ * as returned by {@link BOMExplosionCache}.
+ * <p>The components are listed depth first, in the order of the bill of materials
+ * (sequenceNum, productIdTo), the quantity of each component is the cumulative
+ * quantity (quantities and scrap factors of all the levels) needed to build one
+ * unit of the exploded product. Unlike {@link BOMTree} the bill of materials is
+ * not configured: virtual components are not substituted and the quantity formulas
+ * (estimateCalcMethod) are not run.</p>
+ */
+public final class BOMExplosion {
+
+	private final String productId;
+	private final String bomTypeId;
+	private final List<Component> components;
+	private final Set<String> dependencies;
+	private final long validFrom;
+	private final long validThru;
+	private final long version;
+
+	BOMExplosion(String productId, String bomTypeId, List<Component> components, Set<String> dependencies, long validFrom, long validThru, long version) {
+		this.productId = productId;
+		this.bomTypeId = bomTypeId;
+		this.components = Collections.unmodifiableList(components);
+		this.dependencies = Collections.unmodifiableSet(dependencies);
+		this.validFrom = validFrom;
+		this.validThru = validThru;
+		this.version = version;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getBomTypeId() {
+		return bomTypeId;
+	}
+
+	/** Returns the components of all the levels, depth first. */
+	public List<Component> getComponents() {
+		return components;
+	}
+
+	/** Returns the ids of the products whose ProductAssoc records were read to build this explosion. */
+	public Set<String> getDependencies() {
+		return dependencies;
+	}
+
+	/** Returns <code>true</code> if the explosion is the same for the given date. */
+	public boolean isValid(long date) {
+		return date >= validFrom && date < validThru;
+	}
+
+	long getValidFrom() {
+		return validFrom;
+	}
+
+	long getValidThru() {
+		return validThru;
+	}
+
+	/** Returns the version of the {@link BOMExplosionCache} when this explosion was built. */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the total quantity of each component needed to build the given quantity of the product,
+	 * components found at more than one place in the bill of materials are summed up.
+	 *
+	 * @param quantity The quantity of the exploded product
+	 * @param leavesOnly If <code>true</code> only the components without a bill of materials are returned
+	 */
+	public Map<String, BigDecimal> getComponentQuantities(BigDecimal quantity, boolean leavesOnly) {
+		Map<String, BigDecimal> quantities = new LinkedHashMap<String, BigDecimal>();
+		for (Component component : components) {
+			if (leavesOnly && !component.isLeaf()) {
+				continue;
+			}
+			BigDecimal componentQuantity = component.getQuantity().multiply(quantity);
+			BigDecimal total = quantities.get(component.getProductId());
+			quantities.put(component.getProductId(), total == null ? componentQuantity : total.add(componentQuantity));
+		}
+		return quantities;
+	}
+
+	@Override
+	public String toString() {
+		return "BOMExplosion[" + productId + ", " + bomTypeId + ", " + components.size() + " components]";
+	}
+
+	/**
+	 * A component of a flattened bill of materials.
+	 */
+	public static final class Component {
+		private final GenericValue productAssoc;
+		private final String productId;
+		private final String parentProductId;
+		private final Timestamp fromDate;
+		private final String routingWorkEffortId;
+		private final int level;
+		private final BigDecimal quantity;
+		private final boolean leaf;
+
+		Component(GenericValue productAssoc, int level, BigDecimal quantity, boolean leaf) {
+			this.productAssoc = productAssoc;
+			this.productId = productAssoc.getString("productIdTo");
+			this.parentProductId = productAssoc.getString("productId");
+			this.fromDate = productAssoc.getTimestamp("fromDate");
+			this.routingWorkEffortId = productAssoc.getString("routingWorkEffortId");
+			this.level = level;
+			this.quantity = quantity;
+			this.leaf = leaf;
+		}
+
+		public String getProductId() {
+			return productId;
+		}
+
+		/** Returns the ProductAssoc record of this component, it is shared by the cached explosions and immutable. */
+		public GenericValue getProductAssoc() {
+			return productAssoc;
+		}
+
+		/** Returns the productId of the ProductAssoc record of this component. */
+		public String getParentProductId() {
+			return parentProductId;
+		}
+
+		/** Returns the fromDate of the ProductAssoc record of this component. */
+		public Timestamp getFromDate() {
+			return fromDate == null ? null : (Timestamp) fromDate.clone();
+		}
+
+		public String getRoutingWorkEffortId() {
+			return routingWorkEffortId;
+		}
+
+		/** Returns the level of the component, the direct components of the exploded product are at level 1. */
+		public int getLevel() {
+			return level;
+		}
+
+		/** Returns the quantity needed to build one unit of the exploded product. */
+		public BigDecimal getQuantity() {
+			return quantity;
+		}
+
+		/** Returns <code>true</code> if the component has no bill of materials. */
+		public boolean isLeaf() {
+			return leaf;
+		}
+
+		Component atLevel(int levelOffset, BigDecimal quantityMultiplier) {
+			return new Component(productAssoc, level + levelOffset, quantity.multiply(quantityMultiplier), leaf);
+		}
+
+		@Override
+		public String toString() {
+			return productId + "[" + level + "]x" + quantity;
+		}
+	}
+}
@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.bom;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the multi-level explosions of the products' bills of materials.
+ * <p>The explosions are cached by product, bill of materials type and day, an explosion
+ * is only returned for a date at which the ProductAssoc records it was built from are
+ * all either active or inactive. The explosions of many products are built together,
+ * reading the ProductAssoc records of a whole bill of materials level with one query.</p>
+ * <p>The cached explosions are removed by the <code>clearBOMExplosionCache</code> service,
+ * called by an entity ECA when a ProductAssoc record is created, updated or removed: only
+ * the explosions that were built from the ProductAssoc records of the product are removed.
+ * ProductAssoc records removed in bulk (e.g. with removeByAnd) are not seen by the entity
+ * ECAs, the cache has then to be cleared with {@link #clear()}.</p>
+ */
+public final class BOMExplosionCache {
+
+	public static final String module = BOMExplosionCache.class.getName();
+
+	private static final UtilCache<String, BOMExplosion> explosionCache = UtilCache.createUtilCache("manufacturing.BOMExplosion", true);
+	private static final AtomicLong version = new AtomicLong();
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final int MAX_IN_CONDITION_SIZE = 500;
+
+	private BOMExplosionCache() {
+	}
+
+	/**
+	 * Returns the explosion of the product's bill of materials.
+	 *
+	 * @param delegator The delegator used
+	 * @param productId The product id
+	 * @param bomTypeId The bill of materials type (e.g. MANUF_COMPONENT)
+	 * @param inDate Validity date (if null, now is used)
+	 * @return the explosion, with no components if the product has no bill of materials
+	 * @throws GenericEntityException if a db problem occurs or if the bill of materials contains a loop
+	 */
+	public static BOMExplosion getExplosion(Delegator delegator, String productId, String bomTypeId, Date inDate) throws GenericEntityException {
+		return getExplosions(delegator, Collections.singletonList(productId), bomTypeId, inDate).get(productId);
+	}
+
+	/**
+	 * Returns the explosions of the bills of materials of many products, the ProductAssoc
+	 * records of the products that are not cached are read one level at a time.
+	 * If a product has no bill of materials of the given type, the bill of materials of
+	 * its virtual product is used, as in {@link BOMTree}.
+	 *
+	 * @param delegator The delegator used
+	 * @param productIds The product ids
+	 * @param bomTypeId The bill of materials type (e.g. MANUF_COMPONENT)
+	 * @param inDate Validity date (if null, now is used)
+	 * @return the explosions by product id, in the order of productIds
+	 * @throws GenericEntityException if a db problem occurs or if a bill of materials contains a loop
+	 */
+	public static Map<String, BOMExplosion> getExplosions(Delegator delegator, Collection<String> productIds, String bomTypeId, Date inDate) throws GenericEntityException {
+		long date = inDate == null ? System.currentTimeMillis() : inDate.getTime();
+		Builder builder = new Builder(delegator, bomTypeId, date);
+		Map<String, BOMExplosion> explosions = new LinkedHashMap<String, BOMExplosion>();
+		List<String> missingProductIds = new LinkedList<String>();
+		for (String productId : productIds) {
+			BOMExplosion explosion = getCached(getRootKey(productId, bomTypeId, date), date);
+			if (explosion != null) {
+				explosions.put(productId, explosion);
+			} else {
+				missingProductIds.add(productId);
+			}
+		}
+		if (missingProductIds.isEmpty()) {
+			return explosions;
+		}
+		builder.load(missingProductIds);
+		// the products without bill of materials are exploded thru their virtual product
+		Map<String, List<GenericValue>> variantAssocs = builder.loadVirtualProducts(missingProductIds);
+		for (String productId : missingProductIds) {
+			List<GenericValue> virtualAssocs = variantAssocs.get(productId);
+			BOMExplosion explosion = virtualAssocs == null ? builder.build(productId) : builder.buildFromVirtual(productId, virtualAssocs);
+			putCached(getRootKey(productId, bomTypeId, date), explosion);
+			explosions.put(productId, explosion);
+		}
+		return explosions;
+	}
+
+	/**
+	 * Returns the ProductAssoc records of the first level of the product's own bill of materials,
+	 * in the order of sequenceNum and productIdTo, as read from its cached explosion: the bill of
+	 * materials of the virtual product is not used. This is how {@link BOMNode} reads the components
+	 * of each level of a {@link BOMTree}.
+	 *
+	 * @param delegator The delegator used
+	 * @param productId The product id
+	 * @param bomTypeId The bill of materials type (e.g. MANUF_COMPONENT)
+	 * @param inDate Validity date (if null, now is used)
+	 * @return the immutable ProductAssoc records active at the date
+	 * @throws GenericEntityException if a db problem occurs or if the bill of materials contains a loop
+	 */
+	public static List<GenericValue> getComponentAssocs(Delegator delegator, String productId, String bomTypeId, Date inDate) throws GenericEntityException {
+		long date = inDate == null ? System.currentTimeMillis() : inDate.getTime();
+		BOMExplosion explosion = getCached(getKey(productId, bomTypeId, date), date);
+		if (explosion == null) {
+			Builder builder = new Builder(delegator, bomTypeId, date);
+			builder.load(Collections.singletonList(productId));
+			explosion = builder.build(productId);
+		}
+		List<GenericValue> componentAssocs = new LinkedList<GenericValue>();
+		for (BOMExplosion.Component component : explosion.getComponents()) {
+			if (component.getLevel() == 1) {
+				componentAssocs.add(component.getProductAssoc());
+			}
+		}
+		return componentAssocs;
+	}
+
+	/**
+	 * Removes the cached explosions built from the ProductAssoc records of the given product.
+	 *
+	 * @param productId The productId of the changed ProductAssoc record
+	 * @param productIdTo The productIdTo of the changed ProductAssoc record
+	 * @param productAssocTypeId The type of the changed ProductAssoc record, if null the explosions of all the types are removed
+	 */
+	public static void clearProduct(String productId, String productIdTo, String productAssocTypeId) {
+		version.incrementAndGet();
+		// a variant uses the bill of materials of its virtual product
+		boolean variantAssoc = "PRODUCT_VARIANT".equals(productAssocTypeId);
+		String dependency = variantAssoc ? productIdTo : productId;
+		int removed = 0;
+		for (String key : new ArrayList<String>(explosionCache.getCacheLineKeys())) {
+			BOMExplosion explosion = explosionCache.get(key);
+			if (explosion == null) {
+				continue;
+			}
+			if (!variantAssoc && productAssocTypeId != null && !productAssocTypeId.equals(explosion.getBomTypeId())) {
+				continue;
+			}
+			if (explosion.getDependencies().contains(dependency)) {
+				explosionCache.remove(key);
+				removed++;
+			}
+		}
+		if (Debug.verboseOn()) {
+			Debug.logVerbose("Removed " + removed + " cached BOM explosions for product [" + dependency + "]", module);
+		}
+	}
+
+	/** Removes all the cached explosions. */
+	public static void clear() {
+		version.incrementAndGet();
+		explosionCache.clear();
+	}
+
+	private static String getKey(String productId, String bomTypeId, long date) {
+		return productId + "::" + bomTypeId + "::" + (date / DAY_MILLIS);
+	}
+
+	/** The explosions requested for a product, that can use the bill of materials of its virtual product, are cached separately. */
+	private static String getRootKey(String productId, String bomTypeId, long date) {
+		return getKey(productId, bomTypeId, date) + "::root";
+	}
+
+	private static BOMExplosion getCached(String key, long date) {
+		BOMExplosion explosion = explosionCache.get(key);
+		return explosion != null && explosion.isValid(date) ? explosion : null;
+	}
+
+	private static void putCached(String key, BOMExplosion explosion) {
+		explosionCache.put(key, explosion);
+		// a ProductAssoc record changed while the explosion was built: it may be out of date
+		if (version.get() != explosion.getVersion()) {
+			explosionCache.remove(key);
+		}
+	}
+
+	/**
+	 * Reads the ProductAssoc records and builds the explosions of one call.
+	 */
+	private static final class Builder {
+		private final Delegator delegator;
+		private final String bomTypeId;
+		private final long date;
+		private final long buildVersion;
+		private final Map<String, List<GenericValue>> assocsByProduct = new HashMap<String, List<GenericValue>>();
+		private final Map<String, BOMExplosion> explosions = new HashMap<String, BOMExplosion>();
+		private final Set<String> inProgress = new HashSet<String>();
+
+		private Builder(Delegator delegator, String bomTypeId, long date) {
+			this.delegator = delegator;
+			this.bomTypeId = bomTypeId;
+			this.date = date;
+			this.buildVersion = version.get();
+		}
+
+		/** Reads the ProductAssoc records of the products and of their components, level by level. */
+		private void load(Collection<String> productIds) throws GenericEntityException {
+			Set<String> level = new LinkedHashSet<String>(productIds);
+			while (!level.isEmpty()) {
+				for (List<String> chunk : split(level)) {
+					List<GenericValue> assocs = EntityQuery.use(delegator).from("ProductAssoc")
+							.where(EntityCondition.makeCondition("productId", EntityOperator.IN, chunk),
+									EntityCondition.makeCondition("productAssocTypeId", bomTypeId))
+							.orderBy("sequenceNum", "productIdTo").queryList();
+					for (String productId : chunk) {
+						assocsByProduct.put(productId, new LinkedList<GenericValue>());
+					}
+					for (GenericValue assoc : assocs) {
+						assocsByProduct.get(assoc.getString("productId")).add(assoc);
+					}
+				}
+				Set<String> nextLevel = new LinkedHashSet<String>();
+				for (String productId : level) {
+					for (GenericValue assoc : assocsByProduct.get(productId)) {
+						String componentId = assoc.getString("productIdTo");
+						if (!isActive(assoc) || assocsByProduct.containsKey(componentId) || explosions.containsKey(componentId)) {
+							continue;
+						}
+						BOMExplosion explosion = getCached(getKey(componentId, bomTypeId, date), date);
+						if (explosion != null) {
+							explosions.put(componentId, explosion);
+						} else {
+							nextLevel.add(componentId);
+						}
+					}
+				}
+				level = nextLevel;
+			}
+		}
+
+		/** Returns the PRODUCT_VARIANT records of the products that have no bill of materials and are variants. */
+		private Map<String, List<GenericValue>> loadVirtualProducts(Collection<String> productIds) throws GenericEntityException {
+			List<String> productIdsWithoutBom = new LinkedList<String>();
+			for (String productId : productIds) {
+				if (getActiveAssocs(productId).isEmpty()) {
+					productIdsWithoutBom.add(productId);
+				}
+			}
+			Map<String, List<GenericValue>> variantAssocs = new HashMap<String, List<GenericValue>>();
+			for (List<String> chunk : split(productIdsWithoutBom)) {
+				List<GenericValue> assocs = EntityQuery.use(delegator).from("ProductAssoc")
+						.where(EntityCondition.makeCondition("productIdTo", EntityOperator.IN, chunk),
+								EntityCondition.makeCondition("productAssocTypeId", "PRODUCT_VARIANT"))
+						.queryList();
+				for (GenericValue assoc : assocs) {
+					List<GenericValue> productAssocs = variantAssocs.get(assoc.getString("productIdTo"));
+					if (productAssocs == null) {
+						productAssocs = new LinkedList<GenericValue>();
+						variantAssocs.put(assoc.getString("productIdTo"), productAssocs);
+					}
+					productAssocs.add(assoc);
+				}
+			}
+			List<String> virtualProductIds = new LinkedList<String>();
+			for (List<GenericValue> assocs : variantAssocs.values()) {
+				GenericValue virtualAssoc = getFirstActive(assocs);
+				if (virtualAssoc != null && !assocsByProduct.containsKey(virtualAssoc.getString("productId"))) {
+					virtualProductIds.add(virtualAssoc.getString("productId"));
+				}
+			}
+			if (!virtualProductIds.isEmpty()) {
+				load(virtualProductIds);
+			}
+			return variantAssocs;
+		}
+
+		private BOMExplosion build(String productId) throws GenericEntityException {
+			BOMExplosion explosion = explosions.get(productId);
+			if (explosion != null) {
+				return explosion;
+			}
+			if (!inProgress.add(productId)) {
+				throw new GenericEntityException("The bill of materials of type [" + bomTypeId + "] of product [" + productId + "] contains a loop");
+			}
+			List<GenericValue> assocs = assocsByProduct.get(productId);
+			if (assocs == null) {
+				// the product was not a component at the date used to load the ProductAssoc records
+				load(Collections.singletonList(productId));
+				assocs = assocsByProduct.get(productId);
+			}
+			long[] window = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
+			List<BOMExplosion.Component> components = new ArrayList<BOMExplosion.Component>();
+			Set<String> dependencies = new HashSet<String>();
+			dependencies.add(productId);
+			for (GenericValue assoc : assocs) {
+				narrowWindow(window, assoc);
+				if (!isActive(assoc)) {
+					continue;
+				}
+				String componentId = assoc.getString("productIdTo");
+				BOMExplosion componentExplosion = build(componentId);
+				BigDecimal quantity = getQuantity(assoc);
+				// shared by the cached explosions and the bills of materials trees reading them
+				assoc.setImmutable();
+				components.add(new BOMExplosion.Component(assoc, 1, quantity, componentExplosion.getComponents().isEmpty()));
+				for (BOMExplosion.Component component : componentExplosion.getComponents()) {
+					components.add(component.atLevel(1, quantity));
+				}
+				dependencies.addAll(componentExplosion.getDependencies());
+				narrowWindow(window, componentExplosion);
+			}
+			inProgress.remove(productId);
+			explosion = new BOMExplosion(productId, bomTypeId, components, dependencies, window[0], window[1], buildVersion);
+			explosions.put(productId, explosion);
+			putCached(getKey(productId, bomTypeId, date), explosion);
+			return explosion;
+		}
+
+		private BOMExplosion buildFromVirtual(String productId, List<GenericValue> variantAssocs) throws GenericEntityException {
+			long[] window = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
+			for (GenericValue assoc : assocsByProduct.get(productId)) {
+				narrowWindow(window, assoc);
+			}
+			for (GenericValue assoc : variantAssocs) {
+				narrowWindow(window, assoc);
+			}
+			GenericValue virtualAssoc = getFirstActive(variantAssocs);
+			BOMExplosion bomExplosion = build(virtualAssoc != null ? virtualAssoc.getString("productId") : productId);
+			narrowWindow(window, bomExplosion);
+			Set<String> dependencies = new HashSet<String>(bomExplosion.getDependencies());
+			dependencies.add(productId);
+			return new BOMExplosion(productId, bomTypeId, new ArrayList<BOMExplosion.Component>(bomExplosion.getComponents()),
+					dependencies, window[0], window[1], buildVersion);
+		}
+
+		private List<GenericValue> getActiveAssocs(String productId) {
+			List<GenericValue> activeAssocs = new LinkedList<GenericValue>();
+			for (GenericValue assoc : assocsByProduct.get(productId)) {
+				if (isActive(assoc)) {
+					activeAssocs.add(assoc);
+				}
+			}
+			return activeAssocs;
+		}
+
+		private GenericValue getFirstActive(List<GenericValue> assocs) {
+			for (GenericValue assoc : assocs) {
+				if (isActive(assoc)) {
+					return assoc;
+				}
+			}
+			return null;
+		}
+
+		private boolean isActive(GenericValue assoc) {
+			Timestamp fromDate = assoc.getTimestamp("fromDate");
+			Timestamp thruDate = assoc.getTimestamp("thruDate");
+			return (fromDate == null || fromDate.getTime() <= date) && (thruDate == null || thruDate.getTime() > date);
+		}
+
+		/** Narrows the validity window of an explosion to the dates at which the record stays active or inactive. */
+		private void narrowWindow(long[] window, GenericValue assoc) {
+			for (String dateField : new String[] {"fromDate", "thruDate"}) {
+				Timestamp timestamp = assoc.getTimestamp(dateField);
+				if (timestamp == null) {
+					continue;
+				}
+				if (timestamp.getTime() <= date) {
+					window[0] = Math.max(window[0], timestamp.getTime());
+				} else {
+					window[1] = Math.min(window[1], timestamp.getTime());
+				}
+			}
+		}
+
+		private void narrowWindow(long[] window, BOMExplosion componentExplosion) {
+			window[0] = Math.max(window[0], componentExplosion.getValidFrom());
+			window[1] = Math.min(window[1], componentExplosion.getValidThru());
+		}
+
+		private static BigDecimal getQuantity(GenericValue assoc) {
+			BigDecimal quantity = assoc.getBigDecimal("quantity");
+			if (quantity == null) {
+				quantity = BigDecimal.ONE;
+			}
+			// see BOMNode: a negative scrap factor is a salvage factor
+			BigDecimal percScrapFactor = assoc.getBigDecimal("scrapFactor");
+			if (percScrapFactor != null) {
+				BigDecimal bdHundred = new BigDecimal("100");
+				if (percScrapFactor.compareTo(bdHundred.negate()) > 0 && percScrapFactor.compareTo(bdHundred) < 0) {
+					quantity = quantity.multiply(BigDecimal.ONE.add(percScrapFactor.movePointLeft(2)));
+				} else {
+					Debug.logWarning("A scrap factor of [" + percScrapFactor + "] was ignored", module);
+				}
+			}
+			return quantity;
+		}
+
+		private static List<List<String>> split(Collection<String> productIds) {
+			List<List<String>> chunks = new LinkedList<List<String>>();
+			List<String> chunk = new ArrayList<String>();
+			for (String productId : productIds) {
+				chunk.add(productId);
+				if (chunk.size() == MAX_IN_CONDITION_SIZE) {
+					chunks.add(chunk);
+					chunk = new ArrayList<String>();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				chunks.add(chunk);
+			}
+			return chunks;
+		}
+	}
+}
@@ -30,6 +30,7 @@ import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -111,8 +112,10 @@ public final class BOMHelper {
 		// If the date is null, set it to today.
 		if (inDate == null) inDate = new Date();
 		if (productIdKeys == null) {
-			BOMTree tree = new BOMTree(productIdKey, bomType, inDate, delegator, dispatcher, userLogin);
-			productIdKeys = tree.getAllProductsId();
+			productIdKeys = new LinkedList<String>();
+			for (BOMExplosion.Component component : BOMExplosionCache.getExplosion(delegator, productIdKey, bomType, inDate).getComponents()) {
+				productIdKeys.add(component.getProductId());
+			}
 			productIdKeys.add(productIdKey);
 		}
 		List<GenericValue> productNodesList = EntityQuery.use(delegator).from("ProductAssoc")
@@ -88,19 +88,12 @@ public class BOMNode {
 		// If the date is null, set it to today.
 		if (inDate == null) inDate = new Date();
 		bomTypeId = partBomTypeId;
-		List<GenericValue> rows = EntityQuery.use(delegator).from("ProductAssoc")
-				.where("productId", product.get("productId"),
-						"productAssocTypeId", partBomTypeId)
-				.orderBy("sequenceNum", "productIdTo")
-				.filterByDate(inDate).queryList();
+		// the components are read from the cached explosion of the product's bill of materials
+		List<GenericValue> rows = BOMExplosionCache.getComponentAssocs(delegator, product.getString("productId"), partBomTypeId, inDate);
 		if ((UtilValidate.isEmpty(rows)) && substitutedNode != null) {
 			// If no child is found and this is a substituted node
 			// we try to search for substituted node's children.
-			rows = EntityQuery.use(delegator).from("ProductAssoc")
-					.where("productId", substitutedNode.getProduct().get("productId"),
-							"productAssocTypeId", partBomTypeId)
-					.orderBy("sequenceNum")
-					.filterByDate(inDate).queryList();
+			rows = BOMExplosionCache.getComponentAssocs(delegator, substitutedNode.getProduct().getString("productId"), partBomTypeId, inDate);
 		}
 		children = new LinkedList<GenericValue>();
 		children.addAll(rows);
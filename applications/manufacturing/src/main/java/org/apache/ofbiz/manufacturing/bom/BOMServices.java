@@ -421,6 +421,51 @@ public class BOMServices {
 		return result;
 	}
 
+	/**
+	 * Returns the cached explosions of the bills of materials of many products,
+	 * see {@link BOMExplosionCache}.
+	 *
+	 * @param dctx    the dispatch context
+	 * @param context the context
+	 * @return the explosions ({@link BOMExplosion}) by product id
+	 */
+	public static Map<String, Object> getBOMExplosions(DispatchContext dctx, Map<String, ? extends Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		List<String> productIds = UtilGenerics.checkList(context.get("productIds"));
+		String bomType = (String) context.get("bomType");
+		Timestamp fromDate = (Timestamp) context.get("fromDate");
+		Locale locale = (Locale) context.get("locale");
+
+		Map<String, BOMExplosion> explosions = null;
+		try {
+			explosions = BOMExplosionCache.getExplosions(delegator, productIds, bomType, fromDate);
+		} catch (GenericEntityException gee) {
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingBomErrorCreatingBillOfMaterialsTree", UtilMisc.toMap("errorString", gee.getMessage()), locale));
+		}
+		Map<String, Object> result = ServiceUtil.returnSuccess();
+		result.put("explosions", explosions);
+		return result;
+	}
+
+	/**
+	 * Removes the cached bill of materials explosions that depend on a changed ProductAssoc record.
+	 *
+	 * @param dctx    the dispatch context
+	 * @param context the context
+	 * @return the result of the service execution
+	 */
+	public static Map<String, Object> clearBOMExplosionCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+		String productId = (String) context.get("productId");
+		String productIdTo = (String) context.get("productIdTo");
+		String productAssocTypeId = (String) context.get("productAssocTypeId");
+		if (productId == null && productIdTo == null) {
+			BOMExplosionCache.clear();
+		} else {
+			BOMExplosionCache.clearProduct(productId, productIdTo, productAssocTypeId);
+		}
+		return ServiceUtil.returnSuccess();
+	}
+
 	public static Map<String, Object> getNotAssembledComponents(DispatchContext dctx, Map<String, ? extends Object> context) {
 		Map<String, Object> result = new HashMap<String, Object>();
 		Delegator delegator = dctx.getDelegator();
@@ -125,7 +125,7 @@ public class BOMTree {
 		// If the product hasn't a bill of materials we try to retrieve
 		// the bill of materials of its virtual product (if the current
 		// product is variant).
-		if (!hasBom(product, inDate)) {
+		if (!hasBom(product, bomTypeId, inDate)) {
 			List<GenericValue> virtualProducts = product.getRelated("AssocProductAssoc", UtilMisc.toMap("productAssocTypeId", "PRODUCT_VARIANT"), null, false);
 			virtualProducts = EntityUtil.filterByDate(virtualProducts, inDate);
 			GenericValue virtualProduct = EntityUtil.getFirst(virtualProducts);
@@ -170,10 +170,8 @@ public class BOMTree {
 				.filterByDate(inDate).queryFirst();
 	}
 
-	private boolean hasBom(GenericValue product, Date inDate) throws GenericEntityException {
-		List<GenericValue> children = product.getRelated("MainProductAssoc", UtilMisc.toMap("productAssocTypeId", bomTypeId), null, false);
-		children = EntityUtil.filterByDate(children, inDate);
-		return UtilValidate.isNotEmpty(children);
+	private boolean hasBom(GenericValue product, String bomTypeId, Date inDate) throws GenericEntityException {
+		return UtilValidate.isNotEmpty(BOMExplosionCache.getComponentAssocs(delegator, product.getString("productId"), bomTypeId, inDate));
 	}
 
 	/**
@@ -0,0 +1,620 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.mrp;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.manufacturing.bom.BOMExplosionCache;
+import org.apache.ofbiz.manufacturing.bom.BOMNode;
+import org.apache.ofbiz.manufacturing.bom.BOMTree;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * In-memory MRP planning engine, used by the executeMrp service when the <code>inMemory</code> parameter is set.
+ * <p>The MRP events created by initMrpEvents, the ProductFacility records and the quantities on hand of the
+ * facility are loaded once, the MRP events are then kept in memory for the whole run.
+ * The products are netted one bill of materials level (low-level code) at a time: the requirements of the
+ * products of a level are netted in parallel, from the data kept in memory only. The calling thread then explodes
+ * the bill of materials of each product once, for all its proposed orders, reads the routings and writes the
+ * requirements and the MRP events of the level in batches, in product order, before the next level is planned.
+ * The services are only called by the calling thread, in its transaction.</p>
+ * <p>The netting rules are the ones of {@link MrpServices#executeMrp(DispatchContext, Map)}.</p>
+ */
+public class MrpPlanner {
+
+	public static final String module = MrpPlanner.class.getName();
+	public static final String resource = "ManufacturingUiLabels";
+
+	private final DispatchContext dctx;
+	private final Delegator delegator;
+	private final LocalDispatcher dispatcher;
+	private final GenericValue userLogin;
+	private final Locale locale;
+	private final String mrpId;
+	private final String mrpName;
+	private final String facilityId;
+	private final String manufacturingFacilityId;
+	private final Timestamp now;
+
+	private final Map<String, PlannedProduct> plannedProducts = new HashMap<String, PlannedProduct>();
+	private final List<MrpEventRecord> modifiedEvents = new LinkedList<MrpEventRecord>();
+	private final Map<String, GenericValue> productFacilities = new HashMap<String, GenericValue>();
+	private final Map<String, BigDecimal> quantitiesOnHand = new HashMap<String, BigDecimal>();
+	private final Set<String> productsWithBom = new HashSet<String>();
+
+	public MrpPlanner(DispatchContext dctx, GenericValue userLogin, Locale locale, String mrpId, String mrpName, String facilityId, String manufacturingFacilityId, Timestamp now) {
+		this.dctx = dctx;
+		this.delegator = dctx.getDelegator();
+		this.dispatcher = dctx.getDispatcher();
+		this.userLogin = userLogin;
+		this.locale = locale;
+		this.mrpId = mrpId;
+		this.mrpName = mrpName;
+		this.facilityId = facilityId;
+		this.manufacturingFacilityId = manufacturingFacilityId;
+		this.now = now;
+	}
+
+	/**
+	 * Plans the MRP events of the mrpId, level by level, until 3 levels in a row have no events.
+	 *
+	 * @throws GeneralException if the planning data cannot be read or a product cannot be exploded,
+	 *                          the message is localized and can be returned to the caller of the service
+	 */
+	public void run() throws GeneralException {
+		long startTime = System.currentTimeMillis();
+		loadEvents();
+		loadProductFacilities();
+		loadQuantitiesOnHand();
+		loadProductsWithBom();
+		if (Debug.infoOn()) {
+			Debug.logInfo("MRP [" + mrpId + "] loaded " + plannedProducts.size() + " products with events in " + (System.currentTimeMillis() - startTime) + " ms", module);
+		}
+		int bomLevelWithNoEvent = 0;
+		long bomLevel = 0;
+		do {
+			List<PlannedProduct> levelProducts = getLevelProducts(bomLevel);
+			if (levelProducts.isEmpty()) {
+				bomLevelWithNoEvent += 1;
+			} else {
+				bomLevelWithNoEvent = 0;
+				long levelStartTime = System.currentTimeMillis();
+				writePlans(planLevel(levelProducts));
+				if (Debug.infoOn()) {
+					Debug.logInfo("MRP [" + mrpId + "] planned " + levelProducts.size() + " products of level " + bomLevel + " in " + (System.currentTimeMillis() - levelStartTime) + " ms", module);
+				}
+			}
+			bomLevel += 1;
+			// if there are 3 levels with no events we stop
+		} while (bomLevelWithNoEvent < 3);
+		if (Debug.infoOn()) {
+			Debug.logInfo("MRP [" + mrpId + "] completed in " + (System.currentTimeMillis() - startTime) + " ms", module);
+		}
+	}
+
+	private void loadEvents() throws GeneralException {
+		try (EntityListIterator eli = EntityQuery.use(delegator).from("MrpEventView").where("mrpId", mrpId).queryIterator()) {
+			GenericValue mrpEvent;
+			while ((mrpEvent = eli.next()) != null) {
+				if (mrpEvent.get("quantity") == null) {
+					// error events have no quantity, they are not netted
+					continue;
+				}
+				Long billOfMaterialLevel = mrpEvent.getLong("billOfMaterialLevel");
+				PlannedProduct plannedProduct = getPlannedProduct(mrpEvent.getString("productId"), billOfMaterialLevel);
+				MrpEventRecord record = new MrpEventRecord(plannedProduct.productId, mrpEvent.getTimestamp("eventDate"), mrpEvent.getString("mrpEventTypeId"));
+				record.quantity = mrpEvent.getDouble("quantity").doubleValue();
+				record.facilityId = mrpEvent.getString("facilityId");
+				record.eventName = mrpEvent.getString("eventName");
+				record.isLate = "Y".equals(mrpEvent.getString("isLate"));
+				plannedProduct.events.put(record, record);
+			}
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpEventFindError", locale), e);
+		}
+	}
+
+	private void loadProductFacilities() throws GeneralException {
+		try (EntityListIterator eli = EntityQuery.use(delegator).from("ProductFacility").where("facilityId", facilityId).queryIterator()) {
+			GenericValue productFacility;
+			while ((productFacility = eli.next()) != null) {
+				productFacilities.put(productFacility.getString("productId"), productFacility);
+			}
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpEventFindError", locale), e);
+		}
+	}
+
+	/**
+	 * Sums the quantity on hand of the facility per product, selecting the inventory items
+	 * the same way as the getInventoryAvailableByFacility service.
+	 */
+	private void loadQuantitiesOnHand() throws GeneralException {
+		try (EntityListIterator eli = EntityQuery.use(delegator)
+				.select("productId", "statusId", "inventoryItemTypeId", "quantityOnHandTotal")
+				.from("InventoryItem").where("facilityId", facilityId).queryIterator()) {
+			GenericValue inventoryItem;
+			while ((inventoryItem = eli.next()) != null) {
+				String statusId = inventoryItem.getString("statusId");
+				if (UtilValidate.isEmpty(statusId) || "INV_AVAILABLE".equals(statusId) || "INV_NS_RETURNED".equals(statusId)
+						|| "SERIALIZED_INV_ITEM".equals(inventoryItem.getString("inventoryItemTypeId"))) {
+					BigDecimal quantityOnHand = inventoryItem.getBigDecimal("quantityOnHandTotal");
+					if (quantityOnHand != null) {
+						String productId = inventoryItem.getString("productId");
+						BigDecimal total = quantitiesOnHand.get(productId);
+						quantitiesOnHand.put(productId, total == null ? quantityOnHand : total.add(quantityOnHand));
+					}
+				}
+			}
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpEventFindError", locale), e);
+		}
+	}
+
+	/**
+	 * Loads the products that may have a manufacturing bill of materials: the products with components, the products
+	 * manufactured as another product and the variant products (that can use the bill of materials of their virtual product).
+	 * The other products are bought and are planned without running the BOM explosion.
+	 */
+	private void loadProductsWithBom() throws GeneralException {
+		try (EntityListIterator eli = EntityQuery.use(delegator).select("productId", "productIdTo", "productAssocTypeId").from("ProductAssoc")
+				.where(EntityCondition.makeCondition("productAssocTypeId", EntityOperator.IN, UtilMisc.toList("MANUF_COMPONENT", "PRODUCT_MANUFACTURED", "PRODUCT_VARIANT")))
+				.distinct().queryIterator()) {
+			GenericValue productAssoc;
+			while ((productAssoc = eli.next()) != null) {
+				if ("PRODUCT_VARIANT".equals(productAssoc.getString("productAssocTypeId"))) {
+					productsWithBom.add(productAssoc.getString("productIdTo"));
+				} else {
+					productsWithBom.add(productAssoc.getString("productId"));
+				}
+			}
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpEventFindError", locale), e);
+		}
+	}
+
+	private PlannedProduct getPlannedProduct(String productId, Long billOfMaterialLevel) {
+		PlannedProduct plannedProduct = plannedProducts.get(productId);
+		if (plannedProduct == null) {
+			plannedProduct = new PlannedProduct(productId, billOfMaterialLevel == null ? 0 : billOfMaterialLevel.longValue());
+			plannedProducts.put(productId, plannedProduct);
+		}
+		return plannedProduct;
+	}
+
+	private List<PlannedProduct> getLevelProducts(long bomLevel) {
+		List<PlannedProduct> levelProducts = new ArrayList<PlannedProduct>();
+		for (PlannedProduct plannedProduct : plannedProducts.values()) {
+			if (plannedProduct.billOfMaterialLevel == bomLevel && !plannedProduct.events.isEmpty()) {
+				levelProducts.add(plannedProduct);
+			}
+		}
+		Collections.sort(levelProducts);
+		return levelProducts;
+	}
+
+	private List<ProductPlan> planLevel(List<PlannedProduct> levelProducts) throws GeneralException {
+		List<Future<ProductPlan>> futures = new ArrayList<Future<ProductPlan>>(levelProducts.size());
+		for (PlannedProduct plannedProduct : levelProducts) {
+			// the events added while the level is planned are not netted, as in executeMrp
+			futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createNettingCallable(plannedProduct.productId, new ArrayList<MrpEventRecord>(plannedProduct.events.values()))));
+		}
+		List<ProductPlan> plans = new ArrayList<ProductPlan>(futures.size());
+		for (Future<ProductPlan> future : futures) {
+			try {
+				plans.add(future.get());
+			} catch (ExecutionException e) {
+				throw new GeneralException(e.getCause());
+			} catch (InterruptedException e) {
+				throw new GeneralException(e);
+			}
+		}
+		// the bills of materials of the level are exploded at once, the trees of the products are then read from the explosion cache
+		List<String> productIdsToExplode = new LinkedList<String>();
+		for (ProductPlan plan : plans) {
+			if (!plan.plannedOrders.isEmpty() && productsWithBom.contains(plan.productId)) {
+				productIdsToExplode.add(plan.productId);
+			}
+		}
+		if (!productIdsToExplode.isEmpty()) {
+			try {
+				BOMExplosionCache.getExplosions(delegator, productIdsToExplode, "MANUF_COMPONENT", now);
+			} catch (GenericEntityException e) {
+				throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpErrorExplodingProduct", UtilMisc.toMap("productId", productIdsToExplode), locale), e);
+			}
+		}
+		for (ProductPlan plan : plans) {
+			if (!plan.plannedOrders.isEmpty()) {
+				planOrders(plan);
+			}
+		}
+		return plans;
+	}
+
+	private Callable<ProductPlan> createNettingCallable(final String productId, final List<MrpEventRecord> events) {
+		return new Callable<ProductPlan>() {
+			public ProductPlan call() {
+				return netProduct(productId, events);
+			}
+		};
+	}
+
+	/**
+	 * Nets the events of a product and computes the dates and quantities of its proposed orders.
+	 * This method is called in parallel: it only reads the data loaded in memory, it does not read
+	 * or write the database and does not call services.
+	 */
+	private ProductPlan netProduct(String productId, List<MrpEventRecord> events) {
+		GenericValue productFacility = productFacilities.get(productId);
+		BigDecimal stockTmp = quantitiesOnHand.containsKey(productId) ? quantitiesOnHand.get(productId) : BigDecimal.ZERO;
+		ProductPlan plan = new ProductPlan(productId, stockTmp, productFacility);
+
+		// days to ship is only relevant for sales order to plan for preparatory days to ship.  Otherwise MRP will push event dates for manufacturing parts
+		// as well and cause problems
+		BigDecimal reorderQuantity = BigDecimal.ONE.negate();
+		BigDecimal minimumStock = BigDecimal.ZERO;
+		if (productFacility != null) {
+			reorderQuantity = (productFacility.getBigDecimal("reorderQuantity") != null ? productFacility.getBigDecimal("reorderQuantity") : BigDecimal.ONE.negate());
+			minimumStock = (productFacility.getBigDecimal("minimumStock") != null ? productFacility.getBigDecimal("minimumStock") : BigDecimal.ZERO);
+			if ("SALES_ORDER_SHIP".equals(events.get(0).mrpEventTypeId)) {
+				plan.daysToShip = (productFacility.getLong("daysToShip") != null ? productFacility.getLong("daysToShip").intValue() : 0);
+			}
+		}
+		int eventCount = 0;
+		for (MrpEventRecord event : events) {
+			eventCount++;
+			boolean isLastEvent = eventCount == events.size();
+			BigDecimal eventQuantity = new BigDecimal(event.quantity);
+			stockTmp = stockTmp.add(eventQuantity);
+			if (stockTmp.compareTo(minimumStock) < 0 && (eventQuantity.compareTo(BigDecimal.ZERO) < 0 || isLastEvent)) { // No need to create a supply event/requirement if the current event is not a demand and there are other events to process
+				BigDecimal qtyToStock = minimumStock.subtract(stockTmp);
+				//need to buy or build the product as we have not enough stock
+				// to be just before the requirement
+				Timestamp eventDate = new Timestamp(event.eventDate.getTime() - 1);
+				PlannedOrder plannedOrder = new PlannedOrder(eventDate, ProposedOrder.getQuantityToSupply(qtyToStock, reorderQuantity));
+				plan.plannedOrders.add(plannedOrder);
+				stockTmp = stockTmp.add(plannedOrder.quantity);
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Creates the proposed orders of a product and computes their start dates and the requirements of their components.
+	 * The bill of materials and the routing of the product are read once, for all its proposed orders.
+	 * This method is called by the calling thread, as it calls services.
+	 */
+	private void planOrders(ProductPlan plan) throws GeneralException {
+		String productId = plan.productId;
+		GenericValue product;
+		try {
+			product = EntityQuery.use(delegator).from("Product").where("productId", productId).cache().queryOne();
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpCannotFindProductForEvent", locale), e);
+		}
+		if (product == null) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpCannotFindProductForEvent", locale));
+		}
+		// the components, as returned by the getManufacturingComponents service
+		BOMTree tree = null;
+		BOMTree manufacturingTree = null;
+		List<GenericValue> routingTaskAssocs = null;
+		if (productsWithBom.contains(productId)) {
+			try {
+				tree = new BOMTree(productId, "MANUF_COMPONENT", now, BOMTree.EXPLOSION_SINGLE_LEVEL, delegator, dispatcher, userLogin);
+			} catch (GenericEntityException e) {
+				throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpErrorExplodingProduct", UtilMisc.toMap("productId", productId), locale), e);
+			}
+			plan.isBuilt = tree.getRoot() != null && tree.getRoot().isManufactured();
+		}
+		if (plan.isBuilt) {
+			routingTaskAssocs = getRoutingTaskAssocs(productId, tree.getRoot().getProduct().getString("productId"));
+			if (plan.productFacility != null && !"WIP".equals(product.getString("productTypeId"))) {
+				try {
+					manufacturingTree = new BOMTree(productId, "MANUF_COMPONENT", now, BOMTree.EXPLOSION_MANUFACTURING, delegator, dispatcher, userLogin);
+				} catch (GenericEntityException e) {
+					Debug.logError(e, "Error : computing the requirement start date. " + e.getMessage(), module);
+				}
+			}
+		}
+		for (PlannedOrder plannedOrder : plan.plannedOrders) {
+			ProposedOrder proposedOrder = new ProposedOrder(product, facilityId, manufacturingFacilityId, plan.isBuilt, plannedOrder.eventDate, plannedOrder.quantity);
+			proposedOrder.setMrpName(mrpName);
+			plannedOrder.proposedOrder = proposedOrder;
+			// calculate the ProposedOrder requirementStartDate and update the requirementStartDate object property.
+			Map<String, Object> routingTaskStartDate = proposedOrder.calculateStartDate(plan.daysToShip, routingTaskAssocs, dispatcher);
+			if (plan.isBuilt) {
+				// the product components, see MrpServices.processBomComponent
+				List<BOMNode> components = new LinkedList<BOMNode>();
+				tree.setRootQuantity(proposedOrder.getQuantity());
+				tree.print(components, false);
+				components.remove(0);
+				Timestamp startDate = proposedOrder.getRequirementStartDate();
+				for (BOMNode node : components) {
+					GenericValue productComponent = node.getProductAssoc();
+					// read the startDate for the component
+					String routingTask = productComponent.getString("routingWorkEffortId");
+					Timestamp componentEventDate = (routingTask == null || routingTaskStartDate == null || !routingTaskStartDate.containsKey(routingTask)) ? startDate : (Timestamp) routingTaskStartDate.get(routingTask);
+					// if the components is valid at the event Date create the Mrp requirement
+					if (EntityUtil.isValueActive(productComponent, componentEventDate)) {
+						GenericValue componentProduct = node.getProduct();
+						plannedOrder.componentRequirements.add(new ComponentRequirement(componentProduct.getString("productId"), componentProduct.getLong("billOfMaterialLevel"),
+								componentEventDate, node.getQuantity().negate(), productId + ": " + componentEventDate));
+					}
+				}
+			}
+			if (plan.productFacility != null) {
+				proposedOrder.calculateRequirementStartDate(manufacturingTree);
+			}
+		}
+	}
+
+	/**
+	 * Returns the tasks of the routing of a built product, the routing is selected as by the getManufacturingComponents service.
+	 *
+	 * @return the routing task associations, null if no routing is found
+	 */
+	private List<GenericValue> getRoutingTaskAssocs(String productId, String bomProductId) {
+		try {
+			Map<String, Object> routingOutMap = dispatcher.runSync("getProductRouting", UtilMisc.<String, Object>toMap("productId", productId, "ignoreDefaultRouting", "Y", "userLogin", userLogin));
+			GenericValue routing = (GenericValue) routingOutMap.get("routing");
+			if (routing == null) {
+				// try to find a routing linked to the virtual product
+				routingOutMap = dispatcher.runSync("getProductRouting", UtilMisc.<String, Object>toMap("productId", bomProductId, "userLogin", userLogin));
+				routing = (GenericValue) routingOutMap.get("routing");
+			}
+			if (routing != null) {
+				Map<String, Object> routingTasksOutMap = dispatcher.runSync("getRoutingTaskAssocs", UtilMisc.<String, Object>toMap("workEffortId", routing.getString("workEffortId"), "userLogin", userLogin));
+				return UtilGenerics.checkList(routingTasksOutMap.get("routingTaskAssocs"));
+			}
+		} catch (GenericServiceException gse) {
+			Debug.logWarning(gse.getMessage(), module);
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the proposed orders and the MRP events of the planned products, in product order.
+	 * The requirements of the level are stored at once, before the MRP events that refer to them.
+	 */
+	private void writePlans(List<ProductPlan> plans) throws GeneralException {
+		writeRequirements(plans);
+		for (ProductPlan plan : plans) {
+			updateEvent(plan.productId, null, now, "INITIAL_QOH", plan.initialQuantityOnHand, facilityId, null, false);
+			for (PlannedOrder plannedOrder : plan.plannedOrders) {
+				ProposedOrder proposedOrder = plannedOrder.proposedOrder;
+				for (ComponentRequirement componentRequirement : plannedOrder.componentRequirements) {
+					updateEvent(componentRequirement.productId, componentRequirement.billOfMaterialLevel, componentRequirement.eventDate, "MRP_REQUIREMENT",
+							componentRequirement.quantity, null, componentRequirement.eventName, false);
+				}
+				if (plan.productFacility == null && !plan.isBuilt) {
+					MrpServices.logMrpError(mrpId, plan.productId, now, "No ProductFacility record for [" + facilityId + "]; no requirement created.", delegator);
+				}
+				String eventName = null;
+				if (plannedOrder.requirement != null) {
+					eventName = "*" + plannedOrder.requirement.getString("requirementId") + " (" + proposedOrder.getRequirementStartDate() + ")*";
+				}
+				updateEvent(plan.productId, null, plannedOrder.eventDate, (plan.isBuilt ? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP"),
+						proposedOrder.getQuantity(), null, eventName, (proposedOrder.getRequirementStartDate().compareTo(now) < 0));
+			}
+		}
+		writeModifiedEvents();
+	}
+
+	/**
+	 * Creates the requirements of the proposed orders (only if the product is warehouse managed) with the fields
+	 * set by the createRequirement service, and runs the actions of the createRequirement SECAs that apply to them.
+	 */
+	private void writeRequirements(List<ProductPlan> plans) throws GeneralException {
+		List<GenericValue> requirements = new LinkedList<GenericValue>();
+		for (ProductPlan plan : plans) {
+			if (plan.productFacility == null) {
+				continue;
+			}
+			for (PlannedOrder plannedOrder : plan.plannedOrders) {
+				plannedOrder.requirement = plannedOrder.proposedOrder.makeRequirement(delegator, userLogin);
+				if (plannedOrder.requirement != null) {
+					requirements.add(plannedOrder.requirement);
+				}
+			}
+		}
+		if (requirements.isEmpty()) {
+			return;
+		}
+		try {
+			delegator.storeAll(requirements);
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpCreateRequirement", UtilMisc.toMap("mrpId", mrpId), locale), e);
+		}
+		for (GenericValue requirement : requirements) {
+			if ("PRODUCT_REQUIREMENT".equals(requirement.getString("requirementTypeId"))) {
+				try {
+					dispatcher.runSync("autoAssignRequirementToSupplier", UtilMisc.<String, Object>toMap("requirementId", requirement.getString("requirementId"), "userLogin", userLogin));
+				} catch (GenericServiceException e) {
+					Debug.logError(e, "Error : autoAssignRequirementToSupplier for requirement [" + requirement.getString("requirementId") + "] " + e.getMessage(), module);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates or updates an MRP event in memory, the same way as {@link InventoryEventPlannedServices#createOrUpdateMrpEvent}.
+	 */
+	private void updateEvent(String productId, Long billOfMaterialLevel, Timestamp eventDate, String mrpEventTypeId, BigDecimal newQuantity,
+	                         String facilityId, String eventName, boolean isLate) {
+		PlannedProduct plannedProduct = getPlannedProduct(productId, billOfMaterialLevel);
+		MrpEventRecord key = new MrpEventRecord(productId, eventDate, mrpEventTypeId);
+		MrpEventRecord record = plannedProduct.events.get(key);
+		if (record == null) {
+			record = key;
+			record.quantity = newQuantity.doubleValue();
+			record.eventName = eventName;
+			record.facilityId = facilityId;
+			record.isLate = isLate;
+			plannedProduct.events.put(record, record);
+		} else {
+			record.quantity = newQuantity.add(new BigDecimal(record.quantity)).doubleValue();
+			if (UtilValidate.isNotEmpty(eventName)) {
+				record.eventName = (UtilValidate.isEmpty(record.eventName) ? eventName : record.eventName + ", " + eventName);
+			}
+			if (isLate) {
+				record.isLate = true;
+			}
+		}
+		if (!record.modified) {
+			record.modified = true;
+			modifiedEvents.add(record);
+		}
+	}
+
+	private void writeModifiedEvents() throws GeneralException {
+		List<GenericValue> mrpEvents = new ArrayList<GenericValue>(modifiedEvents.size());
+		for (MrpEventRecord record : modifiedEvents) {
+			GenericValue mrpEvent = delegator.makeValue("MrpEvent", UtilMisc.toMap("mrpId", mrpId, "productId", record.productId,
+					"eventDate", record.eventDate, "mrpEventTypeId", record.mrpEventTypeId));
+			mrpEvent.put("quantity", record.quantity);
+			mrpEvent.put("eventName", record.eventName);
+			mrpEvent.put("facilityId", record.facilityId);
+			mrpEvent.put("isLate", (record.isLate ? "Y" : "N"));
+			mrpEvents.add(mrpEvent);
+		}
+		try {
+			delegator.storeAll(mrpEvents);
+		} catch (GenericEntityException e) {
+			throw new GeneralException(UtilProperties.getMessage(resource, "ManufacturingMrpCreateOrUpdateEvent", UtilMisc.toMap("parameters", mrpId), locale), e);
+		}
+		for (MrpEventRecord record : modifiedEvents) {
+			record.modified = false;
+		}
+		modifiedEvents.clear();
+	}
+
+	private static final class PlannedProduct implements Comparable<PlannedProduct> {
+		private final String productId;
+		private final long billOfMaterialLevel;
+		// the events, ordered by eventDate
+		private final TreeMap<MrpEventRecord, MrpEventRecord> events = new TreeMap<MrpEventRecord, MrpEventRecord>();
+
+		private PlannedProduct(String productId, long billOfMaterialLevel) {
+			this.productId = productId;
+			this.billOfMaterialLevel = billOfMaterialLevel;
+		}
+
+		public int compareTo(PlannedProduct other) {
+			return productId.compareTo(other.productId);
+		}
+	}
+
+	private static final class MrpEventRecord implements Comparable<MrpEventRecord> {
+		private final String productId;
+		private final Timestamp eventDate;
+		private final String mrpEventTypeId;
+		private double quantity;
+		private String facilityId;
+		private String eventName;
+		private boolean isLate;
+		private boolean modified;
+
+		private MrpEventRecord(String productId, Timestamp eventDate, String mrpEventTypeId) {
+			this.productId = productId;
+			this.eventDate = eventDate;
+			this.mrpEventTypeId = mrpEventTypeId;
+		}
+
+		public int compareTo(MrpEventRecord other) {
+			int result = eventDate.compareTo(other.eventDate);
+			return result != 0 ? result : mrpEventTypeId.compareTo(other.mrpEventTypeId);
+		}
+	}
+
+	private static final class ProductPlan {
+		private final String productId;
+		private final BigDecimal initialQuantityOnHand;
+		private final GenericValue productFacility;
+		private final List<PlannedOrder> plannedOrders = new LinkedList<PlannedOrder>();
+		private int daysToShip;
+		private boolean isBuilt;
+
+		private ProductPlan(String productId, BigDecimal initialQuantityOnHand, GenericValue productFacility) {
+			this.productId = productId;
+			this.initialQuantityOnHand = initialQuantityOnHand;
+			this.productFacility = productFacility;
+		}
+	}
+
+	private static final class PlannedOrder {
+		private final Timestamp eventDate;
+		private final BigDecimal quantity;
+		private final List<ComponentRequirement> componentRequirements = new LinkedList<ComponentRequirement>();
+		private ProposedOrder proposedOrder;
+		private GenericValue requirement;
+
+		private PlannedOrder(Timestamp eventDate, BigDecimal quantity) {
+			this.eventDate = eventDate;
+			this.quantity = quantity;
+		}
+	}
+
+	private static final class ComponentRequirement {
+		private final String productId;
+		private final Long billOfMaterialLevel;
+		private final Timestamp eventDate;
+		private final BigDecimal quantity;
+		private final String eventName;
+
+		private ComponentRequirement(String productId, Long billOfMaterialLevel, Timestamp eventDate, BigDecimal quantity, String eventName) {
+			this.productId = productId;
+			this.billOfMaterialLevel = billOfMaterialLevel;
+			this.eventDate = eventDate;
+			this.quantity = quantity;
+			this.eventName = eventName;
+		}
+	}
+}
@@ -587,6 +587,7 @@ public class MrpServices {
 		Integer defaultYearsOffset = (Integer) context.get("defaultYearsOffset");
 		String facilityGroupId = (String) context.get("facilityGroupId");
 		String facilityId = (String) context.get("facilityId");
+		boolean inMemory = Boolean.TRUE.equals(context.get("inMemory"));
 		String manufacturingFacilityId = null;
 		if (UtilValidate.isEmpty(facilityId) && UtilValidate.isEmpty(facilityGroupId)) {
 			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpFacilityNotAvailable", locale));
@@ -652,6 +653,17 @@ public class MrpServices {
 		} catch (GenericServiceException e) {
 			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ManufacturingMrpErrorRunningInitMrpEvents", UtilMisc.toMap("errorString", e.getMessage()), locale));
 		}
+		if (inMemory) {
+			try {
+				new MrpPlanner(ctx, userLogin, locale, mrpId, mrpName, facilityId, manufacturingFacilityId, now).run();
+			} catch (GeneralException e) {
+				Debug.logError(e, module);
+				return ServiceUtil.returnError(e.getMessage());
+			}
+			result = ServiceUtil.returnSuccess();
+			result.put("msgResult", new LinkedList<Object>());
+			return result;
+		}
 		long bomLevel = 0;
 		do {
 			// Find all products in MrpEventView, ordered by bom and eventDate
@@ -20,6 +20,7 @@
 package org.apache.ofbiz.manufacturing.mrp;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.entity.Delegator;
@@ -55,6 +56,7 @@ public class ProposedOrder {
 	protected Timestamp requiredByDate;
 	protected Timestamp requirementStartDate;
 	protected BigDecimal quantity;
+	protected boolean requirementStartDateCalculated;
 
 
 	public ProposedOrder(GenericValue product, String facilityId, String manufacturingFacilityId, boolean isBuilt, Timestamp requiredByDate, BigDecimal quantity) {
@@ -99,12 +101,8 @@ public class ProposedOrder {
 	 * <li>else null.
 	 **/
 	public Map<String, Object> calculateStartDate(int daysToShip, GenericValue routing, Delegator delegator, LocalDispatcher dispatcher, GenericValue userLogin) {
-		Map<String, Object> result = null;
-		Timestamp endDate = (Timestamp) requiredByDate.clone();
-		Timestamp startDate = endDate;
-		long timeToShip = daysToShip * 8 * 60 * 60 * 1000;
+		List<GenericValue> listRoutingTaskAssoc = null;
 		if (isBuilt) {
-			List<GenericValue> listRoutingTaskAssoc = null;
 			if (routing == null) {
 				try {
 					Map<String, Object> routingInMap = UtilMisc.<String, Object>toMap("productId", product.getString("productId"),
@@ -136,7 +134,6 @@ public class ProposedOrder {
 				}
 			}
 			if (routing != null) {
-				result = new HashMap<String, Object>();
 				//Looks for all the routingTask (ordered by inversed (begin from the end) sequence number)
 				if (listRoutingTaskAssoc == null) {
 					try {
@@ -149,7 +146,27 @@ public class ProposedOrder {
 					}
 				}
 			}
+		}
+		return calculateStartDate(daysToShip, listRoutingTaskAssoc, dispatcher);
+	}
+
+	/**
+	 * calculate the ProposedOrder requirementStartDate and update the requirementStartDate property,
+	 * from the routing tasks already read for the product.
+	 *
+	 * @param listRoutingTaskAssoc the routing task associations of the routing of the build product, null if no routing was found
+	 * @return <ul>
+	 * <li>if ProposedOrder.isBuild a Map with all the routingTaskId as keys and estimatedStartDate as value.
+	 * <li>else null.
+	 **/
+	public Map<String, Object> calculateStartDate(int daysToShip, List<GenericValue> listRoutingTaskAssoc, LocalDispatcher dispatcher) {
+		Map<String, Object> result = null;
+		Timestamp endDate = (Timestamp) requiredByDate.clone();
+		Timestamp startDate = endDate;
+		long timeToShip = daysToShip * 8 * 60 * 60 * 1000;
+		if (isBuilt) {
 			if (listRoutingTaskAssoc != null) {
+				result = new HashMap<String, Object>();
 				for (int i = 1; i <= listRoutingTaskAssoc.size(); i++) {
 					GenericValue routingTaskAssoc = listRoutingTaskAssoc.get(listRoutingTaskAssoc.size() - i);
 					if (EntityUtil.isValueActive(routingTaskAssoc, endDate)) {
@@ -198,8 +215,54 @@ public class ProposedOrder {
 	public void calculateQuantityToSupply(BigDecimal reorderQuantity, BigDecimal minimumStock, ListIterator<GenericValue> listIterIEP) {
 		//      TODO : use a better algorithm using Order management cost et Product Stock cost to calculate the re-order quantity
 		//                     the variable listIterIEP will be used for that
+		quantity = getQuantityToSupply(quantity, reorderQuantity);
+	}
+
+	/**
+	 * Returns the quantity to supply for the needed quantity: if (quantity < reorderQuantity) quantity = reorderQuantity;
+	 **/
+	public static BigDecimal getQuantityToSupply(BigDecimal quantity, BigDecimal reorderQuantity) {
 		if (quantity.compareTo(reorderQuantity) < 0) {
-			quantity = reorderQuantity;
+			return reorderQuantity;
+		}
+		return quantity;
+	}
+
+	/**
+	 * calculate the requirementStartDate of the Requirement created by the create method and update the requirementStartDate property.
+	 * For the build products the start date is read from the manufacturing bill of materials, this method only reads data
+	 * and can be called before the create method.
+	 **/
+	public void calculateRequirementStartDate(Delegator delegator, LocalDispatcher dispatcher, GenericValue userLogin) {
+		BOMTree tree = null;
+		if (isBuilt && !"WIP".equals(product.getString("productTypeId"))) {
+			try {
+				tree = new BOMTree(productId, "MANUF_COMPONENT", null, BOMTree.EXPLOSION_MANUFACTURING, delegator, dispatcher, userLogin);
+			} catch (GenericEntityException e) {
+				Debug.logError(e, "Error : computing the requirement start date. " + e.getMessage(), module);
+			}
+		}
+		calculateRequirementStartDate(tree);
+	}
+
+	/**
+	 * calculate the requirementStartDate from the manufacturing bill of materials of the product, read once
+	 * by the caller for all the ProposedOrders of the product: the quantities of the tree are set for this ProposedOrder.
+	 *
+	 * @param manufacturingTree the BOMTree of the product, read with the BOMTree.EXPLOSION_MANUFACTURING type
+	 **/
+	public void calculateRequirementStartDate(BOMTree manufacturingTree) {
+		requirementStartDateCalculated = true;
+		if (!isBuilt || "WIP".equals(product.getString("productTypeId")) || manufacturingTree == null || manufacturingTree.getRoot() == null) {
+			return;
+		}
+		try {
+			List<BOMNode> bom = new LinkedList<BOMNode>();
+			manufacturingTree.setRootQuantity(quantity);
+			manufacturingTree.print(bom);
+			requirementStartDate = manufacturingTree.getRoot().getStartDate(manufacturingFacilityId, requiredByDate, true);
+		} catch (Exception e) {
+			Debug.logError(e, "Error : computing the requirement start date. " + e.getMessage(), module);
 		}
 	}
 
@@ -216,30 +279,11 @@ public class ProposedOrder {
 		}
 		LocalDispatcher dispatcher = ctx.getDispatcher();
 		Delegator delegator = ctx.getDelegator();
-		Map<String, Object> parameters = UtilMisc.<String, Object>toMap("userLogin", userLogin);
-		if (isBuilt) {
-			try {
-				List<BOMNode> bom = new LinkedList<BOMNode>();
-				BOMTree tree = new BOMTree(productId, "MANUF_COMPONENT", null, BOMTree.EXPLOSION_MANUFACTURING, delegator, dispatcher, userLogin);
-				tree.setRootQuantity(quantity);
-				tree.print(bom);
-				requirementStartDate = tree.getRoot().getStartDate(manufacturingFacilityId, requiredByDate, true);
-			} catch (Exception e) {
-				Debug.logError(e, "Error : computing the requirement start date. " + e.getMessage(), module);
-			}
-		}
-		parameters.put("productId", productId);
-		parameters.put("statusId", "REQ_PROPOSED");
-		parameters.put("facilityId", (isBuilt ? manufacturingFacilityId : facilityId));
-		parameters.put("requiredByDate", requiredByDate);
-		parameters.put("requirementStartDate", requirementStartDate);
-		parameters.put("quantity", quantity);
-		parameters.put("requirementTypeId", (isBuilt ? "INTERNAL_REQUIREMENT" : "PRODUCT_REQUIREMENT"));
-		if (mrpName != null) {
-			parameters.put("description", "MRP_" + mrpName);
-		} else {
-			parameters.put("description", "Automatically generated by MRP");
+		if (!requirementStartDateCalculated) {
+			calculateRequirementStartDate(delegator, dispatcher, userLogin);
 		}
+		Map<String, Object> parameters = getRequirementFields();
+		parameters.put("userLogin", userLogin);
 		try {
 			Map<String, Object> result = dispatcher.runSync("createRequirement", parameters);
 			return (String) result.get("requirementId");
@@ -249,6 +293,45 @@ public class ProposedOrder {
 		}
 	}
 
+	/**
+	 * make the Requirement of the ProposedOrder with the fields set by the createRequirement service, the Requirement is not stored:
+	 * the caller can store the Requirements of many ProposedOrders at once.
+	 * The requirementStartDate must have been calculated before.
+	 *
+	 * @return the Requirement, or null for the Work In Process products
+	 **/
+	public GenericValue makeRequirement(Delegator delegator, GenericValue userLogin) {
+		if ("WIP".equals(product.getString("productTypeId"))) {
+			// No requirements for Work In Process products
+			return null;
+		}
+		Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+		GenericValue requirement = delegator.makeValue("Requirement", getRequirementFields());
+		requirement.set("requirementId", delegator.getNextSeqId("Requirement"));
+		requirement.set("createdDate", nowTimestamp);
+		requirement.set("lastModifiedDate", nowTimestamp);
+		requirement.set("createdByUserLogin", userLogin.get("userLoginId"));
+		requirement.set("lastModifiedByUserLogin", userLogin.get("userLoginId"));
+		return requirement;
+	}
+
+	private Map<String, Object> getRequirementFields() {
+		Map<String, Object> fields = new HashMap<String, Object>();
+		fields.put("productId", productId);
+		fields.put("statusId", "REQ_PROPOSED");
+		fields.put("facilityId", (isBuilt ? manufacturingFacilityId : facilityId));
+		fields.put("requiredByDate", requiredByDate);
+		fields.put("requirementStartDate", requirementStartDate);
+		fields.put("quantity", quantity);
+		fields.put("requirementTypeId", (isBuilt ? "INTERNAL_REQUIREMENT" : "PRODUCT_REQUIREMENT"));
+		if (mrpName != null) {
+			fields.put("description", "MRP_" + mrpName);
+		} else {
+			fields.put("description", "Automatically generated by MRP");
+		}
+		return fields;
+	}
+
 	public void setMrpName(String mrpName) {
 		this.mrpName = mrpName;
 	}
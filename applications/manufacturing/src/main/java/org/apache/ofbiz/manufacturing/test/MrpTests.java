@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.test;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.manufacturing.bom.BOMExplosion;
+import org.apache.ofbiz.manufacturing.bom.BOMExplosionCache;
+import org.apache.ofbiz.manufacturing.bom.BOMNode;
+import org.apache.ofbiz.manufacturing.bom.BOMTree;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * MRP tests: the in-memory MRP must plan a generated catalog the same way as the standard MRP.
+ * The size of the catalog can be set with the <code>mrptests.catalog.size</code> system property
+ * to use the test as a benchmark.
+ */
+public class MrpTests extends OFBizTestCase {
+
+	public static final String module = MrpTests.class.getName();
+
+	private static final String FACILITY_ID = "MRPTEST_WH";
+	private static final String PRODUCT_PREFIX = "MRPTEST_";
+
+	protected GenericValue userLogin = null;
+
+	public MrpTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
+	}
+
+	/**
+	 * Removes the generated catalog and the MRP results, thru the entity ECAs of the removed records.
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		EntityCondition productCondition = EntityCondition.makeCondition("productId", EntityOperator.LIKE, PRODUCT_PREFIX + "%");
+		EntityCondition requirementCondition = EntityCondition.makeCondition("requirementId", EntityOperator.IN,
+				EntityQuery.use(delegator).select("requirementId").from("Requirement").where("facilityId", FACILITY_ID).getFieldList("requirementId"));
+		EntityCondition inventoryItemCondition = EntityCondition.makeCondition("inventoryItemId", EntityOperator.LIKE, PRODUCT_PREFIX + "%");
+		removeAll("RequirementRole", requirementCondition);
+		removeAll("Requirement", requirementCondition);
+		removeAll("MrpEvent", productCondition);
+		removeAll("InventoryItemDetail", inventoryItemCondition);
+		removeAll("InventoryItemStatus", inventoryItemCondition);
+		removeAll("InventoryItem", inventoryItemCondition);
+		removeAll("ProductAssoc", productCondition);
+		removeAll("ProductFacility", productCondition);
+		removeAll("ProductKeyword", productCondition);
+		removeAll("Product", productCondition);
+		removeAll("Facility", EntityCondition.makeCondition("facilityId", FACILITY_ID));
+	}
+
+	private void removeAll(String entityName, EntityCondition condition) throws Exception {
+		delegator.removeAll(EntityQuery.use(delegator).from(entityName).where(condition).queryList());
+	}
+
+	public void testInMemoryMrp() throws Exception {
+		createCatalog(Integer.getInteger("mrptests.catalog.size", 20).intValue());
+
+		long startTime = System.currentTimeMillis();
+		Map<String, Object> result = dispatcher.runSync("executeMrp", UtilMisc.<String, Object>toMap("facilityId", FACILITY_ID, "mrpName", "MRPTEST", "userLogin", userLogin));
+		long standardTime = System.currentTimeMillis() - startTime;
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, BigDecimal> standardEvents = getEventQuantities();
+		Map<String, BigDecimal> standardRequirements = getRequirementQuantities();
+
+		startTime = System.currentTimeMillis();
+		result = dispatcher.runSync("executeMrp", UtilMisc.<String, Object>toMap("facilityId", FACILITY_ID, "mrpName", "MRPTEST", "inMemory", Boolean.TRUE, "userLogin", userLogin));
+		long inMemoryTime = System.currentTimeMillis() - startTime;
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+
+		Debug.logInfo("MRP of " + standardEvents.size() + " product events: standard " + standardTime + " ms, in-memory " + inMemoryTime + " ms", module);
+		assertFalse("MRP events created", standardEvents.isEmpty());
+		assertFalse("Requirements created", standardRequirements.isEmpty());
+		assertEquals("In-memory MRP events", standardEvents, getEventQuantities());
+		assertEquals("In-memory MRP requirements", standardRequirements, getRequirementQuantities());
+	}
+
+	public void testBOMExplosionCache() throws Exception {
+		createCatalog(Integer.getInteger("mrptests.catalog.size", 20).intValue());
+		List<String> productIds = UtilMisc.toList(PRODUCT_PREFIX + "FG0", PRODUCT_PREFIX + "FG1", PRODUCT_PREFIX + "FG2");
+		Map<String, Object> result = dispatcher.runSync("getBOMExplosions", UtilMisc.<String, Object>toMap("productIds", productIds, "userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, BOMExplosion> explosions = UtilGenerics.checkMap(result.get("explosions"));
+		assertEquals("Exploded products", productIds, new LinkedList<String>(explosions.keySet()));
+		for (String productId : productIds) {
+			// the explosion must match the (not configured) bill of materials tree
+			BOMTree tree = new BOMTree(productId, "MANUF_COMPONENT", null, BOMTree.EXPLOSION, delegator, dispatcher, userLogin);
+			List<BOMNode> nodes = new LinkedList<BOMNode>();
+			tree.print(nodes);
+			nodes.remove(0);
+			List<BOMExplosion.Component> components = explosions.get(productId).getComponents();
+			assertEquals("Components of " + productId, nodes.size(), components.size());
+			for (int i = 0; i < nodes.size(); i++) {
+				assertEquals("Component " + i + " of " + productId, nodes.get(i).getProduct().getString("productId"), components.get(i).getProductId());
+				assertEquals("Level of component " + i + " of " + productId, nodes.get(i).getDepth(), components.get(i).getLevel());
+				assertEquals("Quantity of component " + i + " of " + productId, 0, nodes.get(i).getQuantity().compareTo(components.get(i).getQuantity()));
+			}
+		}
+		BOMExplosion explosion = explosions.get(PRODUCT_PREFIX + "FG0");
+		assertSame("Cached explosion", explosion, BOMExplosionCache.getExplosion(delegator, PRODUCT_PREFIX + "FG0", "MANUF_COMPONENT", null));
+
+		// a change to a sub-assembly must remove the explosions of the finished goods using it, and only them
+		String subAssemblyId = null;
+		for (BOMExplosion.Component component : explosion.getComponents()) {
+			if (!component.isLeaf()) {
+				subAssemblyId = component.getProductId();
+				break;
+			}
+		}
+		BOMExplosion otherExplosion = BOMExplosionCache.getExplosion(delegator, PRODUCT_PREFIX + "RM0", "MANUF_COMPONENT", null);
+		GenericValue productAssoc = EntityQuery.use(delegator).from("ProductAssoc")
+				.where("productId", subAssemblyId, "productAssocTypeId", "MANUF_COMPONENT").filterByDate().queryFirst();
+		BigDecimal componentQuantity = productAssoc.getBigDecimal("quantity");
+		productAssoc.set("quantity", componentQuantity.add(BigDecimal.ONE));
+		productAssoc.store();
+		try {
+			BOMExplosion newExplosion = BOMExplosionCache.getExplosion(delegator, PRODUCT_PREFIX + "FG0", "MANUF_COMPONENT", null);
+			assertNotSame("Explosion removed from the cache", explosion, newExplosion);
+			assertTrue("Newer explosion", newExplosion.getVersion() > explosion.getVersion());
+			assertSame("Unrelated explosion kept in the cache", otherExplosion, BOMExplosionCache.getExplosion(delegator, PRODUCT_PREFIX + "RM0", "MANUF_COMPONENT", null));
+			BigDecimal oldQuantity = explosion.getComponentQuantities(BigDecimal.ONE, true).get(productAssoc.getString("productIdTo"));
+			BigDecimal newQuantity = newExplosion.getComponentQuantities(BigDecimal.ONE, true).get(productAssoc.getString("productIdTo"));
+			assertTrue("Component quantity increased", newQuantity.compareTo(oldQuantity) > 0);
+		} finally {
+			productAssoc.set("quantity", componentQuantity);
+			productAssoc.store();
+		}
+	}
+
+	public void testManufacturingComponentsFromCache() throws Exception {
+		createCatalog(Integer.getInteger("mrptests.catalog.size", 20).intValue());
+		String productId = PRODUCT_PREFIX + "FG0";
+		Map<String, BigDecimal> quantities = getManufacturingComponentQuantities(productId);
+		assertEquals("Components", 3, quantities.size());
+
+		// changed without the entity ECAs: the bills of materials trees keep reading the cached explosion
+		EntityCondition productCondition = EntityCondition.makeCondition(UtilMisc.toMap("productId", productId, "productAssocTypeId", "MANUF_COMPONENT"));
+		List<GenericValue> productAssocs = EntityQuery.use(delegator).from("ProductAssoc").where(productCondition).queryList();
+		delegator.storeByCondition("ProductAssoc", UtilMisc.toMap("quantity", new BigDecimal("9")), productCondition);
+		try {
+			assertEquals("Components from the cached explosion", quantities, getManufacturingComponentQuantities(productId));
+			BOMExplosionCache.clear();
+			for (BigDecimal quantity : getManufacturingComponentQuantities(productId).values()) {
+				assertEquals("Components read again", 0, quantity.compareTo(new BigDecimal("9")));
+			}
+		} finally {
+			delegator.storeAll(productAssocs);
+			BOMExplosionCache.clear();
+		}
+	}
+
+	private Map<String, BigDecimal> getManufacturingComponentQuantities(String productId) throws Exception {
+		Map<String, Object> result = dispatcher.runSync("getManufacturingComponents", UtilMisc.<String, Object>toMap("productId", productId, "excludeWIPs", Boolean.FALSE, "userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, BigDecimal> quantities = new TreeMap<String, BigDecimal>();
+		for (BOMNode node : UtilGenerics.<BOMNode>checkList(result.get("components"))) {
+			quantities.put(node.getProduct().getString("productId"), node.getQuantity());
+		}
+		return quantities;
+	}
+
+	/**
+	 * Creates a three levels catalog: each finished good is built from two sub-assemblies and a raw material,
+	 * each sub-assembly is built from two raw materials. The finished goods have a minimum stock and part of
+	 * the products have inventory, so that the MRP has to net requirements at every level.
+	 */
+	private void createCatalog(int finishedGoods) throws Exception {
+		if (EntityQuery.use(delegator).from("Facility").where("facilityId", FACILITY_ID).queryOne() != null) {
+			return;
+		}
+		Timestamp fromDate = UtilDateTime.addDaysToTimestamp(UtilDateTime.nowTimestamp(), -1);
+		List<GenericValue> values = new LinkedList<GenericValue>();
+		values.add(delegator.makeValue("Facility", UtilMisc.toMap("facilityId", FACILITY_ID, "facilityTypeId", "WAREHOUSE", "facilityName", "MRP test warehouse")));
+		int subAssemblies = Math.max(1, finishedGoods / 2);
+		int rawMaterials = Math.max(2, finishedGoods);
+		for (int i = 0; i < rawMaterials; i++) {
+			String productId = PRODUCT_PREFIX + "RM" + i;
+			values.add(makeProduct(productId, "RAW_MATERIAL", 2));
+			values.add(makeProductFacility(productId, i % 3 == 0 ? "5" : "0", "10"));
+			if (i % 2 == 0) {
+				values.add(delegator.makeValue("InventoryItem", UtilMisc.toMap("inventoryItemId", productId, "productId", productId, "facilityId", FACILITY_ID,
+						"inventoryItemTypeId", "NON_SERIAL_INV_ITEM", "quantityOnHandTotal", new BigDecimal("7"), "availableToPromiseTotal", new BigDecimal("7"))));
+			}
+		}
+		for (int i = 0; i < subAssemblies; i++) {
+			String productId = PRODUCT_PREFIX + "SA" + i;
+			values.add(makeProduct(productId, "WIP", 1));
+			values.add(makeProductFacility(productId, "0", "0"));
+			values.add(makeComponent(productId, PRODUCT_PREFIX + "RM" + (i % rawMaterials), "2", fromDate));
+			values.add(makeComponent(productId, PRODUCT_PREFIX + "RM" + ((i + 1) % rawMaterials), "3", fromDate));
+		}
+		for (int i = 0; i < finishedGoods; i++) {
+			String productId = PRODUCT_PREFIX + "FG" + i;
+			values.add(makeProduct(productId, "FINISHED_GOOD", 0));
+			values.add(makeProductFacility(productId, String.valueOf(10 + i % 7), i % 4 == 0 ? "25" : "0"));
+			values.add(makeComponent(productId, PRODUCT_PREFIX + "SA" + (i % subAssemblies), "1", fromDate));
+			values.add(makeComponent(productId, PRODUCT_PREFIX + "SA" + ((i + 1) % subAssemblies), "2", fromDate));
+			values.add(makeComponent(productId, PRODUCT_PREFIX + "RM" + ((i + 2) % rawMaterials), "4", fromDate));
+		}
+		delegator.storeAll(values);
+	}
+
+	private GenericValue makeProduct(String productId, String productTypeId, long billOfMaterialLevel) {
+		return delegator.makeValue("Product", UtilMisc.toMap("productId", productId, "productTypeId", productTypeId,
+				"internalName", productId, "billOfMaterialLevel", Long.valueOf(billOfMaterialLevel)));
+	}
+
+	private GenericValue makeProductFacility(String productId, String minimumStock, String reorderQuantity) {
+		return delegator.makeValue("ProductFacility", UtilMisc.toMap("productId", productId, "facilityId", FACILITY_ID,
+				"minimumStock", new BigDecimal(minimumStock), "reorderQuantity", new BigDecimal(reorderQuantity)));
+	}
+
+	private GenericValue makeComponent(String productId, String componentId, String quantity, Timestamp fromDate) {
+		return delegator.makeValue("ProductAssoc", UtilMisc.toMap("productId", productId, "productIdTo", componentId,
+				"productAssocTypeId", "MANUF_COMPONENT", "fromDate", fromDate, "quantity", new BigDecimal(quantity)));
+	}
+
+	/**
+	 * Returns the total quantity of the MRP events of the test products by product and event type,
+	 * the event dates depend on the time of the run and are not compared.
+	 */
+	private Map<String, BigDecimal> getEventQuantities() throws Exception {
+		Map<String, BigDecimal> quantities = new TreeMap<String, BigDecimal>();
+		List<GenericValue> mrpEvents = EntityQuery.use(delegator).from("MrpEvent")
+				.where(EntityCondition.makeCondition("productId", EntityOperator.LIKE, PRODUCT_PREFIX + "%")).queryList();
+		for (GenericValue mrpEvent : mrpEvents) {
+			addQuantity(quantities, mrpEvent.getString("productId") + "/" + mrpEvent.getString("mrpEventTypeId"), mrpEvent.getBigDecimal("quantity"));
+		}
+		return quantities;
+	}
+
+	private Map<String, BigDecimal> getRequirementQuantities() throws Exception {
+		Map<String, BigDecimal> quantities = new TreeMap<String, BigDecimal>();
+		List<GenericValue> requirements = EntityQuery.use(delegator).from("Requirement")
+				.where("facilityId", FACILITY_ID, "statusId", "REQ_PROPOSED").queryList();
+		for (GenericValue requirement : requirements) {
+			addQuantity(quantities, requirement.getString("productId") + "/" + requirement.getString("requirementTypeId"), requirement.getBigDecimal("quantity"));
+		}
+		return quantities;
+	}
+
+	private static void addQuantity(Map<String, BigDecimal> quantities, String key, BigDecimal quantity) {
+		if (quantity == null) {
+			return;
+		}
+		BigDecimal total = quantities.get(key);
+		quantities.put(key, total == null ? quantity.stripTrailingZeros() : total.add(quantity).stripTrailingZeros());
+	}
+}
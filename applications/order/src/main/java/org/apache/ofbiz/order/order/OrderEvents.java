@@ -18,10 +18,10 @@
  *******************************************************************************/
 package org.apache.ofbiz.order.order;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.UtilHttp;
+import org.apache.ofbiz.content.data.DataEvents;
 import org.apache.ofbiz.content.data.DataResourceWorker;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -36,8 +36,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Locale;
@@ -74,14 +72,9 @@ public class OrderEvents {
 
 			// TODO: check validity based on ProductContent fields: useCountLimit, useTime/useTimeUomId
 
-			if (orderRoleAndProductContentInfo.getString("mimeTypeId") != null) {
-				response.setContentType(orderRoleAndProductContentInfo.getString("mimeTypeId"));
-			}
-			OutputStream os = response.getOutputStream();
 			GenericValue dataResource = EntityQuery.use(delegator).from("DataResource").where("dataResourceId", dataResourceId).cache().queryOne();
 			Map<String, Object> resourceData = DataResourceWorker.getDataResourceStream(dataResource, "", application.getInitParameter("webSiteId"), UtilHttp.getLocale(request), application.getRealPath("/"), false);
-			os.write(IOUtils.toByteArray((InputStream) resourceData.get("stream")));
-			os.flush();
+			DataEvents.streamDataResource(request, response, dataResource, resourceData, orderRoleAndProductContentInfo.getString("mimeTypeId"), null);
 		} catch (GenericEntityException e) {
 			String errMsg = "Error downloading digital product content: " + e.toString();
 			Debug.logError(e, errMsg, module);
@@ -4798,61 +4798,30 @@ public class OrderServices {
 
 	public static Map<String, Object> massPickOrders(DispatchContext dctx, Map<String, ? extends Object> context) {
 		LocalDispatcher dispatcher = dctx.getDispatcher();
-		Delegator delegator = dctx.getDelegator();
 		GenericValue userLogin = (GenericValue) context.get("userLogin");
 		Locale locale = (Locale) context.get("locale");
-		// grouped by facility
-		Map<String, List<String>> facilityOrdersMap = new HashMap<String, List<String>>();
 
-		// make the list per facility
-		List<String> orderIds = UtilGenerics.checkList(context.get("orderIdList"));
-		for (String orderId : orderIds) {
-			if (UtilValidate.isEmpty(orderId)) {
-				continue;
-			}
-			List<GenericValue> invInfo = null;
-			try {
-				invInfo = EntityQuery.use(delegator).from("OrderItemAndShipGrpInvResAndItem").where("orderId", orderId, "statusId", "ITEM_APPROVED").queryList();
-			} catch (GenericEntityException e) {
-				Debug.logError(e, module);
-				return ServiceUtil.returnError(e.getMessage());
-			}
-			if (invInfo != null) {
-				for (GenericValue inv : invInfo) {
-					String facilityId = inv.getString("facilityId");
-					List<String> orderIdsByFacility = facilityOrdersMap.get(facilityId);
-					if (orderIdsByFacility == null) {
-						orderIdsByFacility = new ArrayList<String>();
-					}
-					orderIdsByFacility.add(orderId);
-					facilityOrdersMap.put(facilityId, orderIdsByFacility);
-				}
+		// one wave for all the orders, picked from the facilities of their reservations
+		List<String> orderIds = new ArrayList<String>();
+		for (String orderId : UtilGenerics.<String>checkList(context.get("orderIdList"))) {
+			if (UtilValidate.isNotEmpty(orderId)) {
+				orderIds.add(orderId);
 			}
 		}
-
-		// now create the pick lists for each facility
-		for (String facilityId : facilityOrdersMap.keySet()) {
-			List<String> orderIdList = facilityOrdersMap.get(facilityId);
-
-			Map<String, Object> ctx = new HashMap<String, Object>();
-			ctx.put("userLogin", userLogin);
-			ctx.put("orderIdList", orderIdList);
-			ctx.put("facilityId", facilityId);
-
-			Map<String, Object> resp = null;
-			try {
-				resp = dispatcher.runSync("createPicklistFromOrders", ctx);
-			} catch (GenericServiceException e) {
-				Debug.logError(e, module);
-				return ServiceUtil.returnError(e.getMessage());
-			}
-			if (ServiceUtil.isError(resp)) {
-				return ServiceUtil.returnError(UtilProperties.getMessage(resource,
-						"OrderOrderPickingListCreationError", locale), null, null, resp);
-			}
+		Map<String, Object> resp = null;
+		try {
+			resp = dispatcher.runSync("createWavePicklists", UtilMisc.<String, Object>toMap("orderIdList", orderIds, "userLogin", userLogin, "locale", locale));
+		} catch (GenericServiceException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+		if (ServiceUtil.isError(resp)) {
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource,
+					"OrderOrderPickingListCreationError", locale), null, null, resp);
 		}
 
-		return ServiceUtil.returnSuccess();
+		// with the message of a wave without picklist
+		return ServiceUtil.returnSuccess((String) resp.get(ModelService.SUCCESS_MESSAGE));
 	}
 
 	public static Map<String, Object> massPrintOrders(DispatchContext dctx, Map<String, ? extends Object> context) {
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.SafeObjectInputStream;
+import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelViewEntity;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact state of a shopping cart, written in place of the cart when its session is serialized.
+ * <p>The cart is serialized as before, but for the entity values it holds: the values read from the database and not
+ * changed since are written as their primary key only and read back from the entity cache, the other values are
+ * written as their entity name and fields only. The whole is then compressed.</p>
+ * <p>When a {@link CartStateStore} is set with the <code>shoppingcart.state.store</code> property, the state is saved
+ * in the store and the session only holds a reference to it, so that another node can take the cart over. Otherwise
+ * the session holds the compact state itself.</p>
+ */
+public final class CartState {
+
+	public static final String module = CartState.class.getName();
+	private static final ThreadLocal<ShoppingCart> encodingCart = new ThreadLocal<ShoppingCart>();
+	private static final Map<String, CartStateStore> stores = new ConcurrentHashMap<String, CartStateStore>();
+
+	private CartState() {
+	}
+
+	/**
+	 * Returns the object written in place of a cart when its session is serialized: a reference to the state saved in
+	 * the store, the compact state, or the cart itself if its state can't be written.
+	 */
+	static Object replace(ShoppingCart cart) {
+		if (encodingCart.get() == cart) {
+			// the cart written by encode
+			return cart;
+		}
+		try {
+			Delegator delegator = cart.getDelegator();
+			byte[] state = encode(cart);
+			CartStateStore store = getStore(delegator);
+			if (store != null) {
+				store.save(delegator, cart.getCartStateId(), state);
+				return new Reference(delegator.getDelegatorName(), cart.getCartStateId());
+			}
+			return new Compact(delegator.getDelegatorName(), state);
+		} catch (Exception e) {
+			Debug.logWarning(e, "Could not write the compact state of cart " + cart.getCartStateId() + ", writing the whole cart", module);
+			return cart;
+		}
+	}
+
+	/**
+	 * Returns the compact state of a cart.
+	 */
+	public static byte[] encode(ShoppingCart cart) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		encodingCart.set(cart);
+		try (CompactOutputStream out = new CompactOutputStream(new GZIPOutputStream(bytes))) {
+			out.writeObject(cart);
+		} finally {
+			encodingCart.remove();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the cart of a compact state.
+	 */
+	public static ShoppingCart decode(Delegator delegator, byte[] state) throws IOException, ClassNotFoundException {
+		try (CompactInputStream in = new CompactInputStream(new GZIPInputStream(new ByteArrayInputStream(state)), delegator)) {
+			return (ShoppingCart) in.readObject();
+		}
+	}
+
+	/**
+	 * Returns the cart saved in the cart state store, or <code>null</code> if there is none.
+	 */
+	public static ShoppingCart load(Delegator delegator, String cartStateId) throws Exception {
+		CartStateStore store = getStore(delegator);
+		byte[] state = store == null ? null : store.load(delegator, cartStateId);
+		return state == null ? null : decode(delegator, state);
+	}
+
+	/**
+	 * Returns the cart state store set for a delegator, or <code>null</code> if the sessions hold the carts states.
+	 */
+	public static CartStateStore getStore(Delegator delegator) throws Exception {
+		String storeClassName = EntityUtilProperties.getPropertyValue("order", "shoppingcart.state.store", delegator);
+		if (UtilValidate.isEmpty(storeClassName)) {
+			return null;
+		}
+		CartStateStore store = stores.get(storeClassName);
+		if (store == null) {
+			stores.putIfAbsent(storeClassName, (CartStateStore) ObjectType.getInstance(storeClassName));
+			store = stores.get(storeClassName);
+		}
+		return store;
+	}
+
+	static long getExpireSeconds() {
+		return UtilProperties.getPropertyAsLong("order", "shoppingcart.state.expire", 86400);
+	}
+
+	private static boolean isUnchangedDbValue(GenericValue value) {
+		if (!value.originalDbValuesAvailable() || value.hasChanged() || value.getModelEntity() instanceof ModelViewEntity || !value.containsPrimaryKey()) {
+			return false;
+		}
+		for (Map.Entry<String, Object> field : value.getAllFields().entrySet()) {
+			if (!UtilObject.equalsHelper(field.getValue(), value.getOriginalDbValue(field.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class CompactOutputStream extends ObjectOutputStream {
+
+		private CompactOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			if (obj instanceof GenericEntity && !(obj instanceof GenericEntity.NULL)) {
+				GenericEntity entity = (GenericEntity) obj;
+				if (entity.getClass() == GenericValue.class && isUnchangedDbValue((GenericValue) entity)) {
+					return new EntityReference(entity);
+				}
+				if (entity.getClass() == GenericValue.class || entity.getClass() == GenericPK.class) {
+					return new CompactEntity(entity);
+				}
+			}
+			return obj;
+		}
+	}
+
+	private static final class CompactInputStream extends SafeObjectInputStream {
+
+		private final Delegator delegator;
+
+		private CompactInputStream(InputStream in, Delegator delegator) throws IOException {
+			super(in, Thread.currentThread().getContextClassLoader(), Arrays.asList("\\[[ZBSIJFDC]", "java..*",
+					"sun.util.calendar..*", "org.apache.ofbiz..*"));
+			this.delegator = delegator;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof EntityReference) {
+				return ((EntityReference) obj).toValue(delegator);
+			}
+			if (obj instanceof CompactEntity) {
+				return ((CompactEntity) obj).toEntity(delegator);
+			}
+			return obj;
+		}
+	}
+
+	/** A value read from the database and not changed since, written as its primary key */
+	private static final class EntityReference implements Serializable {
+
+		private static final long serialVersionUID = 1332753948616315210L;
+		private final String entityName;
+		private final HashMap<String, Object> primaryKey;
+		private final boolean mutable;
+
+		private EntityReference(GenericEntity value) {
+			this.entityName = value.getEntityName();
+			this.primaryKey = new HashMap<String, Object>(value.getPrimaryKey().getAllFields());
+			this.mutable = value.isMutable();
+		}
+
+		private GenericValue toValue(Delegator delegator) throws IOException {
+			ModelEntity modelEntity = delegator.getModelEntity(entityName);
+			if (modelEntity == null) {
+				throw new InvalidObjectException("Unknown entity " + entityName + " in a cart state");
+			}
+			GenericValue value;
+			try {
+				value = delegator.findOne(entityName, primaryKey, !modelEntity.getNeverCache());
+			} catch (GenericEntityException e) {
+				throw new IOException("Could not read the " + entityName + " value of a cart state", e);
+			}
+			if (value == null) {
+				Debug.logWarning("The " + entityName + " value " + primaryKey + " of a cart state does not exist anymore, restoring its primary key only", module);
+				return GenericValue.create(delegator, modelEntity, primaryKey);
+			}
+			if (mutable && !value.isMutable()) {
+				// a copy of the cached value, as the value read from the database
+				value = GenericValue.create(value);
+				value.synchronizedWithDatasource();
+			} else if (!mutable && value.isMutable()) {
+				value.setImmutable();
+			}
+			return value;
+		}
+	}
+
+	/** Any other entity value or primary key, written as its entity name and fields */
+	private static final class CompactEntity implements Serializable {
+
+		private static final long serialVersionUID = -3838277305706679910L;
+		private final String entityName;
+		private final HashMap<String, Object> fields;
+		private final boolean primaryKey;
+		private final boolean mutable;
+
+		private CompactEntity(GenericEntity entity) {
+			this.entityName = entity.getEntityName();
+			this.fields = new HashMap<String, Object>(entity.getAllFields());
+			this.primaryKey = entity instanceof GenericPK;
+			this.mutable = entity.isMutable();
+		}
+
+		private GenericEntity toEntity(Delegator delegator) throws IOException {
+			ModelEntity modelEntity = delegator.getModelEntity(entityName);
+			if (modelEntity == null) {
+				throw new InvalidObjectException("Unknown entity " + entityName + " in a cart state");
+			}
+			GenericEntity entity = primaryKey ? GenericPK.create(delegator, modelEntity, fields) : GenericValue.create(delegator, modelEntity, fields);
+			if (!mutable) {
+				entity.setImmutable();
+			}
+			return entity;
+		}
+	}
+
+	/** The compact state of a cart, held by the session when there is no cart state store */
+	private static final class Compact implements Serializable {
+
+		private static final long serialVersionUID = 4369249549729067135L;
+		private final String delegatorName;
+		private final byte[] state;
+
+		private Compact(String delegatorName, byte[] state) {
+			this.delegatorName = delegatorName;
+			this.state = state;
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			try {
+				return decode(DelegatorFactory.getDelegator(delegatorName), state);
+			} catch (ClassNotFoundException e) {
+				throw (InvalidObjectException) new InvalidObjectException("Could not read a cart state").initCause(e);
+			} catch (IOException e) {
+				throw (InvalidObjectException) new InvalidObjectException("Could not read a cart state").initCause(e);
+			}
+		}
+	}
+
+	/** A reference to the state of a cart saved in the cart state store */
+	private static final class Reference implements Serializable {
+
+		private static final long serialVersionUID = 6277802965955590013L;
+		private final String delegatorName;
+		private final String cartStateId;
+
+		private Reference(String delegatorName, String cartStateId) {
+			this.delegatorName = delegatorName;
+			this.cartStateId = cartStateId;
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			try {
+				ShoppingCart cart = load(DelegatorFactory.getDelegator(delegatorName), cartStateId);
+				if (cart == null) {
+					Debug.logWarning("The state of cart " + cartStateId + " is not in the cart state store anymore, the session starts a new cart", module);
+				}
+				return cart;
+			} catch (Exception e) {
+				throw (InvalidObjectException) new InvalidObjectException("Could not read the state of cart " + cartStateId).initCause(e);
+			}
+		}
+	}
+}
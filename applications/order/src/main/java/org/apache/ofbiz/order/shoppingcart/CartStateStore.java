@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart;
+
+import org.apache.ofbiz.entity.Delegator;
+
+/**
+ * Keeps the compact states of the shopping carts out of the sessions, see {@link CartState}.
+ * <p>The store is set with the <code>shoppingcart.state.store</code> property of order.properties. An implementation
+ * needs a public no-argument constructor; one instance is shared by all the carts.</p>
+ */
+public interface CartStateStore {
+
+	/**
+	 * Saves the state of a cart, replacing the one saved before.
+	 */
+	void save(Delegator delegator, String cartStateId, byte[] state) throws Exception;
+
+	/**
+	 * Returns the state of a cart, or <code>null</code> when there is none.
+	 */
+	byte[] load(Delegator delegator, String cartStateId) throws Exception;
+
+	/**
+	 * Removes the state of a cart.
+	 */
+	void remove(Delegator delegator, String cartStateId) throws Exception;
+}
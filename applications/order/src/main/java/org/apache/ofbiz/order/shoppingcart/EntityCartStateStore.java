@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Cart state store sharing the states between the nodes of a cluster through the ShoppingCartState entity, so that a
+ * cart survives the failover of its session. The states not saved for <code>shoppingcart.state.expire</code> seconds
+ * are removed by the purgeOldShoppingCartStates service.
+ */
+public class EntityCartStateStore implements CartStateStore {
+
+	public void save(final Delegator delegator, final String cartStateId, final byte[] state) throws Exception {
+		// the session may be written in the middle of a request transaction, which must not hold the state back
+		TransactionUtil.doNewTransaction(new Callable<Void>() {
+			public Void call() throws Exception {
+				delegator.createOrStore(delegator.makeValue("ShoppingCartState", UtilMisc.toMap("cartStateId", cartStateId, "stateData", state)));
+				return null;
+			}
+		}, "Error saving the state of cart " + cartStateId, 0, true);
+	}
+
+	public byte[] load(Delegator delegator, String cartStateId) throws Exception {
+		GenericValue cartState = EntityQuery.use(delegator).from("ShoppingCartState").where("cartStateId", cartStateId).queryOne();
+		return cartState == null ? null : cartState.getBytes("stateData");
+	}
+
+	public void remove(Delegator delegator, String cartStateId) throws Exception {
+		delegator.removeByAnd("ShoppingCartState", UtilMisc.toMap("cartStateId", cartStateId));
+	}
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart;
+
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+
+/**
+ * Cart state store of a single node, keeping the states in the <code>order.ShoppingCartState</code> cache until
+ * they are not saved for <code>shoppingcart.state.expire</code> seconds. Meant for tests and for the session
+ * persistence of a node restart.
+ */
+public class InMemoryCartStateStore implements CartStateStore {
+
+	private final UtilCache<String, byte[]> stateCache = UtilCache.createUtilCache("order.ShoppingCartState", 0, CartState.getExpireSeconds() * 1000L);
+
+	public void save(Delegator delegator, String cartStateId, byte[] state) {
+		stateCache.put(getCacheKey(delegator, cartStateId), state);
+	}
+
+	public byte[] load(Delegator delegator, String cartStateId) {
+		return stateCache.get(getCacheKey(delegator, cartStateId));
+	}
+
+	public void remove(Delegator delegator, String cartStateId) {
+		stateCache.remove(getCacheKey(delegator, cartStateId));
+	}
+
+	private static String getCacheKey(Delegator delegator, String cartStateId) {
+		return delegator.getDelegatorName() + "::" + cartStateId;
+	}
+}
@@ -41,6 +41,7 @@ import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.MathContext;
@@ -163,6 +164,10 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
 	private Timestamp cartCreatedTs = UtilDateTime.nowTimestamp();
 	private transient Delegator delegator = null;
 	private String delegatorName = null;
+	/**
+	 * Identifies the state of the cart in the cart state store, see {@link CartState}
+	 */
+	private String cartStateId = null;
 
 	/**
 	 * don't allow empty constructor
@@ -343,6 +348,20 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
 		return delegator;
 	}
 
+	public String getCartStateId() {
+		if (cartStateId == null) {
+			cartStateId = UUID.randomUUID().toString();
+		}
+		return cartStateId;
+	}
+
+	/**
+	 * Writes the compact state of the cart, or a reference to it, in place of the cart, see {@link CartState}.
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		return CartState.replace(this);
+	}
+
 	public String getProductStoreId() {
 		return this.productStoreId;
 	}
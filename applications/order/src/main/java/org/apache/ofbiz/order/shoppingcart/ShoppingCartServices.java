@@ -32,6 +32,7 @@ import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.order.order.OrderReadHelper;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart.CartShipInfo;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart.CartShipInfo.CartShipItemInfo;
+import org.apache.ofbiz.order.shoppingcart.product.CompiledProductPromo;
 import org.apache.ofbiz.product.config.ProductConfigWorker;
 import org.apache.ofbiz.product.config.ProductConfigWrapper;
 import org.apache.ofbiz.service.DispatchContext;
@@ -1192,4 +1193,22 @@ public class ShoppingCartServices {
 		}
 		return result;
 	}
+
+	public static Map<String, Object> clearCompiledProductPromo(DispatchContext dctx, Map<String, Object> context) {
+		CompiledProductPromo.clear(dctx.getDelegator(), (String) context.get("productPromoId"));
+		return ServiceUtil.returnSuccess();
+	}
+
+	public static Map<String, Object> purgeOldShoppingCartStates(DispatchContext dctx, Map<String, Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		Timestamp expireTs = new Timestamp(System.currentTimeMillis() - CartState.getExpireSeconds() * 1000L);
+		try {
+			int removed = delegator.removeByCondition("ShoppingCartState", EntityCondition.makeCondition("lastUpdatedStamp", EntityOperator.LESS_THAN, expireTs));
+			if (Debug.infoOn()) Debug.logInfo("Removed " + removed + " shopping cart states saved before " + expireTs, module);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+		return ServiceUtil.returnSuccess();
+	}
 }
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart.product;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+
+import javax.transaction.Synchronization;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A promotion compiled for {@link ProductPromoWorker}: its rules with their conditions and actions, read once, and the
+ * product sets of the conditions and actions (see {@link ProductPromoWorker#getPromoRuleCondProductIds}), resolved once.
+ * <p>The rules that need some product of a set in the cart to pass are indexed by that set, so that a promotion is
+ * only evaluated for the carts holding a product it could apply to (see {@link #canApply(Set)}).</p>
+ * <p>The compiled promotions are kept in the <code>order.CompiledProductPromo</code> cache, by day: the category product
+ * sets are resolved for the time of the first evaluation of the day, so an evaluation for another day (a back-dated
+ * order, or the first one after midnight) compiles the promotion again. They are dropped when the promotion entities
+ * change (see the order entity ECAs), and expire from the cache so that the category members starting or ending
+ * during the day are seen.</p>
+ * <p>With the <code>promotion.compiled</code> property of order.properties set to false, a promotion is read again at each
+ * use and never skipped, as it was evaluated before its compilation.</p>
+ */
+public final class CompiledProductPromo {
+
+	public static final String module = CompiledProductPromo.class.getName();
+	private static final UtilCache<String, CompiledProductPromo> compiledPromoCache = UtilCache.createUtilCache("order.CompiledProductPromo", 0, 600000);
+
+	private final String productPromoId;
+	private final List<Rule> rules;
+	private final Map<String, Rule> rulesById;
+	private final boolean orderTotalCondition;
+	/** false when a rule can pass without product in the cart */
+	private final boolean productGated;
+	private final Timestamp nowTimestamp;
+	private final ConcurrentHashMap<String, Set<String>> condProductIds = new ConcurrentHashMap<String, Set<String>>();
+	private final ConcurrentHashMap<String, Set<String>> actionProductIds = new ConcurrentHashMap<String, Set<String>>();
+
+	private CompiledProductPromo(String productPromoId, Delegator delegator, Timestamp nowTimestamp, boolean gated) throws GenericEntityException {
+		this.productPromoId = productPromoId;
+		this.nowTimestamp = nowTimestamp;
+		// the same cached queries as the ones ProductPromoWorker used to run for each evaluation
+		List<GenericValue> productPromoRules = EntityQuery.use(delegator).from("ProductPromoRule").where("productPromoId", productPromoId).cache(true).queryList();
+		List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromoId).orderBy("productPromoCondSeqId").cache(true).queryList();
+		List<Rule> rules = new ArrayList<Rule>(productPromoRules.size());
+		Map<String, Rule> rulesById = new HashMap<String, Rule>();
+		boolean orderTotalCondition = false;
+		boolean productGated = !productPromoRules.isEmpty();
+		for (GenericValue productPromoRule : productPromoRules) {
+			List<GenericValue> conds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get("productPromoRuleId")));
+			List<GenericValue> actions = productPromoRule.getRelated("ProductPromoAction", null, UtilMisc.toList("productPromoActionSeqId"), true);
+			Rule rule = new Rule(productPromoRule, conds, actions, gated ? makeGates(conds, delegator, nowTimestamp) : Collections.<Set<String>>emptyList());
+			rules.add(rule);
+			rulesById.put(productPromoRule.getString("productPromoRuleId"), rule);
+			productGated &= !rule.gates.isEmpty();
+		}
+		for (GenericValue productPromoCond : productPromoConds) {
+			if ("PPIP_ORDER_TOTAL".equals(productPromoCond.getString("inputParamEnumId"))) {
+				orderTotalCondition = true;
+				break;
+			}
+		}
+		this.rules = Collections.unmodifiableList(rules);
+		this.rulesById = rulesById;
+		this.orderTotalCondition = orderTotalCondition;
+		this.productGated = productGated;
+	}
+
+	/**
+	 * Returns the promotion compiled for the day of <code>nowTimestamp</code> (of now when it is null), compiling it if needed.
+	 */
+	public static CompiledProductPromo getInstance(String productPromoId, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+		if (nowTimestamp == null) {
+			nowTimestamp = UtilDateTime.nowTimestamp();
+		}
+		if (!isEnabled(delegator)) {
+			return new CompiledProductPromo(productPromoId, delegator, nowTimestamp, false);
+		}
+		String cacheKey = getCacheKeyPrefix(delegator, productPromoId) + UtilDateTime.getDayStart(nowTimestamp).getTime();
+		CompiledProductPromo compiledPromo = compiledPromoCache.get(cacheKey);
+		if (compiledPromo == null) {
+			compiledPromo = new CompiledProductPromo(productPromoId, delegator, nowTimestamp, true);
+			compiledPromoCache.putIfAbsent(cacheKey, compiledPromo);
+		}
+		return compiledPromo;
+	}
+
+	/**
+	 * Returns false when the <code>promotion.compiled</code> property of order.properties is false.
+	 */
+	public static boolean isEnabled(Delegator delegator) {
+		return !EntityUtilProperties.propertyValueEqualsIgnoreCase("order", "promotion.compiled", "false", delegator);
+	}
+
+	private static String getCacheKeyPrefix(Delegator delegator, String productPromoId) {
+		return delegator.getDelegatorName() + "::" + productPromoId + "::";
+	}
+
+	/**
+	 * Drops the compilations of a promotion, or all of them when <code>productPromoId</code> is empty. When called in a transaction,
+	 * it is dropped again once the transaction completes, so that a promotion compiled from the data of before the
+	 * commit is not kept.
+	 */
+	public static void clear(Delegator delegator, String productPromoId) {
+		final String cacheKeyPrefix = UtilValidate.isNotEmpty(productPromoId) ? getCacheKeyPrefix(delegator, productPromoId) : null;
+		clear(cacheKeyPrefix);
+		try {
+			TransactionUtil.registerSynchronization(new Synchronization() {
+				public void beforeCompletion() {
+				}
+
+				public void afterCompletion(int status) {
+					clear(cacheKeyPrefix);
+				}
+			});
+		} catch (GenericTransactionException e) {
+			Debug.logWarning(e, "Could not register the removal of the compiled promotion [" + productPromoId + "] on transaction completion", module);
+		}
+	}
+
+	private static void clear(String cacheKeyPrefix) {
+		if (cacheKeyPrefix != null) {
+			for (String cacheKey : new ArrayList<String>(compiledPromoCache.getCacheLineKeys())) {
+				if (cacheKey.startsWith(cacheKeyPrefix)) {
+					compiledPromoCache.remove(cacheKey);
+				}
+			}
+		} else {
+			compiledPromoCache.clear();
+		}
+	}
+
+	/**
+	 * Returns the product sets of the conditions that a rule needs to pass: the product conditions asking for some
+	 * quantity or amount of their products (see ProductPromoWorker.checkCondition). A rule with a service condition is
+	 * never gated, nor by a product total condition following a condition consuming product quantities, as evaluating
+	 * them may change the cart.
+	 */
+	private static List<Set<String>> makeGates(List<GenericValue> conds, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+		List<Set<String>> gates = new ArrayList<Set<String>>();
+		boolean consumingCondBefore = false;
+		for (GenericValue productPromoCond : conds) {
+			String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
+			String operatorEnumId = productPromoCond.getString("operatorEnumId");
+			if ("PPIP_SERVICE".equals(inputParamEnumId)) {
+				return Collections.emptyList();
+			}
+			boolean gate = false;
+			if ("PPIP_PRODUCT_AMOUNT".equals(inputParamEnumId)) {
+				gate = isPositive(productPromoCond.getString("condValue"));
+				consumingCondBefore = true;
+			} else if ("PPIP_PRODUCT_QUANT".equals(inputParamEnumId)) {
+				String condValue = productPromoCond.getString("condValue");
+				gate = (UtilValidate.isEmpty(condValue) || isPositive(condValue))
+						&& (operatorEnumId == null || "PPC_EQ".equals(operatorEnumId) || "PPC_GT".equals(operatorEnumId) || "PPC_GTE".equals(operatorEnumId));
+				consumingCondBefore = true;
+			} else if ("PPIP_PRODUCT_TOTAL".equals(inputParamEnumId)) {
+				gate = !consumingCondBefore && isPositive(productPromoCond.getString("condValue"))
+						&& ("PPC_EQ".equals(operatorEnumId) || "PPC_GT".equals(operatorEnumId) || "PPC_GTE".equals(operatorEnumId));
+			}
+			if (gate) {
+				gates.add(ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp));
+			}
+		}
+		return gates;
+	}
+
+	private static boolean isPositive(String value) {
+		if (UtilValidate.isEmpty(value)) {
+			return false;
+		}
+		try {
+			return new BigDecimal(value).signum() > 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the products of the cart items a promotion condition can count: the product, and the parent product, of
+	 * the items that are not promotion items.
+	 */
+	public static Set<String> getCartProductIds(ShoppingCart cart) {
+		Set<String> productIds = new HashSet<String>();
+		for (ShoppingCartItem cartItem : cart) {
+			if (!cartItem.getIsPromo()) {
+				if (cartItem.getProductId() != null) {
+					productIds.add(cartItem.getProductId());
+				}
+				if (cartItem.getParentProductId() != null) {
+					productIds.add(cartItem.getParentProductId());
+				}
+			}
+		}
+		return productIds;
+	}
+
+	/**
+	 * Returns false if none of the rules of the promotion can pass for a cart holding these products, true if one may.
+	 */
+	public boolean canApply(Set<String> cartProductIds) {
+		if (!productGated) {
+			return true;
+		}
+		for (Rule rule : rules) {
+			if (rule.canApply(cartProductIds)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public String getProductPromoId() {
+		return productPromoId;
+	}
+
+	public List<Rule> getRules() {
+		return rules;
+	}
+
+	public Rule getRule(String productPromoRuleId) {
+		return rulesById.get(productPromoRuleId);
+	}
+
+	public boolean hasOrderTotalCondition() {
+		return orderTotalCondition;
+	}
+
+	/**
+	 * Returns the products of a condition of the promotion, see {@link ProductPromoWorker#getPromoRuleCondProductIds}.
+	 */
+	public Set<String> getCondProductIds(GenericValue productPromoCond, Delegator delegator) throws GenericEntityException {
+		String key = productPromoCond.getString("productPromoRuleId") + "::" + productPromoCond.getString("productPromoCondSeqId");
+		Set<String> productIds = condProductIds.get(key);
+		if (productIds == null) {
+			productIds = Collections.unmodifiableSet(ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp));
+			condProductIds.putIfAbsent(key, productIds);
+		}
+		return productIds;
+	}
+
+	/**
+	 * Returns the products of an action of the promotion, see {@link ProductPromoWorker#getPromoRuleActionProductIds}.
+	 */
+	public Set<String> getActionProductIds(GenericValue productPromoAction, Delegator delegator) throws GenericEntityException {
+		String key = productPromoAction.getString("productPromoRuleId") + "::" + productPromoAction.getString("productPromoActionSeqId");
+		Set<String> productIds = actionProductIds.get(key);
+		if (productIds == null) {
+			productIds = Collections.unmodifiableSet(ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp));
+			actionProductIds.putIfAbsent(key, productIds);
+		}
+		return productIds;
+	}
+
+	/**
+	 * A rule of a compiled promotion.
+	 */
+	public static final class Rule {
+		private final GenericValue productPromoRule;
+		private final List<GenericValue> conds;
+		private final List<GenericValue> itemConds;
+		private final List<GenericValue> actions;
+		private final List<Set<String>> gates;
+
+		private Rule(GenericValue productPromoRule, List<GenericValue> conds, List<GenericValue> actions, List<Set<String>> gates) {
+			this.productPromoRule = productPromoRule;
+			this.conds = Collections.unmodifiableList(conds);
+			this.actions = Collections.unmodifiableList(actions);
+			this.gates = gates;
+			List<GenericValue> itemConds = new ArrayList<GenericValue>();
+			for (GenericValue productPromoCond : conds) {
+				String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
+				if ("PPIP_LPMUP_AMT".equals(inputParamEnumId) || "PPIP_LPMUP_PER".equals(inputParamEnumId)) {
+					itemConds.add(productPromoCond);
+				}
+			}
+			this.itemConds = Collections.unmodifiableList(itemConds);
+		}
+
+		private boolean canApply(Set<String> cartProductIds) {
+			for (Set<String> gate : gates) {
+				if (Collections.disjoint(gate, cartProductIds)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public GenericValue getProductPromoRule() {
+			return productPromoRule;
+		}
+
+		/** Returns the conditions of the rule, by sequence. */
+		public List<GenericValue> getConds() {
+			return conds;
+		}
+
+		/** Returns the conditions of the rule checked for each cart item: the list price markup conditions. */
+		public List<GenericValue> getItemConds() {
+			return itemConds;
+		}
+
+		/** Returns the actions of the rule, by sequence. */
+		public List<GenericValue> getActions() {
+			return actions;
+		}
+	}
+}
@@ -372,19 +372,7 @@ public final class ProductPromoWorker {
 	}
 
 	private static boolean hasOrderTotalCondition(GenericValue productPromo, Delegator delegator) throws GenericEntityException {
-		boolean hasOtCond = false;
-		List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond")
-				.where("productPromoId", productPromo.get("productPromoId"))
-				.orderBy("productPromoCondSeqId")
-				.cache(true).queryList();
-		for (GenericValue productPromoCond : productPromoConds) {
-			String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
-			if ("PPIP_ORDER_TOTAL".equals(inputParamEnumId)) {
-				hasOtCond = true;
-				break;
-			}
-		}
-		return hasOtCond;
+		return CompiledProductPromo.getInstance(productPromo.getString("productPromoId"), delegator, null).hasOrderTotalCondition();
 	}
 
 	private static void runProductPromos(List<GenericValue> productPromoList, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp, boolean isolatedTestRun) throws GeneralException {
@@ -400,6 +388,9 @@ public final class ProductPromoWorker {
 		long maxUseLimit = cart.getTotalQuantity().multiply(BigDecimal.valueOf(2)).setScale(0, BigDecimal.ROUND_CEILING).longValue();
 		maxUseLimit = Math.max(1, maxUseLimit);
 
+		// the promo actions only add promo items, which conditions don't count, so the products that can satisfy the conditions stay the same
+		Set<String> cartProductIds = CompiledProductPromo.getCartProductIds(cart);
+
 		try {
 			// repeat until no more rules to run: either all rules are run, or no changes to the cart in a loop
 			boolean cartChanged = true;
@@ -414,8 +405,9 @@ public final class ProductPromoWorker {
 				for (GenericValue productPromo : productPromoList) {
 					String productPromoId = productPromo.getString("productPromoId");
 
-					List<GenericValue> productPromoRules = productPromo.getRelated("ProductPromoRule", null, null, true);
-					if (UtilValidate.isNotEmpty(productPromoRules)) {
+					CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(productPromoId, delegator, nowTimestamp);
+					List<CompiledProductPromo.Rule> productPromoRules = compiledPromo.getRules();
+					if (UtilValidate.isNotEmpty(productPromoRules) && compiledPromo.canApply(cartProductIds)) {
 						// always have a useLimit to avoid unlimited looping, default to 1 if no other is specified
 						Long candidateUseLimit = getProductPromoUseLimit(productPromo, partyId, delegator);
 						Long useLimit = candidateUseLimit;
@@ -446,7 +438,7 @@ public final class ProductPromoWorker {
 									GenericValue productPromoCode = productPromoCodeIter.next();
 									String productPromoCodeId = productPromoCode.getString("productPromoCodeId");
 									Long codeUseLimit = getProductPromoCodeUseLimit(productPromoCode, partyId, delegator);
-									if (runProductPromoRules(cart, useLimit, true, productPromoCodeId, codeUseLimit, maxUseLimit, productPromo, productPromoRules, dispatcher, delegator, nowTimestamp)) {
+									if (runProductPromoRules(cart, useLimit, true, productPromoCodeId, codeUseLimit, maxUseLimit, productPromo, compiledPromo, dispatcher, delegator, nowTimestamp)) {
 										cartChanged = true;
 									}
 
@@ -458,7 +450,7 @@ public final class ProductPromoWorker {
 							}
 						} else {
 							try {
-								if (runProductPromoRules(cart, useLimit, false, null, null, maxUseLimit, productPromo, productPromoRules, dispatcher, delegator, nowTimestamp)) {
+								if (runProductPromoRules(cart, useLimit, false, null, null, maxUseLimit, productPromo, compiledPromo, dispatcher, delegator, nowTimestamp)) {
 									cartChanged = true;
 								}
 							} catch (RuntimeException e) {
@@ -770,7 +762,7 @@ public final class ProductPromoWorker {
 	}
 
 	private static boolean runProductPromoRules(ShoppingCart cart, Long useLimit, boolean requireCode, String productPromoCodeId, Long codeUseLimit, long maxUseLimit,
-	                                            GenericValue productPromo, List<GenericValue> productPromoRules, LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
+	                                            GenericValue productPromo, CompiledProductPromo compiledPromo, LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
 		boolean cartChanged = false;
 		Map<ShoppingCartItem, BigDecimal> usageInfoMap = prepareProductUsageInfoMap(cart);
 		String productPromoId = productPromo.getString("productPromoId");
@@ -781,17 +773,14 @@ public final class ProductPromoWorker {
 			BigDecimal totalDiscountAmount = BigDecimal.ZERO;
 			BigDecimal quantityLeftInActions = BigDecimal.ZERO;
 
-			Iterator<GenericValue> promoRulesIter = productPromoRules.iterator();
-			while (promoRulesIter != null && promoRulesIter.hasNext()) {
-				GenericValue productPromoRule = promoRulesIter.next();
+			for (CompiledProductPromo.Rule compiledRule : compiledPromo.getRules()) {
+				GenericValue productPromoRule = compiledRule.getProductPromoRule();
 
 				// if apply then performActions when no conditions are false, so default to true
 				boolean performActions = true;
 
 				// loop through conditions for rule, if any false, set allConditionsTrue to false
-				List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromo.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
-				productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get("productPromoRuleId")));
-				// using the other method to consolidate cache entries because the same cache is used elsewhere: List productPromoConds = productPromoRule.getRelated("ProductPromoCond", null, UtilMisc.toList("productPromoCondSeqId"), true);
+				List<GenericValue> productPromoConds = compiledRule.getConds();
 				if (Debug.verboseOn()) Debug.logVerbose("Checking " + productPromoConds.size() + " conditions for rule " + productPromoRule, module);
 
 				Iterator<GenericValue> productPromoCondIter = UtilMisc.toIterator(productPromoConds);
@@ -810,7 +799,7 @@ public final class ProductPromoWorker {
 				if (performActions) {
 					// perform all actions, either apply or unapply
 
-					List<GenericValue> productPromoActions = productPromoRule.getRelated("ProductPromoAction", null, UtilMisc.toList("productPromoActionSeqId"), true);
+					List<GenericValue> productPromoActions = compiledRule.getActions();
 					Iterator<GenericValue> productPromoActionIter = UtilMisc.toIterator(productPromoActions);
 					while (productPromoActionIter != null && productPromoActionIter.hasNext()) {
 						GenericValue productPromoAction = productPromoActionIter.next();
@@ -931,7 +920,7 @@ public final class ProductPromoWorker {
 				amountNeeded = new BigDecimal(condValue);
 			}
 
-			Set<String> productIds = ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoCond.getString("productPromoId"), delegator, nowTimestamp).getCondProductIds(productPromoCond, delegator);
 
 			List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
 			Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -972,7 +961,7 @@ public final class ProductPromoWorker {
 				BigDecimal amountNeeded = new BigDecimal(condValue);
 				BigDecimal amountAvailable = BigDecimal.ZERO;
 
-				Set<String> productIds = ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp);
+				Set<String> productIds = CompiledProductPromo.getInstance(productPromoCond.getString("productPromoId"), delegator, nowTimestamp).getCondProductIds(productPromoCond, delegator);
 
 				List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
 				for (ShoppingCartItem cartItem : lineOrderedByBasePriceList) {
@@ -1001,7 +990,7 @@ public final class ProductPromoWorker {
 				quantityNeeded = new BigDecimal(condValue);
 			}
 
-			Set<String> productIds = ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoCond.getString("productPromoId"), delegator, nowTimestamp).getCondProductIds(productPromoCond, delegator);
 
 			List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
 			Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -1274,11 +1263,13 @@ public final class ProductPromoWorker {
 	}
 
 	private static boolean checkConditionsForItem(GenericValue productPromoActionOrCond, ShoppingCart cart, ShoppingCartItem cartItem, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
-		GenericValue productPromoRule = productPromoActionOrCond.getRelatedOne("ProductPromoRule", true);
-
-		List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromoRule.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
-		productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get("productPromoRuleId")));
-		for (GenericValue productPromoCond : productPromoConds) {
+		CompiledProductPromo.Rule compiledRule = CompiledProductPromo.getInstance(productPromoActionOrCond.getString("productPromoId"), delegator, nowTimestamp)
+				.getRule(productPromoActionOrCond.getString("productPromoRuleId"));
+		if (compiledRule == null) {
+			return true;
+		}
+		// the other conditions always pass for an item
+		for (GenericValue productPromoCond : compiledRule.getItemConds()) {
 			boolean passed = checkConditionForItem(productPromoCond, cart, cartItem, delegator, dispatcher, nowTimestamp);
 			if (!passed) return false;
 		}
@@ -1472,7 +1463,7 @@ public final class ProductPromoWorker {
 				}
 
 				// support multiple gift options if products are attached to the action, or if the productId on the action is a virtual product
-				Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+				Set<String> productIds = CompiledProductPromo.getInstance(productPromoAction.getString("productPromoId"), delegator, nowTimestamp).getActionProductIds(productPromoAction, delegator);
 				if (productIds != null) {
 					optionProductIds.addAll(productIds);
 				}
@@ -1576,7 +1567,7 @@ public final class ProductPromoWorker {
 			BigDecimal startingQuantity = quantityDesired;
 			BigDecimal discountAmountTotal = BigDecimal.ZERO;
 
-			Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoAction.getString("productPromoId"), delegator, nowTimestamp).getActionProductIds(productPromoAction, delegator);
 
 			List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
 			Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -1623,7 +1614,7 @@ public final class ProductPromoWorker {
 			BigDecimal startingQuantity = quantityDesired;
 			BigDecimal discountAmountTotal = BigDecimal.ZERO;
 
-			Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoAction.getString("productPromoId"), delegator, nowTimestamp).getActionProductIds(productPromoAction, delegator);
 
 			List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
 			Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -1670,7 +1661,7 @@ public final class ProductPromoWorker {
 			BigDecimal desiredAmount = productPromoAction.get("amount") == null ? BigDecimal.ZERO : productPromoAction.getBigDecimal("amount");
 			BigDecimal totalAmount = BigDecimal.ZERO;
 
-			Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoAction.getString("productPromoId"), delegator, nowTimestamp).getActionProductIds(productPromoAction, delegator);
 
 			List<ShoppingCartItem> cartItemsUsed = new LinkedList<ShoppingCartItem>();
 			List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
@@ -1706,7 +1697,7 @@ public final class ProductPromoWorker {
 			}
 		} else if ("PROMO_ORDER_PERCENT".equals(productPromoActionEnumId)) {
 			BigDecimal percentage = (productPromoAction.get("amount") == null ? BigDecimal.ZERO : (productPromoAction.getBigDecimal("amount").movePointLeft(2))).negate();
-			Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoAction.getString("productPromoId"), delegator, nowTimestamp).getActionProductIds(productPromoAction, delegator);
 			BigDecimal amount;
 			if (productIds.isEmpty()) {
 				amount = cart.getSubTotalForPromotions().multiply(percentage);
@@ -1732,7 +1723,7 @@ public final class ProductPromoWorker {
 			}
 		} else if ("PROMO_PROD_SPPRC".equals(productPromoActionEnumId)) {
 			// if there are productIds associated with the action then restrict to those productIds, otherwise apply for all products
-			Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+			Set<String> productIds = CompiledProductPromo.getInstance(productPromoAction.getString("productPromoId"), delegator, nowTimestamp).getActionProductIds(productPromoAction, delegator);
 
 			// go through the cart items and for each product that has a specialPromoPrice use that price
 			for (ShoppingCartItem cartItem : cart.items()) {
@@ -32,8 +32,10 @@ import org.apache.ofbiz.service.ServiceUtil;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class ShippingEstimateWrapper {
 
@@ -101,23 +103,31 @@ public class ShippingEstimateWrapper {
 		}
 	}
 
-	protected void loadEstimates(BigDecimal totalAllowance) {
+	protected void loadEstimates(final BigDecimal totalAllowance) {
 		this.shippingEstimates = new HashMap<GenericValue, BigDecimal>();
 		if (shippingMethods != null) {
-			for (GenericValue shipMethod : shippingMethods) {
-				String shippingMethodTypeId = shipMethod.getString("shipmentMethodTypeId");
-				String carrierRoleTypeId = shipMethod.getString("roleTypeId");
-				String carrierPartyId = shipMethod.getString("partyId");
-				String productStoreShipMethId = shipMethod.getString("productStoreShipMethId");
-				String shippingCmId = shippingAddress != null ? shippingAddress.getString("contactMechId") : null;
-
-				Map<String, Object> estimateMap = ShippingEvents.getShipGroupEstimate(dispatcher, delegator, "SALES_ORDER",
-						shippingMethodTypeId, carrierPartyId, carrierRoleTypeId, shippingCmId, productStoreId,
-						supplierPartyId, shippableItemInfo, shippableWeight, shippableQuantity, shippableTotal, partyId, productStoreShipMethId, totalAllowance);
-
+			// the carriers are asked concurrently, the estimates not ready in time are left out
+			Map<GenericValue, Callable<Map<String, Object>>> estimates = new LinkedHashMap<GenericValue, Callable<Map<String, Object>>>();
+			for (final GenericValue shipMethod : shippingMethods) {
+				estimates.put(shipMethod, new Callable<Map<String, Object>>() {
+					public Map<String, Object> call() {
+						String shippingMethodTypeId = shipMethod.getString("shipmentMethodTypeId");
+						String carrierRoleTypeId = shipMethod.getString("roleTypeId");
+						String carrierPartyId = shipMethod.getString("partyId");
+						String productStoreShipMethId = shipMethod.getString("productStoreShipMethId");
+						String shippingCmId = shippingAddress != null ? shippingAddress.getString("contactMechId") : null;
+
+						return ShippingEvents.getShipGroupEstimate(dispatcher, delegator, "SALES_ORDER",
+								shippingMethodTypeId, carrierPartyId, carrierRoleTypeId, shippingCmId, productStoreId,
+								supplierPartyId, shippableItemInfo, shippableWeight, shippableQuantity, shippableTotal, partyId, productStoreShipMethId, totalAllowance);
+					}
+				});
+			}
+			for (Map.Entry<GenericValue, Map<String, Object>> entry : ShippingRateShopper.getEstimates(delegator, estimates).entrySet()) {
+				Map<String, Object> estimateMap = entry.getValue();
 				if (!ServiceUtil.isError(estimateMap)) {
 					BigDecimal shippingTotal = (BigDecimal) estimateMap.get("shippingTotal");
-					shippingEstimates.put(shipMethod, shippingTotal);
+					shippingEstimates.put(entry.getKey(), shippingTotal);
 				}
 			}
 		}
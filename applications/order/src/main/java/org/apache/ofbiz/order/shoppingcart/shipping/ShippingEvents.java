@@ -339,6 +339,13 @@ public class ShippingEvents {
 				context.put("shipmentCustomMethodId", shipmentCustomMethodId);
 				context.put("shipmentGatewayConfigId", shipmentGatewayConfigId);
 
+				// a recent quote for the same route, weight and packages is reused
+				String quoteKey = ShippingRateShopper.makeQuoteKey(delegator, serviceName, context);
+				BigDecimal cachedQuote = ShippingRateShopper.getCachedQuote(quoteKey);
+				if (cachedQuote != null) {
+					return cachedQuote;
+				}
+
 				// invoke the service
 				Map<String, Object> serviceResp = null;
 				try {
@@ -359,6 +366,7 @@ public class ShippingEvents {
 					// should not throw an Exception here, otherwise getShipGroupEstimate would return an error, causing all sorts of services like add or update order item to abort
 				} else {
 					externalShipAmt = (BigDecimal) serviceResp.get("shippingEstimateAmount");
+					ShippingRateShopper.cacheQuote(quoteKey, externalShipAmt);
 				}
 			}
 		}
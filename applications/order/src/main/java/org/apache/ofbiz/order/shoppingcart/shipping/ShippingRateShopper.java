@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart.shipping;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shops the shipping rates of several shipment methods at once: the estimates of the methods are computed
+ * concurrently, each one with the deadline of its carrier, and the estimates not ready in time are left out.
+ * <p>The quotes of the external carrier services (see {@link ShippingEvents#getExternalShipEstimate}) are kept for a
+ * short time in the <code>order.ShippingRateQuotes</code> cache, by service, origin, destination postal code, weight
+ * bucket and package set, so that a late quote still serves the next estimate.</p>
+ * <p>The rate shopping is configured in <code>shipment.properties</code>.</p>
+ */
+public final class ShippingRateShopper {
+
+	public static final String module = ShippingRateShopper.class.getName();
+	private static final String resource = "shipment";
+	private static final ThreadGroup RATE_SHOPPING_THREAD_GROUP = new ThreadGroup("ShippingRateShopper");
+	private static final UtilCache<String, BigDecimal> quoteCache = UtilCache.createUtilCache("order.ShippingRateQuotes", 10000, 300000);
+
+	private ShippingRateShopper() {
+	}
+
+	/**
+	 * Computes the estimates of the shipment methods concurrently and waits for each one until the deadline of its
+	 * carrier (<code>shipment.rateshop.timeout.[carrierPartyId]</code>, or <code>shipment.rateshop.timeout</code>).
+	 *
+	 * @param delegator The delegator, to read the configuration
+	 * @param estimates The estimate of each ProductStoreShipmentMeth, in the order to return them
+	 * @return the results of the estimates ready in time, in the order of <code>estimates</code>
+	 */
+	public static <K extends GenericValue> Map<K, Map<String, Object>> getEstimates(Delegator delegator, Map<K, Callable<Map<String, Object>>> estimates) {
+		Map<K, Map<String, Object>> results = new LinkedHashMap<K, Map<String, Object>>();
+		if (estimates.size() < 2 || !"true".equals(EntityUtilProperties.getPropertyValue(resource, "shipment.rateshop.enabled", "true", delegator))) {
+			for (Map.Entry<K, Callable<Map<String, Object>>> entry : estimates.entrySet()) {
+				try {
+					results.put(entry.getKey(), entry.getValue().call());
+				} catch (Exception e) {
+					Debug.logError(e, "Could not estimate the shipping of " + entry.getKey(), module);
+				}
+			}
+			return results;
+		}
+
+		long start = System.currentTimeMillis();
+		Map<K, Future<Map<String, Object>>> futures = new LinkedHashMap<K, Future<Map<String, Object>>>();
+		for (Map.Entry<K, Callable<Map<String, Object>>> entry : estimates.entrySet()) {
+			futures.put(entry.getKey(), getExecutor().submit(entry.getValue()));
+		}
+		for (Map.Entry<K, Future<Map<String, Object>>> entry : futures.entrySet()) {
+			K shipMethod = entry.getKey();
+			long deadline = start + getTimeout(delegator, shipMethod.getString("partyId"));
+			try {
+				results.put(shipMethod, entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+			} catch (TimeoutException e) {
+				// left running: its quote is cached for the next estimate
+				Debug.logWarning("The shipping estimate of " + shipMethod.getString("partyId") + " " + shipMethod.getString("shipmentMethodTypeId")
+						+ " was not ready in time, leaving it out", module);
+			} catch (ExecutionException e) {
+				Debug.logError(e.getCause(), "Could not estimate the shipping of " + shipMethod, module);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return results;
+	}
+
+	private static long getTimeout(Delegator delegator, String carrierPartyId) {
+		String timeout = null;
+		if (carrierPartyId != null) {
+			timeout = EntityUtilProperties.getPropertyValue(resource, "shipment.rateshop.timeout." + carrierPartyId, delegator);
+		}
+		if (UtilValidate.isEmpty(timeout)) {
+			timeout = EntityUtilProperties.getPropertyValue(resource, "shipment.rateshop.timeout", "5000", delegator);
+		}
+		try {
+			return Long.parseLong(timeout.trim());
+		} catch (NumberFormatException e) {
+			Debug.logWarning("Invalid shipping rate shopping timeout [" + timeout + "], using 5000", module);
+			return 5000;
+		}
+	}
+
+	private static ScheduledExecutorService getExecutor() {
+		return ExecutorHolder.executor;
+	}
+
+	private static final class ExecutorHolder {
+		private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(RATE_SHOPPING_THREAD_GROUP, "shipping-rate", getThreadCount(), 60, false);
+	}
+
+	private static int getThreadCount() {
+		// the carrier services mostly wait on the network
+		int threadCount = UtilProperties.getPropertyAsInteger(resource, "shipment.rateshop.threads", 0);
+		return threadCount > 0 ? threadCount : Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns the cached quote of an external estimate service, or <code>null</code>.
+	 */
+	static BigDecimal getCachedQuote(String quoteKey) {
+		return quoteKey != null ? quoteCache.get(quoteKey) : null;
+	}
+
+	static void cacheQuote(String quoteKey, BigDecimal quote) {
+		if (quoteKey != null && quote != null) {
+			quoteCache.put(quoteKey, quote);
+		}
+	}
+
+	/**
+	 * Returns the key of the quote of an external estimate service, or <code>null</code> if it can't be cached.
+	 *
+	 * @param serviceName The name of the external estimate service
+	 * @param context     The context of the service, as prepared by {@link ShippingEvents#getShipGroupEstimate}
+	 */
+	public static String makeQuoteKey(Delegator delegator, String serviceName, Map<String, ? extends Object> context) {
+		String shippingContactMechId = (String) context.get("shippingContactMechId");
+		if (UtilValidate.isEmpty(shippingContactMechId) || !"true".equals(EntityUtilProperties.getPropertyValue(resource, "shipment.rateshop.cache.enabled", "true", delegator))) {
+			return null;
+		}
+		String destination = shippingContactMechId;
+		try {
+			GenericValue postalAddress = EntityQuery.use(delegator).from("PostalAddress").where("contactMechId", shippingContactMechId).cache().queryOne();
+			if (postalAddress != null) {
+				destination = postalAddress.getString("countryGeoId") + ":" + postalAddress.getString("postalCode");
+			}
+		} catch (GenericEntityException e) {
+			Debug.logWarning(e, "Could not read the shipping address " + shippingContactMechId, module);
+			return null;
+		}
+
+		StringBuilder key = new StringBuilder(serviceName);
+		key.append('|').append(context.get("shipmentGatewayConfigId"));
+		key.append('|').append(context.get("serviceConfigProps"));
+		key.append('|').append(context.get("productStoreId"));
+		key.append('|').append(context.get("carrierPartyId"));
+		key.append('|').append(context.get("shipmentMethodTypeId"));
+		key.append('|').append(context.get("shippingOriginContactMechId"));
+		key.append('|').append(destination);
+		key.append('|').append(getWeightBucket(delegator, (BigDecimal) context.get("shippableWeight")));
+		key.append('|').append(getPackageSet(context.get("shippableItemInfo")));
+		return key.toString();
+	}
+
+	private static String getWeightBucket(Delegator delegator, BigDecimal weight) {
+		if (weight == null) {
+			return "";
+		}
+		BigDecimal bucket = EntityUtilProperties.getPropertyAsBigDecimal(resource, "shipment.rateshop.cache.weightBucket", BigDecimal.ZERO, delegator);
+		if (bucket.signum() <= 0) {
+			return weight.stripTrailingZeros().toPlainString();
+		}
+		return weight.divide(bucket, 0, RoundingMode.CEILING).multiply(bucket).stripTrailingZeros().toPlainString();
+	}
+
+	private static String getPackageSet(Object shippableItemInfo) {
+		if (!(shippableItemInfo instanceof List<?>)) {
+			return "";
+		}
+		List<String> items = new ArrayList<String>();
+		for (Object itemInfo : (List<?>) shippableItemInfo) {
+			if (itemInfo instanceof Map<?, ?>) {
+				Map<?, ?> item = (Map<?, ?>) itemInfo;
+				Object quantity = item.get("quantity");
+				items.add(item.get("productId") + "x" + (quantity instanceof BigDecimal ? ((BigDecimal) quantity).stripTrailingZeros().toPlainString() : quantity));
+			}
+		}
+		Collections.sort(items);
+		return items.toString();
+	}
+}
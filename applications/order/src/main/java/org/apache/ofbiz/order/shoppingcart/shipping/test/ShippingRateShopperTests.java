@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart.shipping.test;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.order.shoppingcart.shipping.ShippingRateShopper;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShippingRateShopperTests extends OFBizTestCase {
+
+	public ShippingRateShopperTests(String name) {
+		super(name);
+	}
+
+	private GenericValue makeShipMethod(String carrierPartyId) {
+		return delegator.makeValue("ProductStoreShipmentMeth", UtilMisc.toMap("productStoreShipMethId", carrierPartyId,
+				"partyId", carrierPartyId, "roleTypeId", "CARRIER", "shipmentMethodTypeId", "GROUND"));
+	}
+
+	private static Callable<Map<String, Object>> makeCarrier(final long delay, final BigDecimal amount, final AtomicInteger calls) {
+		return new Callable<Map<String, Object>>() {
+			public Map<String, Object> call() throws Exception {
+				calls.incrementAndGet();
+				Thread.sleep(delay);
+				return UtilMisc.<String, Object>toMap("shippingTotal", amount);
+			}
+		};
+	}
+
+	public void testConcurrentEstimates() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		Map<GenericValue, Callable<Map<String, Object>>> estimates = new LinkedHashMap<GenericValue, Callable<Map<String, Object>>>();
+		for (int i = 0; i < 4; i++) {
+			estimates.put(makeShipMethod("RATE_TEST_" + i), makeCarrier(300, new BigDecimal(i), calls));
+		}
+		long start = System.currentTimeMillis();
+		Map<GenericValue, Map<String, Object>> results = ShippingRateShopper.getEstimates(delegator, estimates);
+		assertTrue("carriers asked concurrently", System.currentTimeMillis() - start < 1000);
+		assertEquals("carriers asked", 4, calls.get());
+		assertEquals("all the estimates", 4, results.size());
+		int i = 0;
+		for (Map.Entry<GenericValue, Map<String, Object>> entry : results.entrySet()) {
+			assertEquals("estimates in order", "RATE_TEST_" + i, entry.getKey().getString("partyId"));
+			assertEquals("estimate " + i, new BigDecimal(i), entry.getValue().get("shippingTotal"));
+			i++;
+		}
+	}
+
+	public void testCarrierTimeout() throws Exception {
+		GenericValue timeout = delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", "shipment",
+				"systemPropertyId", "shipment.rateshop.timeout.RATE_TEST_SLOW", "systemPropertyValue", "200"));
+		delegator.createOrStore(timeout);
+		try {
+			AtomicInteger calls = new AtomicInteger();
+			Map<GenericValue, Callable<Map<String, Object>>> estimates = new LinkedHashMap<GenericValue, Callable<Map<String, Object>>>();
+			estimates.put(makeShipMethod("RATE_TEST_FAST"), makeCarrier(50, BigDecimal.ONE, calls));
+			estimates.put(makeShipMethod("RATE_TEST_SLOW"), makeCarrier(2000, BigDecimal.TEN, calls));
+			long start = System.currentTimeMillis();
+			Map<GenericValue, Map<String, Object>> results = ShippingRateShopper.getEstimates(delegator, estimates);
+			assertTrue("slow carrier not waited for", System.currentTimeMillis() - start < 1500);
+			assertEquals("partial estimates", 1, results.size());
+			assertEquals("fast carrier estimate", BigDecimal.ONE, results.values().iterator().next().get("shippingTotal"));
+		} finally {
+			delegator.removeValue(timeout);
+		}
+	}
+
+	public void testQuoteKey() throws Exception {
+		List<Map<String, Object>> items = UtilMisc.toList(UtilMisc.<String, Object>toMap("productId", "GZ-1000", "quantity", new BigDecimal("2.000")),
+				UtilMisc.<String, Object>toMap("productId", "GZ-1001", "quantity", BigDecimal.ONE));
+		List<Map<String, Object>> reversedItems = UtilMisc.toList(items.get(1), items.get(0));
+		String key = ShippingRateShopper.makeQuoteKey(delegator, "rateStub", makeQuoteContext(new BigDecimal("1.2"), items));
+		assertNotNull("quote key", key);
+		assertEquals("same weight bucket and packages", key, ShippingRateShopper.makeQuoteKey(delegator, "rateStub", makeQuoteContext(new BigDecimal("1.4"), reversedItems)));
+		assertFalse("other weight bucket", key.equals(ShippingRateShopper.makeQuoteKey(delegator, "rateStub", makeQuoteContext(new BigDecimal("1.6"), items))));
+		assertFalse("other service", key.equals(ShippingRateShopper.makeQuoteKey(delegator, "otherRateStub", makeQuoteContext(new BigDecimal("1.2"), items))));
+		assertNull("no destination", ShippingRateShopper.makeQuoteKey(delegator, "rateStub", UtilMisc.<String, Object>toMap("shippableWeight", BigDecimal.ONE)));
+	}
+
+	private static Map<String, Object> makeQuoteContext(BigDecimal weight, List<Map<String, Object>> items) {
+		return UtilMisc.<String, Object>toMap("shippingContactMechId", "9015", "productStoreId", "9000", "carrierPartyId", "UPS",
+				"shipmentMethodTypeId", "GROUND", "shippableWeight", weight, "shippableItemInfo", items);
+	}
+}
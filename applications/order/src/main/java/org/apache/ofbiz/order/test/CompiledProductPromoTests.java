@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.test;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart.ProductPromoUseInfo;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+import org.apache.ofbiz.order.shoppingcart.product.CompiledProductPromo;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tests the promotions skipped for a cart by the compiled promotions, with the promotions of CompiledProductPromoTestData.xml,
+ * and compares the promotions of carts with the compiled and the interpreted promotions.
+ * The number of promotions generated for the comparison of the cart changes can be set with the
+ * <code>compiledproductpromotests.promotions</code> system property to use the test as a benchmark.
+ */
+public class CompiledProductPromoTests extends OFBizTestCase {
+
+	public static final String module = CompiledProductPromoTests.class.getName();
+
+	private static final Timestamp BEFORE_2010 = Timestamp.valueOf("2005-06-01 12:00:00");
+	private static final String PRODUCT_STORE_ID = "9000";
+	private static final String BENCH_PROMO_PREFIX = "CPP_BENCH_";
+	private static final List<String> BENCH_CATEGORY_IDS = UtilMisc.toList("100", "101", "200", "201", "202", "20111");
+	private static final int BENCH_CHANGES = 10;
+
+	public CompiledProductPromoTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		CompiledProductPromo.clear(delegator, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		removeCompiledProperty();
+		EntityCondition benchCondition = EntityCondition.makeCondition("productPromoId", EntityOperator.LIKE, BENCH_PROMO_PREFIX + "%");
+		for (String entityName : Arrays.asList("ProductStorePromoAppl", "ProductPromoProduct", "ProductPromoCategory", "ProductPromoAction",
+				"ProductPromoCond", "ProductPromoRule", "ProductPromo")) {
+			delegator.removeByCondition(entityName, benchCondition);
+		}
+		CompiledProductPromo.clear(delegator, null);
+	}
+
+	/** Removes the promotion.compiled property with its entity ECA, invalidating the properties read from the entity */
+	private void removeCompiledProperty() throws Exception {
+		delegator.removeAll(EntityQuery.use(delegator).from("SystemProperty").where("systemResourceId", "order", "systemPropertyId", "promotion.compiled").queryList());
+	}
+
+	private void setCompiled(boolean compiled) throws Exception {
+		if (compiled) {
+			removeCompiledProperty();
+		} else {
+			delegator.createOrStore(delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", "order",
+					"systemPropertyId", "promotion.compiled", "systemPropertyValue", "false")));
+		}
+		assertEquals("promotion.compiled", compiled, CompiledProductPromo.isEnabled(delegator));
+	}
+
+	private boolean canApply(String productPromoId, Timestamp nowTimestamp, String... cartProductIds) throws Exception {
+		Set<String> productIds = new HashSet<String>(Arrays.asList(cartProductIds));
+		return CompiledProductPromo.getInstance(productPromoId, delegator, nowTimestamp).canApply(productIds);
+	}
+
+	public void testProductGated() throws Exception {
+		assertTrue("product of the first rule", canApply("CPP_TEST_PRODUCT", null, "GZ-1000"));
+		assertTrue("product of the second rule", canApply("CPP_TEST_PRODUCT", null, "WG-1111", "GZ-2644"));
+		assertFalse("no product of the rules", canApply("CPP_TEST_PRODUCT", null, "GZ-2644"));
+		assertFalse("empty cart", CompiledProductPromo.getInstance("CPP_TEST_PRODUCT", delegator, null).canApply(Collections.<String>emptySet()));
+
+		assertTrue("product of the product total", canApply("CPP_TEST_TOTAL_ONLY", null, "GZ-2644"));
+		assertFalse("no product of the product total", canApply("CPP_TEST_TOTAL_ONLY", null, "GZ-1000"));
+	}
+
+	public void testNotGated() throws Exception {
+		// the service may pass without the product of the other condition
+		assertTrue("service condition", canApply("CPP_TEST_SERVICE", null, "GZ-2644"));
+		assertTrue("service condition on an empty cart", CompiledProductPromo.getInstance("CPP_TEST_SERVICE", delegator, null).canApply(Collections.<String>emptySet()));
+
+		CompiledProductPromo orderTotalPromo = CompiledProductPromo.getInstance("CPP_TEST_ORD_TOTAL", delegator, null);
+		assertTrue("order total condition", orderTotalPromo.hasOrderTotalCondition());
+		assertTrue("order total condition without product", orderTotalPromo.canApply(UtilMisc.toSet("GZ-2644")));
+		assertFalse("no order total condition", CompiledProductPromo.getInstance("CPP_TEST_PRODUCT", delegator, null).hasOrderTotalCondition());
+
+		// the product total is evaluated after the quantities consumed by the first condition, so it doesn't gate
+		assertTrue("product total after a product quantity", canApply("CPP_TEST_PROD_TOTAL", null, "GZ-1000"));
+		assertFalse("no product of the product quantity", canApply("CPP_TEST_PROD_TOTAL", null, "GZ-2644"));
+	}
+
+	public void testCategoryProductsByDay() throws Exception {
+		Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+		assertTrue("member until 2010, now", canApply("CPP_TEST_CATEGORY", nowTimestamp, "GZ-2644"));
+		assertFalse("member from 2010, now", canApply("CPP_TEST_CATEGORY", nowTimestamp, "GZ-1000"));
+		// an evaluation for another day doesn't get the products of the first evaluation
+		assertTrue("member until 2010, before 2010", canApply("CPP_TEST_CATEGORY", BEFORE_2010, "GZ-1000"));
+		assertFalse("member from 2010, before 2010", canApply("CPP_TEST_CATEGORY", BEFORE_2010, "GZ-2644"));
+
+		GenericValue productPromoCond = EntityQuery.use(delegator).from("ProductPromoCond")
+				.where("productPromoId", "CPP_TEST_CATEGORY", "productPromoRuleId", "01", "productPromoCondSeqId", "01").queryOne();
+		assertEquals("condition products before 2010", UtilMisc.toSet("GZ-1000"),
+				CompiledProductPromo.getInstance("CPP_TEST_CATEGORY", delegator, BEFORE_2010).getCondProductIds(productPromoCond, delegator));
+		assertEquals("condition products now", UtilMisc.toSet("GZ-2644"),
+				CompiledProductPromo.getInstance("CPP_TEST_CATEGORY", delegator, nowTimestamp).getCondProductIds(productPromoCond, delegator));
+
+		// same day, same compilation; the removal of the promotion drops the compilations of all the days
+		CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance("CPP_TEST_CATEGORY", delegator, BEFORE_2010);
+		assertSame("same day", compiledPromo, CompiledProductPromo.getInstance("CPP_TEST_CATEGORY", delegator, new Timestamp(BEFORE_2010.getTime() + 3600000)));
+		CompiledProductPromo.clear(delegator, "CPP_TEST_CATEGORY");
+		assertNotSame("cleared", compiledPromo, CompiledProductPromo.getInstance("CPP_TEST_CATEGORY", delegator, BEFORE_2010));
+	}
+
+	/**
+	 * Makes a cart of the store 9000 with the given products and quantities, and the promotion codes after them.
+	 */
+	private ShoppingCart makeCart(List<String> productQuantities, String... productPromoCodeIds) throws Exception {
+		ShoppingCart cart = new ShoppingCart(delegator, PRODUCT_STORE_ID, Locale.US, "USD");
+		cart.setUserLogin(EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne(), dispatcher);
+		for (int i = 0; i < productQuantities.size(); i += 2) {
+			cart.addOrIncreaseItem(productQuantities.get(i), null, new BigDecimal(productQuantities.get(i + 1)), null, null, null, null, null, null,
+					null, null, null, null, null, null, dispatcher);
+		}
+		for (String productPromoCodeId : productPromoCodeIds) {
+			cart.addProductPromoCode(productPromoCodeId, dispatcher);
+		}
+		ProductPromoWorker.doPromotions(cart, dispatcher);
+		return cart;
+	}
+
+	private static String format(BigDecimal amount) {
+		return amount == null ? "-" : amount.setScale(3, RoundingMode.HALF_UP).toPlainString();
+	}
+
+	private static void describeAdjustments(StringBuilder description, List<GenericValue> adjustments) {
+		for (GenericValue adjustment : adjustments) {
+			description.append(" [").append(adjustment.get("orderAdjustmentTypeId")).append(" ").append(adjustment.get("productPromoId"))
+					.append("/").append(adjustment.get("productPromoRuleId")).append(" ").append(format(adjustment.getBigDecimal("amount"))).append("]");
+		}
+	}
+
+	/**
+	 * Describes the items, the adjustments and the promotions used by a cart.
+	 */
+	private static String describe(ShoppingCart cart) {
+		StringBuilder description = new StringBuilder();
+		for (ShoppingCartItem item : cart.items()) {
+			description.append(item.getProductId()).append(" x").append(format(item.getQuantity())).append(item.getIsPromo() ? " promo" : "");
+			describeAdjustments(description, item.getAdjustments());
+			description.append("\n");
+		}
+		description.append("order");
+		describeAdjustments(description, cart.getAdjustments());
+		description.append("\n");
+		Iterator<ProductPromoUseInfo> productPromoUseInfoIter = cart.getProductPromoUseInfoIter();
+		while (productPromoUseInfoIter.hasNext()) {
+			ProductPromoUseInfo productPromoUseInfo = productPromoUseInfoIter.next();
+			description.append("promotion ").append(productPromoUseInfo.getProductPromoId()).append(" ").append(productPromoUseInfo.getProductPromoCodeId())
+					.append(" ").append(format(productPromoUseInfo.getTotalDiscountAmount())).append(" ")
+					.append(format(productPromoUseInfo.getQuantityLeftInActions())).append("\n");
+		}
+		description.append("grand total ").append(format(cart.getGrandTotal()));
+		return description.toString();
+	}
+
+	private static Set<String> getProductPromoIds(ShoppingCart cart) {
+		Set<String> productPromoIds = new HashSet<String>();
+		Iterator<ProductPromoUseInfo> productPromoUseInfoIter = cart.getProductPromoUseInfoIter();
+		while (productPromoUseInfoIter.hasNext()) {
+			productPromoIds.add(productPromoUseInfoIter.next().getProductPromoId());
+		}
+		return productPromoIds;
+	}
+
+	public void testSamePromotionsAsInterpreted() throws Exception {
+		// carts for the demo promotions of the store 9000
+		List<List<String>> carts = UtilMisc.toList(
+				Arrays.asList("GZ-1005", "1", "GZ-1006-1", "1"),
+				Arrays.asList("WG-1111", "3", "GZ-1000", "1"),
+				Arrays.asList("GZ-8544", "1", "GZ-5005", "1"),
+				Arrays.asList("GZ-5005", "1", "GZ-1004", "1", "GZ-2644", "1", "GZ-2002", "1"),
+				Arrays.asList("GZ-1000", "10", "GZ-7000", "1"),
+				Arrays.asList("GZ-2644", "3"));
+		Set<String> appliedProductPromoIds = new HashSet<String>();
+		for (List<String> productQuantities : carts) {
+			for (String[] productPromoCodeIds : UtilMisc.toList(new String[0], new String[] {"9000", "9021"})) {
+				setCompiled(true);
+				ShoppingCart compiledCart = makeCart(productQuantities, productPromoCodeIds);
+				setCompiled(false);
+				ShoppingCart interpretedCart = makeCart(productQuantities, productPromoCodeIds);
+				assertEquals("promotions of " + productQuantities + " " + Arrays.asList(productPromoCodeIds), describe(interpretedCart), describe(compiledCart));
+				appliedProductPromoIds.addAll(getProductPromoIds(compiledCart));
+			}
+		}
+		Debug.logInfo("Promotions applied to the carts: " + appliedProductPromoIds, module);
+		assertTrue("product promotions applied " + appliedProductPromoIds, appliedProductPromoIds.contains("9010"));
+	}
+
+	/**
+	 * Generates promotions of the store 9000 discounting a product or the products of a category,
+	 * for the products of the catalog in turn and the categories of the demo catalog.
+	 */
+	private void makeBenchPromotions(int promotionCount, List<String> productIds) throws Exception {
+		Timestamp fromDate = Timestamp.valueOf("2001-01-01 00:00:00");
+		for (int i = 0; i < promotionCount; i++) {
+			String productPromoId = BENCH_PROMO_PREFIX + i;
+			delegator.create("ProductPromo", "productPromoId", productPromoId, "promoName", "Compiled promotion benchmark " + i, "userEntered", "N",
+					"useLimitPerOrder", Long.valueOf(1));
+			delegator.create("ProductStorePromoAppl", "productStoreId", PRODUCT_STORE_ID, "productPromoId", productPromoId, "fromDate", fromDate,
+					"sequenceNum", Long.valueOf(10));
+			delegator.create("ProductPromoRule", "productPromoId", productPromoId, "productPromoRuleId", "01", "ruleName", "Quantity discount");
+			delegator.create("ProductPromoCond", "productPromoId", productPromoId, "productPromoRuleId", "01", "productPromoCondSeqId", "01",
+					"inputParamEnumId", "PPIP_PRODUCT_QUANT", "operatorEnumId", "PPC_GTE", "condValue", "1");
+			delegator.create("ProductPromoAction", "productPromoId", productPromoId, "productPromoRuleId", "01", "productPromoActionSeqId", "01",
+					"productPromoActionEnumId", "PROMO_PROD_DISC", "quantity", BigDecimal.ONE, "amount", BigDecimal.ONE);
+			// the condition and the action on the same products
+			if (i % 2 == 0) {
+				String productId = productIds.get(i / 2 % productIds.size());
+				delegator.create("ProductPromoProduct", "productPromoId", productPromoId, "productPromoRuleId", "01", "productPromoActionSeqId", "_NA_",
+						"productPromoCondSeqId", "01", "productId", productId, "productPromoApplEnumId", "PPPA_INCLUDE");
+				delegator.create("ProductPromoProduct", "productPromoId", productPromoId, "productPromoRuleId", "01", "productPromoActionSeqId", "01",
+						"productPromoCondSeqId", "_NA_", "productId", productId, "productPromoApplEnumId", "PPPA_INCLUDE");
+			} else {
+				String productCategoryId = BENCH_CATEGORY_IDS.get(i / 2 % BENCH_CATEGORY_IDS.size());
+				delegator.create("ProductPromoCategory", "productPromoId", productPromoId, "productPromoRuleId", "01", "productPromoActionSeqId", "_NA_",
+						"productPromoCondSeqId", "01", "productCategoryId", productCategoryId, "andGroupId", "_NA_", "productPromoApplEnumId", "PPPA_INCLUDE",
+						"includeSubCategories", "N");
+				delegator.create("ProductPromoCategory", "productPromoId", productPromoId, "productPromoRuleId", "01", "productPromoActionSeqId", "01",
+						"productPromoCondSeqId", "_NA_", "productCategoryId", productCategoryId, "andGroupId", "_NA_", "productPromoApplEnumId", "PPPA_INCLUDE",
+						"includeSubCategories", "N");
+			}
+		}
+	}
+
+	/**
+	 * Adds an item to the cart and removes it, with the promotions run after each change,
+	 * and returns the mean time in milliseconds of the promotions of a change.
+	 */
+	private double runCartChanges(ShoppingCart cart, String productId) throws Exception {
+		long promotionsTime = 0;
+		for (int i = 0; i < BENCH_CHANGES; i++) {
+			int index = cart.addOrIncreaseItem(productId, null, BigDecimal.ONE, null, null, null, null, null, null, null, null, null, null, null, null, dispatcher);
+			long startTime = System.nanoTime();
+			ProductPromoWorker.doPromotions(cart, dispatcher);
+			promotionsTime += System.nanoTime() - startTime;
+			cart.removeCartItem(index, dispatcher);
+			startTime = System.nanoTime();
+			ProductPromoWorker.doPromotions(cart, dispatcher);
+			promotionsTime += System.nanoTime() - startTime;
+		}
+		return promotionsTime / 1000000.0 / (2 * BENCH_CHANGES);
+	}
+
+	public void testCartChangesAsInterpreted() throws Exception {
+		int promotionCount = Integer.getInteger("compiledproductpromotests.promotions", 30);
+		List<String> productIds = EntityQuery.use(delegator).select("productId").from("Product")
+				.where(EntityCondition.makeCondition("productId", EntityOperator.LIKE, "GZ-%"), EntityCondition.makeCondition("isVirtual", "N"))
+				.orderBy("productId").getFieldList("productId");
+		assertTrue("catalog products", productIds.size() > 6);
+		makeBenchPromotions(promotionCount, productIds);
+		List<String> productQuantities = Arrays.asList(productIds.get(0), "1", productIds.get(1), "2", productIds.get(2), "1", productIds.get(3), "3",
+				productIds.get(4), "1");
+		String changedProductId = productIds.get(5);
+
+		// warm up the caches of both modes before the timings
+		ShoppingCart[] carts = new ShoppingCart[2];
+		for (int mode = 0; mode < 2; mode++) {
+			setCompiled(mode == 0);
+			carts[mode] = makeCart(productQuantities);
+			runCartChanges(carts[mode], changedProductId);
+		}
+		double[] changeTimes = new double[2];
+		for (int mode = 0; mode < 2; mode++) {
+			setCompiled(mode == 0);
+			changeTimes[mode] = runCartChanges(carts[mode], changedProductId);
+		}
+		Debug.logInfo("Promotions of a cart change with " + promotionCount + " generated promotions: compiled " + String.format("%.1f", changeTimes[0])
+				+ " ms, interpreted " + String.format("%.1f", changeTimes[1]) + " ms", module);
+		String description = describe(carts[0]);
+		assertEquals("same promotions after the changes", describe(carts[1]), description);
+		assertTrue("generated promotions applied", description.contains(BENCH_PROMO_PREFIX));
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.test;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.order.shoppingcart.CartState;
+import org.apache.ofbiz.order.shoppingcart.EntityCartStateStore;
+import org.apache.ofbiz.order.shoppingcart.InMemoryCartStateStore;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Compact shopping cart state and cart state store tests
+ */
+public class ShoppingCartStateTests extends OFBizTestCase {
+
+	public ShoppingCartStateTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delegator.removeByAnd("SystemProperty", UtilMisc.toMap("systemResourceId", "order", "systemPropertyId", "shoppingcart.state.store"));
+	}
+
+	private void setCartStateStore(Class<?> storeClass) throws Exception {
+		delegator.createOrStore(delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", "order",
+				"systemPropertyId", "shoppingcart.state.store", "systemPropertyValue", storeClass.getName())));
+	}
+
+	private ShoppingCart makeCart() throws Exception {
+		ShoppingCart cart = new ShoppingCart(delegator, "9000", Locale.US, "USD");
+		cart.setUserLogin(EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne(), dispatcher);
+		cart.addOrIncreaseItem("GZ-1000", null, BigDecimal.ONE, null, null, null, null, null, null, null, null, null, null, null, null, dispatcher);
+		cart.addOrIncreaseItem("GZ-2644", null, new BigDecimal("2"), null, null, null, null, null, null, null, null, null, null, null, null, dispatcher);
+		return cart;
+	}
+
+	private void assertSameCart(ShoppingCart expected, ShoppingCart cart) {
+		assertNotNull("cart restored", cart);
+		assertEquals("items", expected.size(), cart.size());
+		for (int i = 0; i < expected.size(); i++) {
+			ShoppingCartItem expectedItem = expected.findCartItem(i);
+			ShoppingCartItem item = cart.findCartItem(i);
+			assertEquals("product", expectedItem.getProductId(), item.getProductId());
+			assertEquals("quantity", 0, expectedItem.getQuantity().compareTo(item.getQuantity()));
+			assertEquals("price", 0, expectedItem.getBasePrice().compareTo(item.getBasePrice()));
+		}
+		assertEquals("grand total", 0, expected.getGrandTotal().compareTo(cart.getGrandTotal()));
+		assertEquals("user login", expected.getUserLogin(), cart.getUserLogin());
+	}
+
+	public void testCompactState() throws Exception {
+		ShoppingCart cart = makeCart();
+		byte[] state = CartState.encode(cart);
+		ShoppingCart restoredCart = CartState.decode(delegator, state);
+		assertSameCart(cart, restoredCart);
+		GenericValue userLogin = restoredCart.getUserLogin();
+		assertTrue("user login read back from the database", userLogin.originalDbValuesAvailable() && !userLogin.hasChanged());
+
+		// without store, the session holds the compact state
+		byte[] sessionBytes = UtilObject.getBytes(cart);
+		assertTrue("compact state in the session", sessionBytes.length < state.length + 500);
+		assertSameCart(cart, (ShoppingCart) UtilObject.getObject(sessionBytes));
+	}
+
+	public void testInMemoryCartStateStore() throws Exception {
+		setCartStateStore(InMemoryCartStateStore.class);
+		ShoppingCart cart = makeCart();
+		byte[] sessionBytes = UtilObject.getBytes(cart);
+		assertTrue("only a reference in the session", sessionBytes.length < 500);
+		assertSameCart(cart, (ShoppingCart) UtilObject.getObject(sessionBytes));
+		assertSameCart(cart, CartState.load(delegator, cart.getCartStateId()));
+
+		CartState.getStore(delegator).remove(delegator, cart.getCartStateId());
+		assertNull("state removed", UtilObject.getObject(sessionBytes));
+	}
+
+	public void testEntityCartStateStore() throws Exception {
+		setCartStateStore(EntityCartStateStore.class);
+		ShoppingCart cart = makeCart();
+		byte[] sessionBytes = UtilObject.getBytes(cart);
+		try {
+			assertNotNull("state saved", EntityQuery.use(delegator).from("ShoppingCartState").where("cartStateId", cart.getCartStateId()).queryOne());
+			assertSameCart(cart, (ShoppingCart) UtilObject.getObject(sessionBytes));
+		} finally {
+			CartState.getStore(delegator).remove(delegator, cart.getCartStateId());
+		}
+	}
+}
@@ -20,18 +20,26 @@ package org.apache.ofbiz.product.image;
 
 import org.apache.ofbiz.base.util.*;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
+import org.apache.ofbiz.common.image.ImageDerivativePipeline;
 import org.apache.ofbiz.common.image.ImageTransform;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.ServiceUtil;
 import org.jdom.JDOMException;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.awt.image.ImagingOpException;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -72,169 +80,30 @@ public class ScaleImage {
 
 		/* VARIABLES */
 		Locale locale = (Locale) context.get("locale");
-
-		int index;
-		Map<String, Map<String, String>> imgPropertyMap = new HashMap<String, Map<String, String>>();
-		BufferedImage bufImg, bufNewImg;
-		double imgHeight, imgWidth;
-		Map<String, String> imgUrlMap = new HashMap<String, String>();
-		Map<String, Object> resultXMLMap = new HashMap<String, Object>();
-		Map<String, Object> resultBufImgMap = new HashMap<String, Object>();
-		Map<String, Object> resultScaleImgMap = new HashMap<String, Object>();
 		Map<String, Object> result = new HashMap<String, Object>();
 
 		/* ImageProperties.xml */
-		String imgPropertyFullPath = System.getProperty("ofbiz.home") + "/applications/product/config/ImageProperties.xml";
-		resultXMLMap.putAll(ImageTransform.getXMLValue(imgPropertyFullPath, locale));
-		if (resultXMLMap.containsKey("responseMessage") && resultXMLMap.get("responseMessage").equals("success")) {
-			imgPropertyMap.putAll(UtilGenerics.<Map<String, Map<String, String>>>cast(resultXMLMap.get("xml")));
-		} else {
+		Map<String, Map<String, String>> imgPropertyMap = getImagePropertyMap(locale);
+		if (imgPropertyMap == null) {
 			String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_parse", locale) + " : ImageProperties.xml";
 			Debug.logError(errMsg, module);
 			result.put("errorMessage", errMsg);
 			return result;
 		}
 
-		/* IMAGE */
-		// get Name and Extension
-		index = filenameToUse.lastIndexOf(".");
-		String imgExtension = filenameToUse.substring(index + 1);
-		// paths
-
-		Map<String, Object> imageContext = new HashMap<String, Object>();
-		imageContext.putAll(context);
-		imageContext.put("tenantId", ((Delegator) context.get("delegator")).getDelegatorTenantId());
-		String imageServerPath = FlexibleStringExpander.expandString(EntityUtilProperties.getPropertyValue("catalog", "image.server.path", (Delegator) context.get("delegator")), imageContext);
-		String imageUrlPrefix = FlexibleStringExpander.expandString(EntityUtilProperties.getPropertyValue("catalog", "image.url.prefix", (Delegator) context.get("delegator")), imageContext);
-		imageServerPath = imageServerPath.endsWith("/") ? imageServerPath.substring(0, imageServerPath.length() - 1) : imageServerPath;
-		imageUrlPrefix = imageUrlPrefix.endsWith("/") ? imageUrlPrefix.substring(0, imageUrlPrefix.length() - 1) : imageUrlPrefix;
-		FlexibleStringExpander filenameExpander;
-		String fileLocation = null;
-		String type = null;
-		String id = null;
-		if (viewType.toLowerCase().contains("main")) {
-			String filenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.format", (Delegator) context.get("delegator"));
-			filenameExpander = FlexibleStringExpander.getInstance(filenameFormat);
-			id = (String) context.get("productId");
-			fileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", "original"));
-		} else if (viewType.toLowerCase().contains("additional") && viewNumber != null && !viewNumber.equals("0")) {
-			String filenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.additionalviewsize.format", (Delegator) context.get("delegator"));
-			filenameExpander = FlexibleStringExpander.getInstance(filenameFormat);
-			id = (String) context.get("productId");
-			if (filenameFormat.endsWith("${id}")) {
-				id = id + "_View_" + viewNumber;
-			} else {
-				viewType = "additional" + viewNumber;
-			}
-			fileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype", viewType, "sizetype", "original"));
-		} else {
-			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ProductImageViewType", UtilMisc.toMap("viewType", type), locale));
+		ImageJob imageJob;
+		try {
+			imageJob = createImageJob(context, imgPropertyMap, filenameToUse, viewType, viewNumber);
+		} catch (IOException e) {
+			Debug.logFatal(e.getMessage(), module);
+			return ServiceUtil.returnError(e.getMessage());
 		}
-
-		/* get original BUFFERED IMAGE */
-		resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + fileLocation + "." + imgExtension, locale));
-
-		if (resultBufImgMap.containsKey("responseMessage") && resultBufImgMap.get("responseMessage").equals("success")) {
-			bufImg = (BufferedImage) resultBufImgMap.get("bufferedImage");
-
-			// get Dimensions
-			imgHeight = bufImg.getHeight();
-			imgWidth = bufImg.getWidth();
-			if (imgHeight == 0.0 || imgWidth == 0.0) {
-				String errMsg = UtilProperties.getMessage(resource, "ScaleImage.one_current_image_dimension_is_null", locale) + " : imgHeight = " + imgHeight + " ; imgWidth = " + imgWidth;
-				Debug.logError(errMsg, module);
-				result.put("errorMessage", errMsg);
-				return result;
-			}
-
-			/* Scale image for each size from ImageProperties.xml */
-			for (Map.Entry<String, Map<String, String>> entry : imgPropertyMap.entrySet()) {
-				String sizeType = entry.getKey();
-
-				// Scale
-				resultScaleImgMap.putAll(ImageTransform.scaleImage(bufImg, imgHeight, imgWidth, imgPropertyMap, sizeType, locale));
-
-				/* Write the new image file */
-				if (resultScaleImgMap.containsKey("responseMessage") && resultScaleImgMap.get("responseMessage").equals("success")) {
-					bufNewImg = (BufferedImage) resultScaleImgMap.get("bufferedImage");
-
-					// Build full path for the new scaled image
-					String newFileLocation = null;
-					filenameToUse = sizeType + filenameToUse.substring(filenameToUse.lastIndexOf("."));
-					if (viewType.toLowerCase().contains("main")) {
-						newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
-					} else if (viewType.toLowerCase().contains("additional")) {
-						newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype", viewType, "sizetype", sizeType));
-					}
-					String newFilePathPrefix = "";
-					if (newFileLocation.lastIndexOf("/") != -1) {
-						newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf("/") + 1); // adding 1 to include the trailing slash
-					}
-					// Directory
-					String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
-					try {
-						// Create the new directory
-						File targetDir = new File(targetDirectory);
-						if (!targetDir.exists()) {
-							boolean created = targetDir.mkdirs();
-							if (!created) {
-								String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_create_target_directory", locale) + " - " + targetDirectory;
-								Debug.logFatal(errMsg, module);
-								return ServiceUtil.returnError(errMsg);
-							}
-							// Delete existing image files
-							// Images aren't ordered by productId (${location}/${viewtype}/${sizetype}/${id}) !!! BE CAREFUL !!!
-						} else if (newFileLocation.endsWith("/" + id)) {
-							try {
-								File[] files = targetDir.listFiles();
-								for (File file : files) {
-									if (file.isFile() && file.getName().startsWith(id)) {
-										file.delete();
-									}
-								}
-							} catch (SecurityException e) {
-								Debug.logError(e, module);
-							}
-						}
-					} catch (NullPointerException e) {
-						Debug.logError(e, module);
-					}
-
-					// write new image
-					try {
-						ImageIO.write(bufNewImg, imgExtension, new File(imageServerPath + "/" + newFileLocation + "." + imgExtension));
-					} catch (IllegalArgumentException e) {
-						String errMsg = UtilProperties.getMessage(resource, "ScaleImage.one_parameter_is_null", locale) + e.toString();
-						Debug.logError(errMsg, module);
-						result.put("errorMessage", errMsg);
-						return result;
-					} catch (IOException e) {
-						String errMsg = UtilProperties.getMessage(resource, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
-						Debug.logError(errMsg, module);
-						result.put("errorMessage", errMsg);
-						return result;
-					}
-
-					// Save each Url
-					if (sizeTypeList.contains(sizeType)) {
-						String imageUrl = imageUrlPrefix + "/" + newFileLocation + "." + imgExtension;
-						imgUrlMap.put(sizeType, imageUrl);
-					}
-
-				} // scaleImgMap
-			} // Loop over sizeType
-
-			result.put("responseMessage", "success");
-			result.put("imageUrlMap", imgUrlMap);
-			result.put("original", resultBufImgMap);
-			return result;
-
-		} else {
-			String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse;
-			Debug.logError(errMsg, module);
-			result.put("errorMessage", errMsg);
-			return ServiceUtil.returnError(errMsg);
+		if (imageJob == null) {
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ProductImageViewType", UtilMisc.toMap("viewType", null), locale));
 		}
+
+		/* scale the original image for each size from ImageProperties.xml */
+		return scaleImage(new ImageDerivativePipeline(imgPropertyMap, locale), imageJob, filenameToUse, locale);
 	}
 
 	public static Map<String, Object> scaleImageManageInAllSize(Map<String, ? extends Object> context, String filenameToUse, String viewType, String viewNumber, String imageType)
@@ -250,21 +119,11 @@ public class ScaleImage {
 		}
 
 		int index;
-		Map<String, Map<String, String>> imgPropertyMap = new HashMap<String, Map<String, String>>();
-		BufferedImage bufImg, bufNewImg;
-		double imgHeight, imgWidth;
-		Map<String, String> imgUrlMap = new HashMap<String, String>();
-		Map<String, Object> resultXMLMap = new HashMap<String, Object>();
-		Map<String, Object> resultBufImgMap = new HashMap<String, Object>();
-		Map<String, Object> resultScaleImgMap = new HashMap<String, Object>();
 		Map<String, Object> result = new HashMap<String, Object>();
 
 		/* ImageProperties.xml */
-		String imgPropertyFullPath = System.getProperty("ofbiz.home") + "/applications/product/config/ImageProperties.xml";
-		resultXMLMap.putAll(ImageTransform.getXMLValue(imgPropertyFullPath, locale));
-		if (resultXMLMap.containsKey("responseMessage") && resultXMLMap.get("responseMessage").equals("success")) {
-			imgPropertyMap.putAll(UtilGenerics.<Map<String, Map<String, String>>>cast(resultXMLMap.get("xml")));
-		} else {
+		Map<String, Map<String, String>> imgPropertyMap = getImagePropertyMap(locale);
+		if (imgPropertyMap == null) {
 			String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_parse", locale) + " : ImageProperties.xml";
 			Debug.logError(errMsg, module);
 			result.put("errorMessage", errMsg);
@@ -305,95 +164,300 @@ public class ScaleImage {
 			filePathPrefix = fileLocation.substring(0, fileLocation.lastIndexOf("/") + 1); // adding 1 to include the trailing slash
 		}
 
+		ImageJob imageJob = new ImageJob();
 		if (context.get("contentId") != null) {
-			resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + context.get("productId") + "/" + context.get("clientFileName"), locale));
+			imageJob.source = new File(imageServerPath + "/" + context.get("productId") + "/" + context.get("clientFileName"));
 		} else {
 			/* get original BUFFERED IMAGE */
-			resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + filePathPrefix + filenameToUse, locale));
+			imageJob.source = new File(imageServerPath + "/" + filePathPrefix + filenameToUse);
+		}
+
+		// new Filename Format
+		FlexibleStringExpander addFilenameExpander = mainFilenameExpander;
+		if (viewType.toLowerCase().contains("additional")) {
+			String addFilenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.additionalviewsize.format", (Delegator) context.get("delegator"));
+			addFilenameExpander = FlexibleStringExpander.getInstance(addFilenameFormat);
 		}
 
-		if (resultBufImgMap.containsKey("responseMessage") && resultBufImgMap.get("responseMessage").equals("success")) {
-			bufImg = (BufferedImage) resultBufImgMap.get("bufferedImage");
-
-			// get Dimensions
-			imgHeight = bufImg.getHeight();
-			imgWidth = bufImg.getWidth();
-			if (imgHeight == 0.0 || imgWidth == 0.0) {
-				String errMsg = UtilProperties.getMessage(resource, "ScaleImage.one_current_image_dimension_is_null", locale) + " : imgHeight = " + imgHeight + " ; imgWidth = " + imgWidth;
-				Debug.logError(errMsg, module);
-				result.put("errorMessage", errMsg);
-				return result;
+		/* scale Image for each Size Type */
+		for (String sizeType : sizeTypeList) {
+			String newFileLocation = null;
+			if (viewType.toLowerCase().contains("main")) {
+				newFileLocation = mainFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
+			} else if (viewType.toLowerCase().contains("additional")) {
+				newFileLocation = addFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype", viewType, "sizetype", sizeType));
+			}
+			String newFilePathPrefix = "";
+			if (newFileLocation.lastIndexOf("/") != -1) {
+				newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf("/") + 1); // adding 1 to include the trailing slash
 			}
 
-			// new Filename Format
-			FlexibleStringExpander addFilenameExpander = mainFilenameExpander;
-			if (viewType.toLowerCase().contains("additional")) {
-				String addFilenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.additionalviewsize.format", (Delegator) context.get("delegator"));
-				addFilenameExpander = FlexibleStringExpander.getInstance(addFilenameFormat);
+			String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
+			File targetDir = new File(targetDirectory);
+			if (!targetDir.exists()) {
+				boolean created = targetDir.mkdirs();
+				if (!created) {
+					String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_create_target_directory", locale) + " - " + targetDirectory;
+					Debug.logFatal(errMsg, module);
+					return ServiceUtil.returnError(errMsg);
+				}
 			}
 
-			/* scale Image for each Size Type */
-			for (String sizeType : sizeTypeList) {
-				resultScaleImgMap.putAll(ImageTransform.scaleImage(bufImg, imgHeight, imgWidth, imgPropertyMap, sizeType, locale));
+			imageJob.add(sizeType, new File(imageServerPath + "/" + newFilePathPrefix + filenameToUse), imgExtension, imageUrlPrefix + "/" + newFilePathPrefix + filenameToUse);
+		}
 
-				if (resultScaleImgMap.containsKey("responseMessage") && resultScaleImgMap.get("responseMessage").equals("success")) {
-					bufNewImg = (BufferedImage) resultScaleImgMap.get("bufferedImage");
+		return scaleImage(new ImageDerivativePipeline(imgPropertyMap, locale), imageJob, filenameToUse, locale);
+	}
 
-					// write the New Scaled Image
-					String newFileLocation = null;
-					if (viewType.toLowerCase().contains("main")) {
-						newFileLocation = mainFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
-					} else if (viewType.toLowerCase().contains("additional")) {
-						newFileLocation = addFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype", viewType, "sizetype", sizeType));
-					}
-					String newFilePathPrefix = "";
-					if (newFileLocation.lastIndexOf("/") != -1) {
-						newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf("/") + 1); // adding 1 to include the trailing slash
-					}
+	/**
+	 * scaleProductImagesInBulk
+	 * <p>
+	 * Regenerate the scaled images of the main image of many products, for instance after a change of
+	 * ImageProperties.xml, and report the throughput
+	 */
+	public static Map<String, Object> scaleProductImagesInBulk(DispatchContext dctx, Map<String, ? extends Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		Locale locale = (Locale) context.get("locale");
+		List<String> productIds = UtilGenerics.checkList(context.get("productIds"));
 
-					String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
-					File targetDir = new File(targetDirectory);
-					if (!targetDir.exists()) {
-						boolean created = targetDir.mkdirs();
-						if (!created) {
-							String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_create_target_directory", locale) + " - " + targetDirectory;
-							Debug.logFatal(errMsg, module);
-							return ServiceUtil.returnError(errMsg);
-						}
-					}
+		Map<String, Map<String, String>> imgPropertyMap = getImagePropertyMap(locale);
+		if (imgPropertyMap == null) {
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ScaleImage.unable_to_parse", locale) + " : ImageProperties.xml");
+		}
 
-					// write new image
-					try {
-						ImageIO.write(bufNewImg, imgExtension, new File(imageServerPath + "/" + newFilePathPrefix + filenameToUse));
-					} catch (IllegalArgumentException e) {
-						String errMsg = UtilProperties.getMessage(resource, "ScaleImage.one_parameter_is_null", locale) + e.toString();
-						Debug.logError(errMsg, module);
-						result.put("errorMessage", errMsg);
-						return result;
-					} catch (IOException e) {
-						String errMsg = UtilProperties.getMessage(resource, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
-						Debug.logError(errMsg, module);
-						result.put("errorMessage", errMsg);
-						return result;
-					}
+		List<EntityCondition> conditions = new LinkedList<EntityCondition>();
+		conditions.add(EntityCondition.makeCondition("originalImageUrl", EntityOperator.NOT_EQUAL, null));
+		if (UtilValidate.isNotEmpty(productIds)) {
+			conditions.add(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds));
+		}
+		List<GenericValue> products;
+		try {
+			products = EntityQuery.use(delegator).select("productId", "originalImageUrl").from("Product").where(conditions).orderBy("productId").queryList();
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
 
-					/* write Return Result */
-					String imageUrl = imageUrlPrefix + "/" + newFilePathPrefix + filenameToUse;
-					imgUrlMap.put(sizeType, imageUrl);
+		ImageDerivativePipeline.Batch batch = new ImageDerivativePipeline(imgPropertyMap, locale).newBatch("scaleProductImagesInBulk");
+		List<String> skippedProductIds = new LinkedList<String>();
+		try {
+			for (GenericValue product : products) {
+				String originalImageUrl = product.getString("originalImageUrl");
+				int queryIndex = originalImageUrl.indexOf('?');
+				if (queryIndex != -1) {
+					originalImageUrl = originalImageUrl.substring(0, queryIndex);
+				}
+				int extensionIndex = originalImageUrl.lastIndexOf('.');
+				if (extensionIndex == -1 || extensionIndex < originalImageUrl.lastIndexOf('/')) {
+					skippedProductIds.add(product.getString("productId"));
+					continue;
+				}
+				Map<String, Object> imageContext = new HashMap<String, Object>();
+				imageContext.putAll(context);
+				imageContext.put("delegator", delegator);
+				imageContext.put("productId", product.getString("productId"));
+				ImageJob imageJob;
+				try {
+					imageJob = createImageJob(imageContext, imgPropertyMap, "original" + originalImageUrl.substring(extensionIndex), "main", "0");
+				} catch (IOException e) {
+					Debug.logError(e.getMessage(), module);
+					skippedProductIds.add(product.getString("productId"));
+					continue;
+				}
+				if (!imageJob.source.isFile()) {
+					skippedProductIds.add(product.getString("productId"));
+					continue;
+				}
+				batch.add(imageJob.source, imageJob.getDerivatives());
+			}
+			batch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return ServiceUtil.returnError("Interrupted while scaling the product images : " + batch);
+		}
+		if (!skippedProductIds.isEmpty()) {
+			Debug.logWarning("The original image of " + skippedProductIds.size() + " products was not found: " + skippedProductIds, module);
+		}
+		for (String errorMessage : batch.getErrorMessages()) {
+			Debug.logError(errorMessage, module);
+		}
 
-				} // scaleImgMap
-			} // sizeIter
+		Map<String, Object> result = ServiceUtil.returnSuccess(batch.toString());
+		result.put("imageCount", batch.getCompletedCount());
+		result.put("failedCount", batch.getFailedCount());
+		result.put("skippedCount", skippedProductIds.size());
+		result.put("derivativeCount", batch.getDerivativeCount());
+		result.put("bytesWritten", batch.getBytesWritten());
+		result.put("elapsedMillis", batch.getElapsedMillis());
+		result.put("imagesPerSecond", batch.getImagesPerSecond());
+		return result;
+	}
 
-			result.put("responseMessage", "success");
-			result.put("imageUrlMap", imgUrlMap);
-			result.put("original", resultBufImgMap);
-			return result;
+	/**
+	 * Returns the image dimensions by size type from ImageProperties.xml, or <code>null</code> if it can't be parsed.
+	 */
+	static Map<String, Map<String, String>> getImagePropertyMap(Locale locale) {
+		String imgPropertyFullPath = System.getProperty("ofbiz.home") + "/applications/product/config/ImageProperties.xml";
+		Map<String, Object> resultXMLMap;
+		try {
+			resultXMLMap = ImageTransform.getXMLValue(imgPropertyFullPath, locale);
+		} catch (IOException e) {
+			Debug.logError(e, module);
+			return null;
+		}
+		if ("success".equals(resultXMLMap.get("responseMessage"))) {
+			return UtilGenerics.<Map<String, Map<String, String>>>cast(resultXMLMap.get("xml"));
+		}
+		return null;
+	}
+
+	/**
+	 * Builds the scaled images to generate from the main or additional view image of a product, for all the
+	 * sizes of ImageProperties.xml. Returns <code>null</code> if the view type is unknown.
+	 */
+	private static ImageJob createImageJob(Map<String, ? extends Object> context, Map<String, Map<String, String>> imgPropertyMap, String filenameToUse, String viewType, String viewNumber)
+			throws IOException {
+		Locale locale = (Locale) context.get("locale");
+
+		/* IMAGE */
+		// get Name and Extension
+		int index = filenameToUse.lastIndexOf(".");
+		String imgExtension = filenameToUse.substring(index + 1);
+		// paths
 
+		Map<String, Object> imageContext = new HashMap<String, Object>();
+		imageContext.putAll(context);
+		imageContext.put("tenantId", ((Delegator) context.get("delegator")).getDelegatorTenantId());
+		String imageServerPath = FlexibleStringExpander.expandString(EntityUtilProperties.getPropertyValue("catalog", "image.server.path", (Delegator) context.get("delegator")), imageContext);
+		String imageUrlPrefix = FlexibleStringExpander.expandString(EntityUtilProperties.getPropertyValue("catalog", "image.url.prefix", (Delegator) context.get("delegator")), imageContext);
+		imageServerPath = imageServerPath.endsWith("/") ? imageServerPath.substring(0, imageServerPath.length() - 1) : imageServerPath;
+		imageUrlPrefix = imageUrlPrefix.endsWith("/") ? imageUrlPrefix.substring(0, imageUrlPrefix.length() - 1) : imageUrlPrefix;
+		FlexibleStringExpander filenameExpander;
+		String fileLocation = null;
+		String id = null;
+		if (viewType.toLowerCase().contains("main")) {
+			String filenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.format", (Delegator) context.get("delegator"));
+			filenameExpander = FlexibleStringExpander.getInstance(filenameFormat);
+			id = (String) context.get("productId");
+			fileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", "original"));
+		} else if (viewType.toLowerCase().contains("additional") && viewNumber != null && !viewNumber.equals("0")) {
+			String filenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.additionalviewsize.format", (Delegator) context.get("delegator"));
+			filenameExpander = FlexibleStringExpander.getInstance(filenameFormat);
+			id = (String) context.get("productId");
+			if (filenameFormat.endsWith("${id}")) {
+				id = id + "_View_" + viewNumber;
+			} else {
+				viewType = "additional" + viewNumber;
+			}
+			fileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype", viewType, "sizetype", "original"));
 		} else {
-			String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse;
+			return null;
+		}
+
+		ImageJob imageJob = new ImageJob();
+		imageJob.source = new File(imageServerPath + "/" + fileLocation + "." + imgExtension);
+
+		for (String sizeType : imgPropertyMap.keySet()) {
+			// Build full path for the new scaled image
+			String newFileLocation = null;
+			if (viewType.toLowerCase().contains("main")) {
+				newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
+			} else if (viewType.toLowerCase().contains("additional")) {
+				newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype", viewType, "sizetype", sizeType));
+			}
+			String newFilePathPrefix = "";
+			if (newFileLocation.lastIndexOf("/") != -1) {
+				newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf("/") + 1); // adding 1 to include the trailing slash
+			}
+			// Directory
+			String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
+			File targetDir = new File(targetDirectory);
+			if (!targetDir.exists()) {
+				// Create the new directory
+				boolean created = targetDir.mkdirs();
+				if (!created) {
+					throw new IOException(UtilProperties.getMessage(resource, "ScaleImage.unable_to_create_target_directory", locale) + " - " + targetDirectory);
+				}
+				// Delete existing image files
+				// Images aren't ordered by productId (${location}/${viewtype}/${sizetype}/${id}) !!! BE CAREFUL !!!
+			} else if (newFileLocation.endsWith("/" + id)) {
+				try {
+					File[] files = targetDir.listFiles();
+					if (files != null) {
+						for (File file : files) {
+							if (file.isFile() && file.getName().startsWith(id)) {
+								file.delete();
+							}
+						}
+					}
+				} catch (SecurityException e) {
+					Debug.logError(e, module);
+				}
+			}
+
+			// Save each Url
+			String imageUrl = null;
+			if (sizeTypeList.contains(sizeType)) {
+				imageUrl = imageUrlPrefix + "/" + newFileLocation + "." + imgExtension;
+			}
+			imageJob.add(sizeType, new File(imageServerPath + "/" + newFileLocation + "." + imgExtension), imgExtension, imageUrl);
+		}
+		return imageJob;
+	}
+
+	/**
+	 * Scales the image of the job in all its sizes, the result contains the responseMessage, imageUrlMap and original
+	 * entries on success and the errorMessage entry otherwise.
+	 */
+	private static Map<String, Object> scaleImage(ImageDerivativePipeline pipeline, ImageJob imageJob, String filenameToUse, Locale locale) {
+		Map<String, Object> result = new HashMap<String, Object>();
+		ImageDerivativePipeline.Result pipelineResult = pipeline.process(imageJob.source, imageJob.getDerivatives());
+		if (pipelineResult.getErrorMessage() != null) {
+			String errMsg = UtilProperties.getMessage(resource, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse + " ; " + pipelineResult.getErrorMessage();
 			Debug.logError(errMsg, module);
 			result.put("errorMessage", errMsg);
 			return ServiceUtil.returnError(errMsg);
 		}
+		if (!pipelineResult.getErrors().isEmpty()) {
+			String errMsg = UtilProperties.getMessage(resource, "ScaleImage.error_occurs_during_writing", locale) + pipelineResult.getErrors();
+			Debug.logError(errMsg, module);
+			result.put("errorMessage", errMsg);
+			return result;
+		}
+
+		Map<String, String> imgUrlMap = new HashMap<String, String>();
+		for (Map.Entry<String, String> entry : imageJob.urls.entrySet()) {
+			if (entry.getValue() != null) {
+				imgUrlMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+		Map<String, Object> resultBufImgMap = new HashMap<String, Object>();
+		resultBufImgMap.put("responseMessage", "success");
+		resultBufImgMap.put("bufferedImage", pipelineResult.getImage());
+
+		result.put("responseMessage", "success");
+		result.put("imageUrlMap", imgUrlMap);
+		result.put("original", resultBufImgMap);
+		return result;
+	}
+
+	/**
+	 * The source image and the scaled images to generate from it.
+	 */
+	private static final class ImageJob {
+		private File source;
+		// by target file: when several sizes are written to the same file only the last one is kept, as when they were written in sequence
+		private final Map<File, ImageDerivativePipeline.Derivative> derivatives = new LinkedHashMap<File, ImageDerivativePipeline.Derivative>();
+		private final Map<String, String> urls = new LinkedHashMap<String, String>();
+
+		private void add(String sizeType, File target, String formatName, String imageUrl) {
+			derivatives.remove(target);
+			derivatives.put(target, new ImageDerivativePipeline.Derivative(sizeType, target, formatName));
+			urls.put(sizeType, imageUrl);
+		}
+
+		private List<ImageDerivativePipeline.Derivative> getDerivatives() {
+			return new ArrayList<ImageDerivativePipeline.Derivative>(derivatives.values());
+		}
 	}
 }
@@ -20,6 +20,7 @@ package org.apache.ofbiz.product.imagemanagement;
 
 import org.apache.ofbiz.base.util.*;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
+import org.apache.ofbiz.common.image.ImageDerivativePipeline;
 import org.apache.ofbiz.common.image.ImageTransform;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -301,26 +302,20 @@ public class ImageManagementServices {
 		}
 
 		int index;
-		Map<String, Map<String, String>> imgPropertyMap = new HashMap<String, Map<String, String>>();
-		BufferedImage bufImg, bufNewImg;
-		double imgHeight, imgWidth;
 		Map<String, String> imgUrlMap = new HashMap<String, String>();
 		Map<String, Object> resultXMLMap = new HashMap<String, Object>();
-		Map<String, Object> resultBufImgMap = new HashMap<String, Object>();
-		Map<String, Object> resultScaleImgMap = new HashMap<String, Object>();
 		Map<String, Object> result = new HashMap<String, Object>();
 
 		/* ImageProperties.xml */
 		String imgPropertyFullPath = System.getProperty("ofbiz.home") + "/applications/product/config/ImageProperties.xml";
 		resultXMLMap.putAll(ImageTransform.getXMLValue(imgPropertyFullPath, locale));
-		if (resultXMLMap.containsKey("responseMessage") && resultXMLMap.get("responseMessage").equals("success")) {
-			imgPropertyMap.putAll(UtilGenerics.<Map<String, Map<String, String>>>cast(resultXMLMap.get("xml")));
-		} else {
+		if (!"success".equals(resultXMLMap.get("responseMessage"))) {
 			String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.unable_to_parse", locale) + " : ImageProperties.xml";
 			Debug.logError(errMsg, module);
 			result.put("errorMessage", errMsg);
 			return result;
 		}
+		Map<String, Map<String, String>> imgPropertyMap = UtilGenerics.cast(resultXMLMap.get("xml"));
 
 		/* IMAGE */
 		// get Name and Extension
@@ -330,78 +325,49 @@ public class ImageManagementServices {
 		String imageServerPath = FlexibleStringExpander.expandString(EntityUtilProperties.getPropertyValue("catalog", "image.management.path", dctx.getDelegator()), context);
 		String imageServerUrl = FlexibleStringExpander.expandString(EntityUtilProperties.getPropertyValue("catalog", "image.management.url", dctx.getDelegator()), context);
 
-
-		/* get original BUFFERED IMAGE */
-		resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + productId + "/" + filenameToUse, locale));
-
-		if (resultBufImgMap.containsKey("responseMessage") && resultBufImgMap.get("responseMessage").equals("success")) {
-			bufImg = (BufferedImage) resultBufImgMap.get("bufferedImage");
-
-			// get Dimensions
-			imgHeight = bufImg.getHeight();
-			imgWidth = bufImg.getWidth();
-			if (imgHeight == 0.0 || imgWidth == 0.0) {
-				String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.one_current_image_dimension_is_null", locale) + " : imgHeight = " + imgHeight + " ; imgWidth = " + imgWidth;
-				Debug.logError(errMsg, module);
-				result.put("errorMessage", errMsg);
-				return result;
+		String targetDirectory = imageServerPath + "/" + productId;
+		File targetDir = new File(targetDirectory);
+		if (!targetDir.exists()) {
+			boolean created = targetDir.mkdirs();
+			if (!created) {
+				String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.unable_to_create_target_directory", locale) + " - " + targetDirectory;
+				Debug.logFatal(errMsg, module);
+				return ServiceUtil.returnError(errMsg);
 			}
+		}
 
-			/* scale Image for each Size Type */
-			for (String sizeType : sizeTypeList) {
-				resultScaleImgMap.putAll(ImageTransform.scaleImage(bufImg, imgHeight, imgWidth, imgPropertyMap, sizeType, locale));
-
-				if (resultScaleImgMap.containsKey("responseMessage") && resultScaleImgMap.get("responseMessage").equals("success")) {
-					bufNewImg = (BufferedImage) resultScaleImgMap.get("bufferedImage");
-
-					// write the New Scaled Image
-
-					String targetDirectory = imageServerPath + "/" + productId;
-					File targetDir = new File(targetDirectory);
-					if (!targetDir.exists()) {
-						boolean created = targetDir.mkdirs();
-						if (!created) {
-							String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.unable_to_create_target_directory", locale) + " - " + targetDirectory;
-							Debug.logFatal(errMsg, module);
-							return ServiceUtil.returnError(errMsg);
-						}
-					}
-
-					// write new image
-					try {
-						ImageIO.write(bufNewImg, imgExtension, new File(imageServerPath + "/" + productId + "/" + filenameToUse));
-						File deleteFile = new File(imageServerPath + "/" + filenameToUse);
-						deleteFile.delete();
-					} catch (IllegalArgumentException e) {
-						String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.one_parameter_is_null", locale) + e.toString();
-						Debug.logError(errMsg, module);
-						result.put("errorMessage", errMsg);
-						return result;
-					} catch (IOException e) {
-						String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
-						Debug.logError(errMsg, module);
-						result.put("errorMessage", errMsg);
-						return result;
-					}
-
-					/* write Return Result */
-					String imageUrl = imageServerUrl + "/" + productId + "/" + filenameToUse;
-					imgUrlMap.put(sizeType, imageUrl);
-
-				} // scaleImgMap
-			} // sizeIter
-
-			result.put("responseMessage", "success");
-			result.put("imageUrlMap", imgUrlMap);
-			result.put("original", resultBufImgMap);
-			return result;
-
-		} else {
-			String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse;
+		/* the source image is also the target: every size is written over it, only the last one is kept as when they were written in sequence */
+		File imageFile = new File(imageServerPath + "/" + productId + "/" + filenameToUse);
+		String sizeType = sizeTypeList.get(sizeTypeList.size() - 1);
+		ImageDerivativePipeline.Result pipelineResult = new ImageDerivativePipeline(imgPropertyMap, locale).process(imageFile,
+				UtilMisc.toList(new ImageDerivativePipeline.Derivative(sizeType, imageFile, imgExtension)));
+		if (pipelineResult.getErrorMessage() != null) {
+			String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse + " ; " + pipelineResult.getErrorMessage();
 			Debug.logError(errMsg, module);
 			result.put("errorMessage", errMsg);
 			return ServiceUtil.returnError(errMsg);
 		}
+		if (!pipelineResult.getErrors().isEmpty()) {
+			String errMsg = UtilProperties.getMessage(resourceError, "ScaleImage.error_occurs_during_writing", locale) + pipelineResult.getErrors();
+			Debug.logError(errMsg, module);
+			result.put("errorMessage", errMsg);
+			return result;
+		}
+		File deleteFile = new File(imageServerPath + "/" + filenameToUse);
+		deleteFile.delete();
+
+		/* write Return Result */
+		for (String resultSizeType : sizeTypeList) {
+			imgUrlMap.put(resultSizeType, imageServerUrl + "/" + productId + "/" + filenameToUse);
+		}
+		Map<String, Object> resultBufImgMap = new HashMap<String, Object>();
+		resultBufImgMap.put("responseMessage", "success");
+		resultBufImgMap.put("bufferedImage", pipelineResult.getImage());
+
+		result.put("responseMessage", "success");
+		result.put("imageUrlMap", imgUrlMap);
+		result.put("original", resultBufImgMap);
+		return result;
 	}
 
 	public static Map<String, Object> createContentAndDataResource(DispatchContext dctx, GenericValue userLogin, String filenameToUse, String imageUrl, String contentId, String fileContentType) {
@@ -586,9 +552,7 @@ public class ImageManagementServices {
 		}
 
 		// scale original image with new size
-		Image newImg = bufImg.getScaledInstance((int) (imgWidth * scaleFactor), (int) (imgHeight * scaleFactor), Image.SCALE_SMOOTH);
-
-		bufNewImg = ImageTransform.toBufferedImage(newImg, bufImgType);
+		bufNewImg = ImageTransform.scaleImage(bufImg, (int) (imgWidth * scaleFactor), (int) (imgHeight * scaleFactor), bufImgType);
 
 		result.put("bufferedImage", bufNewImg);
 		result.put("scaleFactor", scaleFactor);
@@ -645,9 +609,7 @@ public class ImageManagementServices {
 		}
 
 		// scale original image with new size
-		Image newImg = bufImg.getScaledInstance((int) (imgWidth * scaleFactor), (int) (imgHeight * scaleFactor), Image.SCALE_SMOOTH);
-
-		bufNewImg = ImageTransform.toBufferedImage(newImg, bufImgType);
+		bufNewImg = ImageTransform.scaleImage(bufImg, (int) (imgWidth * scaleFactor), (int) (imgHeight * scaleFactor), bufImgType);
 
 		result.put("bufferedImage", bufNewImg);
 		result.put("scaleFactor", scaleFactor);
@@ -670,7 +632,7 @@ public class ImageManagementServices {
 		int resizeHeight = resizeWidth;
 
 		try {
-			BufferedImage bufImg = ImageIO.read(new File(imageServerPath + "/" + productId + "/" + dataResourceName));
+			BufferedImage bufImg = ImageDerivativePipeline.read(new File(imageServerPath + "/" + productId + "/" + dataResourceName), resizeWidth, resizeHeight);
 			double imgHeight = bufImg.getHeight();
 			double imgWidth = bufImg.getWidth();
 			if (dataResourceName.lastIndexOf(".") > 0 && dataResourceName.lastIndexOf(".") < dataResourceName.length()) {
@@ -731,7 +693,7 @@ public class ImageManagementServices {
 		int resizeHeight = resizeWidth;
 
 		try {
-			BufferedImage bufImg = ImageIO.read(new File(imageServerPath + "/" + productId + "/" + dataResourceName));
+			BufferedImage bufImg = ImageDerivativePipeline.read(new File(imageServerPath + "/" + productId + "/" + dataResourceName), resizeWidth, resizeHeight);
 			double imgHeight = bufImg.getHeight();
 			double imgWidth = bufImg.getWidth();
 			String filenameToUse = dataResourceName;
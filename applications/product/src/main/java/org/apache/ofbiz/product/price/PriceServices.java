@@ -409,7 +409,7 @@ public class PriceServices {
 					quantityProductPriceRules = new LinkedList<GenericValue>();
 					nonQuantityProductPriceRules = new LinkedList<GenericValue>();
 					for (GenericValue productPriceRule : allProductPriceRules) {
-						List<GenericValue> productPriceCondList = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRule.get("productPriceRuleId")).cache(true).queryList();
+						List<GenericValue> productPriceCondList = getProductPriceConds(delegator, productPriceRule.getString("productPriceRuleId"));
 
 						boolean foundQuantityInputParam = false;
 						// only consider a rule if all conditions except the quantity condition are true
@@ -565,6 +565,65 @@ public class PriceServices {
 		return priceValue;
 	}
 
+	/**
+	 * Calculates the prices of several products with the same inputs, see {@link #calculateProductPrice}. The products
+	 * are read with one query and priced from the same price rule index, without a service call per product.
+	 */
+	public static Map<String, Object> calculateProductPrices(DispatchContext dctx, Map<String, ? extends Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		Locale locale = (Locale) context.get("locale");
+		List<GenericValue> products = new LinkedList<GenericValue>();
+		List<GenericValue> contextProducts = UtilGenerics.checkList(context.get("products"));
+		if (contextProducts != null) {
+			products.addAll(contextProducts);
+		}
+		List<String> productIds = UtilGenerics.checkList(context.get("productIds"));
+		if (UtilValidate.isNotEmpty(productIds)) {
+			try {
+				Map<String, GenericValue> productsById = new HashMap<String, GenericValue>();
+				for (GenericValue product : EntityQuery.use(delegator).from("Product").where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds)).queryList()) {
+					productsById.put(product.getString("productId"), product);
+				}
+				for (String productId : productIds) {
+					GenericValue product = productsById.get(productId);
+					if (product == null) {
+						Debug.logWarning("Product [" + productId + "] not found, no price calculated for it", module);
+						continue;
+					}
+					products.add(product);
+				}
+			} catch (GenericEntityException e) {
+				Debug.logError(e, "Error getting the products to calculate the prices of", module);
+				return ServiceUtil.returnError(e.getMessage());
+			}
+		}
+
+		Map<String, Map<String, Object>> productPrices = new LinkedHashMap<String, Map<String, Object>>();
+		Map<String, Object> productContext = new HashMap<String, Object>(context);
+		productContext.remove("products");
+		productContext.remove("productIds");
+		for (GenericValue product : products) {
+			productContext.put("product", product);
+			Map<String, Object> priceResult = calculateProductPrice(dctx, productContext);
+			if (ServiceUtil.isError(priceResult)) {
+				return ServiceUtil.returnError(UtilProperties.getMessage(resource, "ProductPriceCannotCalculatePrices",
+						UtilMisc.toMap("productId", product.getString("productId")), locale), null, null, priceResult);
+			}
+			productPrices.put(product.getString("productId"), priceResult);
+		}
+		Map<String, Object> result = ServiceUtil.returnSuccess();
+		result.put("productPrices", productPrices);
+		return result;
+	}
+
+	/**
+	 * Drops the price rule index, see {@link ProductPriceRuleIndex}; called by the price rule entity ECAs.
+	 */
+	public static Map<String, Object> clearProductPriceRuleIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+		ProductPriceRuleIndex.clear(dctx.getDelegator());
+		return ServiceUtil.returnSuccess();
+	}
+
 	public static Map<String, Object> addGeneralResults(Map<String, Object> result, GenericValue competitivePriceValue, GenericValue specialPromoPriceValue, GenericValue productStore,
 	                                                    String checkIncludeVat, String currencyUomId, String productId, BigDecimal quantity, String partyId, LocalDispatcher dispatcher, Locale locale) {
 		result.put("competitivePrice", competitivePriceValue != null ? competitivePriceValue.getBigDecimal("price") : null);
@@ -620,6 +679,11 @@ public class PriceServices {
 	public static List<GenericValue> makeProducePriceRuleList(Delegator delegator, boolean optimizeForLargeRuleSet, String productId, String virtualProductId, String prodCatalogId, String productStoreGroupId, String webSiteId, String partyId, String currencyUomId) throws GenericEntityException {
 		List<GenericValue> productPriceRules = null;
 
+		if (isPriceRuleIndexEnabled(delegator)) {
+			// the index gives the rules that could apply, whatever the size of the rule set
+			return ProductPriceRuleIndex.getInstance(delegator).getCandidateRules(delegator, productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyUomId);
+		}
+
 		// At this point we have two options: optimize for large ruleset, or optimize for small ruleset
 		// NOTE: This only effects the way that the rules to be evaluated are selected.
 		// For large rule sets we can do a cached pre-filter to limit the rules that need to be evaled for a specific product.
@@ -760,6 +824,24 @@ public class PriceServices {
 		return productPriceRules;
 	}
 
+	private static boolean isPriceRuleIndexEnabled(Delegator delegator) {
+		return !"false".equals(EntityUtilProperties.getPropertyValue("catalog", "productPrice.ruleIndex.enabled", "true", delegator));
+	}
+
+	private static List<GenericValue> getProductPriceConds(Delegator delegator, String productPriceRuleId) throws GenericEntityException {
+		if (isPriceRuleIndexEnabled(delegator)) {
+			return ProductPriceRuleIndex.getInstance(delegator).getConds(productPriceRuleId);
+		}
+		return EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+	}
+
+	private static List<GenericValue> getProductPriceActions(Delegator delegator, String productPriceRuleId) throws GenericEntityException {
+		if (isPriceRuleIndexEnabled(delegator)) {
+			return ProductPriceRuleIndex.getInstance(delegator).getActions(productPriceRuleId);
+		}
+		return EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+	}
+
 	public static Map<String, Object> calcPriceResultFromRules(List<GenericValue> productPriceRules, BigDecimal listPrice, BigDecimal defaultPrice, BigDecimal promoPrice,
 	                                                           BigDecimal wholesalePrice, GenericValue maximumPriceValue, GenericValue minimumPriceValue, boolean validPriceFound,
 	                                                           GenericValue averageCostValue, String productId, String virtualProductId, String prodCatalogId, String productStoreGroupId,
@@ -802,7 +884,7 @@ public class PriceServices {
 			// check all conditions
 			boolean allTrue = true;
 			StringBuilder condsDescription = new StringBuilder();
-			List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+			List<GenericValue> productPriceConds = getProductPriceConds(delegator, productPriceRuleId);
 			for (GenericValue productPriceCond : productPriceConds) {
 
 				totalConds++;
@@ -844,7 +926,7 @@ public class PriceServices {
 					isSale = true;
 				}
 
-				List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+				List<GenericValue> productPriceActions = getProductPriceActions(delegator, productPriceRuleId);
 				for (GenericValue productPriceAction : productPriceActions) {
 
 					totalActions++;
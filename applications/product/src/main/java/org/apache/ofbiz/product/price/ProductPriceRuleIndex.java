@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.price;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import javax.transaction.Synchronization;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index of the price rules of a delegator, read once from ProductPriceRule, ProductPriceCond and
+ * ProductPriceAction, that gives {@link PriceServices#calculateProductPrice} the rules that could apply to a price
+ * calculation without going through all of them.
+ * <p>A rule with an equals condition on the product, feature, category, party, catalog, store group, web site or
+ * currency is indexed by the value of that condition; it is only a candidate when the calculation has that value (for
+ * the features and the categories, when the product or its virtual product has them). The other rules are candidates
+ * for all the calculations. The candidates are returned in productPriceRuleId order and still have all their
+ * conditions checked by {@link PriceServices#checkPriceCondition}.</p>
+ * <p>The index is kept in the <code>product.ProductPriceRuleIndex</code> cache and is dropped when the price rule
+ * entities change (see the product entity ECAs).</p>
+ */
+public final class ProductPriceRuleIndex {
+
+	public static final String module = ProductPriceRuleIndex.class.getName();
+	private static final UtilCache<String, ProductPriceRuleIndex> indexCache = UtilCache.createUtilCache("product.ProductPriceRuleIndex", 0, 0);
+
+	/** The input parameters a rule can be indexed by, the most selective first */
+	private static final List<String> INDEXED_INPUT_PARAMS = Collections.unmodifiableList(Arrays.asList("PRIP_PRODUCT_ID", "PRIP_PROD_FEAT_ID",
+			"PRIP_PROD_CAT_ID", "PRIP_PARTY_ID", "PRIP_PROD_CLG_ID", "PRIP_WEBSITE_ID", "PRIP_PROD_SGRP_ID", "PRIP_CURRENCY_UOMID"));
+
+	private final Map<String, GenericValue> rules;
+	private final Map<String, List<GenericValue>> condsByRule;
+	private final Map<String, List<GenericValue>> actionsByRule;
+	/** the indexed rule ids, by input parameter and condition value */
+	private final Map<String, Map<String, List<String>>> indexedRuleIds;
+	private final List<String> unindexedRuleIds;
+
+	private ProductPriceRuleIndex(Delegator delegator) throws GenericEntityException {
+		Map<String, GenericValue> rules = new TreeMap<String, GenericValue>();
+		for (GenericValue productPriceRule : EntityQuery.use(delegator).from("ProductPriceRule").queryList()) {
+			productPriceRule.setImmutable();
+			rules.put(productPriceRule.getString("productPriceRuleId"), productPriceRule);
+		}
+		Map<String, List<GenericValue>> condsByRule = groupByRule(EntityQuery.use(delegator).from("ProductPriceCond").orderBy("productPriceRuleId", "productPriceCondSeqId").queryList());
+		Map<String, List<GenericValue>> actionsByRule = groupByRule(EntityQuery.use(delegator).from("ProductPriceAction").orderBy("productPriceRuleId", "productPriceActionSeqId").queryList());
+
+		Map<String, Map<String, List<String>>> indexedRuleIds = new HashMap<String, Map<String, List<String>>>();
+		List<String> unindexedRuleIds = new ArrayList<String>();
+		for (String productPriceRuleId : rules.keySet()) {
+			GenericValue indexCond = getIndexCond(condsByRule.get(productPriceRuleId));
+			if (indexCond == null) {
+				unindexedRuleIds.add(productPriceRuleId);
+				continue;
+			}
+			Map<String, List<String>> ruleIdsByValue = indexedRuleIds.get(indexCond.getString("inputParamEnumId"));
+			if (ruleIdsByValue == null) {
+				ruleIdsByValue = new HashMap<String, List<String>>();
+				indexedRuleIds.put(indexCond.getString("inputParamEnumId"), ruleIdsByValue);
+			}
+			List<String> ruleIds = ruleIdsByValue.get(indexCond.getString("condValue"));
+			if (ruleIds == null) {
+				ruleIds = new ArrayList<String>();
+				ruleIdsByValue.put(indexCond.getString("condValue"), ruleIds);
+			}
+			ruleIds.add(productPriceRuleId);
+		}
+		this.rules = rules;
+		this.condsByRule = condsByRule;
+		this.actionsByRule = actionsByRule;
+		this.indexedRuleIds = indexedRuleIds;
+		this.unindexedRuleIds = unindexedRuleIds;
+		if (Debug.infoOn()) Debug.logInfo("Indexed " + rules.size() + " price rules for delegator " + delegator.getDelegatorName() + ", "
+				+ unindexedRuleIds.size() + " of them checked for all the calculations", module);
+	}
+
+	private static Map<String, List<GenericValue>> groupByRule(List<GenericValue> values) {
+		Map<String, List<GenericValue>> valuesByRule = new HashMap<String, List<GenericValue>>();
+		for (GenericValue value : values) {
+			// shared by the calculations, as the cached values
+			value.setImmutable();
+			List<GenericValue> ruleValues = valuesByRule.get(value.getString("productPriceRuleId"));
+			if (ruleValues == null) {
+				ruleValues = new ArrayList<GenericValue>();
+				valuesByRule.put(value.getString("productPriceRuleId"), ruleValues);
+			}
+			ruleValues.add(value);
+		}
+		for (Map.Entry<String, List<GenericValue>> entry : valuesByRule.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		return valuesByRule;
+	}
+
+	/** Returns the equals condition a rule is indexed by, or <code>null</code> if it can apply to any calculation */
+	private static GenericValue getIndexCond(List<GenericValue> productPriceConds) {
+		if (productPriceConds == null) {
+			return null;
+		}
+		GenericValue indexCond = null;
+		int indexCondRank = INDEXED_INPUT_PARAMS.size();
+		for (GenericValue productPriceCond : productPriceConds) {
+			int rank = INDEXED_INPUT_PARAMS.indexOf(productPriceCond.getString("inputParamEnumId"));
+			if (rank >= 0 && rank < indexCondRank && "PRC_EQ".equals(productPriceCond.getString("operatorEnumId"))
+					&& productPriceCond.getString("condValue") != null) {
+				indexCond = productPriceCond;
+				indexCondRank = rank;
+			}
+		}
+		return indexCond;
+	}
+
+	/**
+	 * Returns the price rule index of a delegator, building it if needed.
+	 */
+	public static ProductPriceRuleIndex getInstance(Delegator delegator) throws GenericEntityException {
+		ProductPriceRuleIndex index = indexCache.get(delegator.getDelegatorName());
+		if (index == null) {
+			index = new ProductPriceRuleIndex(delegator);
+			indexCache.putIfAbsent(delegator.getDelegatorName(), index);
+		}
+		return index;
+	}
+
+	/**
+	 * Drops the price rule index of a delegator. When called in a transaction, it is dropped again once the transaction
+	 * completes, so that an index built from the data of before the commit is not kept.
+	 */
+	public static void clear(Delegator delegator) {
+		final String cacheKey = delegator.getDelegatorName();
+		indexCache.remove(cacheKey);
+		try {
+			TransactionUtil.registerSynchronization(new Synchronization() {
+				public void beforeCompletion() {
+				}
+
+				public void afterCompletion(int status) {
+					indexCache.remove(cacheKey);
+				}
+			});
+		} catch (GenericTransactionException e) {
+			Debug.logWarning(e, "Could not register the removal of the price rule index on transaction completion", module);
+		}
+	}
+
+	/**
+	 * Returns the rules that could apply to a price calculation, in productPriceRuleId order.
+	 */
+	public List<GenericValue> getCandidateRules(Delegator delegator, String productId, String virtualProductId, String prodCatalogId,
+	                                            String productStoreGroupId, String webSiteId, String partyId, String currencyUomId) throws GenericEntityException {
+		Set<String> ruleIds = new HashSet<String>(unindexedRuleIds);
+		addRuleIds(ruleIds, "PRIP_PRODUCT_ID", productId);
+		addRuleIds(ruleIds, "PRIP_PRODUCT_ID", virtualProductId);
+		addRuleIds(ruleIds, "PRIP_PROD_CLG_ID", prodCatalogId);
+		addRuleIds(ruleIds, "PRIP_PROD_SGRP_ID", productStoreGroupId);
+		addRuleIds(ruleIds, "PRIP_WEBSITE_ID", webSiteId);
+		addRuleIds(ruleIds, "PRIP_PARTY_ID", partyId);
+		addRuleIds(ruleIds, "PRIP_CURRENCY_UOMID", currencyUomId);
+		if (indexedRuleIds.containsKey("PRIP_PROD_CAT_ID")) {
+			// the membership dates are checked with the conditions
+			addRelatedRuleIds(ruleIds, "PRIP_PROD_CAT_ID", delegator, "ProductCategoryMember", "productCategoryId", productId);
+			addRelatedRuleIds(ruleIds, "PRIP_PROD_CAT_ID", delegator, "ProductCategoryMember", "productCategoryId", virtualProductId);
+		}
+		if (indexedRuleIds.containsKey("PRIP_PROD_FEAT_ID")) {
+			// as the conditions, only the features of the product itself
+			addRelatedRuleIds(ruleIds, "PRIP_PROD_FEAT_ID", delegator, "ProductFeatureAppl", "productFeatureId", productId);
+		}
+
+		List<String> sortedRuleIds = new ArrayList<String>(ruleIds);
+		Collections.sort(sortedRuleIds);
+		List<GenericValue> candidateRules = new LinkedList<GenericValue>();
+		for (String productPriceRuleId : sortedRuleIds) {
+			candidateRules.add(rules.get(productPriceRuleId));
+		}
+		return candidateRules;
+	}
+
+	private void addRuleIds(Set<String> ruleIds, String inputParamEnumId, String value) {
+		if (UtilValidate.isEmpty(value)) {
+			return;
+		}
+		Map<String, List<String>> ruleIdsByValue = indexedRuleIds.get(inputParamEnumId);
+		if (ruleIdsByValue != null) {
+			List<String> valueRuleIds = ruleIdsByValue.get(value);
+			if (valueRuleIds != null) {
+				ruleIds.addAll(valueRuleIds);
+			}
+		}
+	}
+
+	private void addRelatedRuleIds(Set<String> ruleIds, String inputParamEnumId, Delegator delegator, String entityName, String valueFieldName, String productId) throws GenericEntityException {
+		if (UtilValidate.isEmpty(productId)) {
+			return;
+		}
+		for (GenericValue related : EntityQuery.use(delegator).from(entityName).where("productId", productId).cache(true).queryList()) {
+			addRuleIds(ruleIds, inputParamEnumId, related.getString(valueFieldName));
+		}
+	}
+
+	/**
+	 * Returns all the price rules, in productPriceRuleId order.
+	 */
+	public List<GenericValue> getRules() {
+		return new LinkedList<GenericValue>(rules.values());
+	}
+
+	/**
+	 * Returns the conditions of a price rule, in sequence order.
+	 */
+	public List<GenericValue> getConds(String productPriceRuleId) {
+		List<GenericValue> conds = condsByRule.get(productPriceRuleId);
+		return conds != null ? conds : Collections.<GenericValue>emptyList();
+	}
+
+	/**
+	 * Returns the actions of a price rule, in sequence order.
+	 */
+	public List<GenericValue> getActions(String productPriceRuleId) {
+		List<GenericValue> actions = actionsByRule.get(productPriceRuleId);
+		return actions != null ? actions : Collections.<GenericValue>emptyList();
+	}
+}
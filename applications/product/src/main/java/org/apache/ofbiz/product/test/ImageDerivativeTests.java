@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.test;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.common.image.ImageDerivativePipeline;
+import org.apache.ofbiz.common.image.ImageDerivativePipeline.Derivative;
+import org.apache.ofbiz.common.image.ImageDerivativePipeline.Result;
+import org.apache.ofbiz.product.imagemanagement.ImageManagementServices;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tests the sizes of the image derivatives and of the image management thumbnails
+ */
+public class ImageDerivativeTests extends OFBizTestCase {
+
+	private File directory;
+
+	public ImageDerivativeTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("ImageDerivativeTests", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private File createImage(String name, int width, int height) throws Exception {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLUE);
+		g.fillRect(0, 0, width / 2, height);
+		g.dispose();
+		File file = new File(directory, name);
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+
+	private static Map<String, String> dimensions(String width, String height) {
+		Map<String, String> dimensions = new HashMap<String, String>();
+		if (width != null) {
+			dimensions.put("width", width);
+		}
+		if (height != null) {
+			dimensions.put("height", height);
+		}
+		return dimensions;
+	}
+
+	private static void assertSize(String message, int width, int height, BufferedImage image) {
+		assertEquals(message + " width", width, image.getWidth());
+		assertEquals(message + " height", height, image.getHeight());
+	}
+
+	public void testDerivativeSizes() throws Exception {
+		File source = createImage("landscape.png", 1600, 900);
+		Map<String, Map<String, String>> dimensionMap = new HashMap<String, Map<String, String>>();
+		dimensionMap.put("small", dimensions("100", "100"));
+		dimensionMap.put("large", dimensions("400", "400"));
+		dimensionMap.put("tall", dimensions(null, "300"));
+		List<Derivative> derivatives = UtilMisc.toList(new Derivative("small", new File(directory, "small.png"), "png"),
+				new Derivative("large", new File(directory, "large.png"), "png"), new Derivative("tall", new File(directory, "tall.png"), "png"));
+
+		Result result = new ImageDerivativePipeline(dimensionMap, Locale.getDefault()).process(source, derivatives);
+		assertTrue("success " + result.getErrors(), result.isSuccess());
+		assertEquals("source width", 1600, result.getWidth());
+		assertEquals("source height", 900, result.getHeight());
+		// a subsampling by 2 would decode 800 x 450, less than twice the tall derivative, 533 x 300
+		assertEquals("subsampling", 1, result.getSubsampling());
+		assertEquals("written derivatives", 3, result.getWritten().size());
+		assertSize("small", 100, 56, ImageIO.read(new File(directory, "small.png")));
+		assertSize("large", 400, 225, ImageIO.read(new File(directory, "large.png")));
+		assertSize("tall", 533, 300, ImageIO.read(new File(directory, "tall.png")));
+
+		dimensionMap.remove("tall");
+		result = new ImageDerivativePipeline(dimensionMap, Locale.getDefault()).process(source, derivatives.subList(0, 2));
+		assertTrue("success without the tall derivative " + result.getErrors(), result.isSuccess());
+		// the decoded image, 800 x 450, stays twice as large as the largest derivative
+		assertEquals("subsampling without the tall derivative", 2, result.getSubsampling());
+		assertSize("subsampled small", 100, 56, ImageIO.read(new File(directory, "small.png")));
+		assertSize("subsampled large", 400, 225, ImageIO.read(new File(directory, "large.png")));
+	}
+
+	public void testThumbnailAspectRatio() throws Exception {
+		BufferedImage landscape = ImageDerivativePipeline.read(createImage("landscape.png", 1600, 900), 100, 100);
+		assertTrue("subsampled landscape", landscape.getWidth() < 1600);
+		assertTrue("landscape twice as large as the thumbnail", landscape.getWidth() >= 200 && landscape.getHeight() >= 112);
+		BufferedImage thumbnail = (BufferedImage) ImageManagementServices.resizeImageThumbnail(landscape, landscape.getHeight(), landscape.getWidth()).get("bufferedImage");
+		assertSize("landscape thumbnail", 100, 56, thumbnail);
+
+		BufferedImage portrait = ImageDerivativePipeline.read(createImage("portrait.png", 600, 1200), 100, 100);
+		assertSize("subsampled portrait", 100, 200, portrait);
+		thumbnail = (BufferedImage) ImageManagementServices.resizeImageThumbnail(portrait, portrait.getHeight(), portrait.getWidth()).get("bufferedImage");
+		assertSize("portrait thumbnail", 50, 100, thumbnail);
+
+		// a small image is not subsampled nor enlarged by the resize to its own size
+		BufferedImage small = ImageDerivativePipeline.read(createImage("small.png", 80, 40), 100, 100);
+		assertSize("small", 80, 40, small);
+		BufferedImage resized = (BufferedImage) ImageManagementServices.resizeImage(small, small.getHeight(), small.getWidth(), 40, 80).get("bufferedImage");
+		assertSize("small resized", 80, 40, resized);
+	}
+}
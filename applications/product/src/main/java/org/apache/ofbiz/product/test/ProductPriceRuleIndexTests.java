@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.test;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.product.price.ProductPriceRuleIndex;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Price rule index and bulk price calculation tests, with the products and rules of ProductPriceRuleIndexTestData.xml,
+ * and a comparison of the prices with and without the index for rules generated on the demo products.
+ * The number of generated rules can be set with the <code>productpriceruleindextests.rules</code> system property
+ * to use the test as a benchmark.
+ */
+public class ProductPriceRuleIndexTests extends OFBizTestCase {
+
+	public static final String module = ProductPriceRuleIndexTests.class.getName();
+
+	private static final String BENCH_RULE_PREFIX = "PRI_BENCH_";
+
+	public ProductPriceRuleIndexTests(String name) {
+		super(name);
+	}
+
+	/**
+	 * Removes the generated rules and the ruleIndex.enabled property, thru the entity ECAs dropping the index
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		EntityCondition benchCondition = EntityCondition.makeCondition("productPriceRuleId", EntityOperator.LIKE, BENCH_RULE_PREFIX + "%");
+		delegator.removeAll(EntityQuery.use(delegator).from("ProductPriceAction").where(benchCondition).queryList());
+		delegator.removeAll(EntityQuery.use(delegator).from("ProductPriceCond").where(benchCondition).queryList());
+		delegator.removeAll(EntityQuery.use(delegator).from("ProductPriceRule").where(benchCondition).queryList());
+		delegator.removeAll(EntityQuery.use(delegator).from("SystemProperty").where("systemResourceId", "catalog",
+				"systemPropertyId", "productPrice.ruleIndex.enabled").queryList());
+	}
+
+	private List<String> getCandidateRuleIds(String productId, String virtualProductId) throws Exception {
+		List<String> ruleIds = new ArrayList<String>();
+		for (GenericValue rule : ProductPriceRuleIndex.getInstance(delegator).getCandidateRules(delegator, productId, virtualProductId, null, "_NA_", null, null, "USD")) {
+			if (rule.getString("productPriceRuleId").startsWith("PRI_TEST_")) {
+				ruleIds.add(rule.getString("productPriceRuleId"));
+			}
+		}
+		return ruleIds;
+	}
+
+	public void testCandidateRules() throws Exception {
+		assertEquals("product rule", UtilMisc.toList("PRI_TEST_ANY", "PRI_TEST_PROD"), getCandidateRuleIds("PRI_TEST_1", null));
+		assertEquals("category rule of the virtual product", UtilMisc.toList("PRI_TEST_ANY", "PRI_TEST_CAT"), getCandidateRuleIds("PRI_TEST_2", "PRI_TEST_V"));
+		assertEquals("no product rule", UtilMisc.toList("PRI_TEST_ANY"), getCandidateRuleIds("PRI_TEST_2", null));
+	}
+
+	public void testIndexRebuiltOnChange() throws Exception {
+		ProductPriceRuleIndex index = ProductPriceRuleIndex.getInstance(delegator);
+		assertSame("index kept", index, ProductPriceRuleIndex.getInstance(delegator));
+		List<GenericValue> rule = UtilMisc.toList(
+				delegator.create("ProductPriceRule", "productPriceRuleId", "PRI_TEST_PROD2", "ruleName", "PRI_TEST_PROD2", "isSale", "N"),
+				delegator.create("ProductPriceCond", "productPriceRuleId", "PRI_TEST_PROD2", "productPriceCondSeqId", "01",
+						"inputParamEnumId", "PRIP_PRODUCT_ID", "operatorEnumId", "PRC_EQ", "condValue", "PRI_TEST_2"),
+				delegator.create("ProductPriceAction", "productPriceRuleId", "PRI_TEST_PROD2", "productPriceActionSeqId", "01",
+						"productPriceActionTypeId", "PRICE_POL", "amount", new BigDecimal("-5")));
+		try {
+			assertNotSame("index dropped", index, ProductPriceRuleIndex.getInstance(delegator));
+			assertEquals("new rule indexed", UtilMisc.toList("PRI_TEST_ANY", "PRI_TEST_PROD2"), getCandidateRuleIds("PRI_TEST_2", null));
+		} finally {
+			// removeAll of a list runs the entity ECAs dropping the index
+			Collections.reverse(rule);
+			delegator.removeAll(rule);
+		}
+		assertEquals("rule removed", UtilMisc.toList("PRI_TEST_ANY"), getCandidateRuleIds("PRI_TEST_2", null));
+	}
+
+	public void testCalculateProductPrices() throws Exception {
+		Map<String, Object> result = dispatcher.runSync("calculateProductPrices", UtilMisc.<String, Object>toMap("productIds",
+				UtilMisc.toList("PRI_TEST_2", "PRI_TEST_1", "PRI_TEST_MISSING"), "currencyUomId", "USD"));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, Map<String, Object>> productPrices = UtilGenerics.checkMap(result.get("productPrices"));
+		assertEquals("prices in order", UtilMisc.toList("PRI_TEST_2", "PRI_TEST_1"), new ArrayList<String>(productPrices.keySet()));
+		assertEquals("category rule", 0, new BigDecimal("80").compareTo((BigDecimal) productPrices.get("PRI_TEST_2").get("price")));
+		assertEquals("product rule", 0, new BigDecimal("90").compareTo((BigDecimal) productPrices.get("PRI_TEST_1").get("price")));
+
+		for (String productId : productPrices.keySet()) {
+			GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne();
+			Map<String, Object> priceResult = dispatcher.runSync("calculateProductPrice", UtilMisc.<String, Object>toMap("product", product,
+					"currencyUomId", "USD"));
+			assertEquals("same price as calculateProductPrice", priceResult.get("price"), productPrices.get(productId).get("price"));
+		}
+	}
+
+	private void setRuleIndexEnabled(boolean enabled) throws Exception {
+		delegator.createOrStore(delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", "catalog",
+				"systemPropertyId", "productPrice.ruleIndex.enabled", "systemPropertyValue", String.valueOf(enabled))));
+	}
+
+	/**
+	 * Prices the products with calculateProductPrices, and returns the prices by productId.
+	 */
+	private Map<String, String> calculatePrices(List<String> productIds) throws Exception {
+		Map<String, Object> result = dispatcher.runSync("calculateProductPrices", UtilMisc.<String, Object>toMap("productIds", productIds,
+				"currencyUomId", "USD"));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		Map<String, Map<String, Object>> productPrices = UtilGenerics.checkMap(result.get("productPrices"));
+		Map<String, String> prices = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, Map<String, Object>> productPrice : productPrices.entrySet()) {
+			BigDecimal price = (BigDecimal) productPrice.getValue().get("price");
+			prices.put(productPrice.getKey(), price == null ? null : price.setScale(3, RoundingMode.HALF_UP).toPlainString());
+		}
+		return prices;
+	}
+
+	public void testSamePricesAsUnindexed() throws Exception {
+		int ruleCount = Integer.getInteger("productpriceruleindextests.rules", 200);
+		List<String> productIds = EntityQuery.use(delegator).select("productId").from("Product").where("isVirtual", "N").orderBy("productId")
+				.getFieldList("productId");
+		if (productIds.size() > 200) {
+			productIds = productIds.subList(0, 200);
+		}
+		// a discount rule on each of the products in turn
+		for (int i = 0; i < ruleCount; i++) {
+			String productPriceRuleId = BENCH_RULE_PREFIX + i;
+			delegator.create("ProductPriceRule", "productPriceRuleId", productPriceRuleId, "ruleName", productPriceRuleId, "isSale", "N");
+			delegator.create("ProductPriceCond", "productPriceRuleId", productPriceRuleId, "productPriceCondSeqId", "01",
+					"inputParamEnumId", "PRIP_PRODUCT_ID", "operatorEnumId", "PRC_EQ", "condValue", productIds.get(i % productIds.size()));
+			delegator.create("ProductPriceAction", "productPriceRuleId", productPriceRuleId, "productPriceActionSeqId", "01",
+					"productPriceActionTypeId", "PRICE_POL", "amount", new BigDecimal("-1"));
+		}
+
+		// warm up the caches of both modes before the timings
+		setRuleIndexEnabled(false);
+		Map<String, String> unindexedPrices = calculatePrices(productIds);
+		setRuleIndexEnabled(true);
+		Map<String, String> indexedPrices = calculatePrices(productIds);
+		assertEquals("same prices with the index", unindexedPrices, indexedPrices);
+
+		setRuleIndexEnabled(false);
+		long startTime = System.nanoTime();
+		calculatePrices(productIds);
+		long unindexedTime = System.nanoTime() - startTime;
+		setRuleIndexEnabled(true);
+		startTime = System.nanoTime();
+		calculatePrices(productIds);
+		long indexedTime = System.nanoTime() - startTime;
+		startTime = System.nanoTime();
+		for (GenericValue product : EntityQuery.use(delegator).from("Product").where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds))
+				.queryList()) {
+			Map<String, Object> result = dispatcher.runSync("calculateProductPrice", UtilMisc.<String, Object>toMap("product", product, "currencyUomId", "USD"));
+			assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		}
+		long serviceCallsTime = System.nanoTime() - startTime;
+		Debug.logInfo("Prices of " + productIds.size() + " products with " + ruleCount + " generated rules: bulk without the index "
+				+ unindexedTime / 1000 / productIds.size() + " us per product, bulk with the index " + indexedTime / 1000 / productIds.size()
+				+ " us, calculateProductPrice calls with the index " + serviceCallsTime / 1000 / productIds.size() + " us", module);
+	}
+}
@@ -21,6 +21,7 @@ package org.apache.ofbiz.shipment.picklist;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -28,16 +29,19 @@ import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.ServiceUtil;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class PickListServices {
 
 	public static final String module = PickListServices.class.getName();
+	public static final String resource = "ProductUiLabels";
 
 	public static Map<String, Object> convertOrderIdListToHeaders(DispatchContext dctx, Map<String, ? extends Object> context) {
 		Delegator delegator = dctx.getDelegator();
@@ -85,6 +89,39 @@ public class PickListServices {
 		return result;
 	}
 
+	/**
+	 * Creates the picklists of a wave of orders with the {@link WavePicklistBuilder}.
+	 */
+	public static Map<String, Object> createWavePicklists(DispatchContext dctx, Map<String, ? extends Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		Locale locale = (Locale) context.get("locale");
+		List<String> orderIdList = UtilGenerics.checkList(context.get("orderIdList"));
+		String facilityId = (String) context.get("facilityId");
+		if (orderIdList == null && facilityId == null) {
+			return ServiceUtil.returnError(UtilProperties.getMessage(resource, "FacilityWavePickingNeedsOrdersOrFacility", locale));
+		}
+		Long maxBins = (Long) context.get("maxBinsPerPicklist");
+		if (maxBins == null) {
+			maxBins = EntityUtilProperties.getPropertyAsLong("shipment", "shipment.picklist.wave.maxBins", 0, delegator);
+		}
+
+		WavePicklistBuilder builder = new WavePicklistBuilder(delegator, (GenericValue) context.get("userLogin"), facilityId,
+				(String) context.get("shipmentMethodTypeId"), (Long) context.get("maxNumberOfOrders"), maxBins.intValue());
+		List<String> picklistIdList;
+		try {
+			picklistIdList = builder.run(orderIdList);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+		// an empty wave is not an error: the orders may all be picked already
+		Map<String, Object> result = picklistIdList.isEmpty()
+				? ServiceUtil.returnSuccess(UtilProperties.getMessage(resource, "FacilityNoOrdersReadyToPick", locale)) : ServiceUtil.returnSuccess();
+		result.put("picklistIdList", picklistIdList);
+		result.put("waveStats", builder.getStats());
+		return result;
+	}
+
 	public static boolean isBinComplete(Delegator delegator, String picklistBinId) throws GeneralException {
 		// lookup the items in the bin
 		List<GenericValue> items;
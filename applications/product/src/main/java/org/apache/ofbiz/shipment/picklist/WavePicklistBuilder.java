@@ -0,0 +1,434 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.shipment.picklist;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Wave picking engine, used by the createWavePicklists service.
+ * <p>The orders of a wave are picked in four phases:</p>
+ * <ul>
+ * <li>load: the ship groups, order items, inventory reservations, inventory items, facility locations and the
+ * quantities already on a picklist are read for the whole wave, with one query per entity and slice of orders;</li>
+ * <li>allocate: the ship groups to pick are selected in memory by facility, oldest order first, with the rules of the
+ * findOrdersToPickMove service;</li>
+ * <li>route: the picks of a ship group are ordered by location (area, aisle, section, level, position), the ship
+ * groups by their first location, and cut in picklists of at most <code>shipment.picklist.wave.maxBins</code> bins;</li>
+ * <li>persist: the Picklist, PicklistBin and PicklistItem records are written together, without a service call per
+ * record.</li>
+ * </ul>
+ * <p>The time spent in each phase is logged and returned with the counts of the wave by {@link #getStats()}.</p>
+ */
+public class WavePicklistBuilder {
+
+	public static final String module = WavePicklistBuilder.class.getName();
+	/** The number of values of an IN condition */
+	private static final int IN_SIZE = 500;
+
+	/** The location order of the pick route, the picks without location last */
+	private static final Comparator<GenericValue> LOCATION_ORDER = new Comparator<GenericValue>() {
+		public int compare(GenericValue location1, GenericValue location2) {
+			if (location1 == null || location2 == null) {
+				return location1 == null ? (location2 == null ? 0 : 1) : -1;
+			}
+			for (String fieldName : UtilMisc.toList("areaId", "aisleId", "sectionId", "levelId", "positionId", "locationSeqId")) {
+				String value1 = location1.getString(fieldName);
+				String value2 = location2.getString(fieldName);
+				int compare;
+				if (value1 == null || value2 == null) {
+					compare = value1 == null ? (value2 == null ? 0 : 1) : -1;
+				} else {
+					compare = value1.compareTo(value2);
+				}
+				if (compare != 0) {
+					return compare;
+				}
+			}
+			return 0;
+		}
+	};
+
+	private final Delegator delegator;
+	private final GenericValue userLogin;
+	private final String facilityId;
+	private final String shipmentMethodTypeId;
+	private final Long maxNumberOfOrders;
+	private final int maxBins;
+	private final Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+
+	private final List<GenericValue> orderHeaders = new ArrayList<GenericValue>();
+	private final Map<String, List<GenericValue>> shipGroupsByOrder = new HashMap<String, List<GenericValue>>();
+	private final Map<String, String> itemStatuses = new HashMap<String, String>();
+	private final Map<String, List<GenericValue>> reservationsByShipGroup = new HashMap<String, List<GenericValue>>();
+	private final Map<String, GenericValue> inventoryItems = new HashMap<String, GenericValue>();
+	private final Map<String, GenericValue> locations = new HashMap<String, GenericValue>();
+	private final Map<String, BigDecimal> pickedQuantities = new HashMap<String, BigDecimal>();
+	private final Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+	/**
+	 * @param facilityId        The facility to pick from, or <code>null</code> to pick each order from the facilities of its reservations
+	 * @param maxNumberOfOrders The maximum number of ship groups picked by facility, or <code>null</code>
+	 * @param maxBins           The maximum number of bins of a picklist, 0 for one picklist by facility
+	 */
+	public WavePicklistBuilder(Delegator delegator, GenericValue userLogin, String facilityId, String shipmentMethodTypeId, Long maxNumberOfOrders, int maxBins) {
+		this.delegator = delegator;
+		this.userLogin = userLogin;
+		this.facilityId = facilityId;
+		this.shipmentMethodTypeId = shipmentMethodTypeId;
+		this.maxNumberOfOrders = maxNumberOfOrders;
+		this.maxBins = maxBins;
+	}
+
+	/**
+	 * Creates the picklists of a wave.
+	 *
+	 * @param orderIds The orders of the wave, or <code>null</code> for all the approved sales orders
+	 * @return The ids of the picklists created
+	 */
+	public List<String> run(Collection<String> orderIds) throws GenericEntityException {
+		long startTime = System.currentTimeMillis();
+		load(orderIds);
+		long loadTime = System.currentTimeMillis();
+		Map<String, List<WaveBin>> binsByFacility = allocate();
+		long allocateTime = System.currentTimeMillis();
+		Map<String, List<List<WaveBin>>> picklistsByFacility = route(binsByFacility);
+		long routeTime = System.currentTimeMillis();
+		List<String> picklistIds = persist(picklistsByFacility);
+		long persistTime = System.currentTimeMillis();
+
+		stats.put("orderCount", orderHeaders.size());
+		stats.put("picklistCount", picklistIds.size());
+		stats.put("loadMillis", loadTime - startTime);
+		stats.put("allocateMillis", allocateTime - loadTime);
+		stats.put("routeMillis", routeTime - allocateTime);
+		stats.put("persistMillis", persistTime - routeTime);
+		if (Debug.infoOn()) Debug.logInfo("Wave picking of " + orderHeaders.size() + " orders done in " + (persistTime - startTime) + " ms: " + stats, module);
+		return picklistIds;
+	}
+
+	/**
+	 * Returns the counts of the last run, and the time in milliseconds of each of its phases.
+	 */
+	public Map<String, Object> getStats() {
+		return stats;
+	}
+
+	private void load(Collection<String> orderIds) throws GenericEntityException {
+		EntityCondition orderCondition = EntityCondition.makeCondition(EntityCondition.makeCondition("orderTypeId", "SALES_ORDER"),
+				EntityCondition.makeCondition("statusId", "ORDER_APPROVED"));
+		if (orderIds == null) {
+			orderHeaders.addAll(EntityQuery.use(delegator).from("OrderHeader").where(orderCondition).orderBy("orderDate").queryList());
+		} else {
+			orderHeaders.addAll(queryIn("OrderHeader", "orderId", new LinkedHashSet<String>(orderIds), orderCondition));
+			Collections.sort(orderHeaders, new Comparator<GenericValue>() {
+				public int compare(GenericValue order1, GenericValue order2) {
+					Timestamp orderDate1 = order1.getTimestamp("orderDate");
+					Timestamp orderDate2 = order2.getTimestamp("orderDate");
+					if (orderDate1 == null || orderDate2 == null) {
+						return orderDate1 == null ? (orderDate2 == null ? 0 : -1) : 1;
+					}
+					return orderDate1.compareTo(orderDate2);
+				}
+			});
+		}
+		Set<String> waveOrderIds = new LinkedHashSet<String>();
+		for (GenericValue orderHeader : orderHeaders) {
+			waveOrderIds.add(orderHeader.getString("orderId"));
+		}
+
+		for (GenericValue shipGroup : queryIn("OrderItemShipGroup", "orderId", waveOrderIds, null)) {
+			addToList(shipGroupsByOrder, shipGroup.getString("orderId"), shipGroup);
+		}
+		for (List<GenericValue> shipGroups : shipGroupsByOrder.values()) {
+			Collections.sort(shipGroups, new Comparator<GenericValue>() {
+				public int compare(GenericValue shipGroup1, GenericValue shipGroup2) {
+					return shipGroup1.getString("shipGroupSeqId").compareTo(shipGroup2.getString("shipGroupSeqId"));
+				}
+			});
+		}
+		for (GenericValue orderItem : queryIn("OrderItem", "orderId", waveOrderIds, null)) {
+			itemStatuses.put(orderItem.getString("orderId") + "::" + orderItem.getString("orderItemSeqId"), orderItem.getString("statusId"));
+		}
+		Set<String> inventoryItemIds = new LinkedHashSet<String>();
+		for (GenericValue reservation : queryIn("OrderItemShipGrpInvRes", "orderId", waveOrderIds, null)) {
+			addToList(reservationsByShipGroup, reservation.getString("orderId") + "::" + reservation.getString("shipGroupSeqId"), reservation);
+			inventoryItemIds.add(reservation.getString("inventoryItemId"));
+		}
+
+		Set<String> facilityIds = new LinkedHashSet<String>();
+		for (GenericValue inventoryItem : queryIn("InventoryItem", "inventoryItemId", inventoryItemIds, null)) {
+			inventoryItems.put(inventoryItem.getString("inventoryItemId"), inventoryItem);
+			if (inventoryItem.get("facilityId") != null) {
+				facilityIds.add(inventoryItem.getString("facilityId"));
+			}
+		}
+		for (GenericValue location : queryIn("FacilityLocation", "facilityId", facilityIds, null)) {
+			locations.put(location.getString("facilityId") + "::" + location.getString("locationSeqId"), location);
+		}
+
+		// the quantities already on a picklist, as in findOrdersToPickMove
+		EntityCondition picklistCondition = EntityCondition.makeCondition(
+				EntityCondition.makeCondition("statusId", EntityOperator.NOT_EQUAL, "PICKLIST_CANCELLED"),
+				EntityCondition.makeCondition("itemStatusId", EntityOperator.NOT_EQUAL, "PICKITEM_CANCELLED"));
+		for (GenericValue picklistItem : queryIn("PicklistAndBinAndItem", "orderId", waveOrderIds, picklistCondition)) {
+			String pickKey = getPickKey(picklistItem);
+			BigDecimal quantity = picklistItem.getBigDecimal("quantity") == null ? BigDecimal.ZERO : picklistItem.getBigDecimal("quantity");
+			BigDecimal pickedQuantity = pickedQuantities.get(pickKey);
+			pickedQuantities.put(pickKey, pickedQuantity == null ? quantity : pickedQuantity.add(quantity));
+		}
+	}
+
+	private List<GenericValue> queryIn(String entityName, String fieldName, Collection<String> values, EntityCondition condition) throws GenericEntityException {
+		List<GenericValue> result = new ArrayList<GenericValue>();
+		List<String> valueList = new ArrayList<String>(values);
+		for (int i = 0; i < valueList.size(); i += IN_SIZE) {
+			EntityCondition inCondition = EntityCondition.makeCondition(fieldName, EntityOperator.IN, valueList.subList(i, Math.min(i + IN_SIZE, valueList.size())));
+			result.addAll(EntityQuery.use(delegator).from(entityName)
+					.where(condition == null ? inCondition : EntityCondition.makeCondition(inCondition, condition)).queryList());
+		}
+		return result;
+	}
+
+	private Map<String, List<WaveBin>> allocate() {
+		Map<String, List<WaveBin>> binsByFacility = new TreeMap<String, List<WaveBin>>();
+		int stockMoveCount = 0;
+		for (GenericValue orderHeader : orderHeaders) {
+			List<GenericValue> shipGroups = shipGroupsByOrder.get(orderHeader.getString("orderId"));
+			if (shipGroups == null) {
+				continue;
+			}
+			for (GenericValue shipGroup : shipGroups) {
+				if (shipmentMethodTypeId != null && !shipmentMethodTypeId.equals(shipGroup.getString("shipmentMethodTypeId"))) {
+					continue;
+				}
+				Timestamp shipAfterDate = shipGroup.getTimestamp("shipAfterDate");
+				if (shipAfterDate != null && nowTimestamp.before(shipAfterDate)) {
+					continue;
+				}
+				List<GenericValue> reservations = reservationsByShipGroup.get(shipGroup.getString("orderId") + "::" + shipGroup.getString("shipGroupSeqId"));
+				if (reservations == null) {
+					continue;
+				}
+				for (String pickFacilityId : getPickFacilityIds(reservations)) {
+					List<WaveBin> facilityBins = binsByFacility.get(pickFacilityId);
+					if (maxNumberOfOrders != null && facilityBins != null && facilityBins.size() >= maxNumberOfOrders) {
+						continue;
+					}
+					WaveBin bin = allocateShipGroup(shipGroup, reservations, pickFacilityId);
+					if (bin == null) {
+						continue;
+					}
+					if (bin.needsStockMove) {
+						stockMoveCount++;
+						continue;
+					}
+					if (facilityBins == null) {
+						facilityBins = new ArrayList<WaveBin>();
+						binsByFacility.put(pickFacilityId, facilityBins);
+					}
+					facilityBins.add(bin);
+				}
+			}
+		}
+		stats.put("stockMoveCount", stockMoveCount);
+		return binsByFacility;
+	}
+
+	private Collection<String> getPickFacilityIds(List<GenericValue> reservations) {
+		if (facilityId != null) {
+			return Collections.singleton(facilityId);
+		}
+		Set<String> pickFacilityIds = new LinkedHashSet<String>();
+		for (GenericValue reservation : reservations) {
+			GenericValue inventoryItem = inventoryItems.get(reservation.getString("inventoryItemId"));
+			if (inventoryItem != null && inventoryItem.get("facilityId") != null) {
+				pickFacilityIds.add(inventoryItem.getString("facilityId"));
+			}
+		}
+		return pickFacilityIds;
+	}
+
+	/**
+	 * Selects the reservations of a ship group to pick from a facility, with the rules of findOrdersToPickMove, and
+	 * returns its bin, or <code>null</code> when the ship group is not picked.
+	 */
+	private WaveBin allocateShipGroup(GenericValue shipGroup, List<GenericValue> reservations, String pickFacilityId) {
+		WaveBin bin = new WaveBin(shipGroup);
+		boolean hasStockToPick = false;
+		boolean maySplit = "Y".equals(shipGroup.getString("maySplit"));
+		for (GenericValue reservation : reservations) {
+			if (!"ITEM_APPROVED".equals(itemStatuses.get(reservation.getString("orderId") + "::" + reservation.getString("orderItemSeqId")))) {
+				return null;
+			}
+			BigDecimal reservedQuantity = reservation.getBigDecimal("quantity") == null ? BigDecimal.ZERO : reservation.getBigDecimal("quantity");
+			BigDecimal pickedQuantity = pickedQuantities.get(getPickKey(reservation));
+			BigDecimal remainingQuantity = pickedQuantity == null ? reservedQuantity : reservedQuantity.subtract(pickedQuantity);
+			if (remainingQuantity.signum() <= 0) {
+				continue;
+			}
+			BigDecimal quantityNotAvailable = reservation.getBigDecimal("quantityNotAvailable");
+			boolean notAvailable = quantityNotAvailable != null && quantityNotAvailable.signum() > 0;
+			GenericValue inventoryItem = inventoryItems.get(reservation.getString("inventoryItemId"));
+			if ((!maySplit && notAvailable) || inventoryItem == null || !pickFacilityId.equals(inventoryItem.getString("facilityId"))) {
+				return null;
+			}
+			// as findOrdersToPickMove, compares the whole reserved quantity with the quantity not available
+			if (!notAvailable || (maySplit && reservedQuantity.compareTo(quantityNotAvailable) > 0)) {
+				hasStockToPick = true;
+			}
+			GenericValue location = locations.get(inventoryItem.getString("facilityId") + "::" + inventoryItem.getString("locationSeqId"));
+			if (location != null && "FLT_BULK".equals(location.getString("locationTypeEnumId"))) {
+				bin.needsStockMove = true;
+			}
+			BigDecimal quantityToPick = notAvailable ? remainingQuantity.subtract(quantityNotAvailable) : remainingQuantity;
+			if (quantityToPick.signum() > 0) {
+				bin.picks.add(new Pick(reservation, quantityToPick, location));
+			}
+		}
+		if (!hasStockToPick || bin.picks.isEmpty()) {
+			// nothing left to pick, or only back ordered items
+			return null;
+		}
+		return bin;
+	}
+
+	private Map<String, List<List<WaveBin>>> route(Map<String, List<WaveBin>> binsByFacility) {
+		Map<String, List<List<WaveBin>>> picklistsByFacility = new LinkedHashMap<String, List<List<WaveBin>>>();
+		final Comparator<Pick> pickOrder = new Comparator<Pick>() {
+			public int compare(Pick pick1, Pick pick2) {
+				return LOCATION_ORDER.compare(pick1.location, pick2.location);
+			}
+		};
+		int binCount = 0;
+		int itemCount = 0;
+		for (Map.Entry<String, List<WaveBin>> facilityEntry : binsByFacility.entrySet()) {
+			List<WaveBin> bins = facilityEntry.getValue();
+			for (WaveBin bin : bins) {
+				Collections.sort(bin.picks, pickOrder);
+				itemCount += bin.picks.size();
+			}
+			// stable: the ship groups of the same first location stay in order date order
+			Collections.sort(bins, new Comparator<WaveBin>() {
+				public int compare(WaveBin bin1, WaveBin bin2) {
+					return pickOrder.compare(bin1.picks.get(0), bin2.picks.get(0));
+				}
+			});
+			binCount += bins.size();
+			List<List<WaveBin>> picklists = new ArrayList<List<WaveBin>>();
+			int picklistSize = maxBins > 0 ? maxBins : bins.size();
+			for (int i = 0; i < bins.size(); i += picklistSize) {
+				picklists.add(bins.subList(i, Math.min(i + picklistSize, bins.size())));
+			}
+			picklistsByFacility.put(facilityEntry.getKey(), picklists);
+		}
+		stats.put("binCount", binCount);
+		stats.put("itemCount", itemCount);
+		return picklistsByFacility;
+	}
+
+	private List<String> persist(Map<String, List<List<WaveBin>>> picklistsByFacility) throws GenericEntityException {
+		List<String> picklistIds = new LinkedList<String>();
+		List<GenericValue> toCreate = new LinkedList<GenericValue>();
+		String userLoginId = userLogin == null ? null : userLogin.getString("userLoginId");
+		for (Map.Entry<String, List<List<WaveBin>>> facilityEntry : picklistsByFacility.entrySet()) {
+			for (List<WaveBin> picklistBins : facilityEntry.getValue()) {
+				String picklistId = delegator.getNextSeqId("Picklist");
+				toCreate.add(delegator.makeValue("Picklist", UtilMisc.toMap("picklistId", picklistId, "facilityId", facilityEntry.getKey(),
+						"shipmentMethodTypeId", shipmentMethodTypeId, "statusId", "PICKLIST_INPUT", "picklistDate", nowTimestamp,
+						"createdByUserLogin", userLoginId, "lastModifiedByUserLogin", userLoginId)));
+				long binLocationNumber = 1;
+				for (WaveBin bin : picklistBins) {
+					String picklistBinId = delegator.getNextSeqId("PicklistBin");
+					toCreate.add(delegator.makeValue("PicklistBin", UtilMisc.toMap("picklistBinId", picklistBinId, "picklistId", picklistId,
+							"binLocationNumber", binLocationNumber++, "primaryOrderId", bin.shipGroup.getString("orderId"),
+							"primaryShipGroupSeqId", bin.shipGroup.getString("shipGroupSeqId"))));
+					for (Pick pick : bin.picks) {
+						toCreate.add(delegator.makeValue("PicklistItem", UtilMisc.toMap("picklistBinId", picklistBinId,
+								"orderId", pick.reservation.getString("orderId"), "orderItemSeqId", pick.reservation.getString("orderItemSeqId"),
+								"shipGroupSeqId", pick.reservation.getString("shipGroupSeqId"), "inventoryItemId", pick.reservation.getString("inventoryItemId"),
+								"itemStatusId", "PICKITEM_PENDING", "quantity", pick.quantity)));
+					}
+				}
+				picklistIds.add(picklistId);
+			}
+		}
+		for (GenericValue value : toCreate) {
+			value.create();
+		}
+		return picklistIds;
+	}
+
+	private static String getPickKey(GenericValue value) {
+		return value.getString("orderId") + "::" + value.getString("shipGroupSeqId") + "::" + value.getString("orderItemSeqId") + "::" + value.getString("inventoryItemId");
+	}
+
+	private static void addToList(Map<String, List<GenericValue>> map, String key, GenericValue value) {
+		List<GenericValue> values = map.get(key);
+		if (values == null) {
+			values = new ArrayList<GenericValue>();
+			map.put(key, values);
+		}
+		values.add(value);
+	}
+
+	private static final class WaveBin {
+		private final GenericValue shipGroup;
+		private final List<Pick> picks = new ArrayList<Pick>();
+		private boolean needsStockMove = false;
+
+		private WaveBin(GenericValue shipGroup) {
+			this.shipGroup = shipGroup;
+		}
+	}
+
+	private static final class Pick {
+		private final GenericValue reservation;
+		private final BigDecimal quantity;
+		private final GenericValue location;
+
+		private Pick(GenericValue reservation, BigDecimal quantity, GenericValue location) {
+			this.reservation = reservation;
+			this.quantity = quantity;
+			this.location = location;
+		}
+	}
+}
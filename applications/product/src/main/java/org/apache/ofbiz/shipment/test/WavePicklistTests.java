@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.shipment.test;
+
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Wave picking tests, with the facility and orders of WavePicklistTestData.xml
+ */
+public class WavePicklistTests extends OFBizTestCase {
+
+	private static final String FACILITY_ID = "WAVE_TEST_FAC";
+	private static final List<String> ORDER_IDS = UtilMisc.toList("WAVE_TEST_1", "WAVE_TEST_2", "WAVE_TEST_3", "WAVE_TEST_4", "WAVE_TEST_5");
+
+	private GenericValue userLogin = null;
+
+	public WavePicklistTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (GenericValue picklist : EntityQuery.use(delegator).from("Picklist").where("facilityId", FACILITY_ID).queryList()) {
+			for (GenericValue picklistBin : picklist.getRelated("PicklistBin", null, null, false)) {
+				delegator.removeRelated("PicklistItem", picklistBin);
+			}
+			delegator.removeRelated("PicklistBin", picklist);
+			delegator.removeRelated("PicklistStatusHistory", picklist);
+			delegator.removeValue(picklist);
+		}
+	}
+
+	private Map<String, Object> createWave(Long maxBinsPerPicklist) throws Exception {
+		return dispatcher.runSync("createWavePicklists", UtilMisc.<String, Object>toMap("facilityId", FACILITY_ID, "orderIdList", ORDER_IDS,
+				"maxBinsPerPicklist", maxBinsPerPicklist, "userLogin", userLogin));
+	}
+
+	private List<String> getBinOrderIds(String picklistId) throws Exception {
+		List<String> orderIds = new ArrayList<String>();
+		for (GenericValue picklistBin : EntityQuery.use(delegator).from("PicklistBin").where("picklistId", picklistId).orderBy("binLocationNumber").queryList()) {
+			orderIds.add(picklistBin.getString("primaryOrderId"));
+		}
+		return orderIds;
+	}
+
+	private Set<String> getPicks(List<String> picklistIds) throws Exception {
+		Set<String> picks = new TreeSet<String>();
+		for (String picklistId : picklistIds) {
+			for (GenericValue pick : EntityQuery.use(delegator).from("PicklistAndBinAndItem").where("picklistId", picklistId).queryList()) {
+				picks.add(pick.getString("orderId") + "/" + pick.getString("orderItemSeqId") + "/" + pick.getString("inventoryItemId") + "="
+						+ pick.getBigDecimal("quantity").stripTrailingZeros().toPlainString());
+			}
+		}
+		return picks;
+	}
+
+	public void testWaveRoute() throws Exception {
+		Map<String, Object> result = createWave(2L);
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		List<String> picklistIds = UtilGenerics.checkList(result.get("picklistIdList"));
+		assertEquals("picklists of 2 bins", 2, picklistIds.size());
+		assertEquals("bins in route order", UtilMisc.toList("WAVE_TEST_2", "WAVE_TEST_1"), getBinOrderIds(picklistIds.get(0)));
+		assertEquals("bins in route order", UtilMisc.toList("WAVE_TEST_3"), getBinOrderIds(picklistIds.get(1)));
+		assertEquals("picks", new TreeSet<String>(UtilMisc.toList("WAVE_TEST_1/00001/WAVE_TEST_A-02=2", "WAVE_TEST_2/00001/WAVE_TEST_A-01=1",
+				"WAVE_TEST_2/00002/WAVE_TEST_B-01=3", "WAVE_TEST_3/00001/WAVE_TEST_B-01=3")), getPicks(picklistIds));
+		Map<String, Object> waveStats = UtilGenerics.checkMap(result.get("waveStats"));
+		assertEquals("ship groups needing a stock move", 1, waveStats.get("stockMoveCount"));
+		assertTrue("phase timings", waveStats.containsKey("loadMillis") && waveStats.containsKey("persistMillis"));
+	}
+
+	public void testSamePicksAsCreatePicklistFromOrders() throws Exception {
+		Map<String, Object> result = dispatcher.runSync("createPicklistFromOrders", UtilMisc.<String, Object>toMap("facilityId", FACILITY_ID,
+				"orderIdList", ORDER_IDS, "userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		String picklistId = (String) result.get("picklistId");
+		Set<String> picks = getPicks(UtilMisc.toList(picklistId));
+		// cancel it, so that the wave picks the same orders again
+		GenericValue picklist = EntityQuery.use(delegator).from("Picklist").where("picklistId", picklistId).queryOne();
+		picklist.set("statusId", "PICKLIST_CANCELLED");
+		picklist.store();
+
+		result = createWave(null);
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		List<String> picklistIds = UtilGenerics.checkList(result.get("picklistIdList"));
+		assertEquals("one picklist", 1, picklistIds.size());
+		assertEquals("same picks", picks, getPicks(picklistIds));
+	}
+
+	public void testNoDoublePick() throws Exception {
+		Map<String, Object> result = createWave(null);
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		result = createWave(null);
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		assertEquals("nothing left to pick", 0, UtilGenerics.checkList(result.get("picklistIdList")).size());
+		assertNotNull("no orders ready to pick", result.get(ModelService.SUCCESS_MESSAGE));
+
+		// nor an error for the mass picking of the orders
+		result = dispatcher.runSync("massPickOrders", UtilMisc.<String, Object>toMap("orderIdList", ORDER_IDS, "userLogin", userLogin));
+		assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+		assertEquals("no new picklist", 1, EntityQuery.use(delegator).from("Picklist").where("facilityId", FACILITY_ID).queryCount());
+	}
+}
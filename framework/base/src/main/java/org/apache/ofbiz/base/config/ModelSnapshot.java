@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.config;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+/**
+ * Binary snapshots of models read from XML definition files.
+ * <p>A snapshot is stored together with a key computed from the content of the
+ * definition files it was built from, a snapshot is only used when the key of
+ * the current definition files matches. Snapshots are enabled with the
+ * <code>snapshot.enabled</code> property in <code>modelsnapshot.properties</code>.</p>
+ */
+public final class ModelSnapshot {
+
+	public static final String module = ModelSnapshot.class.getName();
+
+	private ModelSnapshot() {
+	}
+
+	public static boolean isEnabled() {
+		return UtilProperties.propertyValueEqualsIgnoreCase("modelsnapshot", "snapshot.enabled", "true");
+	}
+
+	/**
+	 * Returns a key identifying the current content of the given definition files,
+	 * or <code>null</code> if one of them could not be read.
+	 *
+	 * @param handlers The definition files
+	 * @param extraKeys Additional values the model depends on
+	 */
+	public static String getSourceKey(Collection<? extends ResourceHandler> handlers, String... extraKeys) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			Debug.logError(e, "Could not compute model snapshot key", module);
+			return null;
+		}
+		byte[] buffer = new byte[8192];
+		for (ResourceHandler handler : handlers) {
+			try (InputStream in = handler.getStream()) {
+				digest.update(handler.getFullLocation().getBytes(StandardCharsets.UTF_8));
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			} catch (GenericConfigException | IOException e) {
+				Debug.logWarning(e, "Could not read " + handler + " to compute model snapshot key", module);
+				return null;
+			}
+		}
+		for (String extraKey : extraKeys) {
+			digest.update(String.valueOf(extraKey).getBytes(StandardCharsets.UTF_8));
+		}
+		return StringUtil.toHexString(digest.digest());
+	}
+
+	/**
+	 * Reads a snapshot, returns <code>null</code> if there is no snapshot with the given name
+	 * or if it was built from different definition files.
+	 */
+	public static <T> T read(String snapshotName, String sourceKey) {
+		File snapshotFile = getSnapshotFile(snapshotName);
+		if (sourceKey == null || !snapshotFile.isFile()) {
+			return null;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+			if (!sourceKey.equals(in.readUTF())) {
+				Debug.logInfo("Model snapshot [" + snapshotName + "] is out of date", module);
+				return null;
+			}
+			return UtilGenerics.<T>cast(in.readObject());
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			Debug.logWarning(e, "Could not read model snapshot [" + snapshotName + "], the definition files will be parsed", module);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a snapshot, errors are logged and otherwise ignored.
+	 */
+	public static void write(String snapshotName, String sourceKey, Serializable model) {
+		if (sourceKey == null) {
+			return;
+		}
+		File snapshotFile = getSnapshotFile(snapshotName);
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		try {
+			File directory = snapshotFile.getParentFile();
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Could not create directory " + directory);
+			}
+			try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.writeUTF(sourceKey);
+				out.writeObject(model);
+			}
+			Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (Debug.infoOn()) {
+				Debug.logInfo("Wrote model snapshot [" + snapshotName + "] to " + snapshotFile, module);
+			}
+		} catch (IOException e) {
+			Debug.logWarning(e, "Could not write model snapshot [" + snapshotName + "]", module);
+			tempFile.delete();
+		}
+	}
+
+	private static File getSnapshotFile(String snapshotName) {
+		File directory = new File(UtilProperties.getPropertyValue("modelsnapshot", "snapshot.directory", "runtime/snapshots"));
+		if (!directory.isAbsolute()) {
+			directory = new File(System.getProperty("ofbiz.home"), directory.getPath());
+		}
+		return new File(directory, snapshotName + ".ser");
+	}
+}
@@ -26,6 +26,7 @@ import org.apache.ofbiz.base.start.StartupException;
 import org.apache.ofbiz.base.start.StartupLoader;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.StartupTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 
 import java.util.*;
@@ -49,6 +50,7 @@ public class ContainerLoader implements StartupLoader {
 	 */
 	@Override
 	public synchronized void load(Config config, List<StartupCommand> ofbizCommands) throws StartupException {
+		long bootStartMillis = System.currentTimeMillis();
 
 		// loaders defined in startup (e.g. main, test, load-data, etc ...)
 		List<String> loaders = null;
@@ -72,6 +74,8 @@ public class ContainerLoader implements StartupLoader {
 
 		// Start all containers loaded from above steps
 		startLoadedContainers();
+
+		StartupTimer.logSummary(System.currentTimeMillis() - bootStartMillis);
 	}
 
 	private Collection<ContainerConfig.Configuration> retrieveOfbizContainers(String configFile) throws StartupException {
@@ -98,8 +102,10 @@ public class ContainerLoader implements StartupLoader {
 		List<Container> loadContainers = new ArrayList<Container>();
 		for (ContainerConfig.Configuration containerCfg : containerConfigs) {
 			Debug.logInfo("Loading container: " + containerCfg.name, module);
+			long startMillis = System.currentTimeMillis();
 			Container tmpContainer = loadContainer(config.containerConfig, containerCfg, ofbizCommands);
 			loadContainers.add(tmpContainer);
+			StartupTimer.recordPhaseSince("Container init " + containerCfg.name, startMillis);
 			Debug.logInfo("Loaded container: " + containerCfg.name, module);
 		}
 		return loadContainers;
@@ -145,11 +151,13 @@ public class ContainerLoader implements StartupLoader {
 		Debug.logInfo("[Startup] Starting containers...", module);
 		for (Container container : loadedContainers) {
 			Debug.logInfo("Starting container " + container.getName(), module);
+			long startMillis = System.currentTimeMillis();
 			try {
 				container.start();
 			} catch (ContainerException e) {
 				throw new StartupException("Cannot start() " + container.getClass().getName(), e);
 			}
+			StartupTimer.recordPhaseSince("Container start " + container.getName(), startMillis);
 			Debug.logInfo("Started container " + container.getName(), module);
 		}
 	}
@@ -34,6 +34,7 @@ import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.TreeSet;
 
@@ -141,7 +142,9 @@ public final class MetricsFactory {
 		return new TreeSet<>(METRICS_CACHE.values());
 	}
 
-	private static final class MetricsImpl implements Metrics, Comparable<Metrics> {
+	private static final class MetricsImpl implements Metrics, Comparable<Metrics>, Serializable {
+		private static final long serialVersionUID = -3257477160470509882L;
+
 		private final String name;
 		private final int estimationSize;
 		private final long estimationTime;
@@ -162,6 +165,11 @@ public final class MetricsFactory {
 			this.threshold = threshold;
 		}
 
+		// a deserialized instance must be the shared instance of the same name, see MetricsReference
+		private Object writeReplace() {
+			return new MetricsReference(name, estimationSize, estimationTime, smoothing, threshold);
+		}
+
 		@Override
 		public int compareTo(Metrics other) {
 			return this.name.compareTo(other.getName());
@@ -238,6 +246,32 @@ public final class MetricsFactory {
 		}
 	}
 
+	/**
+	 * The serialized form of a <code>Metrics</code> instance, resolved to the shared
+	 * instance with the same name when deserialized.
+	 */
+	private static final class MetricsReference implements Serializable {
+		private static final long serialVersionUID = 1471495890170102745L;
+
+		private final String name;
+		private final int estimationSize;
+		private final long estimationTime;
+		private final double smoothing;
+		private final double threshold;
+
+		private MetricsReference(String name, int estimationSize, long estimationTime, double smoothing, double threshold) {
+			this.name = name;
+			this.estimationSize = estimationSize;
+			this.estimationTime = estimationTime;
+			this.smoothing = smoothing;
+			this.threshold = threshold;
+		}
+
+		private Object readResolve() {
+			return getInstance(name, estimationSize, estimationTime, smoothing, threshold);
+		}
+	}
+
 	private static final class NullMetrics implements Metrics {
 
 		@Override
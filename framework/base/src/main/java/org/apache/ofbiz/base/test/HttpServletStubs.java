@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Servlet request and response stubs for the tests of the code writing HTTP responses:
+ * the request only has headers and attributes, the response records its status, headers and content.
+ * The other methods throw an UnsupportedOperationException.
+ */
+public final class HttpServletStubs {
+
+	private HttpServletStubs() {
+	}
+
+	/**
+	 * Returns a request with the given headers.
+	 *
+	 * @param headers the header names and values: name1, value1, name2, value2...
+	 */
+	public static HttpServletRequest createRequest(String... headers) {
+		final Map<String, String> headerMap = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < headers.length; i += 2) {
+			headerMap.put(headers[i], headers[i + 1]);
+		}
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		return (HttpServletRequest) Proxy.newProxyInstance(HttpServletStubs.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String methodName = method.getName();
+				if ("getHeader".equals(methodName)) {
+					return headerMap.get(args[0]);
+				} else if ("getAttribute".equals(methodName)) {
+					return attributes.get(args[0]);
+				} else if ("setAttribute".equals(methodName)) {
+					attributes.put((String) args[0], args[1]);
+					return null;
+				} else if ("removeAttribute".equals(methodName)) {
+					attributes.remove(args[0]);
+					return null;
+				}
+				throw new UnsupportedOperationException(methodName);
+			}
+		});
+	}
+
+	/**
+	 * A response recording its status, headers and content.
+	 */
+	public static final class RecordedResponse {
+		private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		private final HttpServletResponse response;
+		private int status = HttpServletResponse.SC_OK;
+
+		public RecordedResponse() {
+			final ServletOutputStream out = new ServletOutputStream() {
+				@Override
+				public void write(int b) {
+					content.write(b);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+					content.write(b, off, len);
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setWriteListener(WriteListener writeListener) {
+					throw new UnsupportedOperationException("setWriteListener");
+				}
+			};
+			response = (HttpServletResponse) Proxy.newProxyInstance(HttpServletStubs.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String methodName = method.getName();
+					if ("setStatus".equals(methodName) || "sendError".equals(methodName)) {
+						status = ((Integer) args[0]).intValue();
+					} else if ("setHeader".equals(methodName) || "setDateHeader".equals(methodName) || "setIntHeader".equals(methodName)) {
+						headers.put((String) args[0], String.valueOf(args[1]));
+					} else if ("addHeader".equals(methodName) || "addDateHeader".equals(methodName) || "addIntHeader".equals(methodName)) {
+						String value = headers.get(args[0]);
+						headers.put((String) args[0], value == null ? String.valueOf(args[1]) : value + ", " + args[1]);
+					} else if ("getHeader".equals(methodName)) {
+						return headers.get(args[0]);
+					} else if ("containsHeader".equals(methodName)) {
+						return Boolean.valueOf(headers.containsKey(args[0]));
+					} else if ("setContentType".equals(methodName)) {
+						headers.put("Content-Type", (String) args[0]);
+					} else if ("setContentLength".equals(methodName) || "setContentLengthLong".equals(methodName)) {
+						headers.put("Content-Length", String.valueOf(args[0]));
+					} else if ("getStatus".equals(methodName)) {
+						return Integer.valueOf(status);
+					} else if ("getOutputStream".equals(methodName)) {
+						return out;
+					} else if ("isCommitted".equals(methodName)) {
+						return Boolean.valueOf(content.size() > 0);
+					} else if (!"setCharacterEncoding".equals(methodName) && !"flushBuffer".equals(methodName)) {
+						throw new UnsupportedOperationException(methodName);
+					}
+					return null;
+				}
+			});
+		}
+
+		public HttpServletResponse getResponse() {
+			return response;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getHeader(String name) {
+			return headers.get(name);
+		}
+
+		public byte[] getContent() {
+			return content.toByteArray();
+		}
+	}
+}
@@ -18,18 +18,30 @@
  *******************************************************************************/
 package org.apache.ofbiz.base.util;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.cert.CertificateException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Send HTTP GET/POST requests.
- * The main problem with current implementation is that it does not handle connections release. You must rely on the SO to release them (timeout).
+ * The requests are sent on the pooled, kept alive connections of {@link HttpConnectionPool}: a connection goes back
+ * to its pool once the response is read, or once the stream returned by {@link #getStream()} or {@link #postStream()}
+ * is read or closed. An instance sends one request at a time.
  */
 public class HttpClient {
 
@@ -37,6 +49,7 @@ public class HttpClient {
 
 	private int hostVerification = SSLUtil.getHostCertNormalCheck();
 	private int timeout = 30000;
+	private int readTimeout = HttpConnectionPool.getDefaultReadTimeout();
 	private boolean debug = false;
 	private boolean lineFeed = true;
 	private boolean trustAny = false;
@@ -55,7 +68,7 @@ public class HttpClient {
 	private Map<String, String> headers = null;
 
 	private URL requestUrl = null;
-	private URLConnection con = null;
+	private CloseableHttpResponse response = null;
 
 	/**
 	 * Creates an empty HttpClient object.
@@ -136,6 +149,14 @@ public class HttpClient {
 		this.timeout = timeout;
 	}
 
+	/**
+	 * Sets the timeout for waiting for the response data, 0 to wait as long as needed (default
+	 * <code>http.client.readTimeout</code> of httpclient.properties)
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
 	/**
 	 * Enables this request to follow redirect 3xx codes (default true)
 	 */
@@ -349,89 +370,95 @@ public class HttpClient {
 		return sendHttpRequestStream("post");
 	}
 
+	/**
+	 * Invoke HTTP request GET in the background.
+	 */
+	public Future<String> getAsync() {
+		return sendHttpRequestAsync("get");
+	}
+
+	/**
+	 * Invoke HTTP request POST in the background.
+	 */
+	public Future<String> postAsync() {
+		return sendHttpRequestAsync("post");
+	}
+
+	/**
+	 * Invoke HTTP request POST and pass raw stream in the background.
+	 */
+	public Future<String> postAsync(String stream) {
+		this.rawStream = stream;
+		return sendHttpRequestAsync("post");
+	}
+
 	/**
 	 * Returns the value of the specified named response header field.
 	 */
 	public String getResponseHeader(String header) throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		return con.getHeaderField(header);
+		Header responseHeader = getResponse().getLastHeader(header);
+		return responseHeader != null ? responseHeader.getValue() : null;
 	}
 
 	/**
-	 * Returns the key for the nth response header field.
+	 * Returns the key for the nth response header field, the 0th being the status line.
 	 */
 	public String getResponseHeaderFieldKey(int n) throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		return con.getHeaderFieldKey(n);
+		Header[] responseHeaders = getResponse().getAllHeaders();
+		return n > 0 && n <= responseHeaders.length ? responseHeaders[n - 1].getName() : null;
 	}
 
 	/**
-	 * Returns the value for the nth response header field. It returns null of there are fewer then n fields.
+	 * Returns the value for the nth response header field, the 0th being the status line. It returns null of there are fewer then n fields.
 	 */
 	public String getResponseHeaderField(int n) throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
+		CloseableHttpResponse response = getResponse();
+		if (n == 0) {
+			return response.getStatusLine().toString();
 		}
-		return con.getHeaderField(n);
+		Header[] responseHeaders = response.getAllHeaders();
+		return n > 0 && n <= responseHeaders.length ? responseHeaders[n - 1].getValue() : null;
 	}
 
 	/**
 	 * Returns the content of the response.
 	 */
 	public Object getResponseContent() throws java.io.IOException, HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		return con.getContent();
+		HttpEntity entity = getResponse().getEntity();
+		return entity != null ? entity.getContent() : null;
 	}
 
 	/**
 	 * Returns the content-type of the response.
 	 */
 	public String getResponseContentType() throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		return con.getContentType();
+		return getResponseHeader("Content-Type");
 	}
 
 	/**
 	 * Returns the content length of the response
 	 */
 	public int getResponseContentLength() throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		return con.getContentLength();
+		HttpEntity entity = getResponse().getEntity();
+		return entity != null ? (int) entity.getContentLength() : -1;
 	}
 
 	/**
 	 * Returns the content encoding of the response.
 	 */
 	public String getResponseContentEncoding() throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		return con.getContentEncoding();
+		return getResponseHeader("Content-Encoding");
 	}
 
 	public int getResponseCode() throws HttpClientException {
-		if (con == null) {
-			throw new HttpClientException("Connection not yet established");
-		}
-		if (!(con instanceof HttpURLConnection)) {
-			throw new HttpClientException("Connection is not HTTP; no response code");
-		}
+		return getResponse().getStatusLine().getStatusCode();
+	}
 
-		try {
-			return ((HttpURLConnection) con).getResponseCode();
-		} catch (IOException e) {
-			throw new HttpClientException(e.getMessage(), e);
+	private CloseableHttpResponse getResponse() throws HttpClientException {
+		if (response == null) {
+			throw new HttpClientException("Connection not yet established");
 		}
+		return response;
 	}
 
 	public String sendHttpRequest(String method) throws HttpClientException {
@@ -439,18 +466,20 @@ public class HttpClient {
 		if (in == null) return null;
 
 		StringBuilder buf = new StringBuilder();
+		// reading the whole response, then closing the stream, gives the connection back to its pool
+		in = new BufferedInputStream(in);
 		try {
 			if (Debug.verboseOn() || debug) {
 				try {
-					Debug.logInfo("ContentEncoding: " + con.getContentEncoding() + "; ContentType: " +
-							con.getContentType() + " or: " + URLConnection.guessContentTypeFromStream(in), module);
+					Debug.logInfo("ContentEncoding: " + getResponseContentEncoding() + "; ContentType: " +
+							getResponseContentType() + " or: " + URLConnection.guessContentTypeFromStream(in), module);
 				} catch (IOException ioe) {
 					Debug.logWarning(ioe, "Caught exception printing content debugging information", module);
 				}
 			}
 
 			String charset = null;
-			String contentType = con.getContentType();
+			String contentType = getResponseContentType();
 			if (contentType == null) {
 				try {
 					contentType = URLConnection.guessContentTypeFromStream(in);
@@ -488,10 +517,24 @@ public class HttpClient {
 			}
 		} catch (Exception e) {
 			throw new HttpClientException("Error processing input stream", e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				Debug.logWarning(e, "Could not close the response stream", module);
+			}
 		}
 		return buf.toString();
 	}
 
+	private Future<String> sendHttpRequestAsync(final String method) {
+		return HttpConnectionPool.getAsyncExecutor().submit(new Callable<String>() {
+			public String call() throws HttpClientException {
+				return sendHttpRequest(method);
+			}
+		});
+	}
+
 	private InputStream sendHttpRequestStream(String method) throws HttpClientException {
 		return sendHttpRequestStream(method, false);
 	}
@@ -522,44 +565,44 @@ public class HttpClient {
 			}
 		}
 
-		// Create the URL and open the connection.
+		// release the connection of a previous request not read to the end
+		closeResponse();
+
+		HttpConnectionPool pool = HttpConnectionPool.getInstance(clientCertAlias, overrideTrust, hostVerification);
 		try {
 			requestUrl = new URL(url);
-			if (overrideTrust) {
-				con = URLConnector.openUntrustedConnection(requestUrl, timeout, clientCertAlias, hostVerification);
+			HttpRequestBase request;
+			if (method.equalsIgnoreCase("post")) {
+				HttpPost post = new HttpPost(requestUrl.toURI());
+				byte[] content = arguments != null ? arguments.getBytes(this.streamCharset != null ? this.streamCharset : "UTF-8") : new byte[0];
+				post.setEntity(new ByteArrayEntity(content));
+				request = post;
 			} else {
-				con = URLConnector.openConnection(requestUrl, timeout, clientCertAlias, hostVerification);
-			}
-			if (Debug.verboseOn() || debug) Debug.logVerbose("Connection opened to : " + requestUrl.toExternalForm(), module);
-
-			if ((con instanceof HttpURLConnection)) {
-				((HttpURLConnection) con).setInstanceFollowRedirects(followRedirects);
-				if (Debug.verboseOn() || debug) Debug.logVerbose("Connection is of type HttpURLConnection, more specifically: " + con.getClass().getName(), module);
+				request = new HttpGet(requestUrl.toURI());
 			}
+			request.setConfig(RequestConfig.custom()
+					.setConnectTimeout(timeout)
+					.setConnectionRequestTimeout(timeout)
+					.setSocketTimeout(readTimeout)
+					.setRedirectsEnabled(followRedirects)
+					.build());
 
 			// set the content type
 			if (contentType != null) {
-				con.setRequestProperty("Content-type", contentType);
+				request.setHeader("Content-type", contentType);
+			} else if (method.equalsIgnoreCase("post")) {
+				request.setHeader("Content-type", "application/x-www-form-urlencoded");
 			}
 
-			// connection settings
-			con.setDoOutput(true);
-			con.setUseCaches(false);
+			// the pooled connections are kept alive anyway
 			if (keepAlive) {
-				con.setRequestProperty("Connection", "Keep-Alive");
-			}
-
-			if (method.equalsIgnoreCase("post")) {
-				if (contentType == null) {
-					con.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
-				}
-				con.setDoInput(true);
+				request.setHeader("Connection", "Keep-Alive");
 			}
 
 			// if there is basicAuth info set the request property for it
 			if (basicAuthUsername != null) {
 				String basicAuthString = "Basic " + Base64.base64Encode(basicAuthUsername + ":" + (basicAuthPassword == null ? "" : basicAuthPassword));
-				con.setRequestProperty("Authorization", basicAuthString);
+				request.setHeader("Authorization", basicAuthString);
 				if (Debug.verboseOn() || debug) Debug.logVerbose("Header - Authorization: " + basicAuthString, module);
 			}
 
@@ -567,41 +610,63 @@ public class HttpClient {
 				for (Map.Entry<String, String> entry : headers.entrySet()) {
 					String headerName = entry.getKey();
 					String headerValue = entry.getValue();
-					con.setRequestProperty(headerName, headerValue);
+					request.setHeader(headerName, headerValue);
 					if (Debug.verboseOn() || debug) Debug.logVerbose("Header - " + headerName + ": " + headerValue, module);
 				}
 			}
 
-			if (method.equalsIgnoreCase("post")) {
-				OutputStreamWriter out = new OutputStreamWriter(con.getOutputStream(), this.streamCharset != null ? this.streamCharset : "UTF-8");
-				if (Debug.verboseOn() || debug) Debug.logVerbose("Opened output stream", module);
-
-				if (arguments != null) {
-					out.write(arguments);
-					if (Debug.verboseOn() || debug) Debug.logVerbose("Wrote arguements (parameters) : " + arguments, module);
-				}
-
-				out.flush();
-				out.close();
-				if (Debug.verboseOn() || debug) Debug.logVerbose("Flushed and closed buffer", module);
-			}
+			if (Debug.verboseOn() || debug) Debug.logVerbose("Sending " + request.getMethod() + " request to : " + requestUrl.toExternalForm() + " on pool " + pool.getName(), module);
+			response = pool.getClient().execute(request);
 
 			if (Debug.verboseOn() || debug) {
-				Map<String, List<String>> headerFields = con.getHeaderFields();
-				Debug.logInfo("Header Fields : " + headerFields, module);
+				Debug.logInfo("Status : " + response.getStatusLine() + ", Header Fields : " + java.util.Arrays.toString(response.getAllHeaders()), module);
 			}
 
-			in = con.getInputStream();
+			// as HttpURLConnection.getInputStream did, fail on the client and server error status codes
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode >= 400) {
+				EntityUtils.consumeQuietly(response.getEntity());
+				pool.noteRequest(true);
+				throw new HttpClientException("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+			}
+			pool.noteRequest(false);
+			HttpEntity entity = response.getEntity();
+			in = entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
+		} catch (HttpClientException e) {
+			throw e;
 		} catch (IOException ioe) {
-			if ((trustAny && !overrideTrust) && (ioe.getCause() instanceof CertificateException)) {
+			pool.noteRequest(true);
+			if ((trustAny && !overrideTrust) && isCertificateException(ioe)) {
 				Debug.logWarning(ioe.getCause(), module);
 				return sendHttpRequestStream(method, true);
 			}
 			throw new HttpClientException("IO Error processing request", ioe);
 		} catch (Exception e) {
+			pool.noteRequest(true);
 			throw new HttpClientException("Error processing request", e);
 		}
 
 		return in;
 	}
+
+	private static boolean isCertificateException(Throwable t) {
+		while (t != null) {
+			if (t instanceof CertificateException) {
+				return true;
+			}
+			t = t.getCause();
+		}
+		return false;
+	}
+
+	private void closeResponse() {
+		if (response != null) {
+			try {
+				response.close();
+			} catch (IOException e) {
+				Debug.logWarning(e, "Could not close the previous response", module);
+			}
+			response = null;
+		}
+	}
 }
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The pooled connections used by {@link HttpClient}. There is one pool for each TLS setup: the alias of the
+ * client certificate, whether any server certificate is trusted, and the host name verification level. A pool
+ * keeps the connections to each host alive between the requests and reuses the TLS sessions of its
+ * SSLContext, so that only the first request to a host pays the TCP and TLS setup.
+ * <p>The pools are configured in <code>httpclient.properties</code>.</p>
+ */
+public final class HttpConnectionPool {
+
+	public static final String module = HttpConnectionPool.class.getName();
+	private static final String resource = "httpclient";
+	private static final ConcurrentHashMap<String, HttpConnectionPool> pools = new ConcurrentHashMap<String, HttpConnectionPool>();
+	private static final ThreadGroup HTTP_CLIENT_THREAD_GROUP = new ThreadGroup("HttpClient");
+
+	private final String name;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient client;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder connections = new LongAdder();
+	private final LongAdder tlsConnections = new LongAdder();
+
+	private HttpConnectionPool(String name, String clientCertAlias, boolean trustAny, int hostCertLevel) {
+		this.name = name;
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", new CountingPlainSocketFactory())
+				.register("https", createSSLSocketFactory(clientCertAlias, trustAny, hostCertLevel))
+				.build();
+		long timeToLive = UtilProperties.getPropertyAsLong(resource, "http.client.pool.timeToLiveSeconds", 300);
+		connectionManager = new PoolingHttpClientConnectionManager(registry, null, null, null, timeToLive > 0 ? timeToLive : -1, TimeUnit.SECONDS);
+		connectionManager.setMaxTotal(UtilProperties.getPropertyAsInteger(resource, "http.client.pool.maxTotal", 100));
+		connectionManager.setDefaultMaxPerRoute(UtilProperties.getPropertyAsInteger(resource, "http.client.pool.maxPerRoute", 20));
+		connectionManager.setValidateAfterInactivity(UtilProperties.getPropertyAsInteger(resource, "http.client.pool.validateAfterInactivityMillis", 2000));
+		HttpClientBuilder builder = HttpClientBuilder.create()
+				.useSystemProperties()
+				.setConnectionManager(connectionManager)
+				// the pool is shared by unrelated callers: no cookies, and the connections opened with a client
+				// certificate are reused although they carry its principal
+				.disableCookieManagement()
+				.disableConnectionState()
+				.setRedirectStrategy(new LaxRedirectStrategy())
+				.evictExpiredConnections();
+		long idleTimeout = UtilProperties.getPropertyAsLong(resource, "http.client.pool.idleTimeoutSeconds", 30);
+		if (idleTimeout > 0) {
+			builder.evictIdleConnections(idleTimeout, TimeUnit.SECONDS);
+		}
+		client = builder.build();
+	}
+
+	/**
+	 * Returns the pool of a TLS setup.
+	 *
+	 * @param clientCertAlias The alias of the client certificate, or <code>null</code>
+	 * @param trustAny        <code>true</code> to trust any server certificate
+	 * @param hostCertLevel   The host name verification level, see {@link SSLUtil#getHostnameVerifier(int)}
+	 */
+	public static HttpConnectionPool getInstance(String clientCertAlias, boolean trustAny, int hostCertLevel) {
+		String name = (clientCertAlias != null ? clientCertAlias : "") + (trustAny ? "|trustAny|" : "|trusted|") + hostCertLevel;
+		HttpConnectionPool pool = pools.get(name);
+		if (pool == null) {
+			synchronized (pools) {
+				pool = pools.get(name);
+				if (pool == null) {
+					pool = new HttpConnectionPool(name, clientCertAlias, trustAny, hostCertLevel);
+					pools.put(name, pool);
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the statistics of the pools by name: the requests sent, the failed requests, the connections opened
+	 * (TLS or not), the share of the requests sent on a reused connection and the current pool usage.
+	 */
+	public static Map<String, Map<String, Object>> getStatistics() {
+		Map<String, Map<String, Object>> statistics = new TreeMap<String, Map<String, Object>>();
+		for (HttpConnectionPool pool : pools.values()) {
+			statistics.put(pool.name, pool.getPoolStatistics());
+		}
+		return statistics;
+	}
+
+	public Map<String, Object> getPoolStatistics() {
+		Map<String, Object> statistics = new HashMap<String, Object>();
+		long requestCount = requests.sum();
+		long connectionCount = connections.sum();
+		PoolStats stats = connectionManager.getTotalStats();
+		statistics.put("requests", requestCount);
+		statistics.put("failures", failures.sum());
+		statistics.put("connections", connectionCount);
+		statistics.put("tlsConnections", tlsConnections.sum());
+		statistics.put("reuseRate", requestCount == 0 ? 0 : Math.max(0, requestCount - connectionCount) * 100.0 / requestCount);
+		statistics.put("leased", stats.getLeased());
+		statistics.put("available", stats.getAvailable());
+		statistics.put("pending", stats.getPending());
+		statistics.put("maxTotal", stats.getMax());
+		statistics.put("routes", connectionManager.getRoutes().size());
+		return statistics;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	CloseableHttpClient getClient() {
+		return client;
+	}
+
+	void noteRequest(boolean failed) {
+		requests.increment();
+		if (failed) {
+			failures.increment();
+		}
+	}
+
+	static ScheduledExecutorService getAsyncExecutor() {
+		return AsyncExecutorHolder.executor;
+	}
+
+	private static final class AsyncExecutorHolder {
+		private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(HTTP_CLIENT_THREAD_GROUP, "http-client", getAsyncThreadCount(), 60, false);
+	}
+
+	private static int getAsyncThreadCount() {
+		int threadCount = UtilProperties.getPropertyAsInteger(resource, "http.client.async.threads", 0);
+		return threadCount > 0 ? threadCount : 2 * Runtime.getRuntime().availableProcessors();
+	}
+
+	static int getDefaultReadTimeout() {
+		return DefaultsHolder.readTimeout;
+	}
+
+	private static final class DefaultsHolder {
+		private static final int readTimeout = UtilProperties.getPropertyAsInteger(resource, "http.client.readTimeout", 0);
+	}
+
+	private SSLConnectionSocketFactory createSSLSocketFactory(String clientCertAlias, boolean trustAny, int hostCertLevel) {
+		HostnameVerifier hostnameVerifier = SSLUtil.getHostnameVerifier(hostCertLevel);
+		if (hostnameVerifier == null) {
+			hostnameVerifier = SSLConnectionSocketFactory.getDefaultHostnameVerifier();
+		}
+		try {
+			return new CountingSSLSocketFactory(SSLUtil.getSSLContext(clientCertAlias, trustAny), hostnameVerifier);
+		} catch (Exception e) {
+			// as URLConnector did, use the default SSL setup
+			Debug.logError(e, "Could not set up the SSL socket factory of the HTTP connection pool " + name, module);
+			return new CountingSSLSocketFactory(SSLContexts.createDefault(), hostnameVerifier);
+		}
+	}
+
+	private final class CountingPlainSocketFactory extends PlainConnectionSocketFactory {
+		@Override
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+			connections.increment();
+			return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+		}
+	}
+
+	private final class CountingSSLSocketFactory extends SSLConnectionSocketFactory {
+		private CountingSSLSocketFactory(SSLContext sslContext, HostnameVerifier hostnameVerifier) {
+			super(sslContext, hostnameVerifier);
+		}
+
+		@Override
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+			connections.increment();
+			tlsConnections.increment();
+			return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+		}
+	}
+}
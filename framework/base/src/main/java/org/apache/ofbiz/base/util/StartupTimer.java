@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the elapsed time of the startup phases (container init/start,
+ * entity and service model loading, ECA loading...) so that a summary can
+ * be reported once the boot is finished.
+ */
+public final class StartupTimer {
+
+	public static final String module = StartupTimer.class.getName();
+
+	private static final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+	private StartupTimer() {
+	}
+
+	/**
+	 * Records the elapsed time of a startup phase, phases recorded more
+	 * than once are summed up.
+	 */
+	public static void recordPhase(String phase, long elapsedMillis) {
+		synchronized (phases) {
+			Long previous = phases.get(phase);
+			phases.put(phase, previous == null ? elapsedMillis : previous + elapsedMillis);
+		}
+	}
+
+	/** Records the time elapsed since <code>startMillis</code> for a startup phase. */
+	public static void recordPhaseSince(String phase, long startMillis) {
+		recordPhase(phase, System.currentTimeMillis() - startMillis);
+	}
+
+	/** Returns a copy of the recorded phases, in recording order. */
+	public static Map<String, Long> getPhases() {
+		synchronized (phases) {
+			return new LinkedHashMap<String, Long>(phases);
+		}
+	}
+
+	/** Logs the recorded phases and the total boot time, then clears the recorded phases. */
+	public static void logSummary(long bootMillis) {
+		Map<String, Long> recorded;
+		synchronized (phases) {
+			recorded = new LinkedHashMap<String, Long>(phases);
+			phases.clear();
+		}
+		StringBuilder sb = new StringBuilder("[Startup] Phase timing:");
+		for (Map.Entry<String, Long> entry : recorded.entrySet()) {
+			sb.append(System.getProperty("line.separator")).append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append(" ms");
+		}
+		sb.append(System.getProperty("line.separator")).append("  Total boot: ").append(bootMillis).append(" ms");
+		Debug.logInfo(sb.toString(), module);
+	}
+}
@@ -23,7 +23,6 @@ import org.apache.ofbiz.base.config.GenericConfigException;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.GeneralSecurityException;
@@ -35,10 +34,8 @@ public class URLConnector {
 
 	public static final String module = URLConnector.class.getName();
 
-	private URLConnection connection = null;
 	private URL url = null;
 	private String clientCertAlias = null;
-	private boolean timedOut = false;
 	private boolean trustAnyCert = false;
 	private int hostCertLevel = 2;
 
@@ -88,69 +85,28 @@ public class URLConnector {
 		return uc.openConnection(timeout);
 	}
 
-	// closes the HttpURLConnection does nothing to others
-	private static void close(URLConnection con) {
-		if (con instanceof HttpURLConnection) {
-			((HttpURLConnection) con).disconnect();
-		}
-	}
-
-	protected synchronized URLConnection openConnection(int timeout) throws IOException {
-		Thread t = new Thread(new URLConnectorThread());
-		t.start();
-
-		try {
-			this.wait(timeout);
-		} catch (InterruptedException e) {
-			if (connection == null) {
-				timedOut = true;
-			} else {
-				close(connection);
-			}
-			throw new IOException("Connection never established");
-		}
-
-		if (connection != null) {
-			return connection;
-		} else {
-			timedOut = true;
-			throw new IOException("Connection timed out");
-		}
-	}
+	/**
+	 * Opens the connection with the given connect timeout; the connection is made by the first call reading
+	 * or writing it, on the calling thread.
+	 */
+	protected URLConnection openConnection(int timeout) throws IOException {
+		URLConnection con = url.openConnection();
+		con.setConnectTimeout(timeout);
 
-	// special thread to open the connection
-	private class URLConnectorThread implements Runnable {
-		public void run() {
-			URLConnection con = null;
+		if ("HTTPS".equalsIgnoreCase(url.getProtocol())) {
+			HttpsURLConnection scon = (HttpsURLConnection) con;
 			try {
-				con = url.openConnection();
-
-				if ("HTTPS".equalsIgnoreCase(url.getProtocol())) {
-					HttpsURLConnection scon = (HttpsURLConnection) con;
-					try {
-						scon.setSSLSocketFactory(SSLUtil.getSSLSocketFactory(clientCertAlias, trustAnyCert));
-						HostnameVerifier hv = SSLUtil.getHostnameVerifier(hostCertLevel);
-						if (hv != null) {
-							scon.setHostnameVerifier(hv);
-						}
-					} catch (GeneralSecurityException e) {
-						Debug.logError(e, module);
-					} catch (GenericConfigException e) {
-						Debug.logError(e, module);
-					}
+				scon.setSSLSocketFactory(SSLUtil.getSSLSocketFactory(clientCertAlias, trustAnyCert));
+				HostnameVerifier hv = SSLUtil.getHostnameVerifier(hostCertLevel);
+				if (hv != null) {
+					scon.setHostnameVerifier(hv);
 				}
-			} catch (IOException e) {
+			} catch (GeneralSecurityException e) {
+				Debug.logError(e, module);
+			} catch (GenericConfigException e) {
 				Debug.logError(e, module);
-			}
-
-			synchronized (URLConnector.this) {
-				if (timedOut && con != null) {
-					close(con);
-				} else {
-					connection = con;
-					URLConnector.this.notify();
-				}
 			}
 		}
+		return con;
 	}
 }
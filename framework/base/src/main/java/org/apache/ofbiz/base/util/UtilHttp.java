@@ -42,6 +42,10 @@ import java.io.*;
 import java.net.FileNameMap;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -1140,6 +1144,203 @@ public final class UtilHttp {
 		}
 	}
 
+	/**
+	 * Streams content from InputStream to the ServletOutputStream, answering conditional (If-None-Match)
+	 * and single range (Range, If-Range) requests. The content is copied with a buffer of the
+	 * <code>stream.buffersize</code> size.
+	 * This method does not close the InputSteam passed
+	 *
+	 * @param request     HttpServletRequest object to read the conditional and range headers from
+	 * @param response    HttpServletResponse object to get OutputStream from
+	 * @param in          InputStream of the actual content
+	 * @param length      Size (in bytes) of the content, negative if not known
+	 * @param contentType The content type to pass to the browser
+	 * @param fileName    The file name for the Content-Disposition header, may be null
+	 * @param eTag        The entity tag of the content (a quoted string), may be null
+	 * @throws IOException
+	 */
+	public static void streamContentToBrowser(HttpServletRequest request, HttpServletResponse response, InputStream in, long length,
+	                                          String contentType, String fileName, String eTag) throws IOException {
+		long[] range = prepareContentResponse(request, response, length, contentType, fileName, eTag);
+		if (range == null) {
+			return;
+		}
+		OutputStream out = response.getOutputStream();
+		long toSkip = range[0];
+		while (toSkip > 0) {
+			long skipped = in.skip(toSkip);
+			if (skipped <= 0) {
+				throw new EOFException("Content ended before the range start");
+			}
+			toSkip -= skipped;
+		}
+		byte[] buffer = new byte[getStreamBufferSize()];
+		long remaining = range[1] - range[0];
+		int read;
+		while (remaining != 0 && (read = in.read(buffer, 0, remaining < 0 ? buffer.length : (int) Math.min(buffer.length, remaining))) != -1) {
+			out.write(buffer, 0, read);
+			if (remaining > 0) {
+				remaining -= read;
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Streams a file to the ServletOutputStream, answering conditional (If-None-Match) and single
+	 * range (Range, If-Range) requests. When the servlet container supports it the file is sent by the
+	 * container (sendfile), otherwise it is transferred thru the file channel.
+	 *
+	 * @param request     HttpServletRequest object to read the conditional and range headers from
+	 * @param response    HttpServletResponse object to get OutputStream from
+	 * @param file        The file to send
+	 * @param contentType The content type to pass to the browser
+	 * @param fileName    The file name for the Content-Disposition header, may be null
+	 * @param eTag        The entity tag of the content (a quoted string), may be null
+	 * @throws IOException
+	 */
+	public static void streamFileToBrowser(HttpServletRequest request, HttpServletResponse response, File file,
+	                                       String contentType, String fileName, String eTag) throws IOException {
+		long[] range = prepareContentResponse(request, response, file.length(), contentType, fileName, eTag);
+		if (range == null) {
+			return;
+		}
+		if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+			request.setAttribute("org.apache.tomcat.sendfile.filename", file.getCanonicalPath());
+			request.setAttribute("org.apache.tomcat.sendfile.start", Long.valueOf(range[0]));
+			request.setAttribute("org.apache.tomcat.sendfile.end", Long.valueOf(range[1]));
+			return;
+		}
+		OutputStream out = response.getOutputStream();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			WritableByteChannel target = Channels.newChannel(out);
+			long position = range[0];
+			while (position < range[1]) {
+				long transferred = channel.transferTo(position, Math.min(range[1] - position, getStreamBufferSize()), target);
+				if (transferred <= 0) {
+					throw new EOFException("File " + file + " ended before the range end");
+				}
+				position += transferred;
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Sets the status and the headers of a content response.
+	 *
+	 * @return the range of the content to send (start inclusive, end exclusive), or null if no content has to be sent
+	 */
+	private static long[] prepareContentResponse(HttpServletRequest request, HttpServletResponse response, long length,
+	                                             String contentType, String fileName, String eTag) throws IOException {
+		if (eTag != null) {
+			// the browser may keep the content but has to check it is still current
+			response.setHeader("Cache-Control", "private, no-cache");
+			response.setHeader("ETag", eTag);
+			if (matchesETag(request.getHeader("If-None-Match"), eTag)) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return null;
+			}
+		} else {
+			setResponseBrowserProxyNoCache(response);
+		}
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+		if (fileName != null) {
+			setContentDisposition(response, fileName);
+		}
+		if (length < 0) {
+			return new long[] {0, -1};
+		}
+		response.setHeader("Accept-Ranges", "bytes");
+		long[] range = new long[] {0, length};
+		String rangeHeader = request.getHeader("Range");
+		String ifRange = request.getHeader("If-Range");
+		if (rangeHeader != null && (ifRange == null || (eTag != null && ifRange.equals(eTag)))) {
+			range = parseRange(rangeHeader, length);
+			if (range == null) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return null;
+			}
+			if (range[1] - range[0] != length) {
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + range[0] + "-" + (range[1] - 1) + "/" + length);
+			}
+		}
+		response.setContentLengthLong(range[1] - range[0]);
+		return range;
+	}
+
+	private static boolean matchesETag(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if ("*".equals(candidate) || candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a single range of a Range header, multiple ranges are answered with the whole content.
+	 *
+	 * @return the range (start inclusive, end exclusive), or null if the range cannot be satisfied
+	 */
+	public static long[] parseRange(String rangeHeader, long length) {
+		long[] wholeContent = new long[] {0, length};
+		if (!rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') != -1) {
+			return wholeContent;
+		}
+		String rangeSpec = rangeHeader.substring("bytes=".length()).trim();
+		int dash = rangeSpec.indexOf('-');
+		if (dash == -1) {
+			return wholeContent;
+		}
+		try {
+			String first = rangeSpec.substring(0, dash).trim();
+			String last = rangeSpec.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.isEmpty()) {
+				// suffix range: the last bytes
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength <= 0) {
+					return null;
+				}
+				start = Math.max(0, length - suffixLength);
+				end = length;
+			} else {
+				start = Long.parseLong(first);
+				if (last.isEmpty()) {
+					end = length;
+				} else if (Long.parseLong(last) < start) {
+					// invalid range, ignored
+					return wholeContent;
+				} else {
+					end = Math.min(Long.parseLong(last) + 1, length);
+				}
+			}
+			if (start >= length || start >= end) {
+				return null;
+			}
+			return new long[] {start, end};
+		} catch (NumberFormatException e) {
+			return wholeContent;
+		}
+	}
+
+	private static int getStreamBufferSize() {
+		return UtilProperties.getPropertyAsInteger("content", "stream.buffersize", 8192);
+	}
+
 	public static String stripViewParamsFromQueryString(String queryString) {
 		return stripViewParamsFromQueryString(queryString, null);
 	}
@@ -19,6 +19,7 @@
 package org.apache.ofbiz.base.util;
 
 import org.apache.ofbiz.base.location.FlexibleLocation;
+import org.apache.ofbiz.base.util.cache.CacheListener;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.base.util.collections.ResourceBundleMapWrapper;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
@@ -31,6 +32,7 @@ import java.math.BigInteger;
 import java.net.URL;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Generic Property Accessor with Cache - Utilities for working with properties files.
@@ -54,10 +56,38 @@ public final class UtilProperties implements Serializable {
 	private static final UtilCache<String, Properties> urlCache = UtilCache.createUtilCache("properties.UtilPropertiesUrlCache");
 	private static final Set<String> propertiesNotFound = new HashSet<String>();
 	private static Set<String> resourceNotFoundMessagesShown = new HashSet<String>();
+	/**
+	 * Incremented each time a cached Properties instance is removed, replaced or changed in memory.
+	 */
+	private static final AtomicLong propertiesVersion = new AtomicLong();
+
+	static {
+		urlCache.addListener(new CacheListener<String, Properties>() {
+			public void noteKeyRemoval(UtilCache<String, Properties> cache, String key, Properties oldValue) {
+				propertiesVersion.incrementAndGet();
+			}
+
+			public void noteKeyAddition(UtilCache<String, Properties> cache, String key, Properties newValue) {
+			}
+
+			public void noteKeyUpdate(UtilCache<String, Properties> cache, String key, Properties newValue, Properties oldValue) {
+				propertiesVersion.incrementAndGet();
+			}
+		});
+	}
 
 	private UtilProperties() {
 	}
 
+	/**
+	 * Returns a number that changes each time a cached properties resource is cleared, reloaded or
+	 * changed by {@link #setPropertyValue} or {@link #setPropertyValueInMemory}, so that the values
+	 * read from the resources can be kept until it changes.
+	 */
+	public static long getPropertiesVersion() {
+		return propertiesVersion.get();
+	}
+
 	/**
 	 * Compares the specified property to the compareString, returns true if they are the same, false otherwise
 	 *
@@ -509,6 +539,7 @@ public final class UtilProperties implements Serializable {
 
 		try {
 			properties.setProperty(name, value);
+			propertiesVersion.incrementAndGet();
 			FileOutputStream propFile = new FileOutputStream(resource);
 			if ("XuiLabels".equals(name)) {
 				properties.store(propFile,
@@ -589,6 +620,7 @@ public final class UtilProperties implements Serializable {
 			return;
 		}
 		properties.setProperty(name, value);
+		propertiesVersion.incrementAndGet();
 	}
 
 	/**
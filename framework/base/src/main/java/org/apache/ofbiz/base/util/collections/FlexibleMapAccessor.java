@@ -50,12 +50,15 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
 	private final String bracketedOriginal;
 	private final FlexibleStringExpander fse;
 	private final boolean isAscending;
+	// Plain property paths (the most common case) are resolved without UEL
+	private final String[] path;
 
 	private FlexibleMapAccessor(String name) {
 		this.original = name;
 		this.isEmpty = name.isEmpty();
 		FlexibleStringExpander fse = null;
 		String bracketedOriginal = null;
+		String[] path = null;
 		boolean isAscending = true;
 		if (UtilValidate.isNotEmpty(name)) {
 			if (name.charAt(0) == '-') {
@@ -69,9 +72,11 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
 				fse = FlexibleStringExpander.getInstance(name);
 			} else {
 				bracketedOriginal = FlexibleStringExpander.openBracket.concat(UelUtil.prepareExpression(name).concat(FlexibleStringExpander.closeBracket));
+				path = UelUtil.parsePath(name);
 			}
 		}
 		this.bracketedOriginal = bracketedOriginal;
+		this.path = path;
 		this.isAscending = isAscending;
 		this.fse = fse;
 		if (Debug.verboseOn()) {
@@ -151,6 +156,12 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
 		}
 		Object obj = null;
 		try {
+			if (this.path != null) {
+				Object pathValue = UelUtil.resolvePath(base, this.path);
+				if (pathValue != UelUtil.PATH_NOT_RESOLVED) {
+					return (T) pathValue;
+				}
+			}
 			obj = UelUtil.evaluate(base, getExpression(base));
 		} catch (PropertyNotFoundException e) {
 			// PropertyNotFound exceptions are common, so log verbose.
@@ -18,15 +18,22 @@
  *******************************************************************************/
 package org.apache.ofbiz.base.util.string;
 
+import org.apache.ofbiz.base.conversion.ConversionException;
+import org.apache.ofbiz.base.conversion.Converter;
+import org.apache.ofbiz.base.conversion.Converters;
+import org.apache.ofbiz.base.conversion.LocalizedConverter;
 import org.apache.ofbiz.base.lang.IsEmpty;
 import org.apache.ofbiz.base.lang.SourceMonitored;
 import org.apache.ofbiz.base.util.*;
 import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.w3c.dom.Node;
 
 import javax.el.PropertyNotFoundException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Expands String values that contain Unified Expression Language (JSR 245)
@@ -46,6 +53,8 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
 	public static final String closeBracket = "}";
 	protected static final UtilCache<Key, FlexibleStringExpander> exprCache = UtilCache.createUtilCache("flexibleStringExpander.ExpressionCache");
 	protected static final FlexibleStringExpander nullExpr = new ConstSimpleElem(new char[0]);
+	// Converters to String by source class, saves the Converters key building and lookup on each expansion
+	private static final ConcurrentMap<Class<?>, Converter<Object, Object>> stringConverters = new ConcurrentHashMap<Class<?>, Converter<Object, Object>>();
 	// Note: a character array is used instead of a String to keep the memory footprint small.
 	protected final char[] chars;
 	protected int hint = 20;
@@ -342,6 +351,31 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
 		return timeZone;
 	}
 
+	private static Object convertToString(Object obj, TimeZone timeZone, Locale locale) throws GeneralException {
+		Converter<Object, Object> converter = stringConverters.get(obj.getClass());
+		if (converter == null) {
+			if (obj instanceof Node) {
+				return ObjectType.simpleTypeConvert(obj, "String", null, timeZone, locale, true);
+			}
+			try {
+				converter = UtilGenerics.cast(Converters.getConverter(obj.getClass(), String.class));
+			} catch (ClassNotFoundException e) {
+				return ObjectType.simpleTypeConvert(obj, "String", null, timeZone, locale, true);
+			}
+			stringConverters.putIfAbsent(obj.getClass(), converter);
+		}
+		try {
+			if (converter instanceof LocalizedConverter) {
+				LocalizedConverter<Object, Object> localizedConverter = UtilGenerics.cast(converter);
+				return localizedConverter.convert(obj, locale, timeZone, null);
+			}
+			return converter.convert(obj);
+		} catch (ConversionException e) {
+			Debug.logWarning(e, "Exception thrown while converting type: ", module);
+			throw new GeneralException(e.getMessage(), e);
+		}
+	}
+
 	protected abstract Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale);
 
 	/**
@@ -392,7 +426,7 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
 				if (obj instanceof String) {
 					buffer.append(obj);
 				} else {
-					buffer.append(ObjectType.simpleTypeConvert(obj, "String", null, timeZone, locale, true));
+					buffer.append(convertToString(obj, timeZone, locale));
 				}
 			}
 		} catch (Exception e) {
@@ -723,16 +757,26 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
 	 */
 	protected static class VarElem extends ArrayOffsetString {
 		protected final char[] bracketedOriginal;
+		// Plain property paths (the most common case) are resolved without UEL
+		protected final String[] path;
 
 		protected VarElem(char[] chars, int offset, int length, int parseStart, int parseLength) {
 			super(chars, offset, length);
-			this.bracketedOriginal = openBracket.concat(UelUtil.prepareExpression(new String(chars, parseStart, parseLength))).concat(closeBracket).toCharArray();
+			String expression = new String(chars, parseStart, parseLength);
+			this.bracketedOriginal = openBracket.concat(UelUtil.prepareExpression(expression)).concat(closeBracket).toCharArray();
+			this.path = UelUtil.parsePath(expression.trim());
 		}
 
 		@Override
 		protected Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
 			Object obj = null;
 			try {
+				if (this.path != null) {
+					Object pathValue = UelUtil.resolvePath(context, this.path);
+					if (pathValue != UelUtil.PATH_NOT_RESOLVED) {
+						return pathValue;
+					}
+				}
 				obj = UelUtil.evaluate(context, new String(this.bracketedOriginal));
 			} catch (PropertyNotFoundException e) {
 				if (Debug.verboseOn()) {
@@ -35,6 +35,11 @@ public final class UelUtil {
 	protected static final String module = UelUtil.class.getName();
 	private static final String localizedMapLocaleKey = LocalizedMap.class.getName() + "_locale".replace(".", "_");
 	private static final ExpressionFactory exprFactory = JuelConnector.newExpressionFactory();
+	private static final Set<String> reservedWords = new HashSet<String>(Arrays.asList("and", "div", "empty", "eq", "false", "ge", "gt", "instanceof", "le", "lt", "mod", "ne", "not", "null", "or", "true"));
+	/**
+	 * Returned by {@link #resolvePath(Map, String[])} when the path could not be resolved without UEL.
+	 */
+	public static final Object PATH_NOT_RESOLVED = new Object();
 	private static final ELResolver defaultResolver = new ExtendedCompositeResolver() {
 		{
 			add(new ExtendedMapResolver(false));
@@ -228,6 +233,70 @@ public final class UelUtil {
 		return null;
 	}
 
+	/**
+	 * Returns the property names of <code>expression</code> if it is a plain property path
+	 * like <code>parameters.productId</code>, or <code>null</code> if the expression needs
+	 * to be evaluated by UEL.
+	 *
+	 * @param expression Expression without the enclosing <code>${}</code>
+	 * @return The property names, or <code>null</code>
+	 */
+	public static String[] parsePath(String expression) {
+		if (expression == null || expression.isEmpty()) {
+			return null;
+		}
+		String[] path = expression.split("\\.", -1);
+		for (String name : path) {
+			if (name.isEmpty() || reservedWords.contains(name) || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+				return null;
+			}
+			for (int i = 1; i < name.length(); i++) {
+				char c = name.charAt(i);
+				if (!(Character.isLetterOrDigit(c) || c == '_')) {
+					return null;
+				}
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Resolves a property path returned by {@link #parsePath(String)} against <code>context</code>,
+	 * with the same result as evaluating the path as an expression. Only <code>Map</code>
+	 * properties are resolved; {@link #PATH_NOT_RESOLVED} is returned when another type
+	 * of object is found along the path.
+	 *
+	 * @param context Evaluation context (variables)
+	 * @param path    Property names
+	 * @return Result object, or {@link #PATH_NOT_RESOLVED}
+	 */
+	public static Object resolvePath(Map<String, ? extends Object> context, String[] path) {
+		Object obj = resolveVariable(path[0], context, null);
+		for (int i = 1; i < path.length; i++) {
+			if (obj == null) {
+				return null;
+			}
+			if (obj instanceof LocalizedMap) {
+				Locale locale = null;
+				Object localeObj = resolveVariable(localizedMapLocaleKey, context, null);
+				if (localeObj == null) {
+					localeObj = resolveVariable("locale", context, null);
+				}
+				if (localeObj instanceof Locale) {
+					locale = (Locale) localeObj;
+				} else {
+					locale = Locale.getDefault();
+				}
+				obj = resolveVariable(path[i], UtilGenerics.<Map<String, Object>>cast(obj), locale);
+			} else if (obj instanceof Map) {
+				obj = resolveVariable(path[i], UtilGenerics.<Map<String, Object>>cast(obj), null);
+			} else {
+				return PATH_NOT_RESOLVED;
+			}
+		}
+		return obj;
+	}
+
 	private static class BasicContext extends ELContext {
 		private final Map<String, Object> variables;
 		private final VariableMapper variableMapper;
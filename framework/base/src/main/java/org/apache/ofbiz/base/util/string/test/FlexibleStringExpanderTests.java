@@ -277,6 +277,10 @@ public class FlexibleStringExpanderTests extends TestCase {
 		fseTest("UEL integration: Map", "Hello ${testMap.var}!", testMap, "Hello World!", false);
 		fseTest("UEL integration: blank", "Hello ${testMap.blank}World!", testMap, "Hello World!", false);
 		fseTest("UEL integration: List", "Hello ${testList[0]}!", testMap, "Hello World!", false);
+		fseTest("UEL integration: nested Map path", "Hello ${testMap.testMap.var}!", testMap, "Hello World!", false);
+		fseTest("UEL integration: path with spaces", "Hello ${ testMap.var }!", testMap, "Hello World!", false);
+		fseTest("UEL integration: missing path", "Hello ${testMap.missing.var}World!", testMap, "Hello World!", false);
+		fseTest("UEL integration: bean property path", "${testMap.date.time}", testMap, null, null, "1,234,567,890", Long.valueOf(1234567890), false);
 		fseTest("UEL integration: null", "${null}", testMap, null, null, "", null, false);
 		fseTest("UEL integration: null dereference", "${nullVar.noProp}", testMap, null, null, "", null, false);
 		fseTest("UEL integration: throw NPE", "${" + FlexibleStringExpanderTests.class.getName() + ".ThrowNPE.noProp}", testMap, null, null, "", null, false);
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.ofbiz.base.test.GenericTestCaseBase;
+import org.apache.ofbiz.base.util.HttpClient;
+import org.apache.ofbiz.base.util.HttpClientException;
+import org.apache.ofbiz.base.util.HttpConnectionPool;
+import org.apache.ofbiz.base.util.SSLUtil;
+import org.apache.ofbiz.base.util.UtilIO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+public class HttpClientTests extends GenericTestCaseBase {
+
+	private HttpServer server;
+	private String baseUrl;
+
+	public HttpClientTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/echo", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String body = UtilIO.readString(exchange.getRequestBody());
+				String query = exchange.getRequestURI().getRawQuery();
+				respond(exchange, 200, exchange.getRequestMethod() + " " + (query != null ? query : body));
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange, 200, "late");
+			}
+		});
+		server.createContext("/missing", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 404, "not here");
+			}
+		});
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	private static long getPoolStatistic(String name) {
+		HttpConnectionPool pool = HttpConnectionPool.getInstance(null, false, SSLUtil.getHostCertNormalCheck());
+		return ((Number) pool.getPoolStatistics().get(name)).longValue();
+	}
+
+	public void testGetAndPost() throws Exception {
+		HttpClient get = new HttpClient(baseUrl + "/echo");
+		get.setLineFeed(false);
+		get.setParameter("a", "1");
+		assertEquals("get", "GET a=1", get.get());
+		assertEquals("get status", 200, get.getResponseCode());
+		assertEquals("get content type", "text/plain; charset=UTF-8", get.getResponseContentType());
+
+		HttpClient post = new HttpClient(baseUrl + "/echo");
+		post.setLineFeed(false);
+		assertEquals("post", "POST <raw/>", post.post("<raw/>"));
+	}
+
+	public void testConnectionReuse() throws Exception {
+		long connections = getPoolStatistic("connections");
+		long requests = getPoolStatistic("requests");
+		for (int i = 0; i < 20; i++) {
+			HttpClient client = new HttpClient(baseUrl + "/echo");
+			client.setLineFeed(false);
+			assertEquals("request " + i, "POST " + i, client.post(Integer.toString(i)));
+		}
+		assertEquals("requests counted", requests + 20, getPoolStatistic("requests"));
+		assertEquals("one connection for all the requests", connections + 1, getPoolStatistic("connections"));
+		assertEquals("no leased connection", 0, getPoolStatistic("leased"));
+	}
+
+	public void testAsync() throws Exception {
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 10; i++) {
+			HttpClient client = new HttpClient(baseUrl + "/echo");
+			client.setLineFeed(false);
+			futures.add(client.postAsync(Integer.toString(i)));
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals("response " + i, "POST " + i, futures.get(i).get());
+		}
+	}
+
+	public void testErrorStatus() throws Exception {
+		HttpClient client = new HttpClient(baseUrl + "/missing");
+		try {
+			client.get();
+			fail("no exception for a 404");
+		} catch (HttpClientException e) {
+			assertEquals("status", 404, client.getResponseCode());
+		}
+		assertEquals("no leased connection", 0, getPoolStatistic("leased"));
+	}
+
+	public void testReadTimeout() throws Exception {
+		HttpClient client = new HttpClient(baseUrl + "/slow");
+		client.setReadTimeout(200);
+		long start = System.currentTimeMillis();
+		try {
+			client.get();
+			fail("no exception for a read timeout");
+		} catch (HttpClientException e) {
+			assertTrue("timed out early", System.currentTimeMillis() - start < 1500);
+		}
+	}
+
+	public void testStatistics() throws Exception {
+		new HttpClient(baseUrl + "/echo").get();
+		Map<String, Map<String, Object>> statistics = HttpConnectionPool.getStatistics();
+		assertTrue("pool listed", statistics.containsKey(HttpConnectionPool.getInstance(null, false, SSLUtil.getHostCertNormalCheck()).getName()));
+	}
+}
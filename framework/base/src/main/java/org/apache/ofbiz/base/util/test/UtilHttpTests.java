@@ -19,6 +19,16 @@
 package org.apache.ofbiz.base.util.test;
 
 import org.apache.ofbiz.base.test.GenericTestCaseBase;
+import org.apache.ofbiz.base.test.HttpServletStubs;
+import org.apache.ofbiz.base.test.HttpServletStubs.RecordedResponse;
+import org.apache.ofbiz.base.util.UtilHttp;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 
 public class UtilHttpTests extends GenericTestCaseBase {
 	public UtilHttpTests(String name) {
@@ -27,4 +37,81 @@ public class UtilHttpTests extends GenericTestCaseBase {
 
 	public void testGetParameterMap() throws Exception {
 	}
+
+	public void testParseRange() throws Exception {
+		assertEquals("first bytes", new long[] {0, 500}, UtilHttp.parseRange("bytes=0-499", 1000));
+		assertEquals("open range", new long[] {900, 1000}, UtilHttp.parseRange("bytes=900-", 1000));
+		assertEquals("suffix range", new long[] {800, 1000}, UtilHttp.parseRange("bytes=-200", 1000));
+		assertEquals("suffix longer than content", new long[] {0, 1000}, UtilHttp.parseRange("bytes=-2000", 1000));
+		assertEquals("end after content", new long[] {500, 1000}, UtilHttp.parseRange("bytes=500-5000", 1000));
+		assertEquals("multiple ranges", new long[] {0, 1000}, UtilHttp.parseRange("bytes=0-1,5-6", 1000));
+		assertEquals("invalid range", new long[] {0, 1000}, UtilHttp.parseRange("bytes=5-1", 1000));
+		assertEquals("other unit", new long[] {0, 1000}, UtilHttp.parseRange("items=0-1", 1000));
+		assertNull("start after content", UtilHttp.parseRange("bytes=1000-", 1000));
+		assertNull("empty suffix", UtilHttp.parseRange("bytes=-0", 1000));
+	}
+
+	private static final byte[] CONTENT = "0123456789".getBytes();
+	private static final String ETAG = "\"content-1\"";
+
+	private static RecordedResponse streamContent(HttpServletRequest request) throws Exception {
+		RecordedResponse response = new RecordedResponse();
+		UtilHttp.streamContentToBrowser(request, response.getResponse(), new ByteArrayInputStream(CONTENT), CONTENT.length, "text/plain", null, ETAG);
+		return response;
+	}
+
+	public void testStreamContent() throws Exception {
+		RecordedResponse response = streamContent(HttpServletStubs.createRequest());
+		assertEquals("status", HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("ETag", ETAG, response.getHeader("ETag"));
+		assertEquals("Accept-Ranges", "bytes", response.getHeader("Accept-Ranges"));
+		assertEquals("Content-Length", "10", response.getHeader("Content-Length"));
+		assertEquals("content", "0123456789", new String(response.getContent()));
+	}
+
+	public void testStreamContentRange() throws Exception {
+		RecordedResponse response = streamContent(HttpServletStubs.createRequest("Range", "bytes=2-5"));
+		assertEquals("status", HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("Content-Range", "bytes 2-5/10", response.getHeader("Content-Range"));
+		assertEquals("Content-Length", "4", response.getHeader("Content-Length"));
+		assertEquals("content", "2345", new String(response.getContent()));
+
+		// the range of another version of the content is not sent
+		response = streamContent(HttpServletStubs.createRequest("Range", "bytes=2-5", "If-Range", "\"content-0\""));
+		assertEquals("status with an old If-Range", HttpServletResponse.SC_OK, response.getStatus());
+		assertNull("Content-Range with an old If-Range", response.getHeader("Content-Range"));
+		assertEquals("content with an old If-Range", "0123456789", new String(response.getContent()));
+
+		response = streamContent(HttpServletStubs.createRequest("Range", "bytes=10-"));
+		assertEquals("status of a range after the content", HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("Content-Range of a range after the content", "bytes */10", response.getHeader("Content-Range"));
+		assertEquals("no content for a range after the content", 0, response.getContent().length);
+	}
+
+	public void testStreamContentNotModified() throws Exception {
+		RecordedResponse response = streamContent(HttpServletStubs.createRequest("If-None-Match", "\"content-0\", W/" + ETAG));
+		assertEquals("status", HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals("ETag", ETAG, response.getHeader("ETag"));
+		assertEquals("no content", 0, response.getContent().length);
+
+		response = streamContent(HttpServletStubs.createRequest("If-None-Match", "\"content-0\""));
+		assertEquals("status of a changed content", HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("changed content", "0123456789", new String(response.getContent()));
+	}
+
+	public void testStreamFileRange() throws Exception {
+		File file = File.createTempFile("UtilHttpTests", ".txt");
+		try {
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(CONTENT);
+			}
+			RecordedResponse response = new RecordedResponse();
+			UtilHttp.streamFileToBrowser(HttpServletStubs.createRequest("Range", "bytes=-3"), response.getResponse(), file, "text/plain", null, ETAG);
+			assertEquals("status", HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+			assertEquals("Content-Range", "bytes 7-9/10", response.getHeader("Content-Range"));
+			assertEquals("content", "789", new String(response.getContent()));
+		} finally {
+			file.delete();
+		}
+	}
 }
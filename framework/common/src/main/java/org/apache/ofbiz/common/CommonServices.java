@@ -27,6 +27,7 @@ import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.SystemPropertySnapshot;
 import org.apache.ofbiz.service.*;
 import org.apache.ofbiz.service.mail.MimeMessageWrapper;
 
@@ -194,6 +195,18 @@ public class CommonServices {
 		return ServiceUtil.returnSuccess();
 	}
 
+	/**
+	 * Drops the SystemProperty snapshot of the delegator, so that EntityUtilProperties reads the new values
+	 *
+	 * @param dctx    The DispatchContext that this service is operating in
+	 * @param context Map containing the input parameters
+	 * @return Map with the result of the service, the output parameters
+	 */
+	public static Map<String, Object> invalidateSystemPropertySnapshot(DispatchContext dctx, Map<String, ?> context) {
+		SystemPropertySnapshot.invalidate(dctx.getDelegator());
+		return ServiceUtil.returnSuccess();
+	}
+
 	public static Map<String, Object> forceGc(DispatchContext dctx, Map<String, ?> context) {
 		System.gc();
 		return ServiceUtil.returnSuccess();
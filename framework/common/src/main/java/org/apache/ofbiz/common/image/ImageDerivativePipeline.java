@@ -0,0 +1,515 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.common.image;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the scaled derivatives of an image.
+ * <p>The source image is decoded once, with subsampling when it is much larger than the
+ * largest derivative, then all the derivatives are scaled and written in parallel on a
+ * bounded executor. Each derivative is written to a temporary file which is then moved
+ * over the target file, so readers never see a partially written image.
+ * The executor is configured in <code>image.properties</code>.</p>
+ */
+public final class ImageDerivativePipeline {
+
+	public static final String module = ImageDerivativePipeline.class.getName();
+
+	private static final ThreadGroup IMAGE_THREAD_GROUP = new ThreadGroup("ImageDerivativePipeline");
+
+	private final Map<String, Map<String, String>> dimensionMap;
+	private final Locale locale;
+
+	/**
+	 * @param dimensionMap Image dimensions by size type, as read from ImageProperties.xml by {@link ImageTransform#getXMLValue}
+	 * @param locale       Locale of the error messages
+	 */
+	public ImageDerivativePipeline(Map<String, Map<String, String>> dimensionMap, Locale locale) {
+		this.dimensionMap = dimensionMap;
+		this.locale = locale;
+	}
+
+	/**
+	 * Generates the derivatives of an image and waits for them to be written.
+	 */
+	public Result process(File source, List<Derivative> derivatives) {
+		try {
+			return submit(source, derivatives).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Result(source, "Interrupted while scaling " + source);
+		} catch (ExecutionException e) {
+			Debug.logError(e.getCause(), "Error scaling " + source, module);
+			return new Result(source, String.valueOf(e.getCause()));
+		}
+	}
+
+	/**
+	 * Generates the derivatives of an image asynchronously.
+	 */
+	public CompletableFuture<Result> submit(File source, List<Derivative> derivatives) {
+		ScheduledExecutorService executor = getExecutor();
+		return CompletableFuture.supplyAsync(() -> decode(source, derivatives), executor).thenCompose(result -> {
+			if (result.getErrorMessage() != null) {
+				return CompletableFuture.completedFuture(result);
+			}
+			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(derivatives.size());
+			for (Derivative derivative : derivatives) {
+				futures.add(CompletableFuture.runAsync(() -> scaleAndWrite(result, derivative), executor));
+			}
+			return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> result);
+		});
+	}
+
+	/**
+	 * Creates a batch, to generate the derivatives of many images with a bounded number of
+	 * images in memory.
+	 *
+	 * @param name Name of the batch in the progress log messages
+	 */
+	public Batch newBatch(String name) {
+		return new Batch(this, name);
+	}
+
+	/**
+	 * Decodes an image to be scaled down to fit in the given dimensions: the image is subsampled like
+	 * the sources of the derivatives, so it is read at the smallest size keeping the quality of the scaled image.
+	 *
+	 * @param source    The image file
+	 * @param maxWidth  The width of the scaled image
+	 * @param maxHeight The height of the scaled image
+	 */
+	public static BufferedImage read(File source, double maxWidth, double maxHeight) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+			ImageReader reader = getReader(source, in);
+			try {
+				double scaleFactor = Math.min(maxWidth / reader.getWidth(0), maxHeight / reader.getHeight(0));
+				return reader.read(0, getReadParam(reader, getSubsampling(scaleFactor)));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private Result decode(File source, List<Derivative> derivatives) {
+		long startTime = System.nanoTime();
+		try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+			ImageReader reader = getReader(source, in);
+			try {
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				if (width == 0 || height == 0) {
+					return new Result(source, "One current image dimension is null : imgHeight = " + height + " ; imgWidth = " + width);
+				}
+				int subsampling = getSubsampling(getMaxScaleFactor(width, height, derivatives));
+				BufferedImage image = reader.read(0, getReadParam(reader, subsampling));
+				return new Result(source, image, width, height, subsampling, System.nanoTime() - startTime);
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			Debug.logError(e, "Error reading " + source, module);
+			return new Result(source, "Error reading " + source + " ; " + e.toString());
+		}
+	}
+
+	private static ImageReader getReader(File source, ImageInputStream in) throws IOException {
+		if (in == null) {
+			throw new IOException("Unable to read " + source);
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext()) {
+			throw new IOException("No image reader found for " + source);
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(in, true, true);
+		return reader;
+	}
+
+	private static ImageReadParam getReadParam(ImageReader reader, int subsampling) {
+		ImageReadParam param = reader.getDefaultReadParam();
+		if (subsampling > 1) {
+			param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+		}
+		return param;
+	}
+
+	/**
+	 * Returns the scale factor of the largest derivative, 0 if a derivative has no configured dimensions.
+	 */
+	private double getMaxScaleFactor(int width, int height, List<Derivative> derivatives) {
+		double maxScaleFactor = 0;
+		for (Derivative derivative : derivatives) {
+			Map<String, String> dimensions = dimensionMap.get(derivative.getSizeType());
+			if (dimensions == null) {
+				return 0;
+			}
+			// same scale factor as ImageTransform.scaleImage: the smallest ratio of the configured dimensions
+			double scaleFactor = Double.MAX_VALUE;
+			if (dimensions.containsKey("width")) {
+				scaleFactor = Math.min(scaleFactor, Double.parseDouble(dimensions.get("width")) / width);
+			}
+			if (dimensions.containsKey("height")) {
+				scaleFactor = Math.min(scaleFactor, Double.parseDouble(dimensions.get("height")) / height);
+			}
+			maxScaleFactor = Math.max(maxScaleFactor, scaleFactor);
+		}
+		return maxScaleFactor;
+	}
+
+	/**
+	 * Returns the subsampling factor that keeps the decoded image at least <code>image.pipeline.subsampling.oversample</code>
+	 * times larger than the image scaled with the given factor, 1 means no subsampling.
+	 */
+	private static int getSubsampling(double scaleFactor) {
+		if (scaleFactor <= 0 || !UtilProperties.propertyValueEqualsIgnoreCase("image", "image.pipeline.subsampling", "true")) {
+			return 1;
+		}
+		double oversample = UtilProperties.getPropertyAsInteger("image", "image.pipeline.subsampling.oversample", 2);
+		return Math.max(1, (int) (1 / (scaleFactor * Math.max(oversample, 1))));
+	}
+
+	private void scaleAndWrite(Result result, Derivative derivative) {
+		long startTime = System.nanoTime();
+		try {
+			Map<String, Object> resultScaleImgMap = ImageTransform.scaleImage(result.getImage(), result.getHeight(), result.getWidth(), dimensionMap, derivative.getSizeType(), locale);
+			if (!"success".equals(resultScaleImgMap.get("responseMessage"))) {
+				result.addError(derivative, (String) resultScaleImgMap.get("errorMessage"));
+				return;
+			}
+			long length = write((BufferedImage) resultScaleImgMap.get("bufferedImage"), derivative.getFormatName(), derivative.getTarget());
+			result.addWritten(derivative, length, System.nanoTime() - startTime);
+		} catch (IOException | RuntimeException e) {
+			Debug.logError(e, "Error writing " + derivative.getTarget(), module);
+			result.addError(derivative, e.toString());
+		}
+	}
+
+	/**
+	 * Writes an image to a temporary file of the target directory then moves it over the target file,
+	 * returns the length of the written file.
+	 */
+	public static long write(BufferedImage image, String formatName, File target) throws IOException {
+		File tempFile = File.createTempFile(target.getName() + ".", ".tmp", target.getAbsoluteFile().getParentFile());
+		try {
+			if (!ImageIO.write(image, formatName, tempFile)) {
+				throw new IOException("No image writer found for format " + formatName);
+			}
+			long length = tempFile.length();
+			try {
+				Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return length;
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+	}
+
+	private static ScheduledExecutorService getExecutor() {
+		return ExecutorHolder.executor;
+	}
+
+	private static final class ExecutorHolder {
+		private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(IMAGE_THREAD_GROUP, "image-derivative", getThreadCount(), 60, false);
+	}
+
+	static int getThreadCount() {
+		int threadCount = UtilProperties.getPropertyAsInteger("image", "image.pipeline.threads", 0);
+		return threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * A derivative of an image: the size type of ImageProperties.xml to scale the image to,
+	 * and the file to write.
+	 */
+	public static final class Derivative {
+		private final String sizeType;
+		private final File target;
+		private final String formatName;
+
+		public Derivative(String sizeType, File target, String formatName) {
+			this.sizeType = sizeType;
+			this.target = target;
+			this.formatName = formatName;
+		}
+
+		public String getSizeType() {
+			return sizeType;
+		}
+
+		public File getTarget() {
+			return target;
+		}
+
+		public String getFormatName() {
+			return formatName;
+		}
+	}
+
+	/**
+	 * The outcome of the generation of the derivatives of an image.
+	 */
+	public static final class Result {
+		private final File source;
+		private final String errorMessage;
+		private final BufferedImage image;
+		private final int width;
+		private final int height;
+		private final int subsampling;
+		private final long decodeNanos;
+		private final Map<String, File> written = Collections.synchronizedMap(new LinkedHashMap<String, File>());
+		private final Map<String, String> errors = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+		private final AtomicLong bytesWritten = new AtomicLong();
+		private final AtomicLong scaleNanos = new AtomicLong();
+
+		Result(File source, String errorMessage) {
+			this.source = source;
+			this.errorMessage = errorMessage;
+			this.image = null;
+			this.width = 0;
+			this.height = 0;
+			this.subsampling = 1;
+			this.decodeNanos = 0;
+		}
+
+		Result(File source, BufferedImage image, int width, int height, int subsampling, long decodeNanos) {
+			this.source = source;
+			this.errorMessage = null;
+			this.image = image;
+			this.width = width;
+			this.height = height;
+			this.subsampling = subsampling;
+			this.decodeNanos = decodeNanos;
+		}
+
+		void addWritten(Derivative derivative, long length, long nanos) {
+			written.put(derivative.getSizeType(), derivative.getTarget());
+			bytesWritten.addAndGet(length);
+			scaleNanos.addAndGet(nanos);
+		}
+
+		void addError(Derivative derivative, String message) {
+			errors.put(derivative.getSizeType(), message);
+		}
+
+		public File getSource() {
+			return source;
+		}
+
+		/** Returns the error that prevented the source image from being read, or <code>null</code>. */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		/** Returns <code>true</code> if the source image was read and all the derivatives were written. */
+		public boolean isSuccess() {
+			return errorMessage == null && errors.isEmpty();
+		}
+
+		/** Returns the decoded source image, smaller than the original when it was decoded with subsampling. */
+		public BufferedImage getImage() {
+			return image;
+		}
+
+		/** Returns the width of the original image. */
+		public int getWidth() {
+			return width;
+		}
+
+		/** Returns the height of the original image. */
+		public int getHeight() {
+			return height;
+		}
+
+		public int getSubsampling() {
+			return subsampling;
+		}
+
+		/** Returns the written files by size type. */
+		public Map<String, File> getWritten() {
+			return written;
+		}
+
+		/** Returns the error messages by size type. */
+		public Map<String, String> getErrors() {
+			return errors;
+		}
+
+		public long getBytesWritten() {
+			return bytesWritten.get();
+		}
+
+		public long getDecodeMillis() {
+			return decodeNanos / 1000000;
+		}
+
+		/** Returns the cumulated time spent scaling and writing the derivatives. */
+		public long getScaleMillis() {
+			return scaleNanos.get() / 1000000;
+		}
+	}
+
+	/**
+	 * Generates the derivatives of many images, keeping at most as many images in memory
+	 * as there are threads in the executor, and tracks the progress and throughput.
+	 */
+	public static final class Batch {
+		private final ImageDerivativePipeline pipeline;
+		private final String name;
+		private final int maxInFlight;
+		private final Semaphore permits;
+		private final int progressInterval;
+		private final long startTime = System.nanoTime();
+		private final AtomicInteger submitted = new AtomicInteger();
+		private final AtomicInteger completed = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final AtomicInteger derivatives = new AtomicInteger();
+		private final AtomicLong bytesWritten = new AtomicLong();
+		private final AtomicLong decodeMillis = new AtomicLong();
+		private final AtomicLong scaleMillis = new AtomicLong();
+		private final List<String> errorMessages = Collections.synchronizedList(new ArrayList<String>());
+
+		private Batch(ImageDerivativePipeline pipeline, String name) {
+			this.pipeline = pipeline;
+			this.name = name;
+			this.maxInFlight = getThreadCount();
+			this.permits = new Semaphore(maxInFlight);
+			this.progressInterval = Math.max(1, UtilProperties.getPropertyAsInteger("image", "image.pipeline.batch.progress.interval", 100));
+		}
+
+		/**
+		 * Adds an image to the batch, blocks while the maximum number of images are being processed.
+		 */
+		public void add(File source, List<Derivative> derivativeList) throws InterruptedException {
+			permits.acquire();
+			submitted.incrementAndGet();
+			pipeline.submit(source, derivativeList).whenComplete((result, t) -> {
+				try {
+					record(source, result, t);
+				} finally {
+					permits.release();
+				}
+			});
+		}
+
+		private void record(File source, Result result, Throwable t) {
+			if (t != null) {
+				failed.incrementAndGet();
+				errorMessages.add(source + " : " + t.toString());
+			} else {
+				if (!result.isSuccess()) {
+					failed.incrementAndGet();
+					errorMessages.add(source + " : " + (result.getErrorMessage() != null ? result.getErrorMessage() : result.getErrors()));
+				}
+				derivatives.addAndGet(result.getWritten().size());
+				bytesWritten.addAndGet(result.getBytesWritten());
+				decodeMillis.addAndGet(result.getDecodeMillis());
+				scaleMillis.addAndGet(result.getScaleMillis());
+			}
+			int count = completed.incrementAndGet();
+			if (count % progressInterval == 0 && Debug.infoOn()) {
+				Debug.logInfo("Image batch [" + name + "] progress: " + this, module);
+			}
+		}
+
+		/**
+		 * Waits for all the added images to be processed.
+		 */
+		public void await() throws InterruptedException {
+			permits.acquire(maxInFlight);
+			permits.release(maxInFlight);
+			if (Debug.infoOn()) {
+				Debug.logInfo("Image batch [" + name + "] finished: " + this, module);
+			}
+		}
+
+		public int getSubmittedCount() {
+			return submitted.get();
+		}
+
+		public int getCompletedCount() {
+			return completed.get();
+		}
+
+		public int getFailedCount() {
+			return failed.get();
+		}
+
+		public int getDerivativeCount() {
+			return derivatives.get();
+		}
+
+		public long getBytesWritten() {
+			return bytesWritten.get();
+		}
+
+		public long getElapsedMillis() {
+			return (System.nanoTime() - startTime) / 1000000;
+		}
+
+		/** Returns the number of images processed per second since the batch was created. */
+		public double getImagesPerSecond() {
+			long elapsedMillis = getElapsedMillis();
+			return elapsedMillis == 0 ? 0 : completed.get() * 1000.0 / elapsedMillis;
+		}
+
+		/** Returns the error messages of the failed images. */
+		public List<String> getErrorMessages() {
+			synchronized (errorMessages) {
+				return new ArrayList<String>(errorMessages);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return completed.get() + "/" + submitted.get() + " images, " + failed.get() + " failed, " + derivatives.get() + " derivatives, "
+					+ bytesWritten.get() + " bytes written, " + getElapsedMillis() + " ms (decode " + decodeMillis.get() + " ms, scale and write "
+					+ scaleMillis.get() + " ms), " + String.format(Locale.ROOT, "%.2f", getImagesPerSecond()) + " images/s";
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.common.test;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.entity.util.SystemPropertySnapshot;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.util.Properties;
+
+/**
+ * Tests the values read from the {@link SystemPropertySnapshot}: the typed values are the ones of
+ * {@link UtilProperties}, and the SystemProperty entity ECAs drop the snapshot.
+ */
+public class SystemPropertySnapshotTests extends OFBizTestCase {
+
+	private static final String RESOURCE = "snapshottest";
+
+	public SystemPropertySnapshotTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		// removeAll of a list runs the entity ECAs, so the snapshot doesn't keep the values of the test
+		delegator.removeAll(EntityQuery.use(delegator).from("SystemProperty").where("systemResourceId", RESOURCE).queryList());
+	}
+
+	private void createSystemProperty(String name, String value) throws Exception {
+		delegator.create("SystemProperty", "systemResourceId", RESOURCE, "systemPropertyId", name, "systemPropertyValue", value);
+	}
+
+	public void testTypedValues() throws Exception {
+		createSystemProperty("integer", "42");
+		createSystemProperty("decimalInteger", "1.0");
+		createSystemProperty("decimal", "1.5");
+		createSystemProperty("grouped", "1,000");
+		createSystemProperty("text", "abc");
+		createSystemProperty("boolean", "TRUE");
+		createSystemProperty("empty", null);
+
+		assertEquals("integer", Integer.valueOf(42), EntityUtilProperties.getPropertyAsInteger(RESOURCE, "integer", 7, delegator));
+		assertEquals("long", Long.valueOf(42), EntityUtilProperties.getPropertyAsLong(RESOURCE, "integer", 7, delegator));
+		assertEquals("double", Double.valueOf(42), EntityUtilProperties.getPropertyAsDouble(RESOURCE, "integer", 7, delegator));
+		assertEquals("big decimal", new BigDecimal("42"), EntityUtilProperties.getPropertyAsBigDecimal(RESOURCE, "integer", BigDecimal.ONE, delegator));
+		// the number formats of UtilProperties
+		assertEquals("decimal integer", Integer.valueOf(1), EntityUtilProperties.getPropertyAsInteger(RESOURCE, "decimalInteger", 7, delegator));
+		assertEquals("decimal as integer", Integer.valueOf(1), EntityUtilProperties.getPropertyAsInteger(RESOURCE, "decimal", 7, delegator));
+		assertEquals("decimal as long", Long.valueOf(1), EntityUtilProperties.getPropertyAsLong(RESOURCE, "decimal", 7, delegator));
+		assertEquals("decimal as double", Double.valueOf(1.5), EntityUtilProperties.getPropertyAsDouble(RESOURCE, "decimal", 7, delegator));
+		assertEquals("grouped", Integer.valueOf(1000), EntityUtilProperties.getPropertyAsInteger(RESOURCE, "grouped", 7, delegator));
+		// the default values
+		assertEquals("text as integer", Integer.valueOf(7), EntityUtilProperties.getPropertyAsInteger(RESOURCE, "text", 7, delegator));
+		assertEquals("text as big decimal", BigDecimal.ONE, EntityUtilProperties.getPropertyAsBigDecimal(RESOURCE, "text", BigDecimal.ONE, delegator));
+		assertEquals("empty as long", Long.valueOf(7), EntityUtilProperties.getPropertyAsLong(RESOURCE, "empty", 7, delegator));
+		assertEquals("missing as double", Double.valueOf(7), EntityUtilProperties.getPropertyAsDouble(RESOURCE, "missing", 7, delegator));
+		assertEquals("boolean", Boolean.TRUE, EntityUtilProperties.getPropertyAsBoolean(RESOURCE, "boolean", false, delegator));
+		assertEquals("text as boolean", Boolean.TRUE, EntityUtilProperties.getPropertyAsBoolean(RESOURCE, "text", true, delegator));
+	}
+
+	public void testSameValuesAsUtilProperties() throws Exception {
+		SystemPropertySnapshot snapshot = SystemPropertySnapshot.getInstance(delegator);
+		for (String resource : new String[] {"security", "serverstats", "httpclient"}) {
+			Properties properties = UtilProperties.getProperties(resource);
+			assertNotNull("properties " + resource, properties);
+			for (String name : properties.stringPropertyNames()) {
+				if (snapshot.getSystemPropertyValue(resource, name) != null) {
+					continue;
+				}
+				String message = resource + "#" + name;
+				assertEquals(message + " as integer", UtilProperties.getPropertyAsInteger(resource, name, -7), EntityUtilProperties.getPropertyAsInteger(resource, name, -7, delegator));
+				assertEquals(message + " as long", UtilProperties.getPropertyAsLong(resource, name, -7), EntityUtilProperties.getPropertyAsLong(resource, name, -7, delegator));
+				assertEquals(message + " as double", UtilProperties.getPropertyAsDouble(resource, name, -7), EntityUtilProperties.getPropertyAsDouble(resource, name, -7, delegator));
+				assertEquals(message + " as big decimal", UtilProperties.getPropertyAsBigDecimal(resource, name, BigDecimal.TEN),
+						EntityUtilProperties.getPropertyAsBigDecimal(resource, name, BigDecimal.TEN, delegator));
+				assertEquals(message + " as boolean", UtilProperties.getPropertyAsBoolean(resource, name, false), EntityUtilProperties.getPropertyAsBoolean(resource, name, false, delegator));
+			}
+		}
+	}
+
+	public void testEcaInvalidation() throws Exception {
+		SystemPropertySnapshot snapshot = SystemPropertySnapshot.getInstance(delegator);
+		assertNull("value before the create", snapshot.getSystemPropertyValue(RESOURCE, "eca"));
+		assertSame("snapshot kept without changes", snapshot, SystemPropertySnapshot.getInstance(delegator));
+
+		createSystemProperty("eca", "created");
+		assertNotSame("snapshot dropped by the create", snapshot, SystemPropertySnapshot.getInstance(delegator));
+		assertEquals("value after the create", "created", EntityUtilProperties.getPropertyValue(RESOURCE, "eca", delegator));
+
+		GenericValue systemProperty = EntityQuery.use(delegator).from("SystemProperty").where("systemResourceId", RESOURCE, "systemPropertyId", "eca").queryOne();
+		systemProperty.set("systemPropertyValue", "stored");
+		systemProperty.store();
+		assertEquals("value after the store", "stored", EntityUtilProperties.getPropertyValue(RESOURCE, "eca", delegator));
+
+		// the snapshot built in the transaction is dropped by its rollback
+		boolean beganTransaction = TransactionUtil.begin();
+		try {
+			systemProperty.set("systemPropertyValue", "rolled back");
+			systemProperty.store();
+			assertEquals("value in the transaction", "rolled back", EntityUtilProperties.getPropertyValue(RESOURCE, "eca", delegator));
+		} finally {
+			TransactionUtil.rollback(beganTransaction, "Testing the snapshot after a rollback", null);
+		}
+		assertEquals("value after the rollback", "stored", EntityUtilProperties.getPropertyValue(RESOURCE, "eca", delegator));
+
+		systemProperty.remove();
+		assertNull("value after the remove", SystemPropertySnapshot.getInstance(delegator).getSystemPropertyValue(RESOURCE, "eca"));
+	}
+}
@@ -29,6 +29,7 @@ import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.datasource.GenericHelper;
 import org.apache.ofbiz.entity.datasource.GenericHelperFactory;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.datasource.ReadReplicaRouter;
 import org.apache.ofbiz.entity.eca.EntityEcaHandler;
 import org.apache.ofbiz.entity.model.*;
 import org.apache.ofbiz.entity.serialize.SerializeException;
@@ -129,14 +130,18 @@ public class GenericDelegator implements Delegator {
 
 		cache = new Cache(delegatorFullName);
 
-		// do the entity model check
-		List<String> warningList = new LinkedList<String>();
-		Debug.logInfo("Doing entity definition check...", module);
-		ModelEntityChecker.checkEntities(this, warningList);
-		if (warningList.size() > 0) {
-			Debug.logWarning("=-=-=-=-= Found " + warningList.size() + " warnings when checking the entity definitions:", module);
-			for (String warning : warningList) {
-				Debug.logWarning(warning, module);
+		// do the entity model check, unless the entities are loaded on first use
+		if (this.modelReader.isLazyLoad()) {
+			Debug.logInfo("Entity definition check skipped, entities are loaded on first use; run the checkEntityDefinitions service to check them", module);
+		} else {
+			List<String> warningList = new LinkedList<String>();
+			Debug.logInfo("Doing entity definition check...", module);
+			ModelEntityChecker.checkEntities(this, warningList);
+			if (warningList.size() > 0) {
+				Debug.logWarning("=-=-=-=-= Found " + warningList.size() + " warnings when checking the entity definitions:", module);
+				for (String warning : warningList) {
+					Debug.logWarning(warning, module);
+				}
 			}
 		}
 
@@ -1407,9 +1412,18 @@ public class GenericDelegator implements Delegator {
 			GenericValue value = null;
 
 			ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, primaryKey, false);
+			// a read outside of any transaction can use a read replica, unless the value goes to the cache
+			boolean replicaRead = beganTransaction && !useCache;
+			if (replicaRead) {
+				ReadReplicaRouter.beginReplicaRead();
+			}
 			try {
 				value = helper.findByPrimaryKey(primaryKey);
 			} catch (GenericEntityNotFoundException e) {
+			} finally {
+				if (replicaRead) {
+					ReadReplicaRouter.endReplicaRead();
+				}
 			}
 			if (value != null) {
 				value.setDelegator(this);
@@ -1556,8 +1570,17 @@ public class GenericDelegator implements Delegator {
 			}
 
 			List<GenericValue> list = null;
+			// a read outside of any transaction can use a read replica, unless the list goes to the cache
+			boolean replicaRead = beganTransaction && !useCache;
+			if (replicaRead) {
+				ReadReplicaRouter.beginReplicaRead();
+			}
 			try (EntityListIterator eli = this.find(entityName, entityCondition, null, fieldsToSelect, orderBy, findOptions)) {
 				list = eli.getCompleteList();
+			} finally {
+				if (replicaRead) {
+					ReadReplicaRouter.endReplicaRead();
+				}
 			}
 
 			if (useCache) {
@@ -1628,7 +1651,17 @@ public class GenericDelegator implements Delegator {
 
 			ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, dummyValue, false);
 			GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
-			long count = helper.findCountByCondition(this, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+			long count;
+			if (beganTransaction) {
+				ReadReplicaRouter.beginReplicaRead();
+			}
+			try {
+				count = helper.findCountByCondition(this, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+			} finally {
+				if (beganTransaction) {
+					ReadReplicaRouter.endReplicaRead();
+				}
+			}
 
 			ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_FIND, dummyValue, false);
 			TransactionUtil.commit(beganTransaction);
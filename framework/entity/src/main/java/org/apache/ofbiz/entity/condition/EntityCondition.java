@@ -114,6 +114,17 @@ public abstract class EntityCondition extends EntityConditionBase implements IsE
 
 	abstract public String makeWhereString(ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams, Datasource datasourceInfo);
 
+	/**
+	 * Appends the structure of this condition (fields, operators, list sizes, null values) to a shape key
+	 * and adds to parameterValues the values bound as parameters by {@link #makeWhereString}, in the same order.
+	 * Two conditions of the same shape make the same SQL, so it can be reused by binding the values of the other one.
+	 *
+	 * @return <code>false</code> if the SQL made by this condition doesn't only depend on its shape
+	 */
+	public boolean appendShape(StringBuilder shape, List<Object> parameterValues) {
+		return false;
+	}
+
 	abstract public void checkCondition(ModelEntity modelEntity) throws GenericModelException;
 
 	public boolean entityMatches(GenericEntity entity) {
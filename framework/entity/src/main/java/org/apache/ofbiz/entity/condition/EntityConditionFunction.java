@@ -95,6 +95,16 @@ public abstract class EntityConditionFunction extends EntityCondition {
 		return sb.toString();
 	}
 
+	@Override
+	public boolean appendShape(StringBuilder shape, List<Object> parameterValues) {
+		shape.append(codeString).append('(');
+		if (!condition.appendShape(shape, parameterValues)) {
+			return false;
+		}
+		shape.append(')');
+		return true;
+	}
+
 	@Override
 	public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
 		condition.checkCondition(modelEntity);
@@ -77,6 +77,11 @@ public abstract class EntityConditionListBase<T extends EntityCondition> extends
 		return sql.toString();
 	}
 
+	@Override
+	public boolean appendShape(StringBuilder shape, List<Object> parameterValues) {
+		return operator.appendShape(shape, parameterValues, conditionList);
+	}
+
 	@Override
 	public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
 		// if (Debug.verboseOn()) Debug.logVerbose("checkCondition for entity " + modelEntity.getEntityName(), module);
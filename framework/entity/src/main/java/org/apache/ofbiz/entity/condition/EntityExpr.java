@@ -27,6 +27,7 @@ import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelFieldType;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -117,6 +118,59 @@ public final class EntityExpr extends EntityCondition {
 		return sql.toString();
 	}
 
+	@Override
+	public boolean appendShape(StringBuilder shape, List<Object> parameterValues) {
+		if (lhs instanceof EntityCondition) {
+			EntityJoinOperator joinOperator = UtilGenerics.cast(operator);
+			return joinOperator.appendShape(shape, parameterValues, Arrays.asList((EntityCondition) lhs, (EntityCondition) rhs));
+		}
+		if (!(lhs instanceof EntityFieldValue) || !((EntityFieldValue) lhs).appendShape(shape)) {
+			return false;
+		}
+		shape.append(' ').append(operator.getCode()).append(' ');
+		int operatorId = operator.getId();
+		if ((operatorId == EntityOperator.ID_EQUALS || operatorId == EntityOperator.ID_NOT_EQUAL) && (rhs == null || rhs == GenericEntity.NULL_FIELD)) {
+			shape.append("NULL");
+			return true;
+		}
+		switch (operatorId) {
+		case EntityOperator.ID_EQUALS:
+		case EntityOperator.ID_NOT_EQUAL:
+		case EntityOperator.ID_LESS_THAN:
+		case EntityOperator.ID_GREATER_THAN:
+		case EntityOperator.ID_LESS_THAN_EQUAL_TO:
+		case EntityOperator.ID_GREATER_THAN_EQUAL_TO:
+		case EntityOperator.ID_LIKE:
+		case EntityOperator.ID_NOT_LIKE:
+			if (rhs instanceof EntityFieldValue) {
+				return ((EntityFieldValue) rhs).appendShape(shape);
+			}
+			if (rhs instanceof EntityConditionValue || rhs instanceof Collection<?>) {
+				return false;
+			}
+			shape.append('?');
+			parameterValues.add(rhs);
+			return true;
+		case EntityOperator.ID_IN:
+		case EntityOperator.ID_NOT_IN:
+		case EntityOperator.ID_BETWEEN:
+			if (!(rhs instanceof Collection<?>)) {
+				return false;
+			}
+			Collection<?> values = (Collection<?>) rhs;
+			shape.append('[').append(values.size()).append(']');
+			for (Object value : values) {
+				if (value instanceof EntityConditionValue || value instanceof Collection<?>) {
+					return false;
+				}
+				parameterValues.add(value);
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
 	@Override
 	public boolean mapMatches(Delegator delegator, Map<String, ? extends Object> map) {
 		return operator.mapMatches(delegator, map, lhs, rhs);
@@ -165,6 +165,22 @@ public class EntityFieldValue extends EntityConditionValue {
 		}
 	}
 
+	/**
+	 * Appends the field name and entity alias of this value to a condition shape, see {@link EntityCondition#appendShape}.
+	 *
+	 * @return <code>false</code> for the fields of view entity conditions
+	 */
+	public boolean appendShape(StringBuilder shape) {
+		if (this.modelViewEntity != null) {
+			return false;
+		}
+		if (this.entityAlias != null) {
+			shape.append(this.entityAlias).append('.');
+		}
+		shape.append(this.fieldName);
+		return true;
+	}
+
 	@Override
 	public void validateSql(ModelEntity modelEntity) throws GenericModelException {
 		ModelField field = getModelField(modelEntity);
@@ -74,6 +74,27 @@ public class EntityJoinOperator extends EntityOperator<EntityCondition, EntityCo
 		}
 	}
 
+	/**
+	 * Appends the shape of a list of conditions joined by this operator, see {@link EntityCondition#appendShape}.
+	 * The empty conditions are skipped as they are by {@link #addSqlValue}.
+	 */
+	public boolean appendShape(StringBuilder shape, List<Object> parameterValues, List<? extends EntityCondition> conditionList) {
+		shape.append(getCode()).append('(');
+		if (conditionList != null) {
+			for (EntityCondition condition : conditionList) {
+				if (condition.isEmpty()) {
+					continue;
+				}
+				if (!condition.appendShape(shape, parameterValues)) {
+					return false;
+				}
+				shape.append(',');
+			}
+		}
+		shape.append(')');
+		return true;
+	}
+
 	protected EntityCondition freeze(Object item) {
 		return ((EntityCondition) item).freeze();
 	}
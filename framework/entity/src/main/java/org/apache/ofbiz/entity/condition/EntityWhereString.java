@@ -57,6 +57,12 @@ public final class EntityWhereString extends EntityCondition {
 		return sqlString;
 	}
 
+	@Override
+	public boolean appendShape(StringBuilder shape, List<Object> parameterValues) {
+		shape.append("WHERE[").append(sqlString.length()).append(':').append(sqlString).append(']');
+		return true;
+	}
+
 	@Override
 	public void checkCondition(ModelEntity modelEntity) throws GenericModelException {// no nothing, this is always assumed to be fine... could do funky SQL syntax checking, but hey this is a HACK anyway
 	}
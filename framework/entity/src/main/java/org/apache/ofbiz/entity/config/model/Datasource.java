@@ -80,6 +80,12 @@ public final class Datasource {
 	private final InlineJdbc inlineJdbc; // <inline-jdbc>
 	private final JndiJdbc jndiJdbc; // <jndi-jdbc>
 	private final TyrexDataSource tyrexDataSource; // <tyrex-dataSource>
+	private final List<ReadReplica> readReplicaList; // <read-replica>
+	private final String readReplicaSelection; // type = xs:string
+	private final String readReplicaLagQuery; // type = xs:string
+	private final int readReplicaMaxLag; // type = xs:nonNegativeInteger
+	private final int readReplicaCheckInterval; // type = xs:nonNegativeInteger
+	private final int selectStatementCacheSize; // type = xs:nonNegativeInteger
 
 	Datasource(Element element) throws GenericEntityConfException {
 		String lineNumberText = EntityConfig.createConfigFileLineNumberText(element);
@@ -177,6 +183,42 @@ public final class Datasource {
 				throw new GenericEntityConfException("<datasource> element max-worker-pool-size attribute is invalid" + lineNumberText);
 			}
 		}
+		String readReplicaSelection = element.getAttribute("read-replica-selection").intern();
+		if (readReplicaSelection.isEmpty()) {
+			readReplicaSelection = "round-robin";
+		}
+		this.readReplicaSelection = readReplicaSelection;
+		this.readReplicaLagQuery = element.getAttribute("read-replica-lag-query").intern();
+		String readReplicaMaxLag = element.getAttribute("read-replica-max-lag");
+		if (readReplicaMaxLag.isEmpty()) {
+			this.readReplicaMaxLag = 30;
+		} else {
+			try {
+				this.readReplicaMaxLag = Integer.parseInt(readReplicaMaxLag);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<datasource> element read-replica-max-lag attribute is invalid" + lineNumberText);
+			}
+		}
+		String readReplicaCheckInterval = element.getAttribute("read-replica-check-interval");
+		if (readReplicaCheckInterval.isEmpty()) {
+			this.readReplicaCheckInterval = 10000;
+		} else {
+			try {
+				this.readReplicaCheckInterval = Integer.parseInt(readReplicaCheckInterval);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<datasource> element read-replica-check-interval attribute is invalid" + lineNumberText);
+			}
+		}
+		String selectStatementCacheSize = element.getAttribute("select-statement-cache-size");
+		if (selectStatementCacheSize.isEmpty()) {
+			this.selectStatementCacheSize = 1000;
+		} else {
+			try {
+				this.selectStatementCacheSize = Integer.parseInt(selectStatementCacheSize);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<datasource> element select-statement-cache-size attribute is invalid" + lineNumberText);
+			}
+		}
 		List<? extends Element> sqlLoadPathElementList = UtilXml.childElementList(element, "sql-load-path");
 		if (sqlLoadPathElementList.isEmpty()) {
 			this.sqlLoadPathList = Collections.emptyList();
@@ -222,6 +264,19 @@ public final class Datasource {
 		if (jdbcElementCount > 1) {
 			throw new GenericEntityConfException("<datasource> element is invalid: Only one of <inline-jdbc>, <jndi-jdbc>, <tyrex-dataSource> is allowed" + lineNumberText);
 		}
+		List<? extends Element> readReplicaElementList = UtilXml.childElementList(element, "read-replica");
+		if (readReplicaElementList.isEmpty()) {
+			this.readReplicaList = Collections.emptyList();
+		} else {
+			if (this.inlineJdbc == null) {
+				throw new GenericEntityConfException("<datasource> element is invalid: <read-replica> requires an <inline-jdbc> element" + lineNumberText);
+			}
+			List<ReadReplica> readReplicaList = new ArrayList<ReadReplica>(readReplicaElementList.size());
+			for (Element readReplicaElement : readReplicaElementList) {
+				readReplicaList.add(new ReadReplica(readReplicaElement));
+			}
+			this.readReplicaList = Collections.unmodifiableList(readReplicaList);
+		}
 	}
 
 	/**
@@ -489,4 +544,46 @@ public final class Datasource {
 	public TyrexDataSource getTyrexDataSource() {
 		return this.tyrexDataSource;
 	}
+
+	/**
+	 * Returns the <code>&lt;read-replica&gt;</code> child elements.
+	 */
+	public List<ReadReplica> getReadReplicaList() {
+		return this.readReplicaList;
+	}
+
+	/**
+	 * Returns the value of the <code>read-replica-selection</code> attribute.
+	 */
+	public String getReadReplicaSelection() {
+		return this.readReplicaSelection;
+	}
+
+	/**
+	 * Returns the value of the <code>read-replica-lag-query</code> attribute.
+	 */
+	public String getReadReplicaLagQuery() {
+		return this.readReplicaLagQuery;
+	}
+
+	/**
+	 * Returns the value of the <code>read-replica-max-lag</code> attribute.
+	 */
+	public int getReadReplicaMaxLag() {
+		return this.readReplicaMaxLag;
+	}
+
+	/**
+	 * Returns the value of the <code>read-replica-check-interval</code> attribute.
+	 */
+	public int getReadReplicaCheckInterval() {
+		return this.readReplicaCheckInterval;
+	}
+
+	/**
+	 * Returns the value of the <code>select-statement-cache-size</code> attribute.
+	 */
+	public int getSelectStatementCacheSize() {
+		return this.selectStatementCacheSize;
+	}
 }
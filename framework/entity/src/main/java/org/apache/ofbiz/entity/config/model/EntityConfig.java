@@ -273,6 +273,26 @@ public final class EntityConfig {
 		return jdbcPassword;
 	}
 
+	/**
+	 * Returns the password of a read replica, or the password of its datasource when the replica has none.
+	 */
+	public static String getJdbcPassword(ReadReplica readReplica, InlineJdbc inlineJdbcElement) throws GenericEntityConfException {
+		String jdbcPassword = readReplica.getJdbcPassword();
+		if (!jdbcPassword.isEmpty()) {
+			return jdbcPassword;
+		}
+		String jdbcPasswordLookup = readReplica.getJdbcPasswordLookup();
+		if (jdbcPasswordLookup.isEmpty()) {
+			return getJdbcPassword(inlineJdbcElement);
+		}
+		String key = "jdbc-password.".concat(jdbcPasswordLookup);
+		jdbcPassword = UtilProperties.getPropertyValue("passwords", key);
+		if (jdbcPassword.isEmpty()) {
+			throw new GenericEntityConfException("'" + key + "' property not found in passwords.properties file for read-replica element, line: " + readReplica.getLineNumber());
+		}
+		return jdbcPassword;
+	}
+
 	/**
 	 * Returns the specified <code>&lt;resource-loader&gt;</code> child element, or <code>null</code> if no child element was found.
 	 */
@@ -36,6 +36,7 @@ import java.util.List;
 public final class EntityModelReader {
 
 	private final String name; // type = xs:string
+	private final boolean lazyLoad; // type = xs:boolean
 	private final List<Resource> resourceList; // <resource>
 
 	EntityModelReader(Element element) throws GenericEntityConfException {
@@ -45,6 +46,7 @@ public final class EntityModelReader {
 			throw new GenericEntityConfException("<entity-model-reader> element name attribute is empty" + lineNumberText);
 		}
 		this.name = name;
+		this.lazyLoad = "true".equals(element.getAttribute("lazy-load"));
 		List<? extends Element> resourceElementList = UtilXml.childElementList(element, "resource");
 		if (resourceElementList.isEmpty()) {
 			this.resourceList = Collections.emptyList();
@@ -64,6 +66,13 @@ public final class EntityModelReader {
 		return this.name;
 	}
 
+	/**
+	 * Returns the value of the <code>lazy-load</code> attribute.
+	 */
+	public boolean getLazyLoad() {
+		return this.lazyLoad;
+	}
+
 	/**
 	 * Returns the <code>&lt;resource&gt;</code> child elements.
 	 */
@@ -49,6 +49,11 @@ public final class InlineJdbc extends JdbcElement {
 	private final boolean testOnBorrow; // type = xs:boolean
 	private final boolean testOnReturn; // type = xs:boolean
 	private final boolean testWhileIdle; // type = xs:boolean
+	private final int poolMonitorInterval; // type = xs:nonNegativeInteger
+	private final int poolLeakThreshold; // type = xs:nonNegativeInteger
+	private final int poolLeakStackSampleRate; // type = xs:nonNegativeInteger
+	private final int poolAdaptiveMaxsize; // type = xs:nonNegativeInteger
+	private final int poolAdaptiveWaitThreshold; // type = xs:nonNegativeInteger
 	private final String poolXaWrapperClass; // type = xs:string
 
 	InlineJdbc(Element element) throws GenericEntityConfException {
@@ -166,6 +171,56 @@ public final class InlineJdbc extends JdbcElement {
 		this.testOnBorrow = "true".equals(element.getAttribute("test-on-borrow"));
 		this.testOnReturn = "true".equals(element.getAttribute("test-on-return"));
 		this.testWhileIdle = "true".equals(element.getAttribute("test-while-idle"));
+		String poolMonitorInterval = element.getAttribute("pool-monitor-interval");
+		if (poolMonitorInterval.isEmpty()) {
+			this.poolMonitorInterval = 10000;
+		} else {
+			try {
+				this.poolMonitorInterval = Integer.parseInt(poolMonitorInterval);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<inline-jdbc> element pool-monitor-interval attribute is invalid" + lineNumberText);
+			}
+		}
+		String poolLeakThreshold = element.getAttribute("pool-leak-threshold");
+		if (poolLeakThreshold.isEmpty()) {
+			this.poolLeakThreshold = 600000;
+		} else {
+			try {
+				this.poolLeakThreshold = Integer.parseInt(poolLeakThreshold);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<inline-jdbc> element pool-leak-threshold attribute is invalid" + lineNumberText);
+			}
+		}
+		String poolLeakStackSampleRate = element.getAttribute("pool-leak-stack-sample-rate");
+		if (poolLeakStackSampleRate.isEmpty()) {
+			this.poolLeakStackSampleRate = 0;
+		} else {
+			try {
+				this.poolLeakStackSampleRate = Integer.parseInt(poolLeakStackSampleRate);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<inline-jdbc> element pool-leak-stack-sample-rate attribute is invalid" + lineNumberText);
+			}
+		}
+		String poolAdaptiveMaxsize = element.getAttribute("pool-adaptive-maxsize");
+		if (poolAdaptiveMaxsize.isEmpty()) {
+			this.poolAdaptiveMaxsize = 0;
+		} else {
+			try {
+				this.poolAdaptiveMaxsize = Integer.parseInt(poolAdaptiveMaxsize);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<inline-jdbc> element pool-adaptive-maxsize attribute is invalid" + lineNumberText);
+			}
+		}
+		String poolAdaptiveWaitThreshold = element.getAttribute("pool-adaptive-wait-threshold");
+		if (poolAdaptiveWaitThreshold.isEmpty()) {
+			this.poolAdaptiveWaitThreshold = 20;
+		} else {
+			try {
+				this.poolAdaptiveWaitThreshold = Integer.parseInt(poolAdaptiveWaitThreshold);
+			} catch (Exception e) {
+				throw new GenericEntityConfException("<inline-jdbc> element pool-adaptive-wait-threshold attribute is invalid" + lineNumberText);
+			}
+		}
 		this.poolXaWrapperClass = element.getAttribute("pool-xa-wrapper-class").intern();
 	}
 
@@ -302,6 +357,41 @@ public final class InlineJdbc extends JdbcElement {
 		return this.testWhileIdle;
 	}
 
+	/**
+	 * Returns the value of the <code>pool-monitor-interval</code> attribute.
+	 */
+	public int getPoolMonitorInterval() {
+		return this.poolMonitorInterval;
+	}
+
+	/**
+	 * Returns the value of the <code>pool-leak-threshold</code> attribute.
+	 */
+	public int getPoolLeakThreshold() {
+		return this.poolLeakThreshold;
+	}
+
+	/**
+	 * Returns the value of the <code>pool-leak-stack-sample-rate</code> attribute.
+	 */
+	public int getPoolLeakStackSampleRate() {
+		return this.poolLeakStackSampleRate;
+	}
+
+	/**
+	 * Returns the value of the <code>pool-adaptive-maxsize</code> attribute.
+	 */
+	public int getPoolAdaptiveMaxsize() {
+		return this.poolAdaptiveMaxsize;
+	}
+
+	/**
+	 * Returns the value of the <code>pool-adaptive-wait-threshold</code> attribute.
+	 */
+	public int getPoolAdaptiveWaitThreshold() {
+		return this.poolAdaptiveWaitThreshold;
+	}
+
 	/**
 	 * Returns the value of the <code>pool-xa-wrapper-class</code> attribute.
 	 */
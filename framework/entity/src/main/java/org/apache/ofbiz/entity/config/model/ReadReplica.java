@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.config.model;
+
+import org.apache.ofbiz.base.lang.ThreadSafe;
+import org.apache.ofbiz.entity.GenericEntityConfException;
+import org.w3c.dom.Element;
+
+/**
+ * An object that models the <code>&lt;read-replica&gt;</code> element.
+ *
+ * @see <code>entity-config.xsd</code>
+ */
+@ThreadSafe
+public final class ReadReplica {
+
+	private final String name; // type = xs:string
+	private final String jdbcUri; // type = xs:string
+	private final String jdbcUsername; // type = xs:string
+	private final String jdbcPassword; // type = xs:string
+	private final String jdbcPasswordLookup; // type = xs:string
+	private final String lineNumber;
+
+	ReadReplica(Element element) throws GenericEntityConfException {
+		String lineNumberText = EntityConfig.createConfigFileLineNumberText(element);
+		String name = element.getAttribute("name").intern();
+		if (name.isEmpty()) {
+			throw new GenericEntityConfException("<read-replica> element name attribute is empty" + lineNumberText);
+		}
+		this.name = name;
+		String jdbcUri = element.getAttribute("jdbc-uri").intern();
+		if (jdbcUri.isEmpty()) {
+			throw new GenericEntityConfException("<read-replica> element jdbc-uri attribute is empty" + lineNumberText);
+		}
+		this.jdbcUri = jdbcUri;
+		this.jdbcUsername = element.getAttribute("jdbc-username").intern();
+		this.jdbcPassword = element.getAttribute("jdbc-password").intern();
+		this.jdbcPasswordLookup = element.getAttribute("jdbc-password-lookup").intern();
+		Object lineNumber = element.getUserData("startLine");
+		this.lineNumber = lineNumber == null ? "unknown" : lineNumber.toString();
+	}
+
+	/**
+	 * Returns the value of the <code>name</code> attribute.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the value of the <code>jdbc-uri</code> attribute.
+	 */
+	public String getJdbcUri() {
+		return this.jdbcUri;
+	}
+
+	/**
+	 * Returns the value of the <code>jdbc-username</code> attribute, empty to use the user name of the datasource.
+	 */
+	public String getJdbcUsername() {
+		return this.jdbcUsername;
+	}
+
+	/**
+	 * Returns the value of the <code>jdbc-password</code> attribute.
+	 */
+	public String getJdbcPassword() {
+		return this.jdbcPassword;
+	}
+
+	/**
+	 * Returns the value of the <code>jdbc-password-lookup</code> attribute.
+	 */
+	public String getJdbcPasswordLookup() {
+		return this.jdbcPasswordLookup;
+	}
+
+	/**
+	 * Returns the line number of the element in the configuration file.
+	 */
+	public String getLineNumber() {
+		return this.lineNumber;
+	}
+}
@@ -0,0 +1,489 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.connection;
+
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.config.model.InlineJdbc;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a {@link MonitoredConnectionPool}: borrow wait times, hold times and leaked connections.
+ * <p>The connections enlisted in a transaction are returned to the pool when the transaction ends, so the hold
+ * time of a connection is the duration of the transaction that used it (or of the query, outside of a transaction).</p>
+ * <p>Every <code>pool-monitor-interval</code> milliseconds the monitor logs the connections held for more than
+ * <code>pool-leak-threshold</code> milliseconds and, when <code>pool-adaptive-maxsize</code> is greater than
+ * <code>pool-maxsize</code>, adjusts the maximum size of the pool between these two bounds: it is increased
+ * by 25% when the mean borrow wait time of the interval exceeds <code>pool-adaptive-wait-threshold</code>
+ * or when borrows failed, and decreased by 12.5% after six intervals without waits where less than three
+ * quarters of the connections were used.</p>
+ */
+public final class ConnectionPoolMonitor implements ConnectionPoolMonitorMBean {
+
+	public static final String module = ConnectionPoolMonitor.class.getName();
+	private static final ThreadGroup MONITOR_THREAD_GROUP = new ThreadGroup("ConnectionPoolMonitor");
+	private static final int SHRINK_INTERVALS = 6;
+
+	private final String name;
+	private final MonitoredConnectionPool pool;
+	private final long monitorInterval;
+	private final long leakThresholdMillis;
+	private final int stackSampleRate;
+	private final int configuredMaxTotal;
+	private final int configuredMaxIdle;
+	private final int adaptiveMaxTotal;
+	private final long waitThresholdNanos;
+	private final Histogram waitTimes = new Histogram();
+	private final Histogram holdTimes = new Histogram();
+	private final AtomicLong borrowFailures = new AtomicLong();
+	private final AtomicLong adjustments = new AtomicLong();
+	private final AtomicLong borrowSequence = new AtomicLong();
+	private final AtomicInteger peakActive = new AtomicInteger();
+	private final ConcurrentHashMap<PoolableConnection, Borrow> borrowed = new ConcurrentHashMap<PoolableConnection, Borrow>();
+	// only accessed by the monitor task
+	private long lastWaitCount;
+	private long lastWaitNanos;
+	private long lastBorrowFailures;
+	private int quietIntervals;
+	private ScheduledFuture<?> monitorTask;
+	private ObjectName objectName;
+
+	ConnectionPoolMonitor(String name, MonitoredConnectionPool pool, InlineJdbc jdbcElement) {
+		this(name, pool, jdbcElement.getPoolMonitorInterval(), jdbcElement.getPoolLeakThreshold(), jdbcElement.getPoolLeakStackSampleRate(),
+				jdbcElement.getPoolAdaptiveMaxsize(), jdbcElement.getPoolAdaptiveWaitThreshold());
+	}
+
+	/**
+	 * Creates the monitor of a pool whose maximum size is the configured <code>pool-maxsize</code>.
+	 */
+	ConnectionPoolMonitor(String name, MonitoredConnectionPool pool, long monitorInterval, long leakThresholdMillis, int stackSampleRate,
+	                      int adaptiveMaxTotal, long waitThresholdMillis) {
+		this.name = name;
+		this.pool = pool;
+		this.monitorInterval = monitorInterval;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.stackSampleRate = stackSampleRate;
+		this.configuredMaxTotal = pool.getMaxTotal();
+		this.configuredMaxIdle = pool.getMaxIdle();
+		this.adaptiveMaxTotal = Math.max(adaptiveMaxTotal, configuredMaxTotal);
+		this.waitThresholdNanos = TimeUnit.MILLISECONDS.toNanos(waitThresholdMillis);
+	}
+
+	/** Registers this monitor in JMX and schedules the monitor task. */
+	synchronized void start() {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("org.apache.ofbiz.entity:type=ConnectionPool,name=" + ObjectName.quote(name));
+			try {
+				mbeanServer.registerMBean(this, objectName);
+			} catch (InstanceAlreadyExistsException e) {
+				// left by a previous pool of the same helper (see DBCPConnectionFactory.closeAll)
+				mbeanServer.unregisterMBean(objectName);
+				mbeanServer.registerMBean(this, objectName);
+			}
+			this.objectName = objectName;
+		} catch (JMException e) {
+			Debug.logWarning(e, "Could not register the JMX bean of connection pool [" + name + "]", module);
+		}
+		if (monitorInterval > 0 && (leakThresholdMillis > 0 || adaptiveMaxTotal > configuredMaxTotal)) {
+			monitorTask = ExecutorHolder.executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						monitor();
+					} catch (Throwable t) {
+						Debug.logError(t, "Error while monitoring connection pool [" + name + "]", module);
+					}
+				}
+			}, monitorInterval, monitorInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Cancels the monitor task and unregisters this monitor from JMX. */
+	synchronized void stop() {
+		if (monitorTask != null) {
+			monitorTask.cancel(false);
+			monitorTask = null;
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				Debug.logWarning(e, "Could not unregister the JMX bean of connection pool [" + name + "]", module);
+			}
+			objectName = null;
+		}
+	}
+
+	void borrowed(PoolableConnection connection, long waitNanos) {
+		waitTimes.record(waitNanos);
+		Throwable stack = null;
+		if (stackSampleRate > 0 && borrowSequence.incrementAndGet() % stackSampleRate == 0) {
+			stack = new Throwable("Connection borrowed by thread [" + Thread.currentThread().getName() + "]");
+		}
+		borrowed.put(connection, new Borrow(Thread.currentThread().getName(), stack));
+		int active = pool.getNumActive();
+		int peak;
+		while (active > (peak = peakActive.get()) && !peakActive.compareAndSet(peak, active)) {
+			// retry
+		}
+	}
+
+	void borrowFailed(long waitNanos) {
+		waitTimes.record(waitNanos);
+		borrowFailures.incrementAndGet();
+	}
+
+	void returned(PoolableConnection connection) {
+		Borrow borrow = borrowed.remove(connection);
+		if (borrow != null) {
+			holdTimes.record(System.nanoTime() - borrow.startNanos);
+			if (borrow.reported) {
+				Debug.logInfo("Connection of pool [" + name + "] reported as leaked was returned after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - borrow.startNanos) + " ms", module);
+			}
+		}
+	}
+
+	void monitor() {
+		if (leakThresholdMillis > 0) {
+			long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+			long now = System.nanoTime();
+			for (Borrow borrow : borrowed.values()) {
+				if (!borrow.reported && now - borrow.startNanos > thresholdNanos) {
+					borrow.reported = true;
+					Debug.logWarning(borrow.stack, "Possible connection leak in pool [" + name + "]: " + borrow.toString(now), module);
+				}
+			}
+		}
+		long waitCount = waitTimes.getCount();
+		long waitNanos = waitTimes.getTotalNanos();
+		long failures = borrowFailures.get();
+		// the differences are negative after a call to resetStatistics()
+		long intervalCount = Math.max(0, waitCount - lastWaitCount);
+		long intervalWaitNanos = Math.max(0, waitNanos - lastWaitNanos);
+		long intervalFailures = Math.max(0, failures - lastBorrowFailures);
+		lastWaitCount = waitCount;
+		lastWaitNanos = waitNanos;
+		lastBorrowFailures = failures;
+		int intervalPeakActive = peakActive.getAndSet(pool.getNumActive());
+		if (adaptiveMaxTotal <= configuredMaxTotal) {
+			return;
+		}
+		long meanWaitNanos = intervalCount == 0 ? 0 : intervalWaitNanos / intervalCount;
+		int maxTotal = pool.getMaxTotal();
+		if ((meanWaitNanos > waitThresholdNanos || intervalFailures > 0) && maxTotal < adaptiveMaxTotal) {
+			int newMaxTotal = Math.min(adaptiveMaxTotal, maxTotal + Math.max(1, maxTotal / 4));
+			setMaxTotal(newMaxTotal);
+			adjustments.incrementAndGet();
+			quietIntervals = 0;
+			Debug.logInfo("Increased the maximum size of connection pool [" + name + "] from " + maxTotal + " to " + newMaxTotal + " (mean borrow wait " + TimeUnit.NANOSECONDS.toMillis(meanWaitNanos) + " ms, " + intervalFailures + " failed borrows)", module);
+			// the threads already waiting only get the connections added to the idle ones
+			int waiters = Math.min(pool.getNumWaiters(), newMaxTotal - maxTotal);
+			for (int i = 0; i < waiters; i++) {
+				try {
+					pool.addObject();
+				} catch (Exception e) {
+					Debug.logWarning(e, "Could not add a connection to pool [" + name + "]", module);
+					break;
+				}
+			}
+		} else if (maxTotal > configuredMaxTotal && meanWaitNanos < TimeUnit.MILLISECONDS.toNanos(1) && intervalPeakActive < maxTotal * 3 / 4) {
+			if (++quietIntervals >= SHRINK_INTERVALS) {
+				int newMaxTotal = Math.max(configuredMaxTotal, maxTotal - Math.max(1, maxTotal / 8));
+				setMaxTotal(newMaxTotal);
+				adjustments.incrementAndGet();
+				quietIntervals = 0;
+				Debug.logInfo("Decreased the maximum size of connection pool [" + name + "] from " + maxTotal + " to " + newMaxTotal, module);
+			}
+		} else {
+			quietIntervals = 0;
+		}
+	}
+
+	private void setMaxTotal(int maxTotal) {
+		// the connections added above pool-maxsize are kept idle, otherwise they would be closed when returned
+		pool.setMaxIdle(configuredMaxIdle + maxTotal - configuredMaxTotal);
+		pool.setMaxTotal(maxTotal);
+	}
+
+	/** Returns the metrics of the pool, merged by {@link DebugManagedDataSource#getInfo()} into the data source info. */
+	public Map<String, Object> getInfo() {
+		Map<String, Object> info = new HashMap<String, Object>();
+		info.put("poolNumWaiters", getNumWaiters());
+		info.put("poolConfiguredMaxActive", configuredMaxTotal);
+		info.put("poolAdaptiveMaxActive", adaptiveMaxTotal);
+		info.put("poolMaxActiveAdjustments", getMaxTotalAdjustmentCount());
+		info.put("poolBorrowCount", getBorrowCount());
+		info.put("poolBorrowFailureCount", getBorrowFailureCount());
+		info.put("poolMeanBorrowWait", getMeanBorrowWaitMillis());
+		info.put("poolMaxBorrowWait", getMaxBorrowWaitMillis());
+		info.put("poolBorrowWait95th", getBorrowWaitMillis95th());
+		info.put("poolBorrowWaitHistogram", getBorrowWaitHistogram());
+		info.put("poolMeanHold", getMeanHoldMillis());
+		info.put("poolMaxHold", getMaxHoldMillis());
+		info.put("poolHold95th", getHoldMillis95th());
+		info.put("poolHoldHistogram", getHoldHistogram());
+		info.put("poolLeaks", getLeaks());
+		return info;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getNumActive() {
+		return pool.getNumActive();
+	}
+
+	public int getNumIdle() {
+		return pool.getNumIdle();
+	}
+
+	public int getNumWaiters() {
+		return pool.getNumWaiters();
+	}
+
+	public int getMaxTotal() {
+		return pool.getMaxTotal();
+	}
+
+	public int getConfiguredMaxTotal() {
+		return configuredMaxTotal;
+	}
+
+	public int getAdaptiveMaxTotal() {
+		return adaptiveMaxTotal;
+	}
+
+	public long getBorrowCount() {
+		return waitTimes.getCount() - borrowFailures.get();
+	}
+
+	public long getBorrowFailureCount() {
+		return borrowFailures.get();
+	}
+
+	public double getMeanBorrowWaitMillis() {
+		return waitTimes.getMeanMillis();
+	}
+
+	public long getMaxBorrowWaitMillis() {
+		return waitTimes.getMaxMillis();
+	}
+
+	public long getBorrowWaitMillis95th() {
+		return waitTimes.getPercentileMillis(0.95);
+	}
+
+	public String getBorrowWaitHistogram() {
+		return waitTimes.toString();
+	}
+
+	public double getMeanHoldMillis() {
+		return holdTimes.getMeanMillis();
+	}
+
+	public long getMaxHoldMillis() {
+		return holdTimes.getMaxMillis();
+	}
+
+	public long getHoldMillis95th() {
+		return holdTimes.getPercentileMillis(0.95);
+	}
+
+	public String getHoldHistogram() {
+		return holdTimes.toString();
+	}
+
+	public int getLeakCount() {
+		if (leakThresholdMillis <= 0) {
+			return 0;
+		}
+		long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+		long now = System.nanoTime();
+		int count = 0;
+		for (Borrow borrow : borrowed.values()) {
+			if (now - borrow.startNanos > thresholdNanos) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/** Returns a description of each connection held for more than <code>pool-leak-threshold</code> milliseconds, with its borrow stack trace if it was sampled. */
+	public String[] getLeaks() {
+		List<String> leaks = new ArrayList<String>();
+		if (leakThresholdMillis > 0) {
+			long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+			long now = System.nanoTime();
+			for (Borrow borrow : borrowed.values()) {
+				if (now - borrow.startNanos > thresholdNanos) {
+					StringBuilder sb = new StringBuilder(borrow.toString(now));
+					if (borrow.stack != null) {
+						for (StackTraceElement element : borrow.stack.getStackTrace()) {
+							sb.append("\n\tat ").append(element);
+						}
+					}
+					leaks.add(sb.toString());
+				}
+			}
+		}
+		return leaks.toArray(new String[leaks.size()]);
+	}
+
+	public long getMaxTotalAdjustmentCount() {
+		return adjustments.get();
+	}
+
+	public void resetStatistics() {
+		waitTimes.reset();
+		holdTimes.reset();
+		borrowFailures.set(0);
+		adjustments.set(0);
+	}
+
+	private static final class ExecutorHolder {
+		private static final ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(MONITOR_THREAD_GROUP, "connection-pool-monitor", 1, 60, false);
+	}
+
+	private static final class Borrow {
+		private final String threadName;
+		private final long startMillis = System.currentTimeMillis();
+		private final long startNanos = System.nanoTime();
+		private final Throwable stack;
+		private volatile boolean reported;
+
+		private Borrow(String threadName, Throwable stack) {
+			this.threadName = threadName;
+			this.stack = stack;
+		}
+
+		private String toString(long nowNanos) {
+			return "connection borrowed by thread [" + threadName + "] at " + new Timestamp(startMillis) + ", held for " + TimeUnit.NANOSECONDS.toMillis(nowNanos - startNanos) + " ms";
+		}
+	}
+
+	/**
+	 * A histogram of durations with fixed buckets, from 1 ms to more than 30 s.
+	 */
+	static final class Histogram {
+		private static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+		private static final long[] BOUNDS_NANOS = new long[BOUNDS_MILLIS.length];
+		static {
+			for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+				BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BOUNDS_MILLIS[i]);
+			}
+		}
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos) {
+			int i = 0;
+			while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+				i++;
+			}
+			buckets.incrementAndGet(i);
+			count.increment();
+			totalNanos.add(nanos);
+			long max;
+			while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+				// retry
+			}
+		}
+
+		long getCount() {
+			return count.sum();
+		}
+
+		long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		double getMeanMillis() {
+			long count = getCount();
+			return count == 0 ? 0 : getTotalNanos() / 1000000.0 / count;
+		}
+
+		long getMaxMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+		}
+
+		/** Returns the upper bound of the bucket holding the given percentile, or the maximum for the last bucket. */
+		long getPercentileMillis(double percentile) {
+			long total = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				total += buckets.get(i);
+			}
+			long rank = (long) Math.ceil(total * percentile);
+			long seen = 0;
+			for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(BOUNDS_MILLIS[i], getMaxMillis());
+				}
+			}
+			return getMaxMillis();
+		}
+
+		void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+			count.reset();
+			totalNanos.reset();
+			maxNanos.set(0);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < buckets.length(); i++) {
+				long bucketCount = buckets.get(i);
+				if (bucketCount > 0) {
+					if (sb.length() > 0) {
+						sb.append(", ");
+					}
+					sb.append(i < BOUNDS_MILLIS.length ? "<=" + BOUNDS_MILLIS[i] : ">" + BOUNDS_MILLIS[BOUNDS_MILLIS.length - 1]).append("ms: ").append(bucketCount);
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
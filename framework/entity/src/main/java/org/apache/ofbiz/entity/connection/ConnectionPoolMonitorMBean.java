@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.connection;
+
+/**
+ * The JMX interface of {@link ConnectionPoolMonitor}, registered as
+ * <code>org.apache.ofbiz.entity:type=ConnectionPool,name=&lt;helper name&gt;</code>.
+ */
+public interface ConnectionPoolMonitorMBean {
+
+	String getName();
+
+	int getNumActive();
+
+	int getNumIdle();
+
+	int getNumWaiters();
+
+	int getMaxTotal();
+
+	int getConfiguredMaxTotal();
+
+	int getAdaptiveMaxTotal();
+
+	long getBorrowCount();
+
+	long getBorrowFailureCount();
+
+	double getMeanBorrowWaitMillis();
+
+	long getMaxBorrowWaitMillis();
+
+	long getBorrowWaitMillis95th();
+
+	String getBorrowWaitHistogram();
+
+	double getMeanHoldMillis();
+
+	long getMaxHoldMillis();
+
+	long getHoldMillis95th();
+
+	String getHoldHistogram();
+
+	int getLeakCount();
+
+	String[] getLeaks();
+
+	long getMaxTotalAdjustmentCount();
+
+	void resetStatistics();
+}
@@ -24,7 +24,6 @@ import org.apache.commons.dbcp2.PoolableConnectionFactory;
 import org.apache.commons.dbcp2.managed.LocalXAConnectionFactory;
 import org.apache.commons.dbcp2.managed.PoolableManagedConnectionFactory;
 import org.apache.commons.dbcp2.managed.XAConnectionFactory;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.entity.GenericEntityConfException;
@@ -153,21 +152,37 @@ public class DBCPConnectionFactory implements ConnectionFactory {
 		poolConfig.setTestOnReturn(jdbcElement.getTestOnReturn());
 		poolConfig.setTestWhileIdle(jdbcElement.getTestWhileIdle());
 
-		GenericObjectPool<PoolableConnection> pool = new GenericObjectPool<PoolableConnection>(factory, poolConfig);
+		MonitoredConnectionPool pool = new MonitoredConnectionPool(cacheKey, factory, poolConfig, jdbcElement);
 		factory.setPool(pool);
 
 		mds = new DebugManagedDataSource(pool, xacf.getTransactionRegistry());
 		mds.setAccessToUnderlyingConnectionAllowed(true);
 
 		// cache the pool
-		dsCache.putIfAbsent(cacheKey, mds);
+		if (dsCache.putIfAbsent(cacheKey, mds) == null) {
+			pool.getMonitor().start();
+		}
 		mds = dsCache.get(cacheKey);
 
 		return TransactionUtil.getCursorConnection(helperInfo, mds.getConnection());
 	}
 
+	/**
+	 * Returns the metrics of the pool of a helper, or <code>null</code> if the helper has no pool.
+	 */
+	public static ConnectionPoolMonitor getPoolMonitor(String helperName) {
+		DebugManagedDataSource mds = dsCache.get(helperName);
+		return mds == null ? null : mds.getMonitor();
+	}
+
 	public void closeAll() {
-		// no methods on the pool to shutdown; so just clearing for GC
+		// no methods on the pool to shutdown; so just stopping the monitors and clearing for GC
+		for (DebugManagedDataSource mds : dsCache.values()) {
+			ConnectionPoolMonitor monitor = mds.getMonitor();
+			if (monitor != null) {
+				monitor.stop();
+			}
+		}
 		dsCache.clear();
 	}
 
@@ -64,7 +64,21 @@ public class DebugManagedDataSource extends ManagedDataSource {
 			dataSourceInfo.put("poolMinEvictableIdleTimeMillis", objectPool.getMinEvictableIdleTimeMillis());
 			dataSourceInfo.put("poolMinIdle", objectPool.getMinIdle());
 		}
+		ConnectionPoolMonitor monitor = getMonitor();
+		if (monitor != null) {
+			dataSourceInfo.putAll(monitor.getInfo());
+		}
 		return dataSourceInfo;
 	}
 
+	/**
+	 * Returns the metrics of the pool, or <code>null</code> if the pool is not monitored.
+	 */
+	public ConnectionPoolMonitor getMonitor() {
+		if (super.getPool() instanceof MonitoredConnectionPool) {
+			return ((MonitoredConnectionPool) super.getPool()).getMonitor();
+		}
+		return null;
+	}
+
 }
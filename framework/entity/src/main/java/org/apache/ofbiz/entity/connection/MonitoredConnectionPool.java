@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.connection;
+
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.dbcp2.PoolableConnectionFactory;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.ofbiz.entity.config.model.InlineJdbc;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A connection pool reporting its borrows and returns to a {@link ConnectionPoolMonitor}.
+ */
+public class MonitoredConnectionPool extends GenericObjectPool<PoolableConnection> {
+
+	private final ConnectionPoolMonitor monitor;
+
+	public MonitoredConnectionPool(String name, PoolableConnectionFactory factory, GenericObjectPoolConfig config, InlineJdbc jdbcElement) {
+		super(factory, config);
+		this.monitor = new ConnectionPoolMonitor(name, this, jdbcElement);
+	}
+
+	/**
+	 * Creates a pool whose monitor settings are given instead of read from an <code>&lt;inline-jdbc&gt;</code> element.
+	 */
+	MonitoredConnectionPool(String name, PoolableConnectionFactory factory, GenericObjectPoolConfig config, long monitorInterval, long leakThresholdMillis,
+	                        int stackSampleRate, int adaptiveMaxTotal, long waitThresholdMillis) {
+		super(factory, config);
+		this.monitor = new ConnectionPoolMonitor(name, this, monitorInterval, leakThresholdMillis, stackSampleRate, adaptiveMaxTotal, waitThresholdMillis);
+	}
+
+	public ConnectionPoolMonitor getMonitor() {
+		return monitor;
+	}
+
+	@Override
+	public PoolableConnection borrowObject(long borrowMaxWaitMillis) throws Exception {
+		long startNanos = System.nanoTime();
+		PoolableConnection connection;
+		try {
+			connection = super.borrowObject(borrowMaxWaitMillis);
+		} catch (NoSuchElementException e) {
+			monitor.borrowFailed(System.nanoTime() - startNanos);
+			throw e;
+		}
+		monitor.borrowed(connection, System.nanoTime() - startNanos);
+		return connection;
+	}
+
+	@Override
+	public void returnObject(PoolableConnection connection) {
+		monitor.returned(connection);
+		super.returnObject(connection);
+	}
+
+	@Override
+	public void invalidateObject(PoolableConnection connection) throws Exception {
+		monitor.returned(connection);
+		super.invalidateObject(connection);
+	}
+
+	@Override
+	public void close() {
+		monitor.stop();
+		super.close();
+	}
+}
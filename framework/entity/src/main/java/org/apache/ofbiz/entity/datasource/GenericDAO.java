@@ -26,6 +26,7 @@ import org.apache.ofbiz.entity.condition.EntityConditionParam;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.datasource.SelectStatementCache.SelectStatement;
 import org.apache.ofbiz.entity.jdbc.DatabaseUtil;
 import org.apache.ofbiz.entity.jdbc.SQLProcessor;
 import org.apache.ofbiz.entity.jdbc.SqlJdbcUtil;
@@ -52,11 +53,15 @@ public class GenericDAO {
 	private final GenericHelperInfo helperInfo;
 	private final ModelFieldTypeReader modelFieldTypeReader;
 	private final Datasource datasource;
+	private final ReadReplicaRouter readReplicaRouter;
+	private final SelectStatementCache selectStatementCache;
 
 	public GenericDAO(GenericHelperInfo helperInfo) {
 		this.helperInfo = helperInfo;
 		this.modelFieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(helperInfo.getHelperBaseName());
 		this.datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+		this.readReplicaRouter = ReadReplicaRouter.getRouter(helperInfo);
+		this.selectStatementCache = SelectStatementCache.getCache(helperInfo, datasource.getSelectStatementCacheSize());
 	}
 
 	public static GenericDAO getGenericDAO(GenericHelperInfo helperInfo) {
@@ -460,10 +465,29 @@ public class GenericDAO {
 
 	/* ====================================================================== */
 
+	/**
+	 * Returns the SQLProcessor of a read-only query, connected to a read replica of the datasource when possible.
+	 */
+	private SQLProcessor getReadSQLProcessor(Delegator delegator) throws GenericEntityException {
+		if (readReplicaRouter != null) {
+			GenericHelperInfo replicaHelperInfo = readReplicaRouter.getReadHelperInfo();
+			if (replicaHelperInfo != null) {
+				SQLProcessor sqlP = new SQLProcessor(delegator, replicaHelperInfo);
+				try {
+					sqlP.getConnection();
+					return sqlP;
+				} catch (GenericEntityException e) {
+					readReplicaRouter.markUnavailable(replicaHelperInfo, e);
+				}
+			}
+		}
+		return new SQLProcessor(delegator, helperInfo);
+	}
+
 	/* ====================================================================== */
 
 	public void select(GenericEntity entity) throws GenericEntityException {
-		SQLProcessor sqlP = new SQLProcessor(entity.getDelegator(), helperInfo);
+		SQLProcessor sqlP = getReadSQLProcessor(entity.getDelegator());
 
 		try {
 			select(entity, sqlP);
@@ -563,7 +587,7 @@ public class GenericDAO {
 		sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
 		sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
 
-		SQLProcessor sqlP = new SQLProcessor(entity.getDelegator(), helperInfo);
+		SQLProcessor sqlP = getReadSQLProcessor(entity.getDelegator());
 
 		try {
 			sqlP.prepareStatement(sqlBuffer.toString(), true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
@@ -608,11 +632,6 @@ public class GenericDAO {
 			return null;
 		}
 
-		ModelViewEntity modelViewEntity = null;
-		if (modelEntity instanceof ModelViewEntity) {
-			modelViewEntity = (ModelViewEntity) modelEntity;
-		}
-
 		// if no find options passed, use default
 		if (findOptions == null) findOptions = new EntityFindOptions();
 
@@ -623,6 +642,70 @@ public class GenericDAO {
 			Debug.logVerbose("Doing selectListIteratorByCondition with whereEntityCondition: " + whereEntityCondition, module);
 		}
 
+		SelectStatement statement = null;
+		SelectStatementCache.Lookup lookup = null;
+		if (selectStatementCache != null) {
+			lookup = selectStatementCache.lookup(delegator, modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions);
+			if (lookup != null) {
+				statement = lookup.getStatement();
+			}
+		}
+		if (statement == null) {
+			long startNanos = System.nanoTime();
+			statement = makeSelectStatement(modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions);
+			if (lookup != null) {
+				lookup.store(modelEntity, statement, System.nanoTime() - startNanos);
+			}
+		}
+		String sql = statement.sql;
+		List<ModelField> selectFields = statement.selectFields;
+		List<EntityConditionParam> whereEntityConditionParams = statement.whereParams;
+		List<EntityConditionParam> havingEntityConditionParams = statement.havingParams;
+
+		SQLProcessor sqlP = getReadSQLProcessor(delegator);
+		sqlP.prepareStatement(sql, findOptions.getSpecifyTypeAndConcur(), findOptions.getResultSetType(),
+				findOptions.getResultSetConcurrency(), findOptions.getFetchSize(), findOptions.getMaxRows());
+
+		if (verboseOn) {
+			// put this inside an if statement so that we don't have to generate the string when not used...
+			Debug.logVerbose("Setting the whereEntityConditionParams: " + whereEntityConditionParams, module);
+		}
+		// set all of the values from the Where EntityCondition
+		for (EntityConditionParam whereEntityConditionParam : whereEntityConditionParams) {
+			SqlJdbcUtil.setValue(sqlP, whereEntityConditionParam.getModelField(), modelEntity.getEntityName(), whereEntityConditionParam.getFieldValue(), modelFieldTypeReader);
+		}
+		if (verboseOn) {
+			// put this inside an if statement so that we don't have to generate the string when not used...
+			Debug.logVerbose("Setting the havingEntityConditionParams: " + havingEntityConditionParams, module);
+		}
+		// set all of the values from the Having EntityCondition
+		for (EntityConditionParam havingEntityConditionParam : havingEntityConditionParams) {
+			SqlJdbcUtil.setValue(sqlP, havingEntityConditionParam.getModelField(), modelEntity.getEntityName(), havingEntityConditionParam.getFieldValue(), modelFieldTypeReader);
+		}
+
+		long queryStartTime = 0;
+		if (Debug.timingOn()) {
+			queryStartTime = System.currentTimeMillis();
+		}
+		sqlP.executeQuery();
+		if (Debug.timingOn()) {
+			long queryEndTime = System.currentTimeMillis();
+			long queryTotalTime = queryEndTime - queryStartTime;
+			if (queryTotalTime > 150) {
+				Debug.logTiming("Ran query in " + queryTotalTime + " milli-seconds: " + " EntityName: " + modelEntity.getEntityName() + " Sql: " + sql + " where clause:" + whereEntityConditionParams, module);
+			}
+		}
+		return new EntityListIterator(sqlP, modelEntity, selectFields, modelFieldTypeReader, this, whereEntityCondition, havingEntityCondition, findOptions.getDistinct());
+	}
+
+	private SelectStatement makeSelectStatement(ModelEntity modelEntity, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition,
+	                                            Collection<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions) throws GenericEntityException {
+		ModelViewEntity modelViewEntity = null;
+		if (modelEntity instanceof ModelViewEntity) {
+			modelViewEntity = (ModelViewEntity) modelEntity;
+		}
+		boolean verboseOn = Debug.verboseOn();
+
 		// make two ArrayLists of fields, one for fields to select and the other for where clause fields (to find by)
 		List<ModelField> selectFields = new LinkedList<ModelField>();
 		if (UtilValidate.isNotEmpty(fieldsToSelect)) {
@@ -736,41 +819,8 @@ public class GenericDAO {
 
 		// make the final SQL String
 		String sql = sqlBuffer.toString();
-
-		SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo);
-		sqlP.prepareStatement(sql, findOptions.getSpecifyTypeAndConcur(), findOptions.getResultSetType(),
-				findOptions.getResultSetConcurrency(), findOptions.getFetchSize(), findOptions.getMaxRows());
-
-		if (verboseOn) {
-			// put this inside an if statement so that we don't have to generate the string when not used...
-			Debug.logVerbose("Setting the whereEntityConditionParams: " + whereEntityConditionParams, module);
-		}
-		// set all of the values from the Where EntityCondition
-		for (EntityConditionParam whereEntityConditionParam : whereEntityConditionParams) {
-			SqlJdbcUtil.setValue(sqlP, whereEntityConditionParam.getModelField(), modelEntity.getEntityName(), whereEntityConditionParam.getFieldValue(), modelFieldTypeReader);
-		}
-		if (verboseOn) {
-			// put this inside an if statement so that we don't have to generate the string when not used...
-			Debug.logVerbose("Setting the havingEntityConditionParams: " + havingEntityConditionParams, module);
-		}
-		// set all of the values from the Having EntityCondition
-		for (EntityConditionParam havingEntityConditionParam : havingEntityConditionParams) {
-			SqlJdbcUtil.setValue(sqlP, havingEntityConditionParam.getModelField(), modelEntity.getEntityName(), havingEntityConditionParam.getFieldValue(), modelFieldTypeReader);
-		}
-
-		long queryStartTime = 0;
-		if (Debug.timingOn()) {
-			queryStartTime = System.currentTimeMillis();
-		}
-		sqlP.executeQuery();
-		if (Debug.timingOn()) {
-			long queryEndTime = System.currentTimeMillis();
-			long queryTotalTime = queryEndTime - queryStartTime;
-			if (queryTotalTime > 150) {
-				Debug.logTiming("Ran query in " + queryTotalTime + " milli-seconds: " + " EntityName: " + modelEntity.getEntityName() + " Sql: " + sql + " where clause:" + whereEntityConditionParams, module);
-			}
-		}
-		return new EntityListIterator(sqlP, modelEntity, selectFields, modelFieldTypeReader, this, whereEntityCondition, havingEntityCondition, findOptions.getDistinct());
+		boolean cacheable = UtilValidate.isEmpty(viewWhereConditions) && UtilValidate.isEmpty(viewHavingConditions) && UtilValidate.isEmpty(viewOrderByList);
+		return new SelectStatement(sql, selectFields, whereEntityConditionParams, havingEntityConditionParams, cacheable);
 	}
 
 	@Deprecated
@@ -880,7 +930,7 @@ public class GenericDAO {
 
 	public List<GenericValue> selectByMultiRelation(GenericValue value, ModelRelation modelRelationOne, ModelEntity modelEntityOne,
 	                                                ModelRelation modelRelationTwo, ModelEntity modelEntityTwo, List<String> orderBy) throws GenericEntityException {
-		SQLProcessor sqlP = new SQLProcessor(value.getDelegator(), helperInfo);
+		SQLProcessor sqlP = getReadSQLProcessor(value.getDelegator());
 
 		// get the tables names
 		String atable = modelEntityOne.getTableName(datasource);
@@ -1080,7 +1130,7 @@ public class GenericDAO {
 		String sql = sqlBuffer.toString();
 		if (Debug.verboseOn()) Debug.logVerbose("Count select sql: " + sql, module);
 
-		SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo);
+		SQLProcessor sqlP = getReadSQLProcessor(delegator);
 		sqlP.prepareStatement(sql, findOptions.getSpecifyTypeAndConcur(), findOptions.getResultSetType(),
 				findOptions.getResultSetConcurrency(), findOptions.getFetchSize(), findOptions.getMaxRows());
 		if (verboseOn) {
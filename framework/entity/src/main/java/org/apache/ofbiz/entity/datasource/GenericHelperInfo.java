@@ -32,6 +32,7 @@ public final class GenericHelperInfo {
 	private String overrideJdbcUri = "";
 	private String overrideUsername = "";
 	private String overridePassword = "";
+	private String readReplicaName = "";
 	private String helperFullName = "";
 
 	public GenericHelperInfo(String entityGroupName, String helperBaseName) {
@@ -59,10 +60,30 @@ public final class GenericHelperInfo {
 	public void setTenantId(String tenantId) {
 		if (tenantId != null) {
 			this.tenantId = tenantId;
-			helperFullName = helperBaseName.concat("#").concat(tenantId);
+			updateHelperFullName();
 		}
 	}
 
+	/**
+	 * Returns the name of the <code>&lt;read-replica&gt;</code> of the datasource this helper connects to,
+	 * or an empty string for the datasource itself.
+	 */
+	public String getReadReplicaName() {
+		return readReplicaName;
+	}
+
+	public void setReadReplicaName(String readReplicaName) {
+		if (readReplicaName != null) {
+			this.readReplicaName = readReplicaName;
+			updateHelperFullName();
+		}
+	}
+
+	private void updateHelperFullName() {
+		String fullName = tenantId.isEmpty() ? helperBaseName : helperBaseName.concat("#").concat(tenantId);
+		helperFullName = readReplicaName.isEmpty() ? fullName : fullName.concat("@").concat(readReplicaName);
+	}
+
 	public String getOverrideJdbcUri() {
 		return overrideJdbcUri;
 	}
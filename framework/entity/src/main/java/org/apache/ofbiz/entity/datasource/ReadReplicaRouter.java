@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.datasource;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.GenericEntityConfException;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.config.model.ReadReplica;
+import org.apache.ofbiz.entity.connection.DBCPConnectionFactory;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionFactoryLoader;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+import javax.transaction.Transaction;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the read-only queries of a datasource to its <code>&lt;read-replica&gt;</code> elements.
+ * <p>A query is sent to a read replica when it is done outside of a transaction: either there is no
+ * transaction at all, or the delegator began a transaction only for this query (see
+ * {@link #beginReplicaRead()}). The reads filling the entity cache and the reads done between
+ * {@link #beginPrimaryRead()} and {@link #endPrimaryRead()} (see <code>EntityQuery.fromPrimary()</code>)
+ * always use the datasource itself.</p>
+ * <p>The replicas are checked every <code>read-replica-check-interval</code> milliseconds: a replica that
+ * can't be reached, or whose <code>read-replica-lag-query</code> returns more than
+ * <code>read-replica-max-lag</code> seconds, is not used until the next successful check. When no
+ * replica is available the queries use the datasource.</p>
+ */
+public final class ReadReplicaRouter {
+
+	public static final String module = ReadReplicaRouter.class.getName();
+
+	private static final ThreadLocal<int[]> primaryReads = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+	private static final ThreadLocal<int[]> replicaReads = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	private final String datasourceName;
+	private final List<Replica> replicas;
+	private final boolean leastLoaded;
+	private final String lagQuery;
+	private final int maxLag;
+	private final long checkInterval;
+	private final AtomicInteger nextReplica = new AtomicInteger();
+
+	private ReadReplicaRouter(GenericHelperInfo helperInfo, Datasource datasource) {
+		this.datasourceName = datasource.getName();
+		List<Replica> replicas = new ArrayList<Replica>(datasource.getReadReplicaList().size());
+		for (ReadReplica readReplica : datasource.getReadReplicaList()) {
+			replicas.add(new Replica(helperInfo, datasource, readReplica));
+		}
+		this.replicas = Collections.unmodifiableList(replicas);
+		this.leastLoaded = "least-loaded".equals(datasource.getReadReplicaSelection());
+		this.lagQuery = datasource.getReadReplicaLagQuery();
+		this.maxLag = datasource.getReadReplicaMaxLag();
+		this.checkInterval = datasource.getReadReplicaCheckInterval();
+	}
+
+	/**
+	 * Returns the router of the datasource of a helper, or <code>null</code> if the datasource has no read replica.
+	 * The datasources of tenants (whose jdbc-uri is overridden) have no read replica.
+	 */
+	public static ReadReplicaRouter getRouter(GenericHelperInfo helperInfo) {
+		if (!helperInfo.getReadReplicaName().isEmpty() || !helperInfo.getOverrideJdbcUri().isEmpty()) {
+			return null;
+		}
+		Datasource datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+		if (datasource == null || datasource.getReadReplicaList().isEmpty()) {
+			return null;
+		}
+		return new ReadReplicaRouter(helperInfo, datasource);
+	}
+
+	/**
+	 * Marks the beginning of a read that may be done on a read replica, even if a transaction is in place.
+	 * Must be followed by a call to {@link #endReplicaRead()} in a finally block.
+	 */
+	public static void beginReplicaRead() {
+		replicaReads.get()[0]++;
+	}
+
+	public static void endReplicaRead() {
+		replicaReads.get()[0]--;
+	}
+
+	/**
+	 * Marks the beginning of reads that must be done on the datasource itself, for instance to read the
+	 * changes just committed. Must be followed by a call to {@link #endPrimaryRead()} in a finally block.
+	 */
+	public static void beginPrimaryRead() {
+		primaryReads.get()[0]++;
+	}
+
+	public static void endPrimaryRead() {
+		primaryReads.get()[0]--;
+	}
+
+	/**
+	 * Returns the helper of the read replica to use for a read-only query done by the current thread,
+	 * or <code>null</code> if the query must be done on the datasource itself.
+	 */
+	public GenericHelperInfo getReadHelperInfo() {
+		if (primaryReads.get()[0] > 0) {
+			return null;
+		}
+		if (replicaReads.get()[0] == 0) {
+			try {
+				if (TransactionUtil.isTransactionInPlace()) {
+					return null;
+				}
+			} catch (GenericTransactionException e) {
+				return null;
+			}
+		}
+		Replica selected = null;
+		int size = replicas.size();
+		if (leastLoaded) {
+			int selectedActive = Integer.MAX_VALUE;
+			for (Replica replica : replicas) {
+				if (isAvailable(replica)) {
+					int active = replica.getActiveConnections();
+					if (active < selectedActive) {
+						selected = replica;
+						selectedActive = active;
+					}
+				}
+			}
+		} else {
+			int start = nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+			for (int i = 0; i < size && selected == null; i++) {
+				Replica replica = replicas.get((start + i) % size);
+				if (isAvailable(replica)) {
+					selected = replica;
+				}
+			}
+		}
+		return selected == null ? null : selected.helperInfo;
+	}
+
+	/**
+	 * Marks a read replica as unavailable until its next check, called when a connection to it could not be obtained.
+	 */
+	public void markUnavailable(GenericHelperInfo replicaHelperInfo, Throwable cause) {
+		for (Replica replica : replicas) {
+			if (replica.helperInfo == replicaHelperInfo) {
+				if (replica.available) {
+					Debug.logWarning(cause, "Read replica [" + replica.name + "] of datasource [" + datasourceName + "] is not available, using the datasource", module);
+				}
+				replica.available = false;
+				replica.checkedAt = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private boolean isAvailable(Replica replica) {
+		long now = System.currentTimeMillis();
+		if (now - replica.checkedAt >= checkInterval && replica.checking.compareAndSet(false, true)) {
+			try {
+				check(replica);
+			} finally {
+				replica.checkedAt = System.currentTimeMillis();
+				replica.checking.set(false);
+			}
+		}
+		return replica.available;
+	}
+
+	private void check(Replica replica) {
+		// the check must not be enlisted in the transaction of the query
+		Transaction parentTransaction = null;
+		try {
+			if (TransactionUtil.isTransactionInPlace()) {
+				parentTransaction = TransactionUtil.suspend();
+			}
+			checkConnection(replica);
+		} catch (GenericTransactionException e) {
+			Debug.logWarning(e, "Could not check read replica [" + replica.name + "] of datasource [" + datasourceName + "]", module);
+		} finally {
+			try {
+				TransactionUtil.resume(parentTransaction);
+			} catch (GenericTransactionException e) {
+				Debug.logError(e, "Could not resume the transaction after checking read replica [" + replica.name + "]", module);
+			}
+		}
+	}
+
+	private void checkConnection(Replica replica) {
+		boolean available;
+		try (Connection connection = TransactionFactoryLoader.getInstance().getConnection(replica.helperInfo)) {
+			if (connection == null) {
+				throw new SQLException("No connection");
+			}
+			if (lagQuery.isEmpty()) {
+				available = connection.isValid(5);
+			} else {
+				try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(lagQuery)) {
+					double lag = resultSet.next() ? resultSet.getDouble(1) : 0;
+					available = lag <= maxLag;
+					if (!available && replica.available) {
+						Debug.logWarning("Read replica [" + replica.name + "] of datasource [" + datasourceName + "] lags " + lag + " seconds behind, using the datasource", module);
+					}
+				}
+			}
+		} catch (SQLException | GenericEntityException e) {
+			if (replica.available) {
+				Debug.logWarning(e, "Read replica [" + replica.name + "] of datasource [" + datasourceName + "] is not available, using the datasource", module);
+			}
+			available = false;
+		}
+		if (available && !replica.available) {
+			Debug.logInfo("Read replica [" + replica.name + "] of datasource [" + datasourceName + "] is available", module);
+		}
+		replica.available = available;
+	}
+
+	private static final class Replica {
+		private final String name;
+		private final GenericHelperInfo helperInfo;
+		private final AtomicBoolean checking = new AtomicBoolean();
+		private volatile boolean available = true;
+		private volatile long checkedAt;
+
+		private Replica(GenericHelperInfo primaryHelperInfo, Datasource datasource, ReadReplica readReplica) {
+			this.name = readReplica.getName();
+			this.helperInfo = new GenericHelperInfo(primaryHelperInfo.getEntityGroupName(), primaryHelperInfo.getHelperBaseName());
+			this.helperInfo.setReadReplicaName(readReplica.getName());
+			this.helperInfo.setOverrideJdbcUri(readReplica.getJdbcUri());
+			this.helperInfo.setOverrideUsername(readReplica.getJdbcUsername());
+			try {
+				this.helperInfo.setOverridePassword(EntityConfig.getJdbcPassword(readReplica, datasource.getInlineJdbc()));
+			} catch (GenericEntityConfException e) {
+				Debug.logError(e, "Could not get the password of read replica [" + name + "] of datasource [" + datasource.getName() + "]", module);
+			}
+		}
+
+		private int getActiveConnections() {
+			Object active = DBCPConnectionFactory.getDataSourceInfo(helperInfo.getHelperFullName()).get("poolNumActive");
+			return active instanceof Integer ? (Integer) active : 0;
+		}
+	}
+}
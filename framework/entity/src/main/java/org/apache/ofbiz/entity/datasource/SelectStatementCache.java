@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.datasource;
+
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionParam;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelField;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the SELECT statements made by {@link GenericDAO#selectListIteratorByCondition} by shape of their query:
+ * entity, selected fields, shape of the where and having conditions (see {@link EntityCondition#appendShape}),
+ * order by, distinct, offset and limit. A query of a known shape only binds its values to the cached SQL.
+ * <p>The queries on view entities with an <code>entity-condition</code> and on dynamic view entities are not cached,
+ * nor the queries whose conditions can't tell their shape (date filters, functions, sub-selects...). The first
+ * time a shape is seen, the values it extracts must be the ones bound by the generated SQL, otherwise the shape
+ * is remembered as not cacheable.</p>
+ */
+public final class SelectStatementCache {
+
+	public static final String module = SelectStatementCache.class.getName();
+	private static final ConcurrentHashMap<String, SelectStatementCache> caches = new ConcurrentHashMap<String, SelectStatementCache>();
+
+	private final String helperName;
+	private final UtilCache<String, CachedStatement> statements;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder notCacheable = new LongAdder();
+	private final LongAdder generationNanos = new LongAdder();
+	private final LongAdder savedNanos = new LongAdder();
+	private final LongAdder hitLookupNanos = new LongAdder();
+
+	private SelectStatementCache(String helperName, int sizeLimit) {
+		this.helperName = helperName;
+		this.statements = UtilCache.createUtilCache("entity.SelectStatementCache." + helperName, sizeLimit, 0);
+	}
+
+	/**
+	 * Returns the cache of a helper, or <code>null</code> if its datasource has a <code>select-statement-cache-size</code> of 0.
+	 */
+	static SelectStatementCache getCache(GenericHelperInfo helperInfo, int sizeLimit) {
+		if (sizeLimit <= 0) {
+			return null;
+		}
+		String helperName = helperInfo.getHelperFullName();
+		SelectStatementCache cache = caches.get(helperName);
+		if (cache == null) {
+			caches.putIfAbsent(helperName, new SelectStatementCache(helperName, sizeLimit));
+			cache = caches.get(helperName);
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the statistics of the caches by helper name: hits, misses, not cacheable queries, hit rate,
+	 * the time spent generating SQL on misses, the time the hits would have spent generating SQL (estimated
+	 * from the generation time of their statement) and the time spent looking up the hits.
+	 */
+	public static Map<String, Map<String, Object>> getStatistics() {
+		Map<String, Map<String, Object>> statistics = new TreeMap<String, Map<String, Object>>();
+		for (SelectStatementCache cache : caches.values()) {
+			statistics.put(cache.helperName, cache.getCacheStatistics());
+		}
+		return statistics;
+	}
+
+	public Map<String, Object> getCacheStatistics() {
+		Map<String, Object> statistics = new HashMap<String, Object>();
+		long hitCount = hits.sum();
+		long missCount = misses.sum();
+		statistics.put("size", statements.size());
+		statistics.put("hits", hitCount);
+		statistics.put("misses", missCount);
+		statistics.put("notCacheable", notCacheable.sum());
+		statistics.put("hitRate", hitCount + missCount == 0 ? 0 : hitCount * 100.0 / (hitCount + missCount));
+		statistics.put("generationMillis", TimeUnit.NANOSECONDS.toMillis(generationNanos.sum()));
+		statistics.put("savedMillis", TimeUnit.NANOSECONDS.toMillis(savedNanos.sum()));
+		statistics.put("hitLookupMillis", TimeUnit.NANOSECONDS.toMillis(hitLookupNanos.sum()));
+		return statistics;
+	}
+
+	/**
+	 * Looks up the statement of a query.
+	 *
+	 * @return the lookup holding the cached statement bound with the values of the query, or to store the statement
+	 * generated for the query, or <code>null</code> if the query can't be cached
+	 */
+	Lookup lookup(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition,
+	              Collection<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions) {
+		long startNanos = System.nanoTime();
+		// dynamic view entities have a new model for each query
+		if (delegator.getModelReader().getModelEntityNoCheck(modelEntity.getEntityName()) != modelEntity) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder(modelEntity.getEntityName());
+		key.append(findOptions.getDistinct() ? "|D|" : "||").append(findOptions.getOffset()).append(',').append(findOptions.getLimit());
+		key.append("|S");
+		appendList(key, fieldsToSelect);
+		key.append("|O");
+		appendList(key, orderBy);
+		List<Object> whereValues = new ArrayList<Object>();
+		key.append("|W");
+		if (whereEntityCondition != null && !whereEntityCondition.appendShape(key, whereValues)) {
+			notCacheable.increment();
+			return null;
+		}
+		List<Object> havingValues = new ArrayList<Object>();
+		key.append("|H");
+		if (havingEntityCondition != null && !havingEntityCondition.appendShape(key, havingValues)) {
+			notCacheable.increment();
+			return null;
+		}
+		String keyString = key.toString();
+		CachedStatement cachedStatement = statements.get(keyString);
+		if (cachedStatement != null && cachedStatement.modelEntity == modelEntity) {
+			if (cachedStatement.sql == null) {
+				notCacheable.increment();
+				return null;
+			}
+			SelectStatement statement = cachedStatement.bind(whereValues, havingValues);
+			hits.increment();
+			savedNanos.add(cachedStatement.generationNanos);
+			hitLookupNanos.add(System.nanoTime() - startNanos);
+			return new Lookup(keyString, whereValues, havingValues, statement);
+		}
+		misses.increment();
+		return new Lookup(keyString, whereValues, havingValues, null);
+	}
+
+	private static void appendList(StringBuilder key, Collection<String> list) {
+		if (list != null) {
+			for (String item : list) {
+				key.append(item.length()).append(':').append(item);
+			}
+		}
+	}
+
+	private static boolean sameValues(List<EntityConditionParam> params, List<Object> values) {
+		if (params.size() != values.size()) {
+			return false;
+		}
+		for (int i = 0; i < params.size(); i++) {
+			if (params.get(i).getFieldValue() != values.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ModelField[] getFields(List<EntityConditionParam> params) {
+		ModelField[] fields = new ModelField[params.size()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = params.get(i).getModelField();
+		}
+		return fields;
+	}
+
+	/**
+	 * The SQL of a SELECT statement, its selected fields and its where and having parameters.
+	 */
+	static final class SelectStatement {
+		final String sql;
+		final List<ModelField> selectFields;
+		final List<EntityConditionParam> whereParams;
+		final List<EntityConditionParam> havingParams;
+		final boolean cacheable;
+
+		SelectStatement(String sql, List<ModelField> selectFields, List<EntityConditionParam> whereParams, List<EntityConditionParam> havingParams, boolean cacheable) {
+			this.sql = sql;
+			this.selectFields = selectFields;
+			this.whereParams = whereParams;
+			this.havingParams = havingParams;
+			this.cacheable = cacheable;
+		}
+	}
+
+	/**
+	 * The result of {@link SelectStatementCache#lookup}.
+	 */
+	final class Lookup {
+		private final String key;
+		private final List<Object> whereValues;
+		private final List<Object> havingValues;
+		private final SelectStatement statement;
+
+		private Lookup(String key, List<Object> whereValues, List<Object> havingValues, SelectStatement statement) {
+			this.key = key;
+			this.whereValues = whereValues;
+			this.havingValues = havingValues;
+			this.statement = statement;
+		}
+
+		/** Returns the cached statement bound with the values of the query, or <code>null</code> on a miss. */
+		SelectStatement getStatement() {
+			return statement;
+		}
+
+		/** Stores the statement generated for the query of a miss. */
+		void store(ModelEntity modelEntity, SelectStatement generated, long nanos) {
+			generationNanos.add(nanos);
+			if (generated.cacheable && sameValues(generated.whereParams, whereValues) && sameValues(generated.havingParams, havingValues)) {
+				statements.put(key, new CachedStatement(modelEntity, generated.sql, generated.selectFields, getFields(generated.whereParams), getFields(generated.havingParams), nanos));
+			} else {
+				statements.put(key, new CachedStatement(modelEntity, null, null, null, null, 0));
+			}
+		}
+	}
+
+	private static final class CachedStatement {
+		private final ModelEntity modelEntity;
+		private final String sql;
+		private final List<ModelField> selectFields;
+		private final ModelField[] whereFields;
+		private final ModelField[] havingFields;
+		private final long generationNanos;
+
+		private CachedStatement(ModelEntity modelEntity, String sql, List<ModelField> selectFields, ModelField[] whereFields, ModelField[] havingFields, long generationNanos) {
+			this.modelEntity = modelEntity;
+			this.sql = sql;
+			this.selectFields = selectFields;
+			this.whereFields = whereFields;
+			this.havingFields = havingFields;
+			this.generationNanos = generationNanos;
+		}
+
+		private SelectStatement bind(List<Object> whereValues, List<Object> havingValues) {
+			return new SelectStatement(sql, selectFields, bind(whereFields, whereValues), bind(havingFields, havingValues), true);
+		}
+
+		private static List<EntityConditionParam> bind(ModelField[] fields, List<Object> values) {
+			List<EntityConditionParam> params = new ArrayList<EntityConditionParam>(fields.length);
+			for (int i = 0; i < fields.length; i++) {
+				params.add(new EntityConditionParam(fields[i], values.get(i)));
+			}
+			return params;
+		}
+	}
+}
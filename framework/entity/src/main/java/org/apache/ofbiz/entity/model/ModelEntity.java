@@ -30,6 +30,8 @@ import org.apache.ofbiz.entity.model.ModelIndex.Field;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.*;
@@ -56,8 +58,9 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 	/**
 	 * Synchronization object used to control access to the ModelField collection objects.
 	 * A single lock is used for all ModelField collections so collection updates are atomic.
+	 * Not serialized, a new lock is created when the entity model is read from a snapshot.
 	 */
-	private final Object fieldsLock = new Object();
+	private transient Object fieldsLock = new Object();
 	/**
 	 * Model fields in the order they were defined. This list duplicates the values in fieldsMap, but
 	 * we must keep the list in its original sequence for SQL DISTINCT operations to work properly.
@@ -269,6 +272,11 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 		}
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.fieldsLock = new Object();
+	}
+
 	private void internalAddField(ModelField newField, List<String> pkFieldNames) {
 		if (!newField.getIsPk()) {
 			this.nopks.add(newField);
@@ -823,8 +831,12 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 	}
 
 	public void addViewEntity(ModelViewEntity view) {
+		addViewEntity(view.getEntityName());
+	}
+
+	void addViewEntity(String viewEntityName) {
 		synchronized (viewEntities) {
-			this.viewEntities.add(view.getEntityName());
+			this.viewEntities.add(viewEntityName);
 		}
 	}
 
@@ -255,6 +255,8 @@ public class ModelEntityChecker {
 
 	public static void checkEntities(Delegator delegator, List<String> warningList) throws GenericEntityException {
 		ModelReader reader = delegator.getModelReader();
+		// builds all the entities of a lazy loading reader, with the same checks as an eager load
+		reader.getEntityCache();
 
 		Set<String> reservedWords = new HashSet<String>();
 		if (Debug.infoOn()) {
@@ -24,6 +24,7 @@ import org.apache.ofbiz.base.util.UtilXml;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -152,7 +153,7 @@ public final class ModelIndex extends ModelChild {
 
 	public enum Function {LOWER, UPPER}
 
-	public static final class Field {
+	public static final class Field implements Serializable {
 		private final String fieldName;
 		private final Function function;
 
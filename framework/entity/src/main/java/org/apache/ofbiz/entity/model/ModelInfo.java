@@ -24,6 +24,7 @@ import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -31,7 +32,9 @@ import java.util.TimeZone;
  * An object that models the <code>&lt;entitymodel&gt;</code> child elements that provide default values.
  */
 @ThreadSafe
-public final class ModelInfo {
+public final class ModelInfo implements Serializable {
+
+	private static final long serialVersionUID = -1836682299296466721L;
 
 	public static final ModelInfo DEFAULT = new ModelInfo("None", "None", getCopyrightString(), "None", "1.0", "");
 	/**
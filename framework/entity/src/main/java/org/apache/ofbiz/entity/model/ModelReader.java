@@ -19,10 +19,13 @@
 package org.apache.ofbiz.entity.model;
 
 import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
+import org.apache.ofbiz.base.config.ModelSnapshot;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StartupTimer;
 import org.apache.ofbiz.base.util.UtilTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
@@ -40,6 +43,10 @@ import org.w3c.dom.Node;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Generic Entity - Entity Definition Reader
@@ -75,6 +82,21 @@ public class ModelReader implements Serializable {
 	 */
 	protected Map<String, ResourceHandler> entityResourceHandlerMap;
 
+	/**
+	 * key of the entity model definition files, see {@link ModelSnapshot}
+	 */
+	private String snapshotKey = null;
+
+	/**
+	 * true if entities are built on first use, see the <code>lazy-load</code> attribute of <code>&lt;entity-model-reader&gt;</code>
+	 */
+	private boolean lazyLoad = false;
+
+	/**
+	 * index of the entity definitions not built yet, null when all entities are loaded
+	 */
+	private transient volatile LazyEntityIndex lazyIndex = null;
+
 	private ModelReader(String modelName) throws GenericEntityException {
 		this.modelName = modelName;
 		entityResourceHandlers = new LinkedList<ResourceHandler>();
@@ -86,6 +108,7 @@ public class ModelReader implements Serializable {
 		if (entityModelReaderInfo == null) {
 			throw new GenericEntityConfException("Cound not find an entity-model-reader with the name " + modelName);
 		}
+		this.lazyLoad = entityModelReaderInfo.getLazyLoad();
 
 		// get all of the main resource model stuff, ie specified in the entityengine.xml file
 		for (Resource resourceElement : entityModelReaderInfo.getResourceList()) {
@@ -112,19 +135,87 @@ public class ModelReader implements Serializable {
 		ModelReader reader = readers.get(tempModelName);
 
 		if (reader == null) {
-			reader = new ModelReader(tempModelName);
-			// preload caches...
-			reader.getEntityCache();
+			reader = loadModelReader(tempModelName);
 			reader = readers.putIfAbsentAndGet(tempModelName, reader);
 		}
 		return reader;
 	}
 
+	/**
+	 * Creates a reader of an entity model that is not shared with the delegators, with the entities
+	 * built on first use or all loaded, whatever the <code>lazy-load</code> attribute of the model.
+	 */
+	public static ModelReader createModelReader(String modelName, boolean lazyLoad) throws GenericEntityException {
+		ModelReader reader = new ModelReader(modelName);
+		reader.initSnapshotKey();
+		if (lazyLoad) {
+			reader.lazyLoad = true;
+			reader.indexEntities();
+		} else {
+			reader.lazyLoad = false;
+			reader.getEntityCache();
+		}
+		return reader;
+	}
+
+	private static ModelReader loadModelReader(String modelName) throws GenericEntityException {
+		ModelReader reader = new ModelReader(modelName);
+		// a lazy reader has no snapshot, but the service model snapshots depend on its key
+		reader.initSnapshotKey();
+		if (reader.lazyLoad) {
+			reader.indexEntities();
+			return reader;
+		}
+		if (reader.snapshotKey != null) {
+			long startMillis = System.currentTimeMillis();
+			ModelReader snapshotReader = ModelSnapshot.read("entitymodel-" + modelName, reader.snapshotKey);
+			if (snapshotReader != null) {
+				Debug.logInfo("Loaded entity model [" + modelName + "] from snapshot; #Entities=" + snapshotReader.numEntities + " #ViewEntities=" + snapshotReader.numViewEntities, module);
+				StartupTimer.recordPhaseSince("Entity model [" + modelName + "]", startMillis);
+				return snapshotReader;
+			}
+		}
+		// preload caches...
+		reader.getEntityCache();
+		if (reader.snapshotKey != null) {
+			ModelSnapshot.write("entitymodel-" + modelName, reader.snapshotKey, reader);
+		}
+		return reader;
+	}
+
+	private void initSnapshotKey() {
+		if (ModelSnapshot.isEnabled()) {
+			this.snapshotKey = ModelSnapshot.getSourceKey(this.entityResourceHandlers);
+		}
+	}
+
+	/**
+	 * Returns the key of the entity model definition files this reader was built from,
+	 * or <code>null</code> if model snapshots are disabled or the files could not be read.
+	 */
+	public String getSnapshotKey() {
+		return this.snapshotKey;
+	}
+
+	/**
+	 * Returns <code>true</code> if the entities of this reader are built on first use.
+	 */
+	public boolean isLazyLoad() {
+		return this.lazyLoad;
+	}
+
 	private ModelEntity buildEntity(ResourceHandler entityResourceHandler, Element curEntityElement, int i, ModelInfo def) throws GenericEntityException {
-		boolean isEntity = "entity".equals(curEntityElement.getNodeName());
 		String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
 		boolean redefinedEntity = "true".equals(curEntityElement.getAttribute("redefinition"));
+		registerEntityResource(entityResourceHandler, entityName, entityCache.containsKey(entityName) && !redefinedEntity);
+
+		// utilTimer.timerString("  After entityEntityName -- " + i + " --");
+		// ModelEntity entity = createModelEntity(curEntity, utilTimer);
+
+		return createEntity(entityResourceHandler, curEntityElement, i, def);
+	}
 
+	private void registerEntityResource(ResourceHandler entityResourceHandler, String entityName, boolean alreadyDefined) {
 		// add entityName to appropriate resourceHandlerEntities collection
 		Collection<String> resourceHandlerEntityNames = resourceHandlerEntities.get(entityResourceHandler);
 
@@ -135,7 +226,7 @@ public class ModelReader implements Serializable {
 		resourceHandlerEntityNames.add(entityName);
 
 		// check to see if entity with same name has already been read
-		if (entityCache.containsKey(entityName) && !redefinedEntity) {
+		if (alreadyDefined) {
 			Debug.logWarning("Entity " + entityName +
 					" is defined more than once, most recent will over-write " +
 					"previous definition(s)", module);
@@ -146,10 +237,11 @@ public class ModelReader implements Serializable {
 
 		// add entityName, entityFileName pair to entityResourceHandlerMap map
 		entityResourceHandlerMap.put(entityName, entityResourceHandler);
+	}
 
-		// utilTimer.timerString("  After entityEntityName -- " + i + " --");
-		// ModelEntity entity = createModelEntity(curEntity, utilTimer);
-
+	private ModelEntity createEntity(ResourceHandler entityResourceHandler, Element curEntityElement, int i, ModelInfo def) {
+		boolean isEntity = "entity".equals(curEntityElement.getNodeName());
+		String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
 		ModelEntity modelEntity = null;
 		if (isEntity) {
 			modelEntity = createModelEntity(curEntityElement, null, def);
@@ -180,11 +272,224 @@ public class ModelReader implements Serializable {
 		return modelEntity;
 	}
 
+	private static Callable<Element> createDocumentReaderCallable(final ResourceHandler entityResourceHandler) {
+		return new Callable<Element>() {
+			public Element call() throws Exception {
+				Document document = null;
+				try {
+					document = entityResourceHandler.getDocument();
+				} catch (GenericConfigException e) {
+					throw new GenericEntityConfException("Error getting document from resource handler", e);
+				}
+				if (document == null) {
+					throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
+				}
+				Element docElement = document.getDocumentElement();
+				if (docElement != null) {
+					docElement.normalize();
+				}
+				return docElement;
+			}
+		};
+	}
+
+	/**
+	 * Parses the entity model files in parallel, the document elements are
+	 * returned in the resource handler order.
+	 */
+	private List<Element> readDocumentElements() throws GenericEntityException {
+		List<Future<Element>> futures = new ArrayList<Future<Element>>(entityResourceHandlers.size());
+		for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
+			futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createDocumentReaderCallable(entityResourceHandler)));
+		}
+		List<Element> docElements = new ArrayList<Element>(futures.size());
+		for (Future<Element> future : futures) {
+			docElements.add(getDocumentElement(future));
+		}
+		return docElements;
+	}
+
+	private static Element getDocumentElement(Future<Element> future) throws GenericEntityException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new GenericEntityConfException("Interrupted while reading entity model files", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof GenericEntityException) {
+				throw (GenericEntityException) cause;
+			}
+			throw new GenericEntityConfException("Error reading entity model file", cause);
+		}
+	}
+
+	/**
+	 * Indexes the entity definitions by entity name without building them, used
+	 * when the entities are built on first use.
+	 */
+	private void indexEntities() throws GenericEntityException {
+		long startMillis = System.currentTimeMillis();
+		LazyEntityIndex index = new LazyEntityIndex();
+		Iterator<Element> docElementIt = readDocumentElements().iterator();
+		for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
+			Element docElement = docElementIt.next();
+			if (docElement == null) {
+				continue;
+			}
+			ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
+			for (Element curEntityElement : UtilXml.childElementList(docElement)) {
+				String nodeName = curEntityElement.getNodeName();
+				String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
+				if ("entity".equals(nodeName) || "view-entity".equals(nodeName)) {
+					boolean redefinedEntity = "true".equals(curEntityElement.getAttribute("redefinition"));
+					registerEntityResource(entityResourceHandler, entityName, index.definitions.containsKey(entityName) && !redefinedEntity);
+					index.definitions.put(entityName, new LazyEntityDefinition(entityResourceHandler, curEntityElement, def));
+					if ("entity".equals(nodeName)) {
+						index.addReferences(entityName, curEntityElement);
+					}
+				} else if ("extend-entity".equals(nodeName)) {
+					List<Element> extendEntityElements = index.extendEntityElements.get(entityName);
+					if (extendEntityElements == null) {
+						extendEntityElements = new LinkedList<Element>();
+						index.extendEntityElements.put(entityName, extendEntityElements);
+					}
+					extendEntityElements.add(curEntityElement);
+					index.addReferences(entityName, curEntityElement);
+				}
+			}
+		}
+		for (String entityName : index.extendEntityElements.keySet()) {
+			LazyEntityDefinition definition = index.definitions.get(entityName);
+			if (definition == null || !"entity".equals(definition.element.getNodeName())) {
+				throw new GenericEntityConfException("Entity to extend does not exist: " + entityName);
+			}
+		}
+		for (Map.Entry<String, LazyEntityDefinition> definitionEntry : index.definitions.entrySet()) {
+			if ("view-entity".equals(definitionEntry.getValue().element.getNodeName())) {
+				index.addViewMembers(definitionEntry.getKey(), definitionEntry.getValue().element);
+			}
+		}
+		entityCache = new ConcurrentHashMap<String, ModelEntity>();
+		this.lazyIndex = index;
+		if (Debug.infoOn()) {
+			Debug.logInfo("Indexed entity definitions, entities will be loaded on first use; #Entities+ViewEntities=" + index.definitions.size(), module);
+		}
+		StartupTimer.recordPhaseSince("Entity model [" + modelName + "]", startMillis);
+	}
+
+	/**
+	 * Builds the entities not used yet, after that this reader behaves as if
+	 * all the entities were loaded when it was created.
+	 */
+	private void loadAllEntities(LazyEntityIndex index) throws GenericEntityException {
+		synchronized (this) {
+			if (this.lazyIndex != index) {
+				return;
+			}
+			for (String entityName : new TreeSet<String>(index.definitions.keySet())) {
+				getLazyModelEntity(index, entityName);
+			}
+			this.lazyIndex = null;
+			if (Debug.infoOn()) {
+				Debug.logInfo("Finished loading entities; #Entities=" + numEntities + " #ViewEntities=" + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations + " #AutoRelationships=" + numAutoRelations, module);
+			}
+		}
+	}
+
+	private ModelEntity getLazyModelEntity(LazyEntityIndex index, String entityName) throws GenericEntityException {
+		ModelEntity modelEntity = entityCache.get(entityName);
+		if (modelEntity != null) {
+			return modelEntity;
+		}
+		synchronized (this) {
+			modelEntity = entityCache.get(entityName);
+			if (modelEntity != null || !index.definitions.containsKey(entityName)) {
+				return modelEntity;
+			}
+			if (!index.loading.add(entityName)) {
+				throw new GenericEntityConfException("View entity [" + entityName + "] is a member of itself");
+			}
+			try {
+				modelEntity = getBuiltEntity(index, entityName);
+				if (modelEntity instanceof ModelViewEntity) {
+					// the member entities must be complete before the view fields can be populated
+					ModelViewEntity modelViewEntity = (ModelViewEntity) modelEntity;
+					for (ModelViewEntity.ModelMemberEntity mme : modelViewEntity.getAllModelMemberEntities()) {
+						if (getLazyModelEntity(index, mme.getEntityName()) == null) {
+							throw new GenericEntityConfException("View entity [" + entityName + "] references non-existant member entity [" + mme.getEntityName() + "]");
+						}
+					}
+					// the members already know this view from the index, they may be in use and are not changed
+					modelViewEntity.populateFields(this);
+				}
+				// the reverse relations come from the entities having a type one relation to this one
+				Set<String> referencingEntityNames = index.referencingEntityNames.get(entityName);
+				if (referencingEntityNames != null) {
+					Set<String> orderedMessages = new TreeSet<String>();
+					for (String referencingEntityName : new TreeSet<String>(referencingEntityNames)) {
+						ModelEntity referencingEntity = getBuiltEntity(index, referencingEntityName);
+						if (referencingEntity != null && !(referencingEntity instanceof ModelViewEntity)) {
+							addAutoRelations(referencingEntity, modelEntity, orderedMessages);
+						}
+					}
+					if (Debug.infoOn()) {
+						for (String message : orderedMessages) {
+							Debug.logInfo(message, module);
+						}
+					}
+				}
+				entityCache.put(entityName, modelEntity);
+				index.builtEntities.remove(entityName);
+			} finally {
+				index.loading.remove(entityName);
+			}
+			return modelEntity;
+		}
+	}
+
+	/**
+	 * Returns the entity built from its definition and extensions, the reverse
+	 * relations and view entity fields are not populated yet.
+	 */
+	private ModelEntity getBuiltEntity(LazyEntityIndex index, String entityName) {
+		ModelEntity modelEntity = entityCache.get(entityName);
+		if (modelEntity == null) {
+			modelEntity = index.builtEntities.get(entityName);
+		}
+		if (modelEntity == null) {
+			LazyEntityDefinition definition = index.definitions.get(entityName);
+			if (definition == null) {
+				return null;
+			}
+			modelEntity = createEntity(definition.resourceHandler, definition.element, 0, definition.modelInfo);
+			List<Element> extendEntityElements = index.extendEntityElements.get(entityName);
+			if (extendEntityElements != null) {
+				for (Element extendEntityElement : extendEntityElements) {
+					modelEntity.addExtendEntity(this, extendEntityElement);
+				}
+			}
+			// the views of an entity are set before it is published, as they are when all entities are loaded
+			Set<String> viewEntityNames = index.viewEntityNames.get(entityName);
+			if (viewEntityNames != null) {
+				for (String viewEntityName : viewEntityNames) {
+					modelEntity.addViewEntity(viewEntityName);
+				}
+			}
+			index.builtEntities.put(entityName, modelEntity);
+		}
+		return modelEntity;
+	}
+
 	public Map<String, ModelEntity> getEntityCache() throws GenericEntityException {
+		LazyEntityIndex index = this.lazyIndex;
+		if (index != null) {
+			loadAllEntities(index);
+		}
 		if (entityCache == null) { // don't want to block here
-			synchronized (ModelReader.class) {
+			synchronized (this) {
 				// must check if null again as one of the blocked threads can still enter
 				if (entityCache == null) { // now it's safe
+					long startMillis = System.currentTimeMillis();
 					numEntities = 0;
 					numViewEntities = 0;
 					numFields = 0;
@@ -197,27 +502,16 @@ public class ModelReader implements Serializable {
 
 					UtilTimer utilTimer = new UtilTimer();
 
+					// the entity model files are parsed in parallel, the entities are then built
+					// sequentially in the resource handler order so the result does not depend
+					// on which file is parsed first
+					Iterator<Element> docElementIt = readDocumentElements().iterator();
 					for (ResourceHandler entityResourceHandler : entityResourceHandlers) {
-
-						// utilTimer.timerString("Before getDocument in file " + entityFileName);
-						Document document = null;
-
-						try {
-							document = entityResourceHandler.getDocument();
-						} catch (GenericConfigException e) {
-							throw new GenericEntityConfException("Error getting document from resource handler", e);
-						}
-						if (document == null) {
-							throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
-						}
-
-						// utilTimer.timerString("Before getDocumentElement in " + entityResourceHandler.toString());
-						Element docElement = document.getDocumentElement();
+						Element docElement = docElementIt.next();
 
 						if (docElement == null) {
 							return null;
 						}
-						docElement.normalize();
 						Node curChild = docElement.getFirstChild();
 
 						ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
@@ -323,96 +617,7 @@ public class ModelReader implements Serializable {
 
 						} else {
 							// for entities auto-create many relationships for all type one relationships
-
-							// just in case we add a new relation to the same entity, keep in a separate list and add them at the end
-							List<ModelRelation> newSameEntityRelations = new LinkedList<ModelRelation>();
-
-							Iterator<ModelRelation> relationsIter = curModelEntity.getRelationsIterator();
-							while (relationsIter.hasNext()) {
-								ModelRelation modelRelation = relationsIter.next();
-								if (("one".equals(modelRelation.getType()) || "one-nofk".equals(modelRelation.getType())) && !modelRelation.isAutoRelation()) {
-									ModelEntity relatedEnt = null;
-									try {
-										relatedEnt = this.getModelEntity(modelRelation.getRelEntityName());
-									} catch (GenericModelException e) {
-										throw new GenericModelException("Error getting related entity [" + modelRelation.getRelEntityName() + "] definition from entity [" + curEntityName + "]", e);
-									}
-									if (relatedEnt != null) {
-										// create the new relationship even if one exists so we can show what we are looking for in the info message
-										// don't do relationship to the same entity, unless title is "Parent", then do a "Child" automatically
-										String title = modelRelation.getTitle();
-										if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName()) && "Parent".equals(title)) {
-											title = "Child";
-										}
-										String description = "";
-										String type = "";
-										String relEntityName = curModelEntity.getEntityName();
-										String fkName = "";
-										ArrayList<ModelKeyMap> keyMaps = new ArrayList<ModelKeyMap>();
-										boolean isAutoRelation = true;
-										Set<String> curEntityKeyFields = new HashSet<String>();
-										for (ModelKeyMap curkm : modelRelation.getKeyMaps()) {
-											keyMaps.add(new ModelKeyMap(curkm.getRelFieldName(), curkm.getFieldName()));
-											curEntityKeyFields.add(curkm.getFieldName());
-										}
-										keyMaps.trimToSize();
-										// decide whether it should be one or many by seeing if the key map represents the complete pk of the relEntity
-										if (curModelEntity.containsAllPkFieldNames(curEntityKeyFields)) {
-											// always use one-nofk, we don't want auto-fks getting in for these automatic ones
-											type = "one-nofk";
-											// to keep it clean, remove any additional keys that aren't part of the PK
-											List<String> curPkFieldNames = curModelEntity.getPkFieldNames();
-											Iterator<ModelKeyMap> nrkmIter = keyMaps.iterator();
-											while (nrkmIter.hasNext()) {
-												ModelKeyMap nrkm = nrkmIter.next();
-												String checkField = nrkm.getRelFieldName();
-												if (!curPkFieldNames.contains(checkField)) {
-													nrkmIter.remove();
-												}
-											}
-										} else {
-											type = "many";
-										}
-										ModelRelation newRel = ModelRelation.create(relatedEnt, description, type, title, relEntityName, fkName, keyMaps, isAutoRelation);
-
-										ModelRelation existingRelation = relatedEnt.getRelation(title + curModelEntity.getEntityName());
-										if (existingRelation == null) {
-											numAutoRelations++;
-											if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName())) {
-												newSameEntityRelations.add(newRel);
-											} else {
-												relatedEnt.addRelation(newRel);
-											}
-										} else {
-											if (newRel.equals(existingRelation)) {
-												// don't warn if the target title+entity = current title+entity
-												if (Debug.infoOn() && !(title + curModelEntity.getEntityName()).equals(modelRelation.getTitle() + modelRelation.getRelEntityName())) {
-													//String errorMsg = "Relation already exists to entity [] with title [" + targetTitle + "],from entity []";
-													String message = "Entity [" + relatedEnt.getPackageName() + ":" + relatedEnt.getEntityName() + "] already has identical relationship to entity [" +
-															curModelEntity.getEntityName() + "] title [" + title + "]; would auto-create: type [" +
-															newRel.getType() + "] and fields [" + newRel.keyMapString(",", "") + "]";
-													orderedMessages.add(message);
-												}
-											} else {
-												String message = "Existing relationship with the same name, but different specs found from what would be auto-created for Entity [" + relatedEnt.getEntityName() + "] and relationship to entity [" +
-														curModelEntity.getEntityName() + "] title [" + title + "]; would auto-create: type [" +
-														newRel.getType() + "] and fields [" + newRel.keyMapString(",", "") + "]";
-												Debug.logVerbose(message, module);
-											}
-										}
-									} else {
-										String errorMsg = "Could not find related entity ["
-												+ modelRelation.getRelEntityName() + "], no reverse relation added.";
-										Debug.logWarning(errorMsg, module);
-									}
-								}
-							}
-
-							if (newSameEntityRelations.size() > 0) {
-								for (ModelRelation newRel : newSameEntityRelations) {
-									curModelEntity.addRelation(newRel);
-								}
-							}
+							addAutoRelations(curModelEntity, null, orderedMessages);
 						}
 					}
 					if (Debug.infoOn()) {
@@ -421,12 +626,117 @@ public class ModelReader implements Serializable {
 						}
 						Debug.logInfo("Finished loading entities; #Entities=" + numEntities + " #ViewEntities=" + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations + " #AutoRelationships=" + numAutoRelations, module);
 					}
+					StartupTimer.recordPhaseSince("Entity model [" + modelName + "]", startMillis);
 				}
 			}
 		}
 		return entityCache;
 	}
 
+	/**
+	 * Auto-creates the reverse relations of the type one relations of an entity.
+	 *
+	 * @param curModelEntity The entity whose relations are reversed
+	 * @param onlyRelatedEntity If not null, only the relations to this entity are reversed
+	 * @param orderedMessages Collects the messages about already existing relations
+	 */
+	private void addAutoRelations(ModelEntity curModelEntity, ModelEntity onlyRelatedEntity, Set<String> orderedMessages) throws GenericEntityException {
+		// just in case we add a new relation to the same entity, keep in a separate list and add them at the end
+		List<ModelRelation> newSameEntityRelations = new LinkedList<ModelRelation>();
+
+		Iterator<ModelRelation> relationsIter = curModelEntity.getRelationsIterator();
+		while (relationsIter.hasNext()) {
+			ModelRelation modelRelation = relationsIter.next();
+			if (onlyRelatedEntity != null && !onlyRelatedEntity.getEntityName().equals(modelRelation.getRelEntityName())) {
+				continue;
+			}
+			if (("one".equals(modelRelation.getType()) || "one-nofk".equals(modelRelation.getType())) && !modelRelation.isAutoRelation()) {
+				ModelEntity relatedEnt = onlyRelatedEntity;
+				if (relatedEnt == null) {
+					try {
+						relatedEnt = this.getModelEntity(modelRelation.getRelEntityName());
+					} catch (GenericModelException e) {
+						throw new GenericModelException("Error getting related entity [" + modelRelation.getRelEntityName() + "] definition from entity [" + curModelEntity.getEntityName() + "]", e);
+					}
+				}
+				if (relatedEnt != null) {
+					// create the new relationship even if one exists so we can show what we are looking for in the info message
+					// don't do relationship to the same entity, unless title is "Parent", then do a "Child" automatically
+					String title = modelRelation.getTitle();
+					if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName()) && "Parent".equals(title)) {
+						title = "Child";
+					}
+					String description = "";
+					String type = "";
+					String relEntityName = curModelEntity.getEntityName();
+					String fkName = "";
+					ArrayList<ModelKeyMap> keyMaps = new ArrayList<ModelKeyMap>();
+					boolean isAutoRelation = true;
+					Set<String> curEntityKeyFields = new HashSet<String>();
+					for (ModelKeyMap curkm : modelRelation.getKeyMaps()) {
+						keyMaps.add(new ModelKeyMap(curkm.getRelFieldName(), curkm.getFieldName()));
+						curEntityKeyFields.add(curkm.getFieldName());
+					}
+					keyMaps.trimToSize();
+					// decide whether it should be one or many by seeing if the key map represents the complete pk of the relEntity
+					if (curModelEntity.containsAllPkFieldNames(curEntityKeyFields)) {
+						// always use one-nofk, we don't want auto-fks getting in for these automatic ones
+						type = "one-nofk";
+						// to keep it clean, remove any additional keys that aren't part of the PK
+						List<String> curPkFieldNames = curModelEntity.getPkFieldNames();
+						Iterator<ModelKeyMap> nrkmIter = keyMaps.iterator();
+						while (nrkmIter.hasNext()) {
+							ModelKeyMap nrkm = nrkmIter.next();
+							String checkField = nrkm.getRelFieldName();
+							if (!curPkFieldNames.contains(checkField)) {
+								nrkmIter.remove();
+							}
+						}
+					} else {
+						type = "many";
+					}
+					ModelRelation newRel = ModelRelation.create(relatedEnt, description, type, title, relEntityName, fkName, keyMaps, isAutoRelation);
+
+					ModelRelation existingRelation = relatedEnt.getRelation(title + curModelEntity.getEntityName());
+					if (existingRelation == null) {
+						numAutoRelations++;
+						if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName())) {
+							newSameEntityRelations.add(newRel);
+						} else {
+							relatedEnt.addRelation(newRel);
+						}
+					} else {
+						if (newRel.equals(existingRelation)) {
+							// don't warn if the target title+entity = current title+entity
+							if (Debug.infoOn() && !(title + curModelEntity.getEntityName()).equals(modelRelation.getTitle() + modelRelation.getRelEntityName())) {
+								//String errorMsg = "Relation already exists to entity [] with title [" + targetTitle + "],from entity []";
+								String message = "Entity [" + relatedEnt.getPackageName() + ":" + relatedEnt.getEntityName() + "] already has identical relationship to entity [" +
+										curModelEntity.getEntityName() + "] title [" + title + "]; would auto-create: type [" +
+										newRel.getType() + "] and fields [" + newRel.keyMapString(",", "") + "]";
+								orderedMessages.add(message);
+							}
+						} else {
+							String message = "Existing relationship with the same name, but different specs found from what would be auto-created for Entity [" + relatedEnt.getEntityName() + "] and relationship to entity [" +
+									curModelEntity.getEntityName() + "] title [" + title + "]; would auto-create: type [" +
+									newRel.getType() + "] and fields [" + newRel.keyMapString(",", "") + "]";
+							Debug.logVerbose(message, module);
+						}
+					}
+				} else {
+					String errorMsg = "Could not find related entity ["
+							+ modelRelation.getRelEntityName() + "], no reverse relation added.";
+					Debug.logWarning(errorMsg, module);
+				}
+			}
+		}
+
+		if (newSameEntityRelations.size() > 0) {
+			for (ModelRelation newRel : newSameEntityRelations) {
+				curModelEntity.addRelation(newRel);
+			}
+		}
+	}
+
 	/**
 	 * rebuilds the resourceHandlerEntities Map of Collections based on the current
 	 * entityResourceHandlerMap Map, must be done whenever a manual change is made to the
@@ -477,11 +787,17 @@ public class ModelReader implements Serializable {
 		if (entityName == null) {
 			throw new IllegalArgumentException("Tried to find entity definition for a null entityName");
 		}
-		Map<String, ModelEntity> ec = getEntityCache();
-		if (ec == null) {
-			throw new GenericEntityConfException("ERROR: Unable to load Entity Cache");
+		ModelEntity modelEntity = null;
+		LazyEntityIndex index = this.lazyIndex;
+		if (index != null) {
+			modelEntity = getLazyModelEntity(index, entityName);
+		} else {
+			Map<String, ModelEntity> ec = getEntityCache();
+			if (ec == null) {
+				throw new GenericEntityConfException("ERROR: Unable to load Entity Cache");
+			}
+			modelEntity = ec.get(entityName);
 		}
-		ModelEntity modelEntity = ec.get(entityName);
 		if (modelEntity == null) {
 			String errMsg = "Could not find definition for entity name " + entityName;
 			// Debug.logError(new Exception("Placeholder"), errMsg, module);
@@ -491,6 +807,15 @@ public class ModelReader implements Serializable {
 	}
 
 	public ModelEntity getModelEntityNoCheck(String entityName) {
+		LazyEntityIndex index = this.lazyIndex;
+		if (index != null) {
+			try {
+				return getLazyModelEntity(index, entityName);
+			} catch (GenericEntityException e) {
+				Debug.logError(e, "Error loading entity " + entityName, module);
+				return null;
+			}
+		}
 		Map<String, ModelEntity> ec = null;
 		try {
 			ec = getEntityCache();
@@ -524,6 +849,10 @@ public class ModelReader implements Serializable {
 	 * @return A Set of entityName Strings
 	 */
 	public Set<String> getEntityNames() throws GenericEntityException {
+		LazyEntityIndex index = this.lazyIndex;
+		if (index != null) {
+			return Collections.unmodifiableSet(index.definitions.keySet());
+		}
 		Map<String, ModelEntity> ec = getEntityCache();
 		if (ec == null) {
 			throw new GenericEntityConfException("ERROR: Unable to load Entity Cache");
@@ -614,4 +943,61 @@ public class ModelReader implements Serializable {
 	public void incrementFieldCount(int amount) {
 		this.numFields += amount;
 	}
+
+	/**
+	 * The entity definitions indexed by a reader building the entities on first use.
+	 */
+	private static final class LazyEntityIndex {
+		private final Map<String, LazyEntityDefinition> definitions = new HashMap<String, LazyEntityDefinition>();
+		private final Map<String, List<Element>> extendEntityElements = new HashMap<String, List<Element>>();
+		/**
+		 * for each entity the names of the entities having a type one relation to it
+		 */
+		private final Map<String, Set<String>> referencingEntityNames = new HashMap<String, Set<String>>();
+		/**
+		 * for each entity the names of the view entities it is a member of
+		 */
+		private final Map<String, Set<String>> viewEntityNames = new HashMap<String, Set<String>>();
+		private final Map<String, ModelEntity> builtEntities = new HashMap<String, ModelEntity>();
+		private final Set<String> loading = new HashSet<String>();
+
+		private void addReferences(String entityName, Element entityElement) {
+			for (Element relationElement : UtilXml.childElementList(entityElement, "relation")) {
+				String type = relationElement.getAttribute("type");
+				if ("one".equals(type) || "one-nofk".equals(type)) {
+					String relEntityName = relationElement.getAttribute("rel-entity-name");
+					Set<String> entityNames = referencingEntityNames.get(relEntityName);
+					if (entityNames == null) {
+						entityNames = new HashSet<String>();
+						referencingEntityNames.put(relEntityName, entityNames);
+					}
+					entityNames.add(entityName);
+				}
+			}
+		}
+
+		private void addViewMembers(String viewEntityName, Element viewEntityElement) {
+			for (Element memberEntityElement : UtilXml.childElementList(viewEntityElement, "member-entity")) {
+				String memberEntityName = memberEntityElement.getAttribute("entity-name");
+				Set<String> entityNames = viewEntityNames.get(memberEntityName);
+				if (entityNames == null) {
+					entityNames = new HashSet<String>();
+					viewEntityNames.put(memberEntityName, entityNames);
+				}
+				entityNames.add(viewEntityName);
+			}
+		}
+	}
+
+	private static final class LazyEntityDefinition {
+		private final ResourceHandler resourceHandler;
+		private final Element element;
+		private final ModelInfo modelInfo;
+
+		private LazyEntityDefinition(ResourceHandler resourceHandler, Element element, ModelInfo modelInfo) {
+			this.resourceHandler = resourceHandler;
+			this.element = element;
+			this.modelInfo = modelInfo;
+		}
+	}
 }
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.test;
+
+import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelReader;
+import org.apache.ofbiz.entity.model.ModelRelation;
+import org.apache.ofbiz.entity.testtools.EntityTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests that the entities built on first use are the same as the entities of a reader loading them all
+ */
+public class ModelReaderTests extends EntityTestCase {
+
+	public ModelReaderTests(String name) {
+		super(name);
+	}
+
+	private String getModelName() throws Exception {
+		return EntityConfig.getInstance().getDelegator(delegator.getDelegatorBaseName()).getEntityModelReader();
+	}
+
+	private static String describe(ModelEntity modelEntity) {
+		StringBuilder description = new StringBuilder();
+		description.append(modelEntity.getClass().getSimpleName()).append(" fields=").append(modelEntity.getAllFieldNames())
+				.append(" pk=").append(modelEntity.getPkFieldNames());
+		Set<String> relations = new TreeSet<String>();
+		for (int i = 0; i < modelEntity.getRelationsSize(); i++) {
+			ModelRelation relation = modelEntity.getRelation(i);
+			relations.add(relation.getCombinedName() + ":" + relation.getType() + ":" + relation.isAutoRelation() + ":" + relation.keyMapString(",", ""));
+		}
+		description.append(" relations=").append(relations);
+		Set<String> viewEntityNames = new TreeSet<String>();
+		for (Iterator<String> viewEntityNameIt = modelEntity.getViewConvertorsIterator(); viewEntityNameIt.hasNext(); ) {
+			viewEntityNames.add(viewEntityNameIt.next());
+		}
+		description.append(" views=").append(viewEntityNames);
+		return description.toString();
+	}
+
+	public void testLazyModelSameAsEager() throws Exception {
+		ModelReader eagerReader = ModelReader.createModelReader(getModelName(), false);
+		final ModelReader lazyReader = ModelReader.createModelReader(getModelName(), true);
+		assertTrue("lazy reader", lazyReader.isLazyLoad());
+		// the service model snapshots depend on the key of the entity model, in both modes
+		assertEquals("snapshot key", eagerReader.getSnapshotKey(), lazyReader.getSnapshotKey());
+		assertEquals("snapshot key of the delegator reader", delegator.getModelReader().getSnapshotKey(), lazyReader.getSnapshotKey());
+		assertEquals("entity names from the index", eagerReader.getEntityNames(), lazyReader.getEntityNames());
+
+		// a member entity in use before its views are built knows them already
+		ModelEntity product = lazyReader.getModelEntity("Product");
+		assertTrue("views of a member built first", product.getViewEntitiesSize() > 0);
+		assertEquals("Product", describe(eagerReader.getModelEntity("Product")), describe(product));
+
+		// the other entities are built from several threads, in no particular order
+		List<String> entityNames = new ArrayList<String>(lazyReader.getEntityNames());
+		Collections.shuffle(entityNames, new Random(42));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<ModelEntity>> futures = new ArrayList<Future<ModelEntity>>();
+			for (final String entityName : entityNames) {
+				futures.add(executor.submit(new Callable<ModelEntity>() {
+					public ModelEntity call() throws Exception {
+						return lazyReader.getModelEntity(entityName);
+					}
+				}));
+			}
+			for (Future<ModelEntity> future : futures) {
+				assertNotNull("built entity", future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		for (String entityName : eagerReader.getEntityNames()) {
+			assertEquals(entityName, describe(eagerReader.getModelEntity(entityName)), describe(lazyReader.getModelEntity(entityName)));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.test;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.config.model.ReadReplica;
+import org.apache.ofbiz.entity.datasource.GenericDAO;
+import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.jdbc.DatabaseUtil;
+import org.apache.ofbiz.entity.testtools.EntityTestCase;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Tests the routing of the queries of the <code>test-read-replica</code> delegator: its datasource is the
+ * <code>localderby</code> database, with an in-memory Derby database as read replica. The replica has
+ * the same TestingType with another description, so the description tells where a value was read.
+ */
+public class ReadReplicaTests extends EntityTestCase {
+
+	private static final String DATASOURCE_NAME = "localderbyreplicatest";
+	private static final String TESTING_TYPE_ID = "READ_REPLICA_TEST";
+
+	private Delegator replicaDelegator;
+	private String replicaJdbcUri;
+
+	public ReadReplicaTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		replicaDelegator = DelegatorFactory.getDelegator("test-read-replica");
+		Datasource datasource = EntityConfig.getDatasource(DATASOURCE_NAME);
+		ReadReplica readReplica = datasource.getReadReplicaList().get(0);
+		replicaJdbcUri = readReplica.getJdbcUri();
+
+		// same helper as the one of the router, so the same connection pool
+		GenericHelperInfo replicaHelperInfo = new GenericHelperInfo(delegator.getEntityGroupName("TestingType"), DATASOURCE_NAME);
+		replicaHelperInfo.setReadReplicaName(readReplica.getName());
+		replicaHelperInfo.setOverrideJdbcUri(replicaJdbcUri);
+		replicaHelperInfo.setOverridePassword(EntityConfig.getJdbcPassword(readReplica, datasource.getInlineJdbc()));
+		try (Connection connection = DriverManager.getConnection(replicaJdbcUri + ";create=true", datasource.getInlineJdbc().getJdbcUsername(), replicaHelperInfo.getOverridePassword())) {
+			assertNotNull("replica database", connection);
+		}
+		String message = new DatabaseUtil(replicaHelperInfo).createTable(delegator.getModelEntity("TestingType"), null, false);
+		assertNull("replica table: " + message, message);
+
+		GenericDAO.getGenericDAO(replicaHelperInfo).insert(delegator.makeValue("TestingType", "testingTypeId", TESTING_TYPE_ID, "description", "replica"));
+		delegator.create("TestingType", "testingTypeId", TESTING_TYPE_ID, "description", "primary");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delegator.removeByAnd("TestingType", "testingTypeId", TESTING_TYPE_ID);
+		replicaDelegator.clearCacheLine("TestingType", "testingTypeId", TESTING_TYPE_ID);
+		dropReplica();
+	}
+
+	private void dropReplica() {
+		try {
+			DriverManager.getConnection(replicaJdbcUri + ";drop=true");
+		} catch (SQLException e) {
+			// the drop of a Derby database always ends with an exception, 08006 when it succeeds
+			if (!"08006".equals(e.getSQLState()) && !"XJ004".equals(e.getSQLState())) {
+				fail("Could not drop the replica database: " + e);
+			}
+		}
+	}
+
+	private String getDescription(GenericValue testingType) {
+		assertNotNull("testing type", testingType);
+		return testingType.getString("description");
+	}
+
+	public void testReadOutsideTransaction() throws Exception {
+		assertEquals("find by primary key", "replica", getDescription(replicaDelegator.findOne("TestingType", false, "testingTypeId", TESTING_TYPE_ID)));
+		assertEquals("find by condition", "replica", getDescription(EntityQuery.use(replicaDelegator).from("TestingType").where("testingTypeId", TESTING_TYPE_ID).queryFirst()));
+		assertEquals("count", 1, EntityQuery.use(replicaDelegator).from("TestingType").where("testingTypeId", TESTING_TYPE_ID).queryCount());
+		// the values put in the cache are read from the datasource
+		assertEquals("find by primary key with cache", "primary", getDescription(replicaDelegator.findOne("TestingType", true, "testingTypeId", TESTING_TYPE_ID)));
+	}
+
+	public void testReadFromPrimary() throws Exception {
+		boolean beganTransaction = TransactionUtil.begin();
+		try {
+			assertEquals("find by primary key in a transaction", "primary", getDescription(replicaDelegator.findOne("TestingType", false, "testingTypeId", TESTING_TYPE_ID)));
+			assertEquals("find by condition in a transaction", "primary", getDescription(EntityQuery.use(replicaDelegator).from("TestingType").where("testingTypeId", TESTING_TYPE_ID).queryFirst()));
+		} finally {
+			TransactionUtil.commit(beganTransaction);
+		}
+		assertEquals("find by primary key from primary", "primary", getDescription(EntityQuery.use(replicaDelegator).from("TestingType").where("testingTypeId", TESTING_TYPE_ID).fromPrimary().queryOne()));
+		assertEquals("find by condition from primary", "primary", getDescription(EntityQuery.use(replicaDelegator).from("TestingType").where("testingTypeId", TESTING_TYPE_ID).fromPrimary().queryFirst()));
+		// the routing is back once the query from primary is done
+		assertEquals("find by primary key after from primary", "replica", getDescription(replicaDelegator.findOne("TestingType", false, "testingTypeId", TESTING_TYPE_ID)));
+	}
+
+	public void testReplicaFailure() throws Exception {
+		assertEquals("find by primary key before the failure", "replica", getDescription(replicaDelegator.findOne("TestingType", false, "testingTypeId", TESTING_TYPE_ID)));
+		dropReplica();
+		assertEquals("find by primary key after the failure", "primary", getDescription(replicaDelegator.findOne("TestingType", false, "testingTypeId", TESTING_TYPE_ID)));
+		assertEquals("find by condition after the failure", "primary", getDescription(EntityQuery.use(replicaDelegator).from("TestingType").where("testingTypeId", TESTING_TYPE_ID).queryFirst()));
+	}
+}
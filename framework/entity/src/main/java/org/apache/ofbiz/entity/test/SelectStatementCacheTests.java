@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.test;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.datasource.SelectStatementCache;
+import org.apache.ofbiz.entity.testtools.EntityTestCase;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the statements reused by the select statement cache: a query of a known shape is a hit bound with its own
+ * values, while the IN lists of different sizes and the conditions on null have their own statement.
+ */
+public class SelectStatementCacheTests extends EntityTestCase {
+
+	private static final String PREFIX = "SELECT_CACHE_";
+
+	private String helperName;
+
+	public SelectStatementCacheTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		helperName = delegator.getGroupHelperInfo(delegator.getEntityGroupName("TestingType")).getHelperFullName();
+		for (int i = 1; i <= 4; i++) {
+			delegator.create("TestingType", "testingTypeId", PREFIX + i, "description", i == 4 ? null : "Select cache " + i);
+		}
+		// the statements of the previous tests are not reused
+		UtilCache.clearCache("entity.SelectStatementCache." + helperName);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, PREFIX + "%"));
+	}
+
+	private long getCount(String name) {
+		Map<String, Object> statistics = SelectStatementCache.getStatistics().get(helperName);
+		assertNotNull("statistics of " + helperName, statistics);
+		return ((Long) statistics.get(name)).longValue();
+	}
+
+	private List<String> query(EntityCondition condition, String expected) throws Exception {
+		long hits = getCount("hits");
+		long misses = getCount("misses");
+		List<String> ids = new ArrayList<String>();
+		for (GenericValue testingType : EntityQuery.use(delegator).from("TestingType").where(condition).orderBy("testingTypeId").queryList()) {
+			ids.add(testingType.getString("testingTypeId"));
+		}
+		if ("hit".equals(expected)) {
+			assertEquals("hits of " + condition, hits + 1, getCount("hits"));
+			assertEquals("misses of " + condition, misses, getCount("misses"));
+		} else {
+			assertEquals("hits of " + condition, hits, getCount("hits"));
+			assertEquals("misses of " + condition, misses + 1, getCount("misses"));
+		}
+		return ids;
+	}
+
+	private static String shape(EntityCondition condition, List<Object> values) {
+		StringBuilder shape = new StringBuilder();
+		assertTrue("shape of " + condition, condition.appendShape(shape, values));
+		return shape.toString();
+	}
+
+	public void testSameShapeBindsValues() throws Exception {
+		assertEquals("first query", UtilMisc.toList(PREFIX + 1), query(EntityCondition.makeCondition("testingTypeId", PREFIX + 1), "miss"));
+		// the cached statement is bound with the values of the second query
+		assertEquals("same shape", UtilMisc.toList(PREFIX + 2), query(EntityCondition.makeCondition("testingTypeId", PREFIX + 2), "hit"));
+		assertEquals("same shape again", UtilMisc.toList(PREFIX + 3), query(EntityCondition.makeCondition("testingTypeId", PREFIX + 3), "hit"));
+
+		List<Object> values = new ArrayList<Object>();
+		assertEquals("shape", shape(EntityCondition.makeCondition("testingTypeId", PREFIX + 1), new ArrayList<Object>()),
+				shape(EntityCondition.makeCondition("testingTypeId", PREFIX + 2), values));
+		assertEquals("values", UtilMisc.<Object>toList(PREFIX + 2), values);
+	}
+
+	public void testInListSizes() throws Exception {
+		assertEquals("two values", UtilMisc.toList(PREFIX + 1, PREFIX + 2),
+				query(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 1, PREFIX + 2)), "miss"));
+		assertEquals("two other values", UtilMisc.toList(PREFIX + 3, PREFIX + 4),
+				query(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 3, PREFIX + 4)), "hit"));
+		// an IN list of another size has another number of parameters
+		assertEquals("three values", UtilMisc.toList(PREFIX + 1, PREFIX + 2, PREFIX + 3),
+				query(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 1, PREFIX + 2, PREFIX + 3)), "miss"));
+		assertEquals("one value", UtilMisc.toList(PREFIX + 4),
+				query(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 4)), "miss"));
+		assertEquals("three other values", UtilMisc.toList(PREFIX + 2, PREFIX + 3, PREFIX + 4),
+				query(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 2, PREFIX + 3, PREFIX + 4)), "hit"));
+
+		assertFalse("shapes of different sizes", shape(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 1, PREFIX + 2)), new ArrayList<Object>())
+				.equals(shape(EntityCondition.makeCondition("testingTypeId", EntityOperator.IN, UtilMisc.toList(PREFIX + 1, PREFIX + 2, PREFIX + 3)), new ArrayList<Object>())));
+	}
+
+	public void testNullAndNotNull() throws Exception {
+		EntityCondition prefix = EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, PREFIX + "%");
+		assertEquals("not null", UtilMisc.toList(PREFIX + 2),
+				query(EntityCondition.makeCondition(prefix, EntityCondition.makeCondition("description", "Select cache 2")), "miss"));
+		// IS NULL has no parameter, so it is not the statement of the not null value
+		assertEquals("null", UtilMisc.toList(PREFIX + 4),
+				query(EntityCondition.makeCondition(prefix, EntityCondition.makeCondition("description", null)), "miss"));
+		assertEquals("null again", UtilMisc.toList(PREFIX + 4),
+				query(EntityCondition.makeCondition(prefix, EntityCondition.makeCondition("description", null)), "hit"));
+		assertEquals("another not null", UtilMisc.toList(PREFIX + 3),
+				query(EntityCondition.makeCondition(prefix, EntityCondition.makeCondition("description", "Select cache 3")), "hit"));
+		assertEquals("not equal to null", UtilMisc.toList(PREFIX + 1, PREFIX + 2, PREFIX + 3),
+				query(EntityCondition.makeCondition(prefix, EntityCondition.makeCondition("description", EntityOperator.NOT_EQUAL, null)), "miss"));
+
+		List<Object> values = new ArrayList<Object>();
+		assertEquals("null shape", "description = NULL", shape(EntityCondition.makeCondition("description", null), values));
+		assertTrue("no null value", values.isEmpty());
+	}
+}
@@ -27,6 +27,7 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.datasource.ReadReplicaRouter;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
 
 import java.sql.Timestamp;
@@ -60,6 +61,7 @@ public class EntityQuery {
 	private boolean filterByDate = false;
 	private Timestamp filterByDateMoment;
 	private List<String> filterByFieldNames = null;
+	private boolean fromPrimary = false;
 
 
 	/**
@@ -336,6 +338,28 @@ public class EntityQuery {
 		return this;
 	}
 
+	/**
+	 * Specifies that the query must be done on the datasource itself even when it has read replicas,
+	 * for instance to read values written just before outside of the current transaction
+	 *
+	 * @return this EntityQuery object, to enable chaining
+	 */
+	public EntityQuery fromPrimary() {
+		this.fromPrimary = true;
+		return this;
+	}
+
+	/**
+	 * Specifies whether the query must be done on the datasource itself even when it has read replicas
+	 *
+	 * @param fromPrimary - boolean to indicate if the read replicas must not be used
+	 * @return this EntityQuery object, to enable chaining
+	 */
+	public EntityQuery fromPrimary(boolean fromPrimary) {
+		this.fromPrimary = fromPrimary;
+		return this;
+	}
+
 	/**
 	 * Specifies whether the query should return only values that are currently active using from/thruDate fields.
 	 *
@@ -428,10 +452,19 @@ public class EntityQuery {
 		if (useCache) {
 			Debug.logWarning("Call to iterator() with cache, ignoring cache", module);
 		}
-		if (dynamicViewEntity == null) {
-			return delegator.find(entityName, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions());
-		} else {
-			return delegator.findListIteratorByCondition(dynamicViewEntity, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions());
+		if (fromPrimary) {
+			ReadReplicaRouter.beginPrimaryRead();
+		}
+		try {
+			if (dynamicViewEntity == null) {
+				return delegator.find(entityName, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions());
+			} else {
+				return delegator.findListIteratorByCondition(dynamicViewEntity, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions());
+			}
+		} finally {
+			if (fromPrimary) {
+				ReadReplicaRouter.endPrimaryRead();
+			}
 		}
 	}
 
@@ -479,7 +512,16 @@ public class EntityQuery {
 				}
 			}
 		}
-		return delegator.findCountByCondition(entityName, makeWhereCondition(false), havingEntityCondition, makeEntityFindOptions());
+		if (fromPrimary) {
+			ReadReplicaRouter.beginPrimaryRead();
+		}
+		try {
+			return delegator.findCountByCondition(entityName, makeWhereCondition(false), havingEntityCondition, makeEntityFindOptions());
+		} finally {
+			if (fromPrimary) {
+				ReadReplicaRouter.endPrimaryRead();
+			}
+		}
 	}
 
 	private List<GenericValue> query(EntityFindOptions efo) throws GenericEntityException {
@@ -491,7 +533,16 @@ public class EntityQuery {
 		}
 		List<GenericValue> result = null;
 		if (dynamicViewEntity == null && this.havingEntityCondition == null) {
-			result = delegator.findList(entityName, makeWhereCondition(useCache), fieldsToSelect, orderBy, findOptions, useCache);
+			if (fromPrimary) {
+				ReadReplicaRouter.beginPrimaryRead();
+			}
+			try {
+				result = delegator.findList(entityName, makeWhereCondition(useCache), fieldsToSelect, orderBy, findOptions, useCache);
+			} finally {
+				if (fromPrimary) {
+					ReadReplicaRouter.endPrimaryRead();
+				}
+			}
 		} else {
 			EntityListIterator it = queryIterator();
 			result = it.getCompleteList();
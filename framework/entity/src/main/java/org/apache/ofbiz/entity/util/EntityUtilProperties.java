@@ -44,38 +44,20 @@ public final class EntityUtilProperties implements Serializable {
 	private EntityUtilProperties() {
 	}
 
-	private static Map<String, String> getSystemPropertyValue(String resource, String name, Delegator delegator) {
-		Map<String, String> results = new HashMap<>();
-		results.put("isExistInDb", "N");
-		results.put("value", "");
-
-		if (UtilValidate.isEmpty(resource) || UtilValidate.isEmpty(name)) {
-			results.put("isExistInDb", "N");
-			results.put("value", "");
-			return results;
+	/**
+	 * Returns the property from the {@link SystemPropertySnapshot} of the delegator, or <code>null</code> if the
+	 * property is not set or the delegator or names are missing.
+	 */
+	private static SystemPropertySnapshot.Property getSnapshotProperty(String resource, String name, Delegator delegator) {
+		if (delegator == null || UtilValidate.isEmpty(resource) || UtilValidate.isEmpty(name)) {
+			return null;
 		}
-		resource = resource.replace(".properties", "");
-		try {
-			GenericValue systemProperty = EntityQuery.use(delegator)
-					.from("SystemProperty")
-					.where("systemResourceId", resource, "systemPropertyId", name)
-					.cache()
-					.queryOne();
-			if (systemProperty != null) {
-				//property exists in database
-				results.put("isExistInDb", "Y");
-				results.put("value", (systemProperty.getString("systemPropertyValue") != null) ? systemProperty.getString("systemPropertyValue") : "");
-				return results;
-			} else {
-				//property does not exists in database
-				results.put("isExistInDb", "N");
-				results.put("value", "");
-				return results;
-			}
-		} catch (GenericEntityException e) {
-			Debug.logInfo("Could not get a system property for " + name + " : " + e.getMessage(), module);
-		}
-		return results;
+		return SystemPropertySnapshot.getInstance(delegator).getProperty(resource, name);
+	}
+
+	private static String getSystemPropertyValue(String resource, String name, Delegator delegator) {
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property != null && property.isSystemProperty() ? property.getValue() : null;
 	}
 
 	public static boolean propertyValueEquals(String resource, String name, String compareString) {
@@ -83,23 +65,25 @@ public final class EntityUtilProperties implements Serializable {
 	}
 
 	public static boolean propertyValueEqualsIgnoreCase(String resource, String name, String compareString, Delegator delegator) {
-		Map<String, String> propMap = getSystemPropertyValue(resource, name, delegator);
-		if ("Y".equals(propMap.get("isExistInDb"))) {
-			compareString = (compareString == null) ? "" : compareString;
-			return propMap.get("value").equalsIgnoreCase(compareString);
-		} else {
+		if (delegator == null) {
 			return UtilProperties.propertyValueEqualsIgnoreCase(resource, name, compareString);
 		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		if (property == null) {
+			return "".equalsIgnoreCase(compareString);
+		}
+		if (property.isSystemProperty()) {
+			compareString = (compareString == null) ? "" : compareString;
+		}
+		return property.getValue().equalsIgnoreCase(compareString);
 	}
 
 	public static String getPropertyValue(String resource, String name, String defaultValue, Delegator delegator) {
-		Map<String, String> propMap = getSystemPropertyValue(resource, name, delegator);
-		if ("Y".equals(propMap.get("isExistInDb"))) {
-			String s = propMap.get("value");
-			return (UtilValidate.isEmpty(s)) ? defaultValue : s;
-		} else {
+		if (delegator == null) {
 			return UtilProperties.getPropertyValue(resource, name, defaultValue);
 		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null || property.getValue().isEmpty() ? defaultValue : property.getValue();
 	}
 
 	public static String getPropertyValueFromDelegatorName(String resource, String name, String defaultValue, String delegatorName) {
@@ -114,13 +98,7 @@ public final class EntityUtilProperties implements Serializable {
 				Debug.logError("Could not get a system property for " + name + ". Reason: the delegator is null", module);
 			}
 		}
-		Map<String, String> propMap = getSystemPropertyValue(resource, name, delegator);
-		if ("Y".equals(propMap.get("isExistInDb"))) {
-			String s = propMap.get("value");
-			return (UtilValidate.isEmpty(s)) ? defaultValue : s;
-		} else {
-			return UtilProperties.getPropertyValue(resource, name, defaultValue);
-		}
+		return getPropertyValue(resource, name, defaultValue, delegator);
 	}
 
 	public static double getPropertyNumber(String resource, String name, double defaultValue) {
@@ -159,13 +137,52 @@ public final class EntityUtilProperties implements Serializable {
 		return UtilProperties.getPropertyAsBigDecimal(resource, name, defaultNumber);
 	}
 
+	public static Boolean getPropertyAsBoolean(String resource, String name, boolean defaultValue, Delegator delegator) {
+		if (delegator == null) {
+			return UtilProperties.getPropertyAsBoolean(resource, name, defaultValue);
+		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null || property.getBoolean() == null ? Boolean.valueOf(defaultValue) : property.getBoolean();
+	}
+
+	public static Integer getPropertyAsInteger(String resource, String name, int defaultNumber, Delegator delegator) {
+		if (delegator == null) {
+			return UtilProperties.getPropertyAsInteger(resource, name, defaultNumber);
+		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null || property.getInteger() == null ? Integer.valueOf(defaultNumber) : property.getInteger();
+	}
+
+	public static Long getPropertyAsLong(String resource, String name, long defaultNumber, Delegator delegator) {
+		if (delegator == null) {
+			return UtilProperties.getPropertyAsLong(resource, name, defaultNumber);
+		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null || property.getLong() == null ? Long.valueOf(defaultNumber) : property.getLong();
+	}
+
+	public static Double getPropertyAsDouble(String resource, String name, double defaultNumber, Delegator delegator) {
+		if (delegator == null) {
+			return UtilProperties.getPropertyAsDouble(resource, name, defaultNumber);
+		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null || property.getDouble() == null ? Double.valueOf(defaultNumber) : property.getDouble();
+	}
+
+	public static BigDecimal getPropertyAsBigDecimal(String resource, String name, BigDecimal defaultNumber, Delegator delegator) {
+		if (delegator == null) {
+			return UtilProperties.getPropertyAsBigDecimal(resource, name, defaultNumber);
+		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null || property.getBigDecimal() == null ? defaultNumber : property.getBigDecimal();
+	}
+
 	public static String getPropertyValue(String resource, String name, Delegator delegator) {
-		Map<String, String> propMap = getSystemPropertyValue(resource, name, delegator);
-		if ("Y".equals(propMap.get("isExistInDb"))) {
-			return propMap.get("value");
-		} else {
+		if (delegator == null) {
 			return UtilProperties.getPropertyValue(resource, name);
 		}
+		SystemPropertySnapshot.Property property = getSnapshotProperty(resource, name, delegator);
+		return property == null ? "" : property.getValue();
 	}
 
 	public static String getPropertyValueFromDelegatorName(String resource, String name, String delegatorName) {
@@ -180,12 +197,7 @@ public final class EntityUtilProperties implements Serializable {
 				Debug.logError("Could not get a system property for " + name + ". Reason: the delegator is null", module);
 			}
 		}
-		Map<String, String> propMap = getSystemPropertyValue(resource, name, delegator);
-		if ("Y".equals(propMap.get("isExistInDb"))) {
-			return propMap.get("value");
-		} else {
-			return UtilProperties.getPropertyValue(resource, name);
-		}
+		return getPropertyValue(resource, name, delegator);
 	}
 
 	public static Properties getProperties(String resource) {
@@ -270,6 +282,7 @@ public final class EntityUtilProperties implements Serializable {
 				gv = delegator.makeValue("SystemProperty", UtilMisc.toMap("systemResourceId", resourceName, "systemPropertyId", name, "systemPropertyValue", value, "description", null));
 			}
 			gv.store();
+			SystemPropertySnapshot.invalidate(delegator);
 		} catch (GenericEntityException e) {
 			Debug.logError(String.format("tenantId=%s, exception=%s, message=%s", delegator.getDelegatorTenantId(), e.getClass().getName(), e.getMessage()), module);
 		}
@@ -277,9 +290,9 @@ public final class EntityUtilProperties implements Serializable {
 	}
 
 	public static String getMessage(String resource, String name, Locale locale, Delegator delegator) {
-		Map<String, String> propMap = getSystemPropertyValue(resource, name, delegator);
-		if ("Y".equals(propMap.get("isExistInDb"))) {
-			return propMap.get("value");
+		String value = getSystemPropertyValue(resource, name, delegator);
+		if (value != null) {
+			return value;
 		} else {
 			return UtilProperties.getMessage(resource, name, locale);
 		}
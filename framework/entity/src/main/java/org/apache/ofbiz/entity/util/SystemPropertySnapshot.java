@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.util;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+import javax.transaction.Synchronization;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable view of the configuration of a delegator: the SystemProperty values merged over the
+ * properties resources, with their typed values converted once. Reading a property from a snapshot
+ * doesn't query the entity cache, resolve the properties resource or allocate anything.
+ * <p>All the SystemProperty values are loaded by one query when the snapshot of a delegator is built; the
+ * properties resources are merged the first time they are read. A snapshot is dropped by
+ * {@link #invalidate(Delegator)}, called by the <code>SystemProperty</code> entity ECAs, and when a
+ * properties resource is cleared or changed (see {@link UtilProperties#getPropertiesVersion()}).</p>
+ */
+public final class SystemPropertySnapshot {
+
+	public static final String module = SystemPropertySnapshot.class.getName();
+	private static final ConcurrentHashMap<String, Holder> holders = new ConcurrentHashMap<String, Holder>();
+
+	private final long generation;
+	private final long propertiesVersion;
+	private final Map<String, Map<String, String>> systemProperties;
+	private final ConcurrentHashMap<String, Resource> resources = new ConcurrentHashMap<String, Resource>();
+
+	private SystemPropertySnapshot(long generation, long propertiesVersion, Map<String, Map<String, String>> systemProperties) {
+		this.generation = generation;
+		this.propertiesVersion = propertiesVersion;
+		this.systemProperties = systemProperties;
+	}
+
+	/**
+	 * Returns the current snapshot of a delegator, building it if the SystemProperty values or the
+	 * properties resources changed since the last one.
+	 */
+	public static SystemPropertySnapshot getInstance(Delegator delegator) {
+		Holder holder = getHolder(delegator.getDelegatorName());
+		SystemPropertySnapshot snapshot = holder.snapshot;
+		if (snapshot != null && snapshot.generation == holder.generation.get() && snapshot.propertiesVersion == UtilProperties.getPropertiesVersion()) {
+			return snapshot;
+		}
+		long generation = holder.generation.get();
+		long propertiesVersion = UtilProperties.getPropertiesVersion();
+		Map<String, Map<String, String>> systemProperties;
+		try {
+			systemProperties = loadSystemProperties(delegator);
+		} catch (GenericEntityException e) {
+			// not kept, the next read will try again
+			Debug.logInfo("Could not get the system properties: " + e.getMessage(), module);
+			return new SystemPropertySnapshot(-1, propertiesVersion, Collections.<String, Map<String, String>>emptyMap());
+		}
+		snapshot = new SystemPropertySnapshot(generation, propertiesVersion, systemProperties);
+		// if invalidated while loading, the generation doesn't match anymore and the next read builds another one
+		holder.snapshot = snapshot;
+		return snapshot;
+	}
+
+	/**
+	 * Drops the snapshot of a delegator. When called in a transaction, the snapshot is dropped again once the
+	 * transaction completes, so that a snapshot built from uncommitted values (or from the values of before the
+	 * commit) is not kept.
+	 */
+	public static void invalidate(Delegator delegator) {
+		final Holder holder = getHolder(delegator.getDelegatorName());
+		holder.invalidate();
+		try {
+			TransactionUtil.registerSynchronization(new Synchronization() {
+				public void beforeCompletion() {
+				}
+
+				public void afterCompletion(int status) {
+					holder.invalidate();
+				}
+			});
+		} catch (GenericTransactionException e) {
+			Debug.logWarning(e, "Could not register the invalidation of the system property snapshot on transaction completion", module);
+		}
+	}
+
+	private static Holder getHolder(String delegatorName) {
+		Holder holder = holders.get(delegatorName);
+		if (holder == null) {
+			holders.putIfAbsent(delegatorName, new Holder());
+			holder = holders.get(delegatorName);
+		}
+		return holder;
+	}
+
+	private static Map<String, Map<String, String>> loadSystemProperties(Delegator delegator) throws GenericEntityException {
+		List<GenericValue> values = EntityQuery.use(delegator).from("SystemProperty").queryList();
+		Map<String, Map<String, String>> systemProperties = new HashMap<String, Map<String, String>>();
+		for (GenericValue value : values) {
+			String resource = value.getString("systemResourceId");
+			Map<String, String> resourceProperties = systemProperties.get(resource);
+			if (resourceProperties == null) {
+				resourceProperties = new HashMap<String, String>();
+				systemProperties.put(resource, resourceProperties);
+			}
+			String propertyValue = value.getString("systemPropertyValue");
+			resourceProperties.put(value.getString("systemPropertyId"), propertyValue != null ? propertyValue : "");
+		}
+		return systemProperties;
+	}
+
+	/**
+	 * Returns the property of a resource, or <code>null</code> if neither SystemProperty nor the properties resource have it.
+	 *
+	 * @param resource The name of the resource, as given to {@link UtilProperties}
+	 * @param name     The name of the property
+	 */
+	public Property getProperty(String resource, String name) {
+		Resource properties = resources.get(resource);
+		if (properties == null) {
+			resources.putIfAbsent(resource, new Resource(resource, systemProperties));
+			properties = resources.get(resource);
+		}
+		return properties.properties.get(name);
+	}
+
+	/**
+	 * Returns the SystemProperty value of a property (an empty String if its value is null), or <code>null</code> if
+	 * there is no SystemProperty for it.
+	 */
+	public String getSystemPropertyValue(String resource, String name) {
+		Property property = getProperty(resource, name);
+		return property != null && property.isSystemProperty() ? property.getValue() : null;
+	}
+
+	private static final class Holder {
+		private final AtomicLong generation = new AtomicLong();
+		private volatile SystemPropertySnapshot snapshot;
+
+		private void invalidate() {
+			generation.incrementAndGet();
+			snapshot = null;
+		}
+	}
+
+	private static final class Resource {
+		private final Map<String, Property> properties;
+
+		private Resource(String resource, Map<String, Map<String, String>> systemProperties) {
+			Map<String, Property> properties = new HashMap<String, Property>();
+			Properties resourceProperties = UtilProperties.getProperties(resource);
+			if (resourceProperties != null) {
+				for (String name : resourceProperties.stringPropertyNames()) {
+					String value = resourceProperties.getProperty(name);
+					if (value != null) {
+						properties.put(name, new Property(value.trim(), false));
+					}
+				}
+			}
+			String systemResourceId = resource.endsWith(".properties") ? resource.substring(0, resource.length() - ".properties".length()) : resource;
+			Map<String, String> resourceSystemProperties = systemProperties.get(systemResourceId);
+			if (resourceSystemProperties != null) {
+				for (Map.Entry<String, String> entry : resourceSystemProperties.entrySet()) {
+					properties.put(entry.getKey(), new Property(entry.getValue(), true));
+				}
+			}
+			this.properties = properties;
+		}
+	}
+
+	/**
+	 * A property value and its typed values, <code>null</code> when it doesn't convert. The typed values are
+	 * converted the way {@link UtilProperties} converts them, the first time they are read.
+	 */
+	public static final class Property {
+		private static final Object NOT_CONVERTED = new Object();
+
+		private final String value;
+		private final boolean systemProperty;
+		private final Boolean booleanValue;
+		private volatile Object integerValue = NOT_CONVERTED;
+		private volatile Object longValue = NOT_CONVERTED;
+		private volatile Object doubleValue = NOT_CONVERTED;
+		private volatile Object bigDecimalValue = NOT_CONVERTED;
+
+		private Property(String value, boolean systemProperty) {
+			this.value = value;
+			this.systemProperty = systemProperty;
+			this.booleanValue = "true".equalsIgnoreCase(value) ? Boolean.TRUE : "false".equalsIgnoreCase(value) ? Boolean.FALSE : null;
+		}
+
+		private Object convert(String type) {
+			if (value.isEmpty()) {
+				return null;
+			}
+			try {
+				return ObjectType.simpleTypeConvert(value, type, null, null);
+			} catch (GeneralException e) {
+				Debug.logWarning("Error converting String \"" + value + "\" to " + type + "; using the default value.", module);
+				return null;
+			}
+		}
+
+		/** Returns the value, an empty String for a SystemProperty without value. */
+		public String getValue() {
+			return value;
+		}
+
+		/** Returns true if the value comes from SystemProperty rather than from the properties resource. */
+		public boolean isSystemProperty() {
+			return systemProperty;
+		}
+
+		public Boolean getBoolean() {
+			return booleanValue;
+		}
+
+		public Integer getInteger() {
+			Object integer = integerValue;
+			if (integer == NOT_CONVERTED) {
+				integer = convert("Integer");
+				integerValue = integer;
+			}
+			return (Integer) integer;
+		}
+
+		public Long getLong() {
+			Object longObject = longValue;
+			if (longObject == NOT_CONVERTED) {
+				longObject = convert("Long");
+				longValue = longObject;
+			}
+			return (Long) longObject;
+		}
+
+		public Double getDouble() {
+			Object doubleObject = doubleValue;
+			if (doubleObject == NOT_CONVERTED) {
+				doubleObject = convert("Double");
+				doubleValue = doubleObject;
+			}
+			return (Double) doubleObject;
+		}
+
+		public BigDecimal getBigDecimal() {
+			Object bigDecimal = bigDecimalValue;
+			if (bigDecimal == NOT_CONVERTED) {
+				bigDecimal = convert("BigDecimal");
+				bigDecimalValue = bigDecimal;
+			}
+			return (BigDecimal) bigDecimal;
+		}
+	}
+}
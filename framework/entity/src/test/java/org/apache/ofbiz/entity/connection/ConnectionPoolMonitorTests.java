@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.connection;
+
+import org.apache.commons.dbcp2.DriverManagerConnectionFactory;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.dbcp2.PoolableConnectionFactory;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.connection.ConnectionPoolMonitor.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolMonitorTests {
+	private static final int MAX_TOTAL = 4;
+	private static final int ADAPTIVE_MAX_TOTAL = 8;
+
+	private MonitoredConnectionPool pool;
+	private ConnectionPoolMonitor monitor;
+	private boolean logInfoOn;
+
+	@Before
+	public void initialize() {
+		logInfoOn = Debug.isOn(Debug.INFO);
+		Debug.set(Debug.INFO, false);
+		PoolableConnectionFactory factory = new PoolableConnectionFactory(new DriverManagerConnectionFactory("jdbc:derby:memory:ConnectionPoolMonitorTests;create=true", null), null);
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(MAX_TOTAL);
+		config.setMaxIdle(2);
+		config.setMaxWaitMillis(1000);
+		pool = new MonitoredConnectionPool("ConnectionPoolMonitorTests", factory, config, 0, 0, 0, ADAPTIVE_MAX_TOTAL, 10);
+		factory.setPool(pool);
+		monitor = pool.getMonitor();
+	}
+
+	@After
+	public void restore() {
+		pool.close();
+		Debug.set(Debug.INFO, logInfoOn);
+	}
+
+	private static long millis(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	private List<PoolableConnection> borrow(int count) throws Exception {
+		List<PoolableConnection> connections = new ArrayList<PoolableConnection>();
+		for (int i = 0; i < count; i++) {
+			connections.add(pool.borrowObject());
+		}
+		return connections;
+	}
+
+	private void giveBack(List<PoolableConnection> connections) {
+		for (PoolableConnection connection : connections) {
+			pool.returnObject(connection);
+		}
+	}
+
+	@Test
+	public void histogramPercentiles() {
+		Histogram histogram = new Histogram();
+		assertEquals("percentile of an empty histogram", 0, histogram.getPercentileMillis(0.95));
+		assertEquals("mean of an empty histogram", 0, histogram.getMeanMillis(), 0);
+		for (int i = 0; i < 90; i++) {
+			histogram.record(millis(1));
+		}
+		for (int i = 0; i < 5; i++) {
+			histogram.record(millis(15));
+		}
+		for (int i = 0; i < 5; i++) {
+			histogram.record(millis(700));
+		}
+		assertEquals("count", 100, histogram.getCount());
+		assertEquals("mean", (90 * 1 + 5 * 15 + 5 * 700) / 100.0, histogram.getMeanMillis(), 0.0001);
+		assertEquals("max", 700, histogram.getMaxMillis());
+		// a duration equal to a bound is in the bucket of the bound
+		assertEquals("50th percentile", 1, histogram.getPercentileMillis(0.5));
+		assertEquals("90th percentile", 1, histogram.getPercentileMillis(0.9));
+		assertEquals("91st percentile", 20, histogram.getPercentileMillis(0.91));
+		assertEquals("95th percentile", 20, histogram.getPercentileMillis(0.95));
+		// the upper bound of the bucket is capped by the maximum
+		assertEquals("99th percentile", 700, histogram.getPercentileMillis(0.99));
+		assertEquals("100th percentile", 700, histogram.getPercentileMillis(1));
+		assertEquals("buckets", "<=1ms: 90, <=20ms: 5, <=1000ms: 5", histogram.toString());
+
+		histogram.record(millis(1) + 1);
+		histogram.record(millis(45000));
+		assertEquals("buckets after the bounds", "<=1ms: 90, <=2ms: 1, <=20ms: 5, <=1000ms: 5, >30000ms: 1", histogram.toString());
+		assertEquals("percentile in the last bucket", 45000, histogram.getPercentileMillis(1));
+
+		histogram.reset();
+		assertEquals("count after reset", 0, histogram.getCount());
+		assertEquals("max after reset", 0, histogram.getMaxMillis());
+		assertEquals("buckets after reset", "", histogram.toString());
+	}
+
+	@Test
+	public void growsUpToAdaptiveMaxTotal() throws Exception {
+		int[] expectedMaxTotals = { 5, 6, 7, 8, 8 };
+		for (int expectedMaxTotal : expectedMaxTotals) {
+			monitor.borrowFailed(millis(1000));
+			monitor.monitor();
+			assertEquals("max total after failed borrows", expectedMaxTotal, pool.getMaxTotal());
+		}
+		assertEquals("adjustments", 4, monitor.getMaxTotalAdjustmentCount());
+		assertEquals("max idle", 2 + ADAPTIVE_MAX_TOTAL - MAX_TOTAL, pool.getMaxIdle());
+
+		// an interval without wait nor failure does not grow the pool
+		monitor.resetStatistics();
+		pool.setMaxTotal(MAX_TOTAL);
+		monitor.monitor();
+		monitor.monitor();
+		assertEquals("max total without waits", MAX_TOTAL, pool.getMaxTotal());
+		assertEquals("adjustments without waits", 0, monitor.getMaxTotalAdjustmentCount());
+	}
+
+	@Test
+	public void growsOnBorrowWait() throws Exception {
+		pool.setMaxTotal(1);
+		final PoolableConnection connection = pool.borrowObject();
+		Thread returner = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				pool.returnObject(connection);
+			}
+		};
+		returner.start();
+		// waits for the connection to be returned
+		pool.returnObject(pool.borrowObject());
+		returner.join();
+		assertTrue("mean borrow wait", monitor.getMeanBorrowWaitMillis() > 10);
+		monitor.monitor();
+		assertEquals("max total after a borrow wait", 2, pool.getMaxTotal());
+	}
+
+	@Test
+	public void shrinksDownToMaxTotal() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			monitor.borrowFailed(millis(1000));
+			monitor.monitor();
+		}
+		assertEquals("grown max total", ADAPTIVE_MAX_TOTAL, pool.getMaxTotal());
+
+		// shrinks after six quiet intervals, by 12.5% and at least one connection
+		int[] expectedMaxTotals = { 7, 6, 5, 4, 4 };
+		for (int expectedMaxTotal : expectedMaxTotals) {
+			int maxTotal = pool.getMaxTotal();
+			for (int i = 0; i < 5; i++) {
+				monitor.monitor();
+			}
+			assertEquals("max total before the sixth quiet interval", maxTotal, pool.getMaxTotal());
+			monitor.monitor();
+			assertEquals("max total after six quiet intervals", expectedMaxTotal, pool.getMaxTotal());
+		}
+		assertEquals("max idle", 2, pool.getMaxIdle());
+	}
+
+	@Test
+	public void doesNotShrinkWhenBusy() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			monitor.borrowFailed(millis(1000));
+			monitor.monitor();
+		}
+		// six connections of eight are three quarters of the pool
+		List<PoolableConnection> connections = borrow(6);
+		try {
+			for (int i = 0; i < 12; i++) {
+				monitor.monitor();
+			}
+			assertEquals("max total of a busy pool", ADAPTIVE_MAX_TOTAL, pool.getMaxTotal());
+		} finally {
+			giveBack(connections);
+		}
+		// the peak of the interval is the number of active connections at its beginning
+		monitor.monitor();
+		for (int i = 0; i < 6; i++) {
+			monitor.monitor();
+		}
+		assertEquals("max total once the pool is quiet", ADAPTIVE_MAX_TOTAL - 1, pool.getMaxTotal());
+	}
+}
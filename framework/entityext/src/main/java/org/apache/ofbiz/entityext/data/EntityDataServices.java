@@ -27,6 +27,7 @@ import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
 import org.apache.ofbiz.entity.jdbc.DatabaseUtil;
 import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelEntityChecker;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
@@ -309,6 +310,20 @@ public class EntityDataServices {
 		return newValue;
 	}
 
+	public static Map<String, Object> checkEntityDefinitions(DispatchContext dctx, Map<String, Object> context) {
+		Delegator delegator = dctx.getDelegator();
+		List<String> messages = new LinkedList<String>();
+		try {
+			ModelEntityChecker.checkEntities(delegator, messages);
+		} catch (GenericEntityException e) {
+			Debug.logError(e, "Error checking the entity definitions: " + e.toString(), module);
+			return ServiceUtil.returnError(e.getMessage());
+		}
+		Map<String, Object> result = ServiceUtil.returnSuccess();
+		result.put("messages", messages);
+		return result;
+	}
+
 	public static Map<String, Object> rebuildAllIndexesAndKeys(DispatchContext dctx, Map<String, Object> context) {
 		Delegator delegator = dctx.getDelegator();
 		Security security = dctx.getSecurity();
@@ -24,6 +24,7 @@ import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StartupTimer;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
@@ -87,6 +88,7 @@ public final class EntityEcaUtil {
 			return;
 		}
 
+		long startMillis = System.currentTimeMillis();
 		List<Future<List<EntityEcaRule>>> futures = new LinkedList<Future<List<EntityEcaRule>>>();
 		for (Resource eecaResourceElement : entityEcaReaderInfo.getResourceList()) {
 			ResourceHandler handler = new MainResourceHandler(EntityConfig.ENTITY_ENGINE_XML_FILENAME, eecaResourceElement.getLoader(), eecaResourceElement.getLocation());
@@ -121,6 +123,7 @@ public final class EntityEcaUtil {
 				rules.add(rule);
 			}
 		}
+		StartupTimer.recordPhaseSince("Entity ECA rules [" + entityEcaReaderName + "]", startMillis);
 	}
 
 	private static List<EntityEcaRule> getEcaDefinitions(ResourceHandler handler) {
@@ -26,6 +26,8 @@ import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.minilang.artifact.ArtifactInfoContext;
+import org.apache.ofbiz.minilang.compiler.CompiledSimpleMethod;
+import org.apache.ofbiz.minilang.compiler.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
 import org.apache.ofbiz.minilang.method.MethodOperation.DeprecatedOperation;
@@ -39,6 +41,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the &lt;simple-method&gt; element.
@@ -103,6 +106,9 @@ public final class SimpleMethod extends MiniLangElement {
 	private final String serviceSuccessMessageName;
 	private final String shortDescription;
 	private final boolean useTransaction;
+	private final AtomicInteger interpretedCount = new AtomicInteger();
+	private volatile CompiledSimpleMethod compiledMethod = null;
+	private volatile boolean compileFailed = false;
 	public SimpleMethod(Element simpleMethodElement, String fromLocation) throws MiniLangException {
 		super(simpleMethodElement, null);
 		if (MiniLangValidate.validationOn()) {
@@ -362,6 +368,42 @@ public final class SimpleMethod extends MiniLangElement {
 		return true;
 	}
 
+	/**
+	 * Runs this method's operations, using the compiled form when compilation is enabled
+	 * and the method has been interpreted at least <code>compiler.threshold</code> times.
+	 */
+	private boolean runOperations(MethodContext methodContext) throws MiniLangException {
+		CompiledSimpleMethod compiledMethod = this.compiledMethod;
+		if (compiledMethod == null && !compileFailed && SimpleMethodCompiler.compileOn()
+				&& interpretedCount.incrementAndGet() > SimpleMethodCompiler.compileThreshold()) {
+			compiledMethod = getCompiledMethod();
+		}
+		if (compiledMethod != null) {
+			return compiledMethod.run(methodContext);
+		}
+		return runSubOps(methodOperations, methodContext);
+	}
+
+	/**
+	 * Returns the compiled form of this method, compiling it if necessary.
+	 * Returns <code>null</code> if the method could not be compiled.
+	 */
+	public CompiledSimpleMethod getCompiledMethod() {
+		if (compiledMethod == null && !compileFailed) {
+			synchronized (this) {
+				if (compiledMethod == null && !compileFailed) {
+					try {
+						compiledMethod = SimpleMethodCompiler.compile(this);
+					} catch (MiniLangException e) {
+						Debug.logWarning(e, "Falling back to the interpreter for simple-method " + getLocationAndName(), module);
+						compileFailed = true;
+					}
+				}
+			}
+		}
+		return compiledMethod;
+	}
+
 	public void addErrorMessage(MethodContext methodContext, String message) {
 		String messageListName = methodContext.getMethodType() == MethodContext.EVENT ? getEventErrorMessageListName() : getServiceErrorMessageListName();
 		addMessage(methodContext, messageListName, message);
@@ -440,7 +482,7 @@ public final class SimpleMethod extends MiniLangElement {
 			if (methodContext.isTraceOn()) {
 				outputTraceMessage(methodContext, "Begin running sub-elements.");
 			}
-			finished = runSubOps(methodOperations, methodContext);
+			finished = runOperations(methodContext);
 		} catch (Throwable t) {
 			// make SURE nothing gets thrown through
 			String errMsg = UtilProperties.getMessage(SimpleMethod.err_resource, "simpleMethod.error_running", locale) + ": " + t.getMessage();
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.minilang.compiler;
+
+import org.apache.ofbiz.minilang.MiniLangException;
+import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.method.MethodContext;
+
+/**
+ * Base class for the classes generated by {@link SimpleMethodCompiler}.
+ * <p>A compiled simple method replaces the interpretation of the
+ * operation tree only - transaction handling and result processing are
+ * still done by {@link SimpleMethod#exec(MethodContext)}.</p>
+ */
+public abstract class CompiledSimpleMethod {
+
+	private final SimpleMethod simpleMethod;
+
+	protected CompiledSimpleMethod(SimpleMethod simpleMethod) {
+		this.simpleMethod = simpleMethod;
+	}
+
+	public SimpleMethod getSimpleMethod() {
+		return this.simpleMethod;
+	}
+
+	/**
+	 * Runs the simple method operations.
+	 * Returns <code>true</code> if all operations completed, or
+	 * <code>false</code> if an operation stopped the script.
+	 *
+	 * @throws MiniLangException
+	 */
+	public abstract boolean run(MethodContext methodContext) throws MiniLangException;
+
+	@Override
+	public String toString() {
+		return "compiled " + this.simpleMethod.getLocationAndName();
+	}
+}
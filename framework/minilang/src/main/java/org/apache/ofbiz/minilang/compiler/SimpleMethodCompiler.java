@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.minilang.compiler;
+
+import groovy.lang.GroovyClassLoader;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
+import org.apache.ofbiz.minilang.MiniLangException;
+import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.method.MethodOperation;
+import org.apache.ofbiz.minilang.method.conditional.CompareCondition;
+import org.apache.ofbiz.minilang.method.conditional.CompareFieldCondition;
+import org.apache.ofbiz.minilang.method.conditional.ElseIf;
+import org.apache.ofbiz.minilang.method.conditional.EmptyCondition;
+import org.apache.ofbiz.minilang.method.conditional.MasterIf;
+import org.apache.ofbiz.minilang.method.envops.SetOperation;
+import org.apache.ofbiz.minilang.method.ifops.IfNotEmpty;
+import org.apache.ofbiz.minilang.method.serviceops.FieldToResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a {@link SimpleMethod} operation tree into a statically compiled Groovy class.
+ * <p>
+ * Conditional elements (<code>&lt;if&gt;</code>, <code>&lt;if-compare&gt;</code>,
+ * <code>&lt;if-compare-field&gt;</code>, <code>&lt;if-empty&gt;</code> and
+ * <code>&lt;if-not-empty&gt;</code>) are inlined, and plain <code>&lt;set&gt;</code> and
+ * <code>&lt;field-to-result&gt;</code> operations on simple field names are translated
+ * to direct <code>Map</code> access instead of going through UEL. Every other operation
+ * is executed by the interpreter through its model object, so a compiled method
+ * always behaves like the interpreted one.
+ * </p>
+ * <p>
+ * Env variables are kept in the method context env <code>Map</code> because operations
+ * run by the interpreter, called simple methods and scripts share that <code>Map</code>.
+ * </p>
+ */
+public final class SimpleMethodCompiler {
+
+	public static final String module = SimpleMethodCompiler.class.getName();
+	private static final Pattern PLAIN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	private static final AtomicInteger classCounter = new AtomicInteger();
+
+	private final SimpleMethod simpleMethod;
+	private final String className;
+	private final List<Object> constants = new ArrayList<Object>();
+	private final StringBuilder fields = new StringBuilder();
+	private final StringBuilder init = new StringBuilder();
+	private final StringBuilder body = new StringBuilder();
+	private int indent = 2;
+	private int localCount = 0;
+	private int compiledOperations = 0;
+	private int interpretedOperations = 0;
+
+	private SimpleMethodCompiler(SimpleMethod simpleMethod) {
+		this.simpleMethod = simpleMethod;
+		this.className = "CompiledSimpleMethod_" + classCounter.incrementAndGet();
+	}
+
+	/**
+	 * Returns <code>true</code> if simple method compilation is enabled in minilang.properties.
+	 */
+	public static boolean compileOn() {
+		return "true".equals(UtilProperties.getPropertyValue("minilang", "compiler.enabled"));
+	}
+
+	/**
+	 * Returns the number of interpreted executions of a simple method before it is compiled.
+	 */
+	public static int compileThreshold() {
+		return (int) UtilProperties.getPropertyNumber("minilang", "compiler.threshold", 10);
+	}
+
+	/**
+	 * Compiles <code>simpleMethod</code> and returns the compiled method.
+	 *
+	 * @throws MiniLangException if the generated class could not be compiled
+	 */
+	public static CompiledSimpleMethod compile(SimpleMethod simpleMethod) throws MiniLangException {
+		SimpleMethodCompiler compiler = new SimpleMethodCompiler(simpleMethod);
+		String source = compiler.generateSource();
+		GroovyClassLoader groovyClassLoader = new GroovyClassLoader(SimpleMethod.class.getClassLoader());
+		try {
+			Class<?> compiledClass = groovyClassLoader.parseClass(source, compiler.className + ".groovy");
+			CompiledSimpleMethod compiledMethod = (CompiledSimpleMethod) compiledClass.getConstructor(SimpleMethod.class, Object[].class).newInstance(simpleMethod, compiler.constants.toArray());
+			if (Debug.verboseOn()) {
+				Debug.logVerbose("Compiled simple-method " + simpleMethod.getLocationAndName() + " to class " + compiler.className + " (" + compiler.compiledOperations + " compiled operations, " + compiler.interpretedOperations + " interpreted operations)", module);
+			}
+			return compiledMethod;
+		} catch (Exception e) {
+			throw new MiniLangException("Could not compile simple-method " + simpleMethod.getLocationAndName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the Groovy source generated for <code>simpleMethod</code>. Intended for debugging.
+	 */
+	public static String getSource(SimpleMethod simpleMethod) {
+		return new SimpleMethodCompiler(simpleMethod).generateSource();
+	}
+
+	private static boolean isPlainName(FlexibleMapAccessor<?> fma) {
+		return !fma.isEmpty() && PLAIN_NAME.matcher(fma.getOriginalName()).matches();
+	}
+
+	private String generateSource() {
+		emitOperations(simpleMethod.getMethodOperations());
+		StringBuilder sb = new StringBuilder();
+		sb.append("import org.apache.ofbiz.base.util.ObjectType\n");
+		sb.append("import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor\n");
+		sb.append("import org.apache.ofbiz.minilang.MiniLangException\n");
+		sb.append("import org.apache.ofbiz.minilang.SimpleMethod\n");
+		sb.append("import org.apache.ofbiz.minilang.compiler.CompiledSimpleMethod\n");
+		sb.append("import org.apache.ofbiz.minilang.method.MethodContext\n");
+		sb.append("import org.apache.ofbiz.minilang.method.MethodOperation\n");
+		sb.append("import org.apache.ofbiz.minilang.method.conditional.Conditional\n");
+		sb.append("import org.apache.ofbiz.minilang.method.conditional.ElseIf\n\n");
+		sb.append("@groovy.transform.CompileStatic\n");
+		sb.append("class ").append(className).append(" extends CompiledSimpleMethod {\n");
+		sb.append(fields).append("\n");
+		sb.append("\t").append(className).append("(SimpleMethod simpleMethod, Object[] constants) {\n");
+		sb.append("\t\tsuper(simpleMethod)\n");
+		sb.append(init);
+		sb.append("\t}\n\n");
+		sb.append("\t@Override\n");
+		sb.append("\tboolean run(MethodContext methodContext) throws MiniLangException {\n");
+		sb.append("\t\tMap<String, Object> env = methodContext.getEnvMap()\n");
+		sb.append(body);
+		sb.append("\t\treturn true\n");
+		sb.append("\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private String addConstant(String type, Object constant) {
+		int index = constants.size();
+		String name = "c" + index;
+		constants.add(constant);
+		fields.append("\tprivate final ").append(type).append(" ").append(name).append("\n");
+		init.append("\t\t").append(name).append(" = (").append(type).append(") constants[").append(index).append("]\n");
+		return name;
+	}
+
+	private String newLocal() {
+		return "v" + localCount++;
+	}
+
+	private void line(String code) {
+		for (int i = 0; i < indent; i++) {
+			body.append('\t');
+		}
+		body.append(code).append('\n');
+	}
+
+	private String getExpression(FlexibleMapAccessor<Object> fma, String mapName) {
+		if (isPlainName(fma)) {
+			return mapName + ".get('" + fma.getOriginalName() + "')";
+		}
+		return addConstant("FlexibleMapAccessor<Object>", fma) + ".get(" + mapName + ")";
+	}
+
+	private String putStatement(FlexibleMapAccessor<Object> fma, String mapName, String value) {
+		if (isPlainName(fma)) {
+			return mapName + ".put('" + fma.getOriginalName() + "', " + value + ")";
+		}
+		return addConstant("FlexibleMapAccessor<Object>", fma) + ".put(" + mapName + ", " + value + ")";
+	}
+
+	private void emitOperations(List<MethodOperation> methodOperations) {
+		for (MethodOperation methodOperation : methodOperations) {
+			if (methodOperation instanceof MasterIf) {
+				emitMasterIf((MasterIf) methodOperation);
+			} else if (methodOperation instanceof CompareCondition) {
+				CompareCondition condition = (CompareCondition) methodOperation;
+				emitConditional(addConstant("Conditional", condition) + ".checkCondition(methodContext)", condition.getSubOps(), condition.getElseSubOps());
+			} else if (methodOperation instanceof CompareFieldCondition) {
+				CompareFieldCondition condition = (CompareFieldCondition) methodOperation;
+				emitConditional(addConstant("Conditional", condition) + ".checkCondition(methodContext)", condition.getSubOps(), condition.getElseSubOps());
+			} else if (methodOperation instanceof EmptyCondition) {
+				EmptyCondition condition = (EmptyCondition) methodOperation;
+				emitConditional(addConstant("Conditional", condition) + ".checkCondition(methodContext)", condition.getSubOps(), condition.getElseSubOps());
+			} else if (methodOperation instanceof IfNotEmpty) {
+				IfNotEmpty ifNotEmpty = (IfNotEmpty) methodOperation;
+				emitConditional("!ObjectType.isEmpty(" + getExpression(ifNotEmpty.getFieldFma(), "env") + ")", ifNotEmpty.getSubOps(), ifNotEmpty.getElseSubOps());
+			} else if (methodOperation instanceof SetOperation && ((SetOperation) methodOperation).isPlainCopy()) {
+				emitSet((SetOperation) methodOperation);
+			} else if (methodOperation instanceof FieldToResult && !((FieldToResult) methodOperation).getResultFma().containsNestedExpression()) {
+				emitFieldToResult((FieldToResult) methodOperation);
+			} else {
+				line("if (!" + addConstant("MethodOperation", methodOperation) + ".exec(methodContext)) {");
+				line("\treturn false");
+				line("}");
+				interpretedOperations++;
+				continue;
+			}
+			compiledOperations++;
+		}
+	}
+
+	private void emitBlock(List<MethodOperation> methodOperations) {
+		indent++;
+		emitOperations(methodOperations);
+		indent--;
+	}
+
+	private void emitConditional(String condition, List<MethodOperation> subOps, List<MethodOperation> elseSubOps) {
+		line("if (" + condition + ") {");
+		if (subOps != null) {
+			emitBlock(subOps);
+		}
+		if (elseSubOps != null) {
+			line("} else {");
+			emitBlock(elseSubOps);
+		}
+		line("}");
+	}
+
+	private void emitMasterIf(MasterIf masterIf) {
+		line("if (" + addConstant("Conditional", masterIf.getCondition()) + ".checkCondition(methodContext)) {");
+		emitBlock(masterIf.getThenSubOps());
+		if (masterIf.getElseIfs() != null) {
+			for (ElseIf elseIf : masterIf.getElseIfs()) {
+				line("} else if (" + addConstant("ElseIf", elseIf) + ".checkCondition(methodContext)) {");
+				emitBlock(elseIf.getThenSubOps());
+			}
+		}
+		if (masterIf.getElseSubOps() != null) {
+			line("} else {");
+			emitBlock(masterIf.getElseSubOps());
+		}
+		line("}");
+	}
+
+	private void emitSet(SetOperation setOperation) {
+		String local = newLocal();
+		line("Object " + local + " = " + getExpression(setOperation.getFromFma(), "env"));
+		if (setOperation.getSetIfNull()) {
+			line(putStatement(setOperation.getFieldFma(), "env", local));
+		} else {
+			line("if (" + local + " != null) {");
+			line("\t" + putStatement(setOperation.getFieldFma(), "env", local));
+			line("}");
+		}
+	}
+
+	private void emitFieldToResult(FieldToResult fieldToResult) {
+		String local = newLocal();
+		line("Object " + local + " = " + getExpression(fieldToResult.getFieldFma(), "env"));
+		line("if (" + local + " != null) {");
+		line("\t" + putStatement(fieldToResult.getResultFma(), "methodContext.getResults()", local));
+		line("}");
+	}
+}
@@ -166,6 +166,14 @@ public final class CompareCondition extends MethodOperation implements Condition
 		}
 	}
 
+	public List<MethodOperation> getElseSubOps() {
+		return this.elseSubOps;
+	}
+
+	public List<MethodOperation> getSubOps() {
+		return this.subOps;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<if-compare ");
@@ -176,6 +176,14 @@ public final class CompareFieldCondition extends MethodOperation implements Cond
 		}
 	}
 
+	public List<MethodOperation> getElseSubOps() {
+		return this.elseSubOps;
+	}
+
+	public List<MethodOperation> getSubOps() {
+		return this.subOps;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<if-compare-field ");
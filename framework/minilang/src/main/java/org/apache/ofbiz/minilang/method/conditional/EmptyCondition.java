@@ -109,6 +109,14 @@ public final class EmptyCondition extends MethodOperation implements Conditional
 		messageBuffer.append("]");
 	}
 
+	public List<MethodOperation> getElseSubOps() {
+		return this.elseSubOps;
+	}
+
+	public List<MethodOperation> getSubOps() {
+		return this.subOps;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<if-empty ");
@@ -113,6 +113,22 @@ public final class MasterIf extends MethodOperation {
 		}
 	}
 
+	public Conditional getCondition() {
+		return this.condition;
+	}
+
+	public List<ElseIf> getElseIfs() {
+		return this.elseIfs;
+	}
+
+	public List<MethodOperation> getElseSubOps() {
+		return this.elseSubOps;
+	}
+
+	public List<MethodOperation> getThenSubOps() {
+		return this.thenSubOps;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder messageBuf = new StringBuilder();
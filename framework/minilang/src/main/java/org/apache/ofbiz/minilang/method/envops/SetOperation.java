@@ -198,6 +198,26 @@ public final class SetOperation extends MethodOperation {
 		return true;
 	}
 
+	public FlexibleMapAccessor<Object> getFieldFma() {
+		return this.fieldFma;
+	}
+
+	public FlexibleMapAccessor<Object> getFromFma() {
+		return this.fromFma;
+	}
+
+	public boolean getSetIfNull() {
+		return this.setIfNull;
+	}
+
+	/**
+	 * Returns <code>true</code> if this operation copies one field to another
+	 * without a script, a default value or a type conversion.
+	 */
+	public boolean isPlainCopy() {
+		return this.scriptlet == null && !this.fromFma.isEmpty() && this.defaultFse.isEmpty() && this.type.isEmpty() && this.setIfEmpty;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<set ");
@@ -80,6 +80,18 @@ public final class IfNotEmpty extends MethodOperation {
 		}
 	}
 
+	public List<MethodOperation> getElseSubOps() {
+		return this.elseSubOps;
+	}
+
+	public List<MethodOperation> getSubOps() {
+		return this.subOps;
+	}
+
+	public FlexibleMapAccessor<Object> getFieldFma() {
+		return this.fieldFma;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<if-not-empty ");
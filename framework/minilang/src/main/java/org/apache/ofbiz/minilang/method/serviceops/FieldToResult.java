@@ -78,6 +78,14 @@ public final class FieldToResult extends MethodOperation {
 		return true;
 	}
 
+	public FlexibleMapAccessor<Object> getFieldFma() {
+		return this.fieldFma;
+	}
+
+	public FlexibleMapAccessor<Object> getResultFma() {
+		return this.resultFma;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("<field-to-result ");
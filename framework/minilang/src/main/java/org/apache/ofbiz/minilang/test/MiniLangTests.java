@@ -91,6 +91,33 @@ public class MiniLangTests extends OFBizTestCase {
 		assertTrue("<assert> error message text", errorMessage.startsWith("Assertion failed:"));
 	}
 
+	public void testCompiledSimpleMethod() throws Exception {
+		String simpleMethodXml = "<simple-method method-name=\"testCompiledSimpleMethod\" login-required=\"false\">" +
+				"  <set field=\"value\" from-field=\"parameters.inValue\"/>" +
+				"  <set field=\"copy\" from=\"value\"/>" +
+				"  <if-empty field=\"copy\"><set field=\"state\" value=\"empty\"/><else><set field=\"state\" value=\"notEmpty\"/></else></if-empty>" +
+				"  <if><condition><if-compare field=\"copy\" operator=\"equals\" value=\"1\"/></condition>" +
+				"    <then><set field=\"branch\" value=\"one\"/></then>" +
+				"    <else-if><condition><if-compare field=\"copy\" operator=\"equals\" value=\"2\"/></condition><then><set field=\"branch\" value=\"two\"/></then></else-if>" +
+				"    <else><set field=\"branch\" value=\"other\"/></else>" +
+				"  </if>" +
+				"  <if-not-empty field=\"branch\"><field-to-result field=\"branch\" result-name=\"outBranch\"/></if-not-empty>" +
+				"  <field-to-result field=\"state\"/>" +
+				"</simple-method>";
+		SimpleMethod methodToTest = createSimpleMethod(simpleMethodXml);
+		assertNotNull("Simple method compiled", methodToTest.getCompiledMethod());
+		for (String inValue : new String[] {"1", "2", "3", null}) {
+			MethodContext interpretedContext = createServiceMethodContext();
+			interpretedContext.putEnv("parameters", UtilMisc.toMap("inValue", inValue));
+			assertTrue("Interpreted run finished", SimpleMethod.runSubOps(methodToTest.getMethodOperations(), interpretedContext));
+			MethodContext compiledContext = createServiceMethodContext();
+			compiledContext.putEnv("parameters", UtilMisc.toMap("inValue", inValue));
+			assertTrue("Compiled run finished", methodToTest.getCompiledMethod().run(compiledContext));
+			assertEquals("Compiled env matches interpreted env for [" + inValue + "]", interpretedContext.getEnvMap(), compiledContext.getEnvMap());
+			assertEquals("Compiled results match interpreted results for [" + inValue + "]", interpretedContext.getResults(), compiledContext.getResults());
+		}
+	}
+
 	public void testFieldToResultOperation() throws Exception {
 		String simpleMethodXml = "<simple-method name=\"testFieldToResult\">" +
 				"  <set field=\"resultValue\" value=\"someResultValue\"/>" +
@@ -22,8 +22,10 @@ import org.apache.ofbiz.base.component.ComponentConfig;
 import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
+import org.apache.ofbiz.base.config.ModelSnapshot;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StartupTimer;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityConfException;
@@ -245,9 +247,8 @@ public class DispatchContext implements Serializable {
 	private Map<String, ModelService> getGlobalServiceMap() {
 		Map<String, ModelService> serviceMap = modelServiceMapByModel.get(this.model);
 		if (serviceMap == null) {
-			serviceMap = new HashMap<String, ModelService>();
-
-			List<Future<Map<String, ModelService>>> futures = new LinkedList<Future<Map<String, ModelService>>>();
+			long startMillis = System.currentTimeMillis();
+			List<ResourceHandler> handlers = new LinkedList<ResourceHandler>();
 			List<GlobalServices> globalServicesList = null;
 			try {
 				globalServicesList = ServiceConfigUtil.getServiceEngine().getGlobalServices();
@@ -257,19 +258,42 @@ public class DispatchContext implements Serializable {
 				throw new RuntimeException(e.getMessage());
 			}
 			for (GlobalServices globalServices : globalServicesList) {
-				ResourceHandler handler = new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), globalServices.getLoader(), globalServices.getLocation());
-				futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(handler)));
+				handlers.add(new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), globalServices.getLoader(), globalServices.getLocation()));
 			}
 
 			// get all of the component resource model stuff, ie specified in each ofbiz-component.xml file
 			for (ComponentConfig.ServiceResourceInfo componentResourceInfo : ComponentConfig.getAllServiceResourceInfos("model")) {
-				futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(componentResourceInfo.createResourceHandler())));
+				handlers.add(componentResourceInfo.createResourceHandler());
+			}
+
+			String snapshotKey = null;
+			if (ModelSnapshot.isEnabled()) {
+				// auto-attributes are resolved against the entity model, so the snapshot depends on it too
+				Delegator delegator = dispatcher != null ? dispatcher.getDelegator() : null;
+				String entityModelKey = delegator != null ? delegator.getModelReader().getSnapshotKey() : null;
+				// without the key of the entity model, a changed entity model would not be seen
+				if (delegator == null || entityModelKey != null) {
+					snapshotKey = ModelSnapshot.getSourceKey(handlers, this.model, entityModelKey);
+					serviceMap = ModelSnapshot.read("servicemodel-" + this.model, snapshotKey);
+				}
 			}
-			for (Map<String, ModelService> servicesMap : ExecutionPool.getAllFutures(futures)) {
-				if (servicesMap != null) {
-					serviceMap.putAll(servicesMap);
+			if (serviceMap == null) {
+				HashMap<String, ModelService> loadedServiceMap = new HashMap<String, ModelService>();
+				List<Future<Map<String, ModelService>>> futures = new LinkedList<Future<Map<String, ModelService>>>();
+				for (ResourceHandler handler : handlers) {
+					futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(handler)));
+				}
+				for (Map<String, ModelService> servicesMap : ExecutionPool.getAllFutures(futures)) {
+					if (servicesMap != null) {
+						loadedServiceMap.putAll(servicesMap);
+					}
+				}
+				if (snapshotKey != null) {
+					ModelSnapshot.write("servicemodel-" + this.model, snapshotKey, loadedServiceMap);
 				}
+				serviceMap = loadedServiceMap;
 			}
+			StartupTimer.recordPhaseSince("Service model [" + this.model + "]", startMillis);
 
 			if (serviceMap != null) {
 				Map<String, ModelService> cachedServiceMap = modelServiceMapByModel.putIfAbsentAndGet(this.model, serviceMap);
@@ -28,6 +28,7 @@ import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.NotificationGroup;
 import org.apache.ofbiz.service.config.model.Notify;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -36,7 +37,9 @@ import java.util.Map;
 /**
  * ModelNotification
  */
-public class ModelNotification {
+public class ModelNotification implements Serializable {
+
+	private static final long serialVersionUID = 8386311964702261571L;
 
 	public static final String module = ModelNotification.class.getName();
 
@@ -19,10 +19,14 @@
 
 package org.apache.ofbiz.service;
 
+import java.io.Serializable;
+
 /**
  * ModelServiceIface
  */
-public class ModelServiceIface {
+public class ModelServiceIface implements Serializable {
+
+	private static final long serialVersionUID = -6609933887640528472L;
 
 	protected String service;
 	protected boolean optional;
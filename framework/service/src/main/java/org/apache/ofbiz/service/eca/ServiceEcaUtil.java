@@ -24,6 +24,7 @@ import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StartupTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.service.DispatchContext;
@@ -61,6 +62,7 @@ public final class ServiceEcaUtil {
 			return;
 		}
 
+		long startMillis = System.currentTimeMillis();
 		List<Future<List<ServiceEcaRule>>> futures = new LinkedList<Future<List<ServiceEcaRule>>>();
 		List<ServiceEcas> serviceEcasList = null;
 		try {
@@ -83,6 +85,7 @@ public final class ServiceEcaUtil {
 		for (List<ServiceEcaRule> handlerRules : ExecutionPool.getAllFutures(futures)) {
 			mergeEcaDefinitions(handlerRules);
 		}
+		StartupTimer.recordPhaseSince("Service ECA rules", startMillis);
 	}
 
 	private static Callable<List<ServiceEcaRule>> createEcaLoaderCallable(final ResourceHandler handler) {
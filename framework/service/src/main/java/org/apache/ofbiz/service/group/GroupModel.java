@@ -26,6 +26,7 @@ import org.apache.ofbiz.service.ServiceDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -34,7 +35,9 @@ import java.util.Map;
 /**
  * GroupModel.java
  */
-public class GroupModel {
+public class GroupModel implements Serializable {
+
+	private static final long serialVersionUID = 5575086667082681277L;
 
 	public static final String module = GroupModel.class.getName();
 
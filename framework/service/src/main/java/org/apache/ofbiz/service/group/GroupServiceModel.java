@@ -25,6 +25,7 @@ import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.service.ServiceDispatcher;
 import org.w3c.dom.Element;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +33,9 @@ import java.util.Map;
 /**
  * GroupServiceModel.java
  */
-public class GroupServiceModel {
+public class GroupServiceModel implements Serializable {
+
+	private static final long serialVersionUID = 3653512565634820837L;
 
 	public static final String module = GroupServiceModel.class.getName();
 
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.test;
+
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelReader;
+import org.apache.ofbiz.entity.model.ModelViewEntity;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tests that the entity and service models read back from a snapshot are the same as the models read from XML
+ */
+public class ModelSnapshotTests extends OFBizTestCase {
+
+	public ModelSnapshotTests(String name) {
+		super(name);
+	}
+
+	private static Object roundTrip(Object model) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(model);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return in.readObject();
+		}
+	}
+
+	private static String toXml(ModelEntity modelEntity) throws Exception {
+		Document document = UtilXml.makeEmptyXmlDocument();
+		return UtilXml.writeXmlDocument(modelEntity.toXmlElement(document, modelEntity.getPackageName()));
+	}
+
+	private static String describe(ModelService modelService) {
+		StringBuilder description = new StringBuilder();
+		description.append(modelService.definitionLocation).append("::").append(modelService.engineName).append("::").append(modelService.location)
+				.append("::").append(modelService.invoke).append("::").append(modelService.auth).append("::").append(modelService.export)
+				.append("::").append(modelService.validate).append("::").append(modelService.useTransaction).append("::").append(modelService.requireNewTransaction)
+				.append("::").append(modelService.transactionTimeout).append("::").append(modelService.permissionServiceName).append("::").append(modelService.semaphore)
+				.append("::").append(modelService.implServices).append("::").append(modelService.permissionGroups.size()).append("::").append(modelService.notifications.size())
+				.append("::").append(modelService.internalGroup != null).append("::").append(modelService.getModelParamList());
+		// the parameters by name are kept in a HashMap, their order is not part of the model
+		for (String paramName : new TreeSet<String>(modelService.getAllParamNames())) {
+			description.append("::").append(modelService.getParam(paramName));
+		}
+		return description.toString();
+	}
+
+	public void testEntityModelRoundTrip() throws Exception {
+		ModelReader reader = delegator.getModelReader();
+		ModelReader snapshotReader = (ModelReader) roundTrip(reader);
+		assertEquals("entity names", reader.getEntityNames(), snapshotReader.getEntityNames());
+		for (String entityName : reader.getEntityNames()) {
+			ModelEntity modelEntity = reader.getModelEntity(entityName);
+			ModelEntity snapshotEntity = snapshotReader.getModelEntity(entityName);
+			assertEquals(entityName, modelEntity.getClass(), snapshotEntity.getClass());
+			// the fields of a restored entity are read under its own new lock
+			assertEquals(entityName + " fields", modelEntity.getFieldsSize(), snapshotEntity.getFieldsSize());
+			assertEquals(entityName, toXml(modelEntity), toXml(snapshotEntity));
+			assertEquals(entityName + " relations", modelEntity.getRelationsSize(), snapshotEntity.getRelationsSize());
+			assertEquals(entityName + " indexes", modelEntity.getIndexesSize(), snapshotEntity.getIndexesSize());
+			if (modelEntity instanceof ModelViewEntity) {
+				ModelViewEntity modelViewEntity = (ModelViewEntity) modelEntity;
+				ModelViewEntity snapshotViewEntity = (ModelViewEntity) snapshotEntity;
+				assertEquals(entityName + " members", modelViewEntity.getMemberModelMemberEntities().keySet(), snapshotViewEntity.getMemberModelMemberEntities().keySet());
+				assertEquals(entityName + " view links", modelViewEntity.getViewLinksSize(), snapshotViewEntity.getViewLinksSize());
+			}
+		}
+	}
+
+	public void testServiceModelRoundTrip() throws Exception {
+		DispatchContext dctx = dispatcher.getDispatchContext();
+		Map<String, ModelService> serviceMap = new HashMap<String, ModelService>();
+		for (String serviceName : dctx.getAllServiceNames()) {
+			serviceMap.put(serviceName, dctx.getModelService(serviceName));
+		}
+		@SuppressWarnings("unchecked")
+		Map<String, ModelService> snapshotServiceMap = (Map<String, ModelService>) roundTrip(serviceMap);
+		assertEquals("service names", serviceMap.keySet(), snapshotServiceMap.keySet());
+		for (ModelService modelService : serviceMap.values()) {
+			assertEquals(modelService.name, describe(modelService), describe(snapshotServiceMap.get(modelService.name)));
+		}
+	}
+}
@@ -65,6 +65,10 @@ public class ServerHitBin {
 	public static final ConcurrentMap<String, ServerHitBin> entitySinceStarted = new ConcurrentHashMap<String, ServerHitBin>();
 	public static final ConcurrentMap<String, ServerHitBin> serviceSinceStarted = new ConcurrentHashMap<String, ServerHitBin>();
 	private static final String[] typeIds = {"", "REQUEST", "EVENT", "VIEW", "ENTITY", "SERVICE"};
+	// the names of the serverstats properties by type, to not build them on each hit
+	private static final String[] enableProperties = propertyNames("stats.enable.", "");
+	private static final String[] persistBinProperties = propertyNames("stats.persist.", ".bin");
+	private static final String[] persistHitProperties = propertyNames("stats.persist.", ".hit");
 	private final Delegator delegator;
 	private final String id;
 	private final int type;
@@ -77,6 +81,14 @@ public class ServerHitBin {
 	private long minTime;
 	private long maxTime;
 
+	private static String[] propertyNames(String prefix, String suffix) {
+		String[] names = new String[typeIds.length];
+		for (int i = 0; i < typeIds.length; i++) {
+			names[i] = prefix + typeIds[i] + suffix;
+		}
+		return names;
+	}
+
 	private ServerHitBin(String id, int type, boolean limitLength, Delegator delegator) {
 		this.id = id;
 		this.type = type;
@@ -137,7 +149,7 @@ public class ServerHitBin {
 
 	private static void countHit(String id, int type, HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) {
 		// only count hits if enabled, if not specified defaults to false
-		if (!"true".equals(UtilProperties.getPropertyValue("serverstats", "stats.enable." + typeIds[type]))) return;
+		if (!"true".equals(UtilProperties.getPropertyValue("serverstats", enableProperties[type]))) return;
 		countHit(id, type, request, startTime, runningTime, userLogin, true);
 	}
 
@@ -257,7 +269,7 @@ public class ServerHitBin {
 			// put the copy at the first of the list, then put this object back on
 			if (bin.getNumberHits() > 0) {
 				// persist each bin when time ends if option turned on
-				if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.typeIds[type] + ".bin", "true", delegator)) {
+				if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", persistBinProperties[type], "true", delegator)) {
 					GenericValue serverHitBin = delegator.makeValue("ServerHitBin");
 					serverHitBin.set("contentId", bin.id);
 					serverHitBin.set("hitTypeId", ServerHitBin.typeIds[bin.type]);
@@ -472,7 +484,7 @@ public class ServerHitBin {
 	private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) throws GenericEntityException {
 		// persist record of hit in ServerHit entity if option turned on
 		Delegator delegator = (Delegator) request.getAttribute("delegator");
-		if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.typeIds[type] + ".hit", "true", delegator)) {
+		if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", persistHitProperties[type], "true", delegator)) {
 			// if the hit type is ENTITY and the name contains "ServerHit" don't
 			// persist; avoids the infinite loop and a bunch of annoying data
 			if (this.type == ENTITY && this.id.indexOf("ServerHit") > 0) {
@@ -30,6 +30,13 @@ under the License.
         <td>Min Idle</td>
         <td>Min Evictable Idle Time</td>
         <td>Max Wait</td>
+        <td>Num Waiters</td>
+        <td>Borrows</td>
+        <td>Failed Borrows</td>
+        <td>Borrow Wait (mean/95th/max ms)</td>
+        <td>Hold Time (mean/95th/max ms)</td>
+        <td>Leaks</td>
+        <td>Max Active Adjustments</td>
     </tr>
     <#assign alt_row = false>
     <#if (groups?has_content)>
@@ -48,9 +55,71 @@ under the License.
                         <td>${dataSourceInfo.poolMinIdle!}</td>
                         <td>${dataSourceInfo.poolMinEvictableIdleTimeMillis!}</td>
                         <td>${dataSourceInfo.poolMaxWait!}</td>
+                        <td>${dataSourceInfo.poolNumWaiters!}</td>
+                        <td>${dataSourceInfo.poolBorrowCount!}</td>
+                        <td>${dataSourceInfo.poolBorrowFailureCount!}</td>
+                        <td><#if dataSourceInfo.poolMeanBorrowWait??>${dataSourceInfo.poolMeanBorrowWait?string("0.##")}/${dataSourceInfo.poolBorrowWait95th}/${dataSourceInfo.poolMaxBorrowWait}</#if></td>
+                        <td><#if dataSourceInfo.poolMeanHold??>${dataSourceInfo.poolMeanHold?string("0.##")}/${dataSourceInfo.poolHold95th}/${dataSourceInfo.poolMaxHold}</#if></td>
+                        <td><#if dataSourceInfo.poolLeaks??>${dataSourceInfo.poolLeaks?size}</#if></td>
+                        <td><#if dataSourceInfo.poolMaxActiveAdjustments??>${dataSourceInfo.poolMaxActiveAdjustments} (${dataSourceInfo.poolConfiguredMaxActive}-${dataSourceInfo.poolAdaptiveMaxActive})</#if></td>
                     </tr>
+                    <#assign poolInfos = (poolInfos![]) + [{"helper": helper, "info": dataSourceInfo}]/>
                 </#if>
             </#if>
         </#list>
     </#if>
 </table>
+
+<#list poolInfos![] as poolInfo>
+    <#if poolInfo.info.poolBorrowWaitHistogram??>
+        <h2>${poolInfo.helper}</h2>
+        <table class="basic-table">
+            <tr>
+                <td class="label">Borrow Wait Histogram</td>
+                <td>${poolInfo.info.poolBorrowWaitHistogram}</td>
+            </tr>
+            <tr>
+                <td class="label">Hold Time Histogram</td>
+                <td>${poolInfo.info.poolHoldHistogram}</td>
+            </tr>
+            <#list poolInfo.info.poolLeaks as leak>
+                <tr>
+                    <td class="label">Leaked Connection</td>
+                    <td><pre>${leak}</pre></td>
+                </tr>
+            </#list>
+        </table>
+    </#if>
+</#list>
+
+<#assign selectStatementCaches = Static["org.apache.ofbiz.entity.datasource.SelectStatementCache"].getStatistics()/>
+<#if selectStatementCaches?has_content>
+    <h1>SQL Statement Cache</h1>
+    <table class="basic-table light-grid hover-bar">
+        <tr class="header-row">
+            <td>Helper Name</td>
+            <td>Size</td>
+            <td>Hits</td>
+            <td>Misses</td>
+            <td>Not Cacheable</td>
+            <td>Hit Rate</td>
+            <td>SQL Generation Time (ms)</td>
+            <td>Estimated Time Saved (ms)</td>
+            <td>Hit Lookup Time (ms)</td>
+        </tr>
+        <#list selectStatementCaches?keys as helper>
+            <#assign cacheStatistics = selectStatementCaches[helper]/>
+            <tr>
+                <td>${helper}</td>
+                <td>${cacheStatistics.size}</td>
+                <td>${cacheStatistics.hits}</td>
+                <td>${cacheStatistics.misses}</td>
+                <td>${cacheStatistics.notCacheable}</td>
+                <td>${cacheStatistics.hitRate?string("0.#")}%</td>
+                <td>${cacheStatistics.generationMillis}</td>
+                <td>${cacheStatistics.savedMillis}</td>
+                <td>${cacheStatistics.hitLookupMillis}</td>
+            </tr>
+        </#list>
+    </table>
+</#if>
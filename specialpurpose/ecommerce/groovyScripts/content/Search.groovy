@@ -22,14 +22,11 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer
 import org.apache.lucene.document.Document
 import org.apache.lucene.index.Term
 import org.apache.lucene.queryparser.classic.QueryParser
-import org.apache.lucene.store.FSDirectory
 import org.apache.ofbiz.base.util.Debug
 import org.apache.ofbiz.base.util.UtilHttp
-import org.apache.ofbiz.content.search.SearchWorker
+import org.apache.ofbiz.content.search.DocumentIndexer
 import org.apache.ofbiz.product.feature.ParametricSearch
 import org.apache.lucene.search.*
-import org.apache.lucene.index.DirectoryReader
-import org.apache.lucene.store.Directory
 import org.apache.ofbiz.base.util.UtilProperties
 
 paramMap = UtilHttp.getParameterMap(request)
@@ -42,18 +39,12 @@ featureIdByType = ParametricSearch.makeFeatureIdByTypeMap(paramMap)
 //Debug.logInfo("in search, featureIdByType:" + featureIdByType, "")
 
 combQuery = new BooleanQuery.Builder()
-IndexSearcher searcher = null
-Analyzer analyzer = null
-
-try {
-    Directory directory = FSDirectory.open(new File(SearchWorker.getIndexPath("content")).toPath())
-    DirectoryReader reader = DirectoryReader.open(directory)
-    searcher = new IndexSearcher(reader)
-    analyzer = new StandardAnalyzer()
-} catch (java.io.FileNotFoundException e) {
+DocumentIndexer indexer = DocumentIndexer.getInstance(delegator, "content")
+if (!indexer) {
     context.errorMessageList.add(UtilProperties.getMessage("ContentErrorUiLabels", "ContentSearchNotIndexed", locale))
     return
 }
+Analyzer analyzer = new StandardAnalyzer()
 
 termQuery = new TermQuery(new Term("site", siteId.toString()))
 combQuery.add(termQuery, BooleanClause.Occur.MUST)
@@ -84,7 +75,8 @@ if (featureIdByType) {
     combQuery.add(featureQuery.build(), featuresRequired)
 }
 
-if (searcher) {
+IndexSearcher searcher = indexer.acquireSearcher()
+try {
     Debug.logInfo("in search searchFeature3, combQuery:" + combQuery.toString(), "")
     TopScoreDocCollector collector = TopScoreDocCollector.create(100) //defaulting to 100 results
     searcher.search(combQuery.build(), collector)
@@ -103,4 +95,6 @@ if (searcher) {
         }
     }
     context.queryResults = contentList
+} finally {
+    indexer.releaseSearcher(searcher)
 }
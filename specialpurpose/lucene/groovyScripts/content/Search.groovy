@@ -21,12 +21,10 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer
 import org.apache.lucene.document.Document
 import org.apache.lucene.index.Term
 import org.apache.lucene.queryparser.classic.QueryParser
-import org.apache.lucene.store.FSDirectory
 import org.apache.ofbiz.base.util.UtilHttp
-import org.apache.ofbiz.content.search.SearchWorker
+import org.apache.ofbiz.content.search.DocumentIndexer
 import org.apache.ofbiz.product.feature.ParametricSearch
 import org.apache.lucene.search.*
-import org.apache.lucene.index.DirectoryReader
 import org.apache.ofbiz.base.util.UtilProperties
 
 queryLine = parameters.queryLine
@@ -41,14 +39,12 @@ featureIdByType = ParametricSearch.makeFeatureIdByTypeMap(UtilHttp.getParameterM
 
 combQuery = new BooleanQuery()
 
-try {
-    DirectoryReader reader = DirectoryReader.open(FSDirectory.open(new File(SearchWorker.getIndexPath("content")).toPath()))
-    searcher = new IndexSearcher(reader)
-    analyzer = new StandardAnalyzer()
-} catch (java.io.FileNotFoundException e) {
+indexer = DocumentIndexer.getInstance(delegator, "content")
+if (!indexer) {
     context.errorMessageList.add(UtilProperties.getMessage("ContentErrorUiLabels", "ContentSearchNotIndexed", locale))
     return
 }
+analyzer = new StandardAnalyzer()
 
 if (queryLine || siteId) {
     Query query = null
@@ -93,7 +89,8 @@ if (searchFeature1 || searchFeature2 || searchFeature3 || !featureIdByType.isEmp
     combQuery.add(featureQuery, featuresRequired)
     }
 }
-if (searcher) {
+searcher = indexer.acquireSearcher()
+try {
     TopScoreDocCollector collector = TopScoreDocCollector.create(100) //defaulting to 100 results
     searcher.search(combQuery, collector)
     ScoreDoc[] hits = collector.topDocs().scoreDocs
@@ -110,4 +107,6 @@ if (searcher) {
         }
     }
     context.queryResults = contentList
+} finally {
+    indexer.releaseSearcher(searcher)
 }
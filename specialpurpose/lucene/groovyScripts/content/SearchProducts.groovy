@@ -19,10 +19,10 @@
 
 
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer
-import org.apache.ofbiz.content.search.SearchWorker
+import org.apache.ofbiz.base.util.UtilProperties
+import org.apache.ofbiz.content.search.DocumentIndexer
 
 import org.apache.lucene.document.Document
-import org.apache.lucene.index.DirectoryReader
 import org.apache.lucene.queryparser.classic.ParseException
 import org.apache.lucene.queryparser.classic.QueryParser
 import org.apache.lucene.search.BooleanClause
@@ -31,18 +31,13 @@ import org.apache.lucene.search.IndexSearcher
 import org.apache.lucene.search.Query
 import org.apache.lucene.search.ScoreDoc
 import org.apache.lucene.search.TopScoreDocCollector
-import org.apache.lucene.store.FSDirectory
 
 if (parameters.luceneQuery) {
     Query combQuery = new BooleanQuery()
-    IndexSearcher searcher
-    WhitespaceAnalyzer analyzer
-    try {
-        DirectoryReader reader = DirectoryReader.open(FSDirectory.open(new File(SearchWorker.getIndexPath("products")).toPath()))
-        searcher = new IndexSearcher(reader)
-        analyzer = new WhitespaceAnalyzer()
-    } catch (FileNotFoundException e) {
-        context.errorMessageList.add(e.getMessage())
+    WhitespaceAnalyzer analyzer = new WhitespaceAnalyzer()
+    DocumentIndexer indexer = DocumentIndexer.getInstance(delegator, "products")
+    if (!indexer) {
+        context.errorMessageList.add(UtilProperties.getMessage("ContentErrorUiLabels", "ContentSearchProductIndexError", locale))
         return
     }
 
@@ -57,17 +52,23 @@ if (parameters.luceneQuery) {
     }
     combQuery.add(query, BooleanClause.Occur.MUST)
 
-    TopScoreDocCollector collector = TopScoreDocCollector.create(100) // defaulting to 100 results
-    searcher.search(combQuery, collector)
-    ScoreDoc[] hits = collector.topDocs().scoreDocs
-    productList = []
-    hits.each { hit ->
-        Document doc = searcher.doc(hit.doc)
-        productId = doc.productId
-        product = from("Product").where("productId", productId).cache(true).queryOne()
-        if (product) {
-            productList.add(product)
+    // the searcher sees the documents indexed until its last refresh, even if they are not committed yet
+    IndexSearcher searcher = indexer.acquireSearcher()
+    try {
+        TopScoreDocCollector collector = TopScoreDocCollector.create(100) // defaulting to 100 results
+        searcher.search(combQuery, collector)
+        ScoreDoc[] hits = collector.topDocs().scoreDocs
+        productList = []
+        hits.each { hit ->
+            Document doc = searcher.doc(hit.doc)
+            productId = doc.productId
+            product = from("Product").where("productId", productId).cache(true).queryOne()
+            if (product) {
+                productList.add(product)
+            }
         }
+        context.queryResults = productList
+    } finally {
+        indexer.releaseSearcher(searcher)
     }
-    context.queryResults = productList
 }
@@ -47,11 +47,33 @@ public class ContentDocument implements LuceneDocument {
 	private final Term documentIdentifier;
 	private final LocalDispatcher dispatcher;
 	private final GenericValue content;
+	private final boolean loaded;
+	private final GenericValue dataResource;
+	private final List<String> productFeatureIds;
 
 	public ContentDocument(GenericValue content, LocalDispatcher dispatcher) {
 		this.content = content;
 		this.dispatcher = dispatcher;
 		this.documentIdentifier = new Term("contentId", content.getString("contentId"));
+		this.loaded = false;
+		this.dataResource = null;
+		this.productFeatureIds = null;
+	}
+
+	/**
+	 * Creates the document of a content whose DataResource and ProductFeatureDataResources were already read,
+	 * see {@link SearchWorker#indexContentList}.
+	 *
+	 * @param dataResource the DataResource of the content, <code>null</code> if it has none
+	 * @param productFeatureIds the productFeatureIds of the ProductFeatureDataResources of the DataResource
+	 */
+	public ContentDocument(GenericValue content, GenericValue dataResource, List<String> productFeatureIds, LocalDispatcher dispatcher) {
+		this.content = content;
+		this.dispatcher = dispatcher;
+		this.documentIdentifier = new Term("contentId", content.getString("contentId"));
+		this.loaded = true;
+		this.dataResource = dataResource;
+		this.productFeatureIds = productFeatureIds;
 	}
 
 	@Override
@@ -101,12 +123,14 @@ public class ContentDocument implements LuceneDocument {
 
 	private boolean indexDataResource(Document doc) {
 		String contentId = content.getString("contentId");
-		GenericValue dataResource;
-		try {
-			dataResource = content.getRelatedOne("DataResource", true);
-		} catch (GenericEntityException e) {
-			Debug.logError(e, module);
-			return false;
+		GenericValue dataResource = this.dataResource;
+		if (!loaded) {
+			try {
+				dataResource = content.getRelatedOne("DataResource", true);
+			} catch (GenericEntityException e) {
+				Debug.logError(e, module);
+				return false;
+			}
 		}
 		if (dataResource == null) {
 			return false;
@@ -134,17 +158,20 @@ public class ContentDocument implements LuceneDocument {
 			Field field = new TextField("content", text, Store.NO);
 			doc.add(field);
 		}
-		List<GenericValue> featureDataResourceList;
-		try {
-			featureDataResourceList = content.getRelated("ProductFeatureDataResource", null, null, true);
-		} catch (GenericEntityException e) {
-			Debug.logError(e, module);
-			return false;
-		}
-		List<String> featureList = new ArrayList<String>();
-		for (GenericValue productFeatureDataResource : featureDataResourceList) {
-			String feature = productFeatureDataResource.getString("productFeatureId");
-			featureList.add(feature);
+		List<String> featureList = productFeatureIds;
+		if (!loaded) {
+			List<GenericValue> featureDataResourceList;
+			try {
+				featureDataResourceList = content.getRelated("ProductFeatureDataResource", null, null, true);
+			} catch (GenericEntityException e) {
+				Debug.logError(e, module);
+				return false;
+			}
+			featureList = new ArrayList<String>();
+			for (GenericValue productFeatureDataResource : featureDataResourceList) {
+				String feature = productFeatureDataResource.getString("productFeatureId");
+				featureList.add(feature);
+			}
 		}
 		String featureString = StringUtil.join(featureList, " ");
 		if (UtilValidate.isNotEmpty(featureString)) {
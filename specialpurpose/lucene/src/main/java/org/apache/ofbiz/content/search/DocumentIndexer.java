@@ -20,139 +20,422 @@ package org.apache.ofbiz.content.search;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.entity.Delegator;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
-public class DocumentIndexer extends Thread {
+/**
+ * Indexes the {@link LuceneDocument}s queued for an index.
+ * <p>The documents are built by <code>index.builder.threads</code> threads; the documents of a same identifier are
+ * always built by the same thread, in the order they were queued, and a document queued again before being built
+ * is only built once. The index writer stays open: the searchers returned by {@link #acquireSearcher()} see the
+ * changes every <code>index.refresh.intervalMillis</code> (near-real-time), and the index is committed after
+ * <code>index.commit.maxDocs</code> changes or when its oldest uncommitted change is older than
+ * <code>index.commit.intervalMillis</code>.</p>
+ * <p>The indexers are closed by the {@link DocumentIndexerContainer} when OFBiz stops: the queued documents are
+ * indexed, then the index is committed and its writer closed, releasing the lock of the index.</p>
+ */
+public class DocumentIndexer {
 
 	public static final String module = DocumentIndexer.class.getName();
-	// TODO: Move to property file
-	private static final int UNCOMMITTED_DOC_LIMIT = 100;
-	private static Map<String, DocumentIndexer> documentIndexerMap = new HashMap<String, DocumentIndexer>();
-	private LinkedBlockingQueue<LuceneDocument> documentIndexQueue = new LinkedBlockingQueue<LuceneDocument>();
-	private Delegator delegator;
-	private Directory indexDirectory;
-
-	private DocumentIndexer(Delegator delegator, String indexName) {
+	private static final Map<String, DocumentIndexer> documentIndexerMap = new HashMap<String, DocumentIndexer>();
+	// queued after the last document identifiers to stop the builders
+	private static final Term STOP = new Term("", "");
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "DocumentIndexer-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final String id;
+	private final String name;
+	private final Delegator delegator;
+	private final Directory indexDirectory;
+	private final int commitMaxDocs;
+	private final long commitIntervalMillis;
+	private final double ramBufferSizeMB;
+	private final ConcurrentHashMap<Term, LuceneDocument> pendingDocuments = new ConcurrentHashMap<Term, LuceneDocument>();
+	private final List<LinkedBlockingQueue<Term>> builderQueues;
+	private final List<Thread> builders;
+	private final ScheduledFuture<?> refresh;
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicInteger uncommittedDocs = new AtomicInteger();
+	private final AtomicLong firstUncommittedMillis = new AtomicLong();
+	private final long startMillis = System.currentTimeMillis();
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder deduplicated = new LongAdder();
+	private final LongAdder indexed = new LongAdder();
+	private final LongAdder deleted = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder buildNanos = new LongAdder();
+	private final LongAdder writeNanos = new LongAdder();
+	private final LongAdder commits = new LongAdder();
+	private final LongAdder commitNanos = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+	private final Object commitLock = new Object();
+	private volatile long lastCommitMillis;
+	private volatile boolean closed;
+	private volatile IndexWriter indexWriter;
+	private volatile SearcherManager searcherManager;
+
+	private DocumentIndexer(Delegator delegator, String indexName) throws IOException {
+		this.id = delegator.getDelegatorName() + "_" + indexName;
+		this.name = "DocumentIndexer_" + id;
 		this.delegator = delegator;
-		try {
-			this.indexDirectory = FSDirectory.open(new File(SearchWorker.getIndexPath(indexName)).toPath());
-		} catch (CorruptIndexException e) {
-			Debug.logError("Corrupted lucene index: " + e.getMessage(), module);
-		} catch (LockObtainFailedException e) {
-			Debug.logError("Could not obtain Lock on lucene index " + e.getMessage(), module);
-		} catch (IOException e) {
-			Debug.logError(e.getMessage(), module);
+		this.indexDirectory = FSDirectory.open(new File(SearchWorker.getIndexPath(indexName)).toPath());
+		this.commitMaxDocs = UtilProperties.getPropertyAsInteger("lucene", "index.commit.maxDocs", 1000);
+		this.commitIntervalMillis = UtilProperties.getPropertyAsLong("lucene", "index.commit.intervalMillis", 30000);
+		this.ramBufferSizeMB = UtilProperties.getPropertyAsDouble("lucene", "index.writer.ramBufferSizeMB", 64);
+		int builderThreads = UtilProperties.getPropertyAsInteger("lucene", "index.builder.threads", 0);
+		if (builderThreads <= 0) {
+			builderThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+		}
+		this.builderQueues = new ArrayList<LinkedBlockingQueue<Term>>(builderThreads);
+		this.builders = new ArrayList<Thread>(builderThreads);
+		for (int i = 0; i < builderThreads; i++) {
+			LinkedBlockingQueue<Term> builderQueue = new LinkedBlockingQueue<Term>();
+			Thread builder = new Thread(new Builder(builderQueue), name + "_builder_" + i);
+			builder.setDaemon(true);
+			builderQueues.add(builderQueue);
+			builders.add(builder);
+			builder.start();
 		}
+		long refreshIntervalMillis = UtilProperties.getPropertyAsLong("lucene", "index.refresh.intervalMillis", 1000);
+		this.refresh = scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				refreshAndCommit();
+			}
+		}, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
 	}
 
 	public static synchronized DocumentIndexer getInstance(Delegator delegator, String indexName) {
 		String documentIndexerId = delegator.getDelegatorName() + "_" + indexName;
 		DocumentIndexer documentIndexer = documentIndexerMap.get(documentIndexerId);
 		if (documentIndexer == null) {
-			documentIndexer = new DocumentIndexer(delegator, indexName);
-			documentIndexer.setName("DocumentIndexer_" + delegator.getDelegatorName() + "_" + indexName);
-			documentIndexer.start();
+			try {
+				documentIndexer = new DocumentIndexer(delegator, indexName);
+			} catch (IOException e) {
+				Debug.logError(e, "Could not open lucene index " + indexName, module);
+				return null;
+			}
 			documentIndexerMap.put(documentIndexerId, documentIndexer);
 		}
 		return documentIndexer;
 	}
 
-	@Override
-	public void run() {
-		IndexWriter indexWriter = null;
-		int uncommittedDocs = 0;
-		while (true) {
-			LuceneDocument ofbizDocument;
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Queues a document to be indexed, or to be deleted from the index if it builds no {@link Document}.
+	 * If a document of the same identifier is waiting to be built, it is replaced by this one.
+	 *
+	 * @return <code>false</code> if the indexer is closed
+	 */
+	public boolean queue(LuceneDocument document) {
+		if (closed) {
+			Debug.logWarning(name + " is closed, the document is not indexed: " + document, module);
+			return false;
+		}
+		Term documentIdentifier = document.getDocumentIdentifier();
+		queued.increment();
+		if (pendingDocuments.put(documentIdentifier, document) != null) {
+			deduplicated.increment();
+			return true;
+		}
+		outstanding.incrementAndGet();
+		return builderQueues.get((documentIdentifier.hashCode() & Integer.MAX_VALUE) % builderQueues.size()).add(documentIdentifier);
+	}
+
+	/**
+	 * Returns a searcher of the index, seeing the changes made until its last refresh.
+	 * Must be released with {@link #releaseSearcher(IndexSearcher)}.
+	 */
+	public IndexSearcher acquireSearcher() throws IOException {
+		return getSearcherManager().acquire();
+	}
+
+	public void releaseSearcher(IndexSearcher searcher) throws IOException {
+		if (searcher != null) {
+			getSearcherManager().release(searcher);
+		}
+	}
+
+	/**
+	 * Waits until the queued documents are indexed, at most <code>timeoutMillis</code>, then refreshes the searchers.
+	 *
+	 * @return <code>true</code> if all the queued documents were indexed
+	 */
+	public boolean awaitIndexed(long timeoutMillis) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (outstanding.get() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		getSearcherManager().maybeRefreshBlocking();
+		refreshes.increment();
+		return outstanding.get() == 0;
+	}
+
+	/**
+	 * Closes the indexer: the documents already queued are indexed, waiting at most <code>timeoutMillis</code>,
+	 * then the index is committed and its writer closed. {@link #getInstance} returns a new indexer afterwards.
+	 */
+	public void close(long timeoutMillis) throws InterruptedException {
+		synchronized (DocumentIndexer.class) {
+			if (documentIndexerMap.get(id) == this) {
+				documentIndexerMap.remove(id);
+			}
+		}
+		closed = true;
+		refresh.cancel(false);
+		for (LinkedBlockingQueue<Term> builderQueue : builderQueues) {
+			builderQueue.add(STOP);
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		for (Thread builder : builders) {
+			builder.join(Math.max(1, deadline - System.currentTimeMillis()));
+		}
+		if (outstanding.get() > 0) {
+			Debug.logWarning(name + ": closing with " + outstanding.get() + " documents not indexed", module);
+		}
+		commit();
+		synchronized (commitLock) {
 			try {
-				// Execution will pause here until the queue receives a LuceneDocument for indexing
-				ofbizDocument = documentIndexQueue.take();
-			} catch (InterruptedException e) {
-				Debug.logError(e, module);
 				if (indexWriter != null) {
-					try {
-						indexWriter.close();
-						indexWriter = null;
-					} catch (IOException ioe) {
-						Debug.logError(ioe, module);
-					}
+					searcherManager.close();
+					indexWriter.close();
 				}
-				break;
+				indexDirectory.close();
+			} catch (IOException e) {
+				Debug.logError(e, name + ": could not close the index", module);
 			}
-			Term documentIdentifier = ofbizDocument.getDocumentIdentifier();
-			Document document = ofbizDocument.prepareDocument(this.delegator);
-			if (indexWriter == null) {
-				try {
+		}
+		Debug.logInfo(name + ": closed, statistics: " + getStatistics(), module);
+	}
+
+	/**
+	 * Closes all the indexers, see {@link #close(long)}.
+	 */
+	public static void closeAll(long timeoutMillis) throws InterruptedException {
+		List<DocumentIndexer> documentIndexers;
+		synchronized (DocumentIndexer.class) {
+			documentIndexers = new ArrayList<DocumentIndexer>(documentIndexerMap.values());
+		}
+		for (DocumentIndexer documentIndexer : documentIndexers) {
+			documentIndexer.close(timeoutMillis);
+		}
+	}
+
+	/**
+	 * Returns the statistics of the indexer: documents queued, deduplicated, indexed, deleted and failed, documents
+	 * waiting, indexing rate, mean build and write times, commits and refreshes.
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new HashMap<String, Object>();
+		long indexedCount = indexed.sum();
+		long deletedCount = deleted.sum();
+		long processed = indexedCount + deletedCount + failed.sum();
+		long commitCount = commits.sum();
+		long elapsedMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+		statistics.put("name", name);
+		statistics.put("queued", queued.sum());
+		statistics.put("deduplicated", deduplicated.sum());
+		statistics.put("indexed", indexedCount);
+		statistics.put("deleted", deletedCount);
+		statistics.put("failed", failed.sum());
+		statistics.put("waiting", outstanding.get());
+		statistics.put("uncommitted", uncommittedDocs.get());
+		statistics.put("docsPerSecond", (indexedCount + deletedCount) * 1000.0 / elapsedMillis);
+		statistics.put("meanBuildMillis", processed == 0 ? 0 : buildNanos.sum() / 1000000.0 / processed);
+		statistics.put("meanWriteMillis", processed == 0 ? 0 : writeNanos.sum() / 1000000.0 / processed);
+		statistics.put("commits", commitCount);
+		statistics.put("meanCommitMillis", commitCount == 0 ? 0 : commitNanos.sum() / 1000000.0 / commitCount);
+		statistics.put("lastCommitMillis", lastCommitMillis);
+		statistics.put("refreshes", refreshes.sum());
+		return statistics;
+	}
+
+	/**
+	 * Returns the statistics of all the indexers, see {@link #getStatistics()}.
+	 */
+	public static synchronized Map<String, Map<String, Object>> getAllStatistics() {
+		Map<String, Map<String, Object>> statistics = new HashMap<String, Map<String, Object>>();
+		for (DocumentIndexer documentIndexer : documentIndexerMap.values()) {
+			statistics.put(documentIndexer.name, documentIndexer.getStatistics());
+		}
+		return statistics;
+	}
+
+	private IndexWriter getIndexWriter() throws IOException {
+		if (indexWriter == null) {
+			synchronized (this) {
+				if (closed) {
+					throw new IOException(name + " is closed");
+				}
+				if (indexWriter == null) {
 					StandardAnalyzer analyzer = new StandardAnalyzer();
 					analyzer.setVersion(SearchWorker.getLuceneVersion());
-					indexWriter = new IndexWriter(this.indexDirectory, new IndexWriterConfig(analyzer));
-				} catch (CorruptIndexException e) {
-					Debug.logError("Corrupted lucene index: " + e.getMessage(), module);
-					break;
-				} catch (LockObtainFailedException e) {
-					Debug.logError("Could not obtain Lock on lucene index " + e.getMessage(), module);
-					// TODO: put the thread to sleep waiting for the locked to be released
-					break;
-				} catch (IOException e) {
-					Debug.logError(e.getMessage(), module);
-					break;
+					IndexWriterConfig config = new IndexWriterConfig(analyzer);
+					config.setRAMBufferSizeMB(ramBufferSizeMB);
+					IndexWriter writer = new IndexWriter(indexDirectory, config);
+					searcherManager = new SearcherManager(writer, true, null);
+					indexWriter = writer;
 				}
 			}
+		}
+		return indexWriter;
+	}
+
+	private SearcherManager getSearcherManager() throws IOException {
+		getIndexWriter();
+		return searcherManager;
+	}
+
+	private void index(LuceneDocument ofbizDocument) {
+		Term documentIdentifier = ofbizDocument.getDocumentIdentifier();
+		long startNanos = System.nanoTime();
+		Document document;
+		try {
+			document = ofbizDocument.prepareDocument(this.delegator);
+		} catch (RuntimeException e) {
+			failed.increment();
+			Debug.logError(e, name + ": error building Lucene document: " + ofbizDocument, module);
+			return;
+		} finally {
+			buildNanos.add(System.nanoTime() - startNanos);
+		}
+		startNanos = System.nanoTime();
+		try {
+			IndexWriter writer = getIndexWriter();
+			if (document == null) {
+				writer.deleteDocuments(documentIdentifier);
+				deleted.increment();
+				if (Debug.verboseOn()) Debug.logVerbose(name + ": deleted Lucene document: " + ofbizDocument, module);
+			} else {
+				writer.updateDocument(documentIdentifier, document);
+				indexed.increment();
+				if (Debug.verboseOn()) Debug.logVerbose(name + ": indexed Lucene document: " + ofbizDocument, module);
+			}
+		} catch (Exception e) {
+			failed.increment();
+			Debug.logError(e, name + ": error processing Lucene document: " + ofbizDocument, module);
+			return;
+		} finally {
+			writeNanos.add(System.nanoTime() - startNanos);
+		}
+		firstUncommittedMillis.compareAndSet(0, System.currentTimeMillis());
+		if (uncommittedDocs.incrementAndGet() >= commitMaxDocs) {
+			commit();
+		}
+	}
+
+	private void refreshAndCommit() {
+		SearcherManager manager = searcherManager;
+		if (manager == null || closed) {
+			return;
+		}
+		try {
+			if (manager.maybeRefresh()) {
+				refreshes.increment();
+			}
+		} catch (IOException e) {
+			Debug.logError(e, name + ": could not refresh the searchers", module);
+		}
+		if (uncommittedDocs.get() > 0) {
+			// a change made while committing
+			firstUncommittedMillis.compareAndSet(0, System.currentTimeMillis());
+		}
+		long firstUncommitted = firstUncommittedMillis.get();
+		if (firstUncommitted != 0 && System.currentTimeMillis() - firstUncommitted >= commitIntervalMillis) {
+			commit();
+		}
+	}
+
+	private void commit() {
+		// the builders keep writing while the index is committed
+		synchronized (commitLock) {
+			if (indexWriter == null || uncommittedDocs.get() == 0) {
+				return;
+			}
+			int committing = uncommittedDocs.getAndSet(0);
+			firstUncommittedMillis.set(0);
+			long startNanos = System.nanoTime();
 			try {
-				if (document == null) {
-					indexWriter.deleteDocuments(documentIdentifier);
-					if (Debug.infoOn()) Debug.logInfo(getName() + ": deleted Lucene document: " + ofbizDocument, module);
-				} else {
-					indexWriter.updateDocument(documentIdentifier, document);
-					if (Debug.infoOn()) Debug.logInfo(getName() + ": indexed Lucene document: " + ofbizDocument, module);
-				}
-			} catch (Exception e) {
-				Debug.logError(e, getName() + ": error processing Lucene document: " + ofbizDocument, module);
-				if (documentIndexQueue.peek() == null) {
-					try {
-						indexWriter.close();
-						indexWriter = null;
-					} catch (IOException ioe) {
-						Debug.logError(ioe, module);
-					}
-				}
-				continue;
+				indexWriter.commit();
+			} catch (IOException e) {
+				Debug.logError(e, name + ": could not commit the index", module);
+				return;
+			}
+			long nanos = System.nanoTime() - startNanos;
+			commits.increment();
+			commitNanos.add(nanos);
+			lastCommitMillis = System.currentTimeMillis();
+			if (Debug.infoOn()) {
+				Debug.logInfo(name + ": committed " + committing + " documents in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, statistics: " + getStatistics(), module);
 			}
-			uncommittedDocs++;
-			if (uncommittedDocs == UNCOMMITTED_DOC_LIMIT || documentIndexQueue.peek() == null) {
-				// limit reached or queue empty, time to commit
+		}
+	}
+
+	private final class Builder implements Runnable {
+		private final LinkedBlockingQueue<Term> builderQueue;
+
+		private Builder(LinkedBlockingQueue<Term> builderQueue) {
+			this.builderQueue = builderQueue;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Term documentIdentifier;
 				try {
-					indexWriter.commit();
-				} catch (IOException e) {
+					// Execution will pause here until the queue receives a document identifier for indexing
+					documentIdentifier = builderQueue.take();
+				} catch (InterruptedException e) {
 					Debug.logError(e, module);
+					break;
 				}
-				uncommittedDocs = 0;
-			}
-			if (documentIndexQueue.peek() == null) {
+				if (documentIdentifier == STOP) {
+					break;
+				}
+				// the latest document queued for this identifier, later ones are queued again
+				LuceneDocument ofbizDocument = pendingDocuments.remove(documentIdentifier);
 				try {
-					indexWriter.close();
-					indexWriter = null;
-				} catch (IOException e) {
-					Debug.logError(e, module);
+					if (ofbizDocument != null) {
+						index(ofbizDocument);
+					}
+				} finally {
+					outstanding.decrementAndGet();
 				}
 			}
 		}
 	}
-
-	public boolean queue(LuceneDocument document) {
-		return documentIndexQueue.add(document);
-	}
 }
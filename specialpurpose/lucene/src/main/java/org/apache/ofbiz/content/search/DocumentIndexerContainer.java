@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.content.search;
+
+import org.apache.ofbiz.base.container.Container;
+import org.apache.ofbiz.base.container.ContainerException;
+import org.apache.ofbiz.base.start.StartupCommand;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+import java.util.List;
+
+/**
+ * Closes the {@link DocumentIndexer}s when OFBiz stops, so the documents they were given are indexed and committed
+ * and the locks of the indexes released.
+ */
+public class DocumentIndexerContainer implements Container {
+	private String name;
+
+	@Override
+	public void init(List<StartupCommand> ofbizCommands, String name, String configFile) throws ContainerException {
+		this.name = name;
+	}
+
+	@Override
+	public boolean start() throws ContainerException {
+		return true;
+	}
+
+	@Override
+	public void stop() throws ContainerException {
+		try {
+			DocumentIndexer.closeAll(UtilProperties.getPropertyAsLong("lucene", "index.close.timeoutMillis", 60000));
+		} catch (InterruptedException e) {
+			throw new ContainerException(e);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+}
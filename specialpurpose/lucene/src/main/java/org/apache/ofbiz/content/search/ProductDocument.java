@@ -33,6 +33,9 @@ import org.apache.ofbiz.entity.util.EntityUtilProperties;
 
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -96,6 +99,25 @@ public class ProductDocument implements LuceneDocument {
 
 					List<GenericValue> productFeatureAndAppls = EntityQuery.use(delegator).from("ProductFeatureAndAppl").where("productId", productId).queryList();
 					productFeatureAndAppls = this.filterByThruDate(productFeatureAndAppls);
+					// Get the ProductFeatureGroupAppls of all the features in one query
+					Map<String, List<GenericValue>> productFeatureGroupApplsByFeature = new HashMap<String, List<GenericValue>>();
+					if (!productFeatureAndAppls.isEmpty()) {
+						Set<String> productFeatureIds = new HashSet<String>();
+						for (GenericValue productFeatureAndAppl : productFeatureAndAppls) {
+							productFeatureIds.add(productFeatureAndAppl.getString("productFeatureId"));
+						}
+						List<GenericValue> productFeatureGroupAppls = EntityQuery.use(delegator).from("ProductFeatureGroupAppl")
+								.where(EntityCondition.makeCondition("productFeatureId", EntityOperator.IN, productFeatureIds)).queryList();
+						for (GenericValue productFeatureGroupAppl : this.filterByThruDate(productFeatureGroupAppls)) {
+							String productFeatureId = productFeatureGroupAppl.getString("productFeatureId");
+							List<GenericValue> featureGroupAppls = productFeatureGroupApplsByFeature.get(productFeatureId);
+							if (featureGroupAppls == null) {
+								featureGroupAppls = new ArrayList<GenericValue>();
+								productFeatureGroupApplsByFeature.put(productFeatureId, featureGroupAppls);
+							}
+							featureGroupAppls.add(productFeatureGroupAppl);
+						}
+					}
 
 					for (GenericValue productFeatureAndAppl : productFeatureAndAppls) {
 						Timestamp fromDate = productFeatureAndAppl.getTimestamp("fromDate");
@@ -114,8 +136,10 @@ public class ProductDocument implements LuceneDocument {
 						this.addTextFieldByWeight(doc, "featureAbbreviation", productFeatureAndAppl.getString("abbrev"), "index.weight.ProductFeatureAndAppl.abbrev", 0, false, "fullText", delegator);
 						this.addTextFieldByWeight(doc, "featureCode", productFeatureAndAppl.getString("idCode"), "index.weight.ProductFeatureAndAppl.idCode", 0, false, "fullText", delegator);
 						// Get the ProductFeatureGroupIds
-						List<GenericValue> productFeatureGroupAppls = EntityQuery.use(delegator).from("ProductFeatureGroupAppl").where("productFeatureId", productFeatureAndAppl.get("productFeatureId")).queryList();
-						productFeatureGroupAppls = this.filterByThruDate(productFeatureGroupAppls);
+						List<GenericValue> productFeatureGroupAppls = productFeatureGroupApplsByFeature.get(productFeatureAndAppl.getString("productFeatureId"));
+						if (productFeatureGroupAppls == null) {
+							continue;
+						}
 						for (GenericValue productFeatureGroupAppl : productFeatureGroupAppls) {
 							fromDate = productFeatureGroupAppl.getTimestamp("fromDate");
 							thruDate = productFeatureGroupAppl.getTimestamp("thruDate");
@@ -353,7 +377,7 @@ public class ProductDocument implements LuceneDocument {
 				nextReIndex = this.checkSetNextReIndex(thruDate, nextReIndex);
 			}
 			nextReIndex = this.checkSetNextReIndex(
-					this.getParentCategories(doc, productCategoryMember.getRelatedOne("ProductCategory", false), indexedCategoryIds),
+					this.getParentCategories(doc, productCategoryMember.getRelatedOne("ProductCategory", true), indexedCategoryIds),
 					nextReIndex);
 		}
 		return nextReIndex;
@@ -366,7 +390,8 @@ public class ProductDocument implements LuceneDocument {
 	private Timestamp getParentCategories(Document doc, GenericValue productCategory, Set<String> indexedCategoryIds, Set<String> indexedCatalogIds) throws GenericEntityException {
 		Timestamp nextReIndex = null;
 		nextReIndex = this.getCategoryCatalogs(doc, productCategory, indexedCatalogIds);
-		List<GenericValue> productCategoryRollups = productCategory.getRelated("CurrentProductCategoryRollup", null, null, false);
+		// the categories and catalogs are shared by many products, they are read from the cache
+		List<GenericValue> productCategoryRollups = productCategory.getRelated("CurrentProductCategoryRollup", null, null, true);
 		productCategoryRollups = this.filterByThruDate(productCategoryRollups);
 		for (GenericValue productCategoryRollup : productCategoryRollups) {
 			Timestamp fromDate = productCategoryRollup.getTimestamp("fromDate");
@@ -382,7 +407,7 @@ public class ProductDocument implements LuceneDocument {
 			if (!indexedCategoryIds.add(productCategoryRollup.getString("parentProductCategoryId"))) {
 				continue;
 			}
-			GenericValue parentProductCategory = productCategoryRollup.getRelatedOne("ParentProductCategory", false);
+			GenericValue parentProductCategory = productCategoryRollup.getRelatedOne("ParentProductCategory", true);
 			doc.add(new StringField("productCategoryId", parentProductCategory.getString("productCategoryId"), Field.Store.NO));
 			nextReIndex = this.checkSetNextReIndex(
 					this.getParentCategories(doc, parentProductCategory, indexedCategoryIds),
@@ -394,7 +419,7 @@ public class ProductDocument implements LuceneDocument {
 
 	private Timestamp getCategoryCatalogs(Document doc, GenericValue productCategory, Set<String> indexedCatalogIds) throws GenericEntityException {
 		Timestamp nextReIndex = null;
-		List<GenericValue> prodCatalogCategories = productCategory.getRelated("ProdCatalogCategory", null, null, false);
+		List<GenericValue> prodCatalogCategories = productCategory.getRelated("ProdCatalogCategory", null, null, true);
 		prodCatalogCategories = this.filterByThruDate(prodCatalogCategories);
 		for (GenericValue prodCatalogCategory : prodCatalogCategories) {
 			Timestamp fromDate = prodCatalogCategory.getTimestamp("fromDate");
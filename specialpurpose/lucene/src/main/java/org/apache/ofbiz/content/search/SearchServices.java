@@ -42,6 +42,7 @@ public class SearchServices {
 
 	public static final String module = SearchServices.class.getName();
 	public static final String resource = "ContentUiLabels";
+	public static final String err_resource = "ContentErrorUiLabels";
 
 	public static Map<String, Object> indexContentTree(DispatchContext dctx, Map<String, ? extends Object> context) {
 		LocalDispatcher dispatcher = dctx.getDispatcher();
@@ -61,7 +62,11 @@ public class SearchServices {
 	public static Map<String, Object> indexProduct(DispatchContext dctx, Map<String, ? extends Object> context) {
 		Delegator delegator = dctx.getDelegator();
 		String productId = (String) context.get("productId");
+		Locale locale = (Locale) context.get("locale");
 		DocumentIndexer indexer = DocumentIndexer.getInstance(delegator, "products");
+		if (indexer == null) {
+			return ServiceUtil.returnError(UtilProperties.getMessage(err_resource, "ContentSearchProductIndexError", locale));
+		}
 		indexer.queue(new ProductDocument(productId));
 		return ServiceUtil.returnSuccess();
 	}
@@ -24,11 +24,17 @@ import org.apache.ofbiz.content.content.ContentWorker;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.LocalDispatcher;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * SearchWorker Class
@@ -70,20 +76,47 @@ public final class SearchWorker {
 
 	public static void indexContentList(LocalDispatcher dispatcher, Delegator delegator, List<String> idList) throws Exception {
 		DocumentIndexer indexer = DocumentIndexer.getInstance(delegator, "content");
-		List<GenericValue> contentList = new ArrayList<GenericValue>();
-		for (String id : idList) {
-			try {
-				GenericValue content = EntityQuery.use(delegator).from("Content").where("contentId", id).cache(true).queryOne();
-				if (content != null) {
-					contentList.add(content);
+		if (indexer == null) {
+			throw new GeneralException("Could not open the content index");
+		}
+		if (idList.isEmpty()) {
+			return;
+		}
+		// the contents, their data resources and the features of the data resources are read in one query each
+		List<GenericValue> contentList;
+		Map<String, GenericValue> dataResources = new HashMap<String, GenericValue>();
+		Map<String, List<String>> productFeatureIds = new HashMap<String, List<String>>();
+		try {
+			contentList = EntityQuery.use(delegator).from("Content").where(EntityCondition.makeCondition("contentId", EntityOperator.IN, idList)).queryList();
+			Set<String> dataResourceIds = new HashSet<String>();
+			for (GenericValue content : contentList) {
+				if (content.get("dataResourceId") != null) {
+					dataResourceIds.add(content.getString("dataResourceId"));
+				}
+			}
+			if (!dataResourceIds.isEmpty()) {
+				EntityCondition dataResourceCondition = EntityCondition.makeCondition("dataResourceId", EntityOperator.IN, dataResourceIds);
+				for (GenericValue dataResource : EntityQuery.use(delegator).from("DataResource").where(dataResourceCondition).queryList()) {
+					dataResources.put(dataResource.getString("dataResourceId"), dataResource);
+				}
+				for (GenericValue productFeatureDataResource : EntityQuery.use(delegator).from("ProductFeatureDataResource").where(dataResourceCondition).queryList()) {
+					String dataResourceId = productFeatureDataResource.getString("dataResourceId");
+					List<String> featureIds = productFeatureIds.get(dataResourceId);
+					if (featureIds == null) {
+						featureIds = new ArrayList<String>();
+						productFeatureIds.put(dataResourceId, featureIds);
+					}
+					featureIds.add(productFeatureDataResource.getString("productFeatureId"));
 				}
-			} catch (GenericEntityException e) {
-				Debug.logError(e, module);
-				return;
 			}
+		} catch (GenericEntityException e) {
+			Debug.logError(e, module);
+			return;
 		}
 		for (GenericValue content : contentList) {
-			indexer.queue(new ContentDocument(content, dispatcher));
+			String dataResourceId = content.getString("dataResourceId");
+			List<String> featureIds = productFeatureIds.get(dataResourceId);
+			indexer.queue(new ContentDocument(content, dataResources.get(dataResourceId), featureIds == null ? new ArrayList<String>() : featureIds, dispatcher));
 		}
 	}
 
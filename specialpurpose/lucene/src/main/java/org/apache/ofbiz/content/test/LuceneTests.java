@@ -22,10 +22,14 @@ package org.apache.ofbiz.content.test;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.ofbiz.content.search.ContentDocument;
+import org.apache.ofbiz.content.search.DocumentIndexer;
 import org.apache.ofbiz.content.search.SearchWorker;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.util.EntityQuery;
@@ -53,28 +57,16 @@ public class LuceneTests extends OFBizTestCase {
 	protected void tearDown() throws Exception {
 	}
 
-	public void testSearchTermHand() throws Exception {
+	private void indexContentTree() throws Exception {
 		Map<String, Object> ctx = new HashMap<String, Object>();
 		ctx.put("contentId", "WebStoreCONTENT");
 		ctx.put("userLogin", userLogin);
 		Map<String, Object> resp = dispatcher.runSync("indexContentTree", ctx);
 		assertTrue("Could not init search index", ServiceUtil.isSuccess(resp));
-		try {
-			Thread.sleep(3000); // sleep 3 seconds to give enough time to the indexer to process the entries
-		} catch (Exception e) {
-		}
-		Directory directory = FSDirectory.open(new File(SearchWorker.getIndexPath("content")).toPath());
-		DirectoryReader r = null;
-		try {
-			r = DirectoryReader.open(directory);
-		} catch (Exception e) {
-			fail("Could not open search index: " + directory);
-		}
+	}
 
+	private static int search(IndexSearcher searcher, String queryLine) throws Exception {
 		BooleanQuery.Builder combQueryBuilder = new BooleanQuery.Builder();
-		String queryLine = "hand";
-
-		IndexSearcher searcher = new IndexSearcher(r);
 		Analyzer analyzer = new StandardAnalyzer();
 		analyzer.setVersion(SearchWorker.getLuceneVersion());
 
@@ -85,7 +77,43 @@ public class LuceneTests extends OFBizTestCase {
 
 		TopScoreDocCollector collector = TopScoreDocCollector.create(10);
 		searcher.search(combQuery, collector);
+		return collector.getTotalHits();
+	}
+
+	public void testSearchTermHand() throws Exception {
+		indexContentTree();
+		DocumentIndexer indexer = DocumentIndexer.getInstance(delegator, "content");
+		assertNotNull("Could not open search index", indexer);
+		assertTrue("The documents were not indexed in time", indexer.awaitIndexed(10000));
+
+		IndexSearcher searcher = indexer.acquireSearcher();
+		try {
+			assertEquals("Only 1 result expected from the testdata", 1, search(searcher, "hand"));
+		} finally {
+			indexer.releaseSearcher(searcher);
+		}
+	}
+
+	public void testCloseCommitsIndex() throws Exception {
+		DocumentIndexer indexer = DocumentIndexer.getInstance(delegator, "content");
+		assertNotNull("Could not open search index", indexer);
+		indexContentTree();
+		// the queued documents are indexed and committed by the close, not by the 30 seconds commit interval
+		indexer.close(10000);
+		GenericValue content = EntityQuery.use(delegator).from("Content").where("contentId", "WebStoreCONTENT").queryOne();
+		assertFalse("Closed indexer queue", indexer.queue(new ContentDocument(content, dispatcher)));
+
+		try (Directory directory = FSDirectory.open(new File(SearchWorker.getIndexPath("content")).toPath())) {
+			try (DirectoryReader reader = DirectoryReader.open(directory)) {
+				assertEquals("Committed result", 1, search(new IndexSearcher(reader), "hand"));
+			}
+			// the write lock of the index was released
+			new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer())).close();
+		}
 
-		assertEquals("Only 1 result expected from the testdata", 1, collector.getTotalHits());
+		DocumentIndexer reopened = DocumentIndexer.getInstance(delegator, "content");
+		assertNotSame("Indexer after the close", indexer, reopened);
+		indexContentTree();
+		assertTrue("The documents were not indexed in time by the new indexer", reopened.awaitIndexed(10000));
 	}
 }
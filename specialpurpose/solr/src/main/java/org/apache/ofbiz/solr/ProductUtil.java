@@ -24,6 +24,7 @@ import org.apache.ofbiz.entity.GenericDelegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.product.config.ProductConfigWrapper;
 import org.apache.ofbiz.product.product.ProductContentWrapper;
 import org.apache.ofbiz.product.product.ProductWorker;
@@ -43,6 +44,14 @@ public final class ProductUtil {
 	}
 
 	public static Map<String, Object> getProductContent(GenericValue product, DispatchContext dctx, Map<String, Object> context) {
+		return getProductContent(product, dctx, context, null);
+	}
+
+	/**
+	 * Gets the content of a product, reading its categories and features from the batch of {@link SolrBulkIndexer}
+	 * if it's not <code>null</code>.
+	 */
+	static Map<String, Object> getProductContent(GenericValue product, DispatchContext dctx, Map<String, Object> context, SolrBulkIndexer.ProductBatch productBatch) {
 		GenericDelegator delegator = (GenericDelegator) dctx.getDelegator();
 		LocalDispatcher dispatcher = dctx.getDispatcher();
 		GenericValue userLogin = (GenericValue) context.get("userLogin");
@@ -79,12 +88,16 @@ public final class ProductUtil {
 				// if(product.get("productWeight") != null) dispatchContext.put("weight", "");
 
 				// Trying to set a correctand trail
-				List<GenericValue> category = delegator.findList("ProductCategoryMember", EntityCondition.makeCondition(UtilMisc.toMap("productId", productId)), null, null, null, false);
+				List<String> productCategoryIds;
+				if (productBatch != null) {
+					productCategoryIds = productBatch.getProductCategoryIds(productId);
+				} else {
+					List<GenericValue> category = delegator.findList("ProductCategoryMember", EntityCondition.makeCondition(UtilMisc.toMap("productId", productId)), null, null, null, false);
+					productCategoryIds = EntityUtil.getFieldListFromEntityList(category, "productCategoryId", false);
+				}
 				List<String> trails = new ArrayList<String>();
-				for (Iterator<GenericValue> catIterator = category.iterator(); catIterator.hasNext(); ) {
-					GenericValue cat = (GenericValue) catIterator.next();
-					String productCategoryId = (String) cat.get("productCategoryId");
-					List<List<String>> trailElements = CategoryUtil.getCategoryTrail(productCategoryId, dctx);
+				for (String productCategoryId : productCategoryIds) {
+					List<List<String>> trailElements = productBatch != null ? productBatch.getCategoryTrail(productCategoryId) : CategoryUtil.getCategoryTrail(productCategoryId, dctx);
 					//Debug.log("trailElements ======> " + trailElements.toString());
 					for (List<String> trailElement : trailElements) {
 						StringBuilder catMember = new StringBuilder();
@@ -114,7 +127,7 @@ public final class ProductUtil {
 				List<String> catalogs = new ArrayList<String>();
 				for (String trail : trails) {
 					String productCategoryId = (trail.split("/").length > 0) ? trail.split("/")[1] : trail;
-					List<String> catalogMembers = CategoryUtil.getCatalogIdsByCategoryId(delegator, productCategoryId);
+					List<String> catalogMembers = productBatch != null ? productBatch.getCatalogIds(productCategoryId) : CategoryUtil.getCatalogIdsByCategoryId(delegator, productCategoryId);
 					for (String catalogMember : catalogMembers)
 						if (!catalogs.contains(catalogMember))
 							catalogs.add(catalogMember);
@@ -125,9 +138,13 @@ public final class ProductUtil {
 				// if(category.size()>0) dispatchContext.put("category", category);
 				// if(product.get("popularity") != null) dispatchContext.put("popularity", "");
 
-				Map<String, Object> featureSet = dispatcher.runSync("getProductFeatureSet", UtilMisc.toMap("productId", productId));
-				if (featureSet != null) {
-					dispatchContext.put("features", (Set<?>) featureSet.get("featureSet"));
+				if (productBatch != null) {
+					dispatchContext.put("features", productBatch.getFeatureSet(productId));
+				} else {
+					Map<String, Object> featureSet = dispatcher.runSync("getProductFeatureSet", UtilMisc.toMap("productId", productId));
+					if (featureSet != null) {
+						dispatchContext.put("features", (Set<?>) featureSet.get("featureSet"));
+					}
 				}
 
 				Map<String, Object> productInventoryAvailable = dispatcher.runSync("getProductInventoryAvailable", UtilMisc.toMap("productId", productId));
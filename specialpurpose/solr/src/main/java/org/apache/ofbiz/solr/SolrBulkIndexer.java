@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.solr;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rebuilds the product index of a Solr core in bulk.
+ * <p>The products are read in the order of their ids with an {@link EntityListIterator} and indexed by batches of
+ * <code>solr.bulk.batchSize</code> products: the category members and features of the products of a batch are read
+ * in one query each, the category trails and catalogs are read once for the whole run, the documents are built by
+ * <code>solr.bulk.threads</code> threads and sent with one <code>add</code> call. The index is committed once, at the end.</p>
+ * <p>After each batch the id of its last product is saved in the <code>SystemProperty</code>
+ * <code>solrconfig/solr.bulk.checkpoint.&lt;index name&gt;</code>, so that an interrupted run can be resumed
+ * from there. The checkpoint is removed at the end of a complete run.</p>
+ */
+public final class SolrBulkIndexer {
+
+	public static final String module = SolrBulkIndexer.class.getName();
+	private static final String solrConfigName = "solrconfig";
+
+	private final DispatchContext dctx;
+	private final Delegator delegator;
+	private final Map<String, Object> context;
+	private final SolrClient client;
+	private final String indexName;
+	private final int batchSize;
+	private final int threads;
+	private final Map<String, List<List<String>>> categoryTrails = new ConcurrentHashMap<String, List<List<String>>>();
+	private final Map<String, List<String>> categoryCatalogIds = new ConcurrentHashMap<String, List<String>>();
+	private int numDocs;
+	private int numFailed;
+
+	/**
+	 * @param context the context of the calling service, passed to {@link ProductUtil#getProductContent}
+	 * @param batchSize the number of products of a batch, or 0 for <code>solr.bulk.batchSize</code>
+	 * @param threads the number of threads building the documents, or 0 for <code>solr.bulk.threads</code>
+	 */
+	public SolrBulkIndexer(DispatchContext dctx, Map<String, Object> context, SolrClient client, String indexName, int batchSize, int threads) {
+		this.dctx = dctx;
+		this.delegator = dctx.getDelegator();
+		this.context = context;
+		this.client = client;
+		this.indexName = indexName;
+		this.batchSize = batchSize > 0 ? batchSize : UtilProperties.getPropertyAsInteger(solrConfigName, "solr.bulk.batchSize", 500);
+		int configuredThreads = threads > 0 ? threads : UtilProperties.getPropertyAsInteger(solrConfigName, "solr.bulk.threads", 0);
+		this.threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Indexes the products and commits the index.
+	 *
+	 * @param resume if <code>true</code>, starts after the checkpoint of the last interrupted run, if any; otherwise, or if
+	 * there is no checkpoint, removes all the documents of the index first
+	 * @return the number of documents indexed
+	 */
+	public int index(boolean resume) throws GenericEntityException, SolrServerException, IOException, InterruptedException {
+		long startMillis = System.currentTimeMillis();
+		String checkpoint = resume ? getCheckpoint() : null;
+		if (checkpoint == null) {
+			// the searchers see the previous documents until the final commit
+			client.deleteByQuery("*:*");
+			Debug.logInfo("Solr: Rebuilding index " + indexName + " in batches of " + batchSize + " products with " + threads + " threads", module);
+		} else {
+			Debug.logInfo("Solr: Resuming the rebuild of index " + indexName + " after productId '" + checkpoint + "'", module);
+		}
+		EntityQuery productQuery = EntityQuery.use(delegator).from("Product").orderBy("productId");
+		if (checkpoint != null) {
+			productQuery.where(EntityCondition.makeCondition("productId", EntityOperator.GREATER_THAN, checkpoint));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		EntityListIterator products = null;
+		try {
+			products = productQuery.queryIterator();
+			List<GenericValue> batch = new ArrayList<GenericValue>(batchSize);
+			GenericValue product;
+			while ((product = products.next()) != null) {
+				batch.add(product);
+				if (batch.size() == batchSize) {
+					indexBatch(batch, executor);
+					batch = new ArrayList<GenericValue>(batchSize);
+				}
+			}
+			if (!batch.isEmpty()) {
+				indexBatch(batch, executor);
+			}
+		} finally {
+			executor.shutdownNow();
+			if (products != null) {
+				products.close();
+			}
+		}
+		client.commit();
+		saveCheckpoint(null);
+		long elapsedMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+		Debug.logInfo("Solr: Indexed " + numDocs + " products in index " + indexName + " in " + elapsedMillis + " ms (" + (numDocs * 1000L / elapsedMillis) + " products/s), "
+				+ numFailed + " failed", module);
+		return numDocs;
+	}
+
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	public int getNumFailed() {
+		return numFailed;
+	}
+
+	private void indexBatch(List<GenericValue> products, ExecutorService executor) throws GenericEntityException, SolrServerException, IOException, InterruptedException {
+		final ProductBatch productBatch = new ProductBatch(products);
+		List<Future<SolrInputDocument>> futures = new ArrayList<Future<SolrInputDocument>>(products.size());
+		for (final GenericValue product : products) {
+			futures.add(executor.submit(new Callable<SolrInputDocument>() {
+				@Override
+				public SolrInputDocument call() throws Exception {
+					return SolrUtil.generateSolrDocument(ProductUtil.getProductContent(product, dctx, context, productBatch));
+				}
+			}));
+		}
+		List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(products.size());
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				docs.add(futures.get(i).get());
+			} catch (ExecutionException e) {
+				numFailed++;
+				Debug.logError(e.getCause(), "Solr: Could not build the document of productId '" + products.get(i).getString("productId") + "'", module);
+			}
+		}
+		if (!docs.isEmpty()) {
+			client.add(docs);
+		}
+		numDocs += docs.size();
+		String lastProductId = products.get(products.size() - 1).getString("productId");
+		saveCheckpoint(lastProductId);
+		if (Debug.verboseOn()) {
+			Debug.logVerbose("Solr: Indexed " + numDocs + " products in index " + indexName + ", up to productId '" + lastProductId + "'", module);
+		}
+	}
+
+	private String getCheckpoint() throws GenericEntityException {
+		GenericValue checkpoint = EntityQuery.use(delegator).from("SystemProperty")
+				.where("systemResourceId", solrConfigName, "systemPropertyId", "solr.bulk.checkpoint." + indexName).queryOne();
+		return checkpoint == null ? null : checkpoint.getString("systemPropertyValue");
+	}
+
+	private void saveCheckpoint(final String productId) throws GenericEntityException {
+		// the checkpoint must be kept even if the transaction of the run is rolled back
+		TransactionUtil.doNewTransaction(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				GenericValue checkpoint = delegator.makeValue("SystemProperty");
+				checkpoint.set("systemResourceId", solrConfigName);
+				checkpoint.set("systemPropertyId", "solr.bulk.checkpoint." + indexName);
+				if (productId == null) {
+					delegator.removeValue(checkpoint);
+				} else {
+					checkpoint.set("systemPropertyValue", productId);
+					checkpoint.set("description", "Last product indexed by the interrupted bulk rebuild of the Solr index " + indexName);
+					delegator.createOrStore(checkpoint);
+				}
+				return null;
+			}
+		}, "Solr: Could not save the checkpoint of the bulk rebuild of index " + indexName, 0, true);
+	}
+
+	/**
+	 * The data of a batch of products read in bulk, used by {@link ProductUtil#getProductContent} instead of its
+	 * product by product lookups.
+	 */
+	final class ProductBatch {
+		private final Map<String, List<String>> productCategoryIds = new HashMap<String, List<String>>();
+		private final Map<String, Set<String>> featureSets = new HashMap<String, Set<String>>();
+
+		private ProductBatch(List<GenericValue> products) throws GenericEntityException {
+			List<String> productIds = new ArrayList<String>(products.size());
+			for (GenericValue product : products) {
+				productIds.add(product.getString("productId"));
+			}
+			List<GenericValue> productCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember")
+					.where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds)).queryList();
+			for (GenericValue productCategoryMember : productCategoryMembers) {
+				String productId = productCategoryMember.getString("productId");
+				List<String> categoryIds = productCategoryIds.get(productId);
+				if (categoryIds == null) {
+					categoryIds = new ArrayList<String>();
+					productCategoryIds.put(productId, categoryIds);
+				}
+				categoryIds.add(productCategoryMember.getString("productCategoryId"));
+			}
+			// same features as the getProductFeatureSet service
+			List<GenericValue> productFeatureAndAppls = EntityQuery.use(delegator).from("ProductFeatureAndAppl")
+					.where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds),
+							EntityCondition.makeCondition("productFeatureApplTypeId", "SELECTABLE_FEATURE"))
+					.orderBy("productId", "sequenceNum", "productFeatureTypeId").filterByDate().queryList();
+			for (GenericValue productFeatureAndAppl : productFeatureAndAppls) {
+				String productId = productFeatureAndAppl.getString("productId");
+				Set<String> featureSet = featureSets.get(productId);
+				if (featureSet == null) {
+					featureSet = new LinkedHashSet<String>();
+					featureSets.put(productId, featureSet);
+				}
+				featureSet.add(productFeatureAndAppl.getString("productFeatureTypeId"));
+			}
+		}
+
+		List<String> getProductCategoryIds(String productId) {
+			List<String> categoryIds = productCategoryIds.get(productId);
+			return categoryIds == null ? Collections.<String>emptyList() : categoryIds;
+		}
+
+		Set<String> getFeatureSet(String productId) {
+			Set<String> featureSet = featureSets.get(productId);
+			return featureSet == null ? Collections.<String>emptySet() : featureSet;
+		}
+
+		List<List<String>> getCategoryTrail(String productCategoryId) {
+			List<List<String>> trail = categoryTrails.get(productCategoryId);
+			if (trail == null) {
+				trail = CategoryUtil.getCategoryTrail(productCategoryId, dctx);
+				categoryTrails.put(productCategoryId, trail);
+			}
+			return trail;
+		}
+
+		List<String> getCatalogIds(String productCategoryId) {
+			List<String> catalogIds = categoryCatalogIds.get(productCategoryId);
+			if (catalogIds == null) {
+				catalogIds = CategoryUtil.getCatalogIdsByCategoryId(delegator, productCategoryId);
+				categoryCatalogIds.put(productCategoryId, catalogIds);
+			}
+			return catalogIds;
+		}
+	}
+}
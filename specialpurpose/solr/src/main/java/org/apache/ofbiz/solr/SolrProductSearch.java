@@ -111,7 +111,7 @@ public abstract class SolrProductSearch {
 		try {
 			Debug.logInfo("Solr: Generating and indexing document for productId '" + productId + "'", module);
 
-			client = SolrUtil.getInstance().getHttpSolrClient(solrIndexName);
+			client = SolrUtil.getHttpSolrClient(solrIndexName);
 			//Debug.log(server.ping().toString());
 
 			// Construct Documents
@@ -194,7 +194,7 @@ public abstract class SolrProductSearch {
 				docs.add(doc1);
 			}
 			// push Documents to server
-			client = SolrUtil.getInstance().getHttpSolrClient(solrIndexName);
+			client = SolrUtil.getHttpSolrClient(solrIndexName);
 			client.add(docs);
 			client.commit();
 
@@ -249,7 +249,7 @@ public abstract class SolrProductSearch {
 		String solrIndexName = (String) context.get("indexName");
 		Map<String, Object> result;
 		try {
-			client = SolrUtil.getInstance().getHttpSolrClient(solrIndexName);
+			client = SolrUtil.getHttpSolrClient(solrIndexName);
 			// create Query Object
 			SolrQuery solrQuery = new SolrQuery();
 			solrQuery.setQuery((String) context.get("query"));
@@ -613,7 +613,7 @@ public abstract class SolrProductSearch {
 		Boolean treatConnectErrorNonFatal = (Boolean) context.get("treatConnectErrorNonFatal");
 
 		try {
-			client = SolrUtil.getInstance().getHttpSolrClient(solrIndexName);
+			client = SolrUtil.getHttpSolrClient(solrIndexName);
 
 			// now lets fetch all products
 			List<Map<String, Object>> solrDocs = new ArrayList<Map<String, Object>>();
@@ -695,4 +695,59 @@ public abstract class SolrProductSearch {
 		}
 		return result;
 	}
+
+	/**
+	 * Rebuilds the solr index in bulk, see {@link SolrBulkIndexer}.
+	 */
+	public static Map<String, Object> rebuildSolrIndexBulk(DispatchContext dctx, Map<String, Object> context) {
+		HttpSolrClient client = null;
+		Map<String, Object> result;
+		Locale locale = (Locale) context.get("locale");
+		String solrIndexName = (String) context.get("indexName");
+		Boolean treatConnectErrorNonFatal = (Boolean) context.get("treatConnectErrorNonFatal");
+		Integer batchSize = (Integer) context.get("batchSize");
+		Integer threads = (Integer) context.get("threads");
+		boolean resume = Boolean.TRUE.equals(context.get("resume"));
+		try {
+			client = SolrUtil.getHttpSolrClient(solrIndexName);
+			SolrBulkIndexer indexer = new SolrBulkIndexer(dctx, context, client, solrIndexName, batchSize == null ? 0 : batchSize, threads == null ? 0 : threads);
+			int numDocs = indexer.index(resume);
+			final String statusMsg = UtilProperties.getMessage(resource, "SolrClearedSolrIndexAndReindexedDocuments", UtilMisc.toMap("numDocs", numDocs), locale);
+			result = ServiceUtil.returnSuccess(statusMsg);
+			result.put("numDocs", numDocs);
+			result.put("numFailed", indexer.getNumFailed());
+		} catch (SolrServerException e) {
+			if (e.getCause() != null && e.getCause() instanceof ConnectException) {
+				result = returnConnectError(e, treatConnectErrorNonFatal, locale);
+			} else {
+				Debug.logError(e, e.getMessage(), module);
+				result = ServiceUtil.returnError(e.toString());
+			}
+		} catch (ConnectException e) {
+			// the login of getHttpSolrClient is not made through the SolrClient
+			result = returnConnectError(e, treatConnectErrorNonFatal, locale);
+		} catch (Exception e) {
+			Debug.logError(e, e.getMessage(), module);
+			result = ServiceUtil.returnError(e.toString());
+		} finally {
+			if (client != null) {
+				try {
+					client.close();
+				} catch (IOException e) {
+					// do nothing
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Map<String, Object> returnConnectError(Exception e, Boolean treatConnectErrorNonFatal, Locale locale) {
+		final String statusStr = UtilProperties.getMessage(resource, "SolrFailureConnectingToSolrServerToRebuildIndex", locale);
+		if (Boolean.TRUE.equals(treatConnectErrorNonFatal)) {
+			Debug.logWarning(e, "Solr: " + statusStr, module);
+			return ServiceUtil.returnFailure(statusStr);
+		}
+		Debug.logError(e, "Solr: " + statusStr, module);
+		return ServiceUtil.returnError(statusStr);
+	}
 }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.solr.test;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.solr.ProductUtil;
+import org.apache.ofbiz.solr.SolrBulkIndexer;
+import org.apache.ofbiz.solr.SolrUtil;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tests the bulk rebuild of the Solr product index with a client recording the update requests instead of sending them.
+ */
+public class SolrBulkIndexerTests extends OFBizTestCase {
+
+	private static final String INDEX_NAME = "solrbulktest";
+	private static final int BATCH_SIZE = 10;
+
+	private Map<String, Object> context;
+	private List<GenericValue> products;
+
+	public SolrBulkIndexerTests(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		context = new HashMap<String, Object>();
+		context.put("userLogin", EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne());
+		context.put("locale", Locale.getDefault());
+		products = EntityQuery.use(delegator).from("Product").orderBy("productId").queryList();
+		assertTrue("more than two batches of products", products.size() > 2 * BATCH_SIZE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delegator.removeByAnd("SystemProperty", "systemResourceId", "solrconfig", "systemPropertyId", "solr.bulk.checkpoint." + INDEX_NAME);
+	}
+
+	private String getCheckpoint() throws Exception {
+		GenericValue checkpoint = EntityQuery.use(delegator).from("SystemProperty")
+				.where("systemResourceId", "solrconfig", "systemPropertyId", "solr.bulk.checkpoint." + INDEX_NAME).queryOne();
+		return checkpoint == null ? null : checkpoint.getString("systemPropertyValue");
+	}
+
+	private SolrBulkIndexer createIndexer(SolrClient client) {
+		return new SolrBulkIndexer(dispatcher.getDispatchContext(), context, client, INDEX_NAME, BATCH_SIZE, 2);
+	}
+
+	/**
+	 * Runs the indexer in a transaction, as the rebuildSolrIndexBulk service does.
+	 */
+	private static int index(SolrBulkIndexer indexer, boolean resume) throws Exception {
+		boolean beganTransaction = TransactionUtil.begin();
+		try {
+			return indexer.index(resume);
+		} finally {
+			TransactionUtil.commit(beganTransaction);
+		}
+	}
+
+	public void testRebuild() throws Exception {
+		RecordingSolrClient client = new RecordingSolrClient(-1);
+		SolrBulkIndexer indexer = createIndexer(client);
+		assertEquals("indexed documents", products.size(), index(indexer, false));
+		assertEquals("failed documents", 0, indexer.getNumFailed());
+		assertEquals("deletes", 1, client.deletes);
+		assertEquals("adds, one per batch", (products.size() + BATCH_SIZE - 1) / BATCH_SIZE, client.adds);
+		assertEquals("commits", 1, client.commits);
+		assertEquals("sent documents", products.size(), client.documents.size());
+		assertNull("checkpoint of a complete rebuild", getCheckpoint());
+
+		// the documents built from the batches are the ones of the product by product path
+		for (int i = 0; i < products.size(); i++) {
+			GenericValue product = products.get(i);
+			SolrInputDocument expected = SolrUtil.generateSolrDocument(ProductUtil.getProductContent(product, dispatcher.getDispatchContext(), context));
+			SolrInputDocument document = client.documents.get(i);
+			assertEquals("document of product " + product.getString("productId"), expected.toString(), document.toString());
+		}
+	}
+
+	public void testResume() throws Exception {
+		RecordingSolrClient client = new RecordingSolrClient(2);
+		try {
+			index(createIndexer(client), false);
+			fail("the third batch fails");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("documents sent before the failure", 2 * BATCH_SIZE, client.documents.size());
+		assertEquals("commits before the failure", 0, client.commits);
+		String checkpoint = getCheckpoint();
+		assertEquals("checkpoint", products.get(2 * BATCH_SIZE - 1).getString("productId"), checkpoint);
+
+		RecordingSolrClient resumeClient = new RecordingSolrClient(-1);
+		SolrBulkIndexer indexer = createIndexer(resumeClient);
+		assertEquals("resumed documents", products.size() - 2 * BATCH_SIZE, index(indexer, true));
+		// the documents sent before the failure are kept
+		assertEquals("deletes of the resumed rebuild", 0, resumeClient.deletes);
+		assertEquals("commits of the resumed rebuild", 1, resumeClient.commits);
+		assertEquals("first resumed document", products.get(2 * BATCH_SIZE).getString("productId"), resumeClient.documents.get(0).getFieldValue("productId"));
+		assertNull("checkpoint of a complete rebuild", getCheckpoint());
+	}
+
+	public void testRebuildSolrIndexBulk() throws Exception {
+		Map<String, Object> result = dispatcher.runSync("rebuildSolrIndexBulk", UtilMisc.toMap("indexName", INDEX_NAME, "batchSize", BATCH_SIZE,
+				"treatConnectErrorNonFatal", Boolean.TRUE, "userLogin", context.get("userLogin")));
+		if (ServiceUtil.isSuccess(result)) {
+			assertEquals("indexed documents", products.size(), result.get("numDocs"));
+			assertEquals("failed documents", 0, result.get("numFailed"));
+		} else {
+			// without a Solr server, the connection error is not fatal
+			assertTrue("failure " + ServiceUtil.getErrorMessage(result), ServiceUtil.isFailure(result));
+			assertNull("checkpoint of a rebuild failing before its first batch", getCheckpoint());
+		}
+	}
+
+	/**
+	 * Records the update requests: the deletes, the commits and the documents of the adds. Fails the adds after
+	 * <code>maxAdds</code> of them if it's not negative.
+	 */
+	private static final class RecordingSolrClient extends SolrClient {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxAdds;
+		private final List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>();
+		private int adds;
+		private int deletes;
+		private int commits;
+
+		private RecordingSolrClient(int maxAdds) {
+			this.maxAdds = maxAdds;
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public synchronized NamedList<Object> request(SolrRequest request, String collection) {
+			UpdateRequest updateRequest = (UpdateRequest) request;
+			if (updateRequest.getDocuments() != null) {
+				if (adds == maxAdds) {
+					throw new IllegalStateException("Add refused by the test");
+				}
+				adds++;
+				documents.addAll(updateRequest.getDocuments());
+			}
+			if (updateRequest.getDeleteQuery() != null) {
+				deletes++;
+			}
+			if (updateRequest.getAction() == UpdateRequest.ACTION.COMMIT) {
+				commits++;
+			}
+			return new NamedList<Object>();
+		}
+
+		@Override
+		@Deprecated
+		public void shutdown() {
+		}
+	}
+}